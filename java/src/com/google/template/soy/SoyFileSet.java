@@ -18,10 +18,14 @@ package com.google.template.soy;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.InputSupplier;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
@@ -31,12 +35,14 @@ import com.google.template.soy.base.SoyFileSupplier;
 import com.google.template.soy.base.SoySyntaxException;
 import com.google.template.soy.base.VolatileSoyFileSupplier;
 import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.internal.i18n.BidiGlobalDir;
 import com.google.template.soy.javasrc.SoyJavaSrcOptions;
 import com.google.template.soy.javasrc.SoyTemplateRuntime;
 import com.google.template.soy.javasrc.SoyTemplateRuntimes;
 import com.google.template.soy.javasrc.dyncompile.SoyToJavaDynamicCompiler;
 import com.google.template.soy.javasrc.internal.JavaSrcMain;
 import com.google.template.soy.jssrc.SoyJsSrcOptions;
+import com.google.template.soy.jssrc.internal.JsCodeWithMsgSlots;
 import com.google.template.soy.jssrc.internal.JsSrcMain;
 import com.google.template.soy.jssrc.internal.JsSrcUtils;
 import com.google.template.soy.msgs.SoyMsgBundle;
@@ -57,6 +63,7 @@ import com.google.template.soy.sharedpasses.AssertNoExternalCallsVisitor;
 import com.google.template.soy.sharedpasses.ClearSoyDocStringsVisitor;
 import com.google.template.soy.sharedpasses.SubstituteGlobalsVisitor;
 import com.google.template.soy.sharedpasses.opti.SimplifyVisitor;
+import com.google.template.soy.soyparse.SoyFileParseCache;
 import com.google.template.soy.soyparse.SoyFileSetParser;
 import com.google.template.soy.soytree.SoyFileNode;
 import com.google.template.soy.soytree.SoyFileSetNode;
@@ -64,7 +71,10 @@ import com.google.template.soy.soytree.TemplateDelegateNode;
 import com.google.template.soy.soytree.TemplateNode;
 import com.google.template.soy.tofu.SoyTofu;
 import com.google.template.soy.tofu.SoyTofuOptions;
+import com.google.template.soy.tofu.internal.BaseTofu;
 import com.google.template.soy.tofu.internal.BaseTofu.BaseTofuFactory;
+import com.google.template.soy.tofu.internal.BytecodeTofu;
+import com.google.template.soy.tofu.internal.ReloadingTofu;
 import com.google.template.soy.xliffmsgplugin.XliffMsgPlugin;
 
 import java.io.File;
@@ -73,6 +83,12 @@ import java.io.Reader;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -333,6 +349,19 @@ public final class SoyFileSet {
     }
 
 
+    /**
+     * Sets the number of threads to parse the Soy files with (default 1). Parsing with more threads
+     * produces exactly the same parse tree.
+     *
+     * @param numParserThreads The number of threads to parse the Soy files with.
+     * @return This builder.
+     */
+    public Builder setNumParserThreads(int numParserThreads) {
+      this.generalOptions.setNumParserThreads(numParserThreads);
+      return this;
+    }
+
+
     /**
      * Sets the scheme for handling {@code css} commands.
      *
@@ -416,6 +445,14 @@ public final class SoyFileSet {
   private static final Provider<SoyMsgBundleHandler> DEFAULT_SOY_MSG_BUNDLE_HANDLER_PROVIDER =
       Providers.of(new SoyMsgBundleHandler(new XliffMsgPlugin()));
 
+  /** The class name used for templates compiled by {@link #compileToBytecode()}. */
+  private static final String BYTECODE_BUNDLE_NAME = "SoyFileSetTemplates";
+
+  /** The default executor on which {@link #compileToBytecode()} compiles templates. Its threads are
+   *  daemons and exit when idle, so it never needs to be shut down. */
+  private static final Executor DEFAULT_BYTECODE_COMPILE_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("soy-bytecode-compile-%d").build());
+
 
   /** Provider for getting an instance of SoyMsgBundleHandler. */
   private Provider<SoyMsgBundleHandler> msgBundleHandlerProvider;
@@ -447,6 +484,10 @@ public final class SoyFileSet {
   /** The general compiler options. */
   private final SoyGeneralOptions generalOptions;
 
+  /** Cache of parsed Soy files, so that recompiling only parses the files that have changed.
+   *  Null unless some of the input Soy files are volatile. */
+  private final SoyFileParseCache parseCache;
+
 
   /**
    * @param baseTofuFactory Factory for creating an instance of BaseTofu.
@@ -482,6 +523,15 @@ public final class SoyFileSet {
         soyFileSuppliers.size() > 0, "Must have non-zero number of input Soy files.");
     this.soyFileSuppliers = soyFileSuppliers;
     this.generalOptions = generalOptions.clone();
+
+    SoyFileParseCache parseCache = null;
+    for (SoyFileSupplier soyFileSupplier : soyFileSuppliers) {
+      if (soyFileSupplier instanceof VolatileSoyFileSupplier) {
+        parseCache = new SoyFileParseCache();
+        break;
+      }
+    }
+    this.parseCache = parseCache;
   }
 
 
@@ -516,7 +566,7 @@ public final class SoyFileSet {
   public ImmutableMap<String, String> generateParseInfo(
       String javaPackage, String javaClassNameSource) throws SoySyntaxException {
 
-    SoyFileSetNode soyTree = (new SoyFileSetParser(soyFileSuppliers)).parse();
+    SoyFileSetNode soyTree = newSoyFileSetParser().parse();
 
     return (new GenerateParseInfoVisitor(javaPackage, javaClassNameSource)).exec(soyTree);
   }
@@ -531,9 +581,8 @@ public final class SoyFileSet {
    */
   public SoyMsgBundle extractMsgs() throws SoySyntaxException {
 
-    SoyFileSetNode soyTree =
-        (new SoyFileSetParser(soyFileSuppliers))
-            .setDoEnforceSyntaxVersionV2(false).setDoCheckOverrides(false).parse();
+    SoyFileSetNode soyTree = newSoyFileSetParser()
+        .setDoEnforceSyntaxVersionV2(false).setDoCheckOverrides(false).parse();
 
     return (new ExtractMsgsVisitor()).exec(soyTree);
   }
@@ -567,8 +616,61 @@ public final class SoyFileSet {
     // Defensive copy of options. (Doesn't matter now, but might forget later when it matters.)
     tofuOptions = tofuOptions.clone();
 
-    // TODO: Allow binding a SoyTofu instance to volatile inputs.
-    SoyFileSetNode soyTree = (new SoyFileSetParser(soyFileSuppliers)).parse();
+    return compileToTofuHelper(tofuOptions).first;
+  }
+
+
+  /**
+   * Compiles this Soy file set into a Java object (type {@code SoyTofu}) capable of rendering the
+   * compiled templates, which is recompiled in the background whenever any of the Soy files
+   * changes (as determined by {@link SoyFileSupplier#hasChangedSince}). Only files added via
+   * {@link Builder#addVolatile} are ever considered changed.
+   *
+   * <p> At most once per {@code checkIntervalMillis}, a call to the resulting {@code SoyTofu}
+   * schedules a check for changed files on {@code reloadExecutor}. If any file has changed, the
+   * file set is recompiled on {@code reloadExecutor} (reparsing only the changed files), and the
+   * new version then atomically replaces the old one. Renderers obtained before the swap finish
+   * rendering with the old version, and no call ever waits for a recompile. If a recompile fails,
+   * the failure is logged and the old version is kept.
+   *
+   * <p> The recompiles use this {@code SoyFileSet}, so it must not be compiled concurrently from
+   * other threads while the resulting {@code SoyTofu} is in use.
+   *
+   * @param tofuOptions The compilation options for the Tofu backend.
+   * @param reloadExecutor The executor on which to check for changed files and recompile.
+   * @param checkIntervalMillis The minimum time between checks for changed files, in milliseconds.
+   * @return The resulting {@code SoyTofu} object.
+   * @throws SoySyntaxException If a syntax error is found in the initial compile.
+   */
+  public SoyTofu compileToReloadingTofu(
+      SoyTofuOptions tofuOptions, Executor reloadExecutor, long checkIntervalMillis)
+      throws SoySyntaxException {
+
+    final SoyTofuOptions copyOfTofuOptions = tofuOptions.clone();
+
+    ReloadingTofu.TofuCompiler tofuCompiler = new ReloadingTofu.TofuCompiler() {
+      @Override public Pair<BaseTofu, List<SoyFileSupplier.Version>> compile() {
+        return compileToTofuHelper(copyOfTofuOptions);
+      }
+    };
+    return new ReloadingTofu(tofuCompiler, soyFileSuppliers, reloadExecutor, checkIntervalMillis);
+  }
+
+
+  /**
+   * Private helper for {@code compileToTofu()} and {@code compileToReloadingTofu()} to compile
+   * this Soy file set into a {@code BaseTofu}.
+   *
+   * @param tofuOptions The compilation options for the Tofu backend.
+   * @return The resulting {@code BaseTofu} object and the versions of the Soy files read.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  private Pair<BaseTofu, List<SoyFileSupplier.Version>> compileToTofuHelper(
+      SoyTofuOptions tofuOptions) throws SoySyntaxException {
+
+    Pair<SoyFileSetNode, List<SoyFileSupplier.Version>> soyTreeAndVersions =
+        newSoyFileSetParser().parseWithVersions();
+    SoyFileSetNode soyTree = soyTreeAndVersions.first;
     runMiddleendPasses(soyTree, true);
 
     // If allowExternalCalls is not explicitly set, then disallow by default for Tofu backend.
@@ -583,7 +685,75 @@ public final class SoyFileSet {
     // Clear the SoyDoc strings because they use unnecessary memory.
     (new ClearSoyDocStringsVisitor()).exec(soyTree);
 
-    return baseTofuFactory.create(soyTree, tofuOptions.useCaching());
+    BaseTofu baseTofu = baseTofuFactory.create(
+        soyTree, tofuOptions.useCaching(), tofuOptions.getCacheMaxSize());
+    return Pair.of(baseTofu, soyTreeAndVersions.second);
+  }
+
+
+  /**
+   * Compiles this Soy file set into a Java object (type {@code SoyTofu}) whose templates are
+   * compiled to JVM classes instead of being interpreted, so that frequently rendered templates run
+   * as straight-line code.
+   *
+   * <p> The templates are compiled (via the Java Src backend and the dynamic Java compiler) in the
+   * background the first time each {@code SoyMsgBundle} is used, or on the calling thread when
+   * {@link SoyTofu#addToCache} is called. Renders that the compiled templates can't handle (e.g.
+   * file sets using delegate templates or plural/select messages), as well as renders before the
+   * templates are compiled, fall back to interpreting the templates as done by the
+   * {@code SoyTofu} from {@link #compileToTofu()}.
+   *
+   * @return The resulting {@code SoyTofu} object.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  public SoyTofu compileToBytecode() throws SoySyntaxException {
+    return compileToBytecode(new SoyTofuOptions(), DEFAULT_BYTECODE_COMPILE_EXECUTOR);
+  }
+
+
+  /**
+   * Compiles this Soy file set into a Java object (type {@code SoyTofu}) whose templates are
+   * compiled to JVM classes instead of being interpreted.
+   *
+   * @see #compileToBytecode()
+   *
+   * @param tofuOptions The compilation options for the Tofu backend. The resulting
+   *     {@code SoyTofu} always caches (one entry per {@code SoyMsgBundle}), so only the cache max
+   *     size is used.
+   * @param compileExecutor The executor on which renders compile the templates for a
+   *     {@code SoyMsgBundle} the first time it's used.
+   * @return The resulting {@code SoyTofu} object.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  public SoyTofu compileToBytecode(SoyTofuOptions tofuOptions, Executor compileExecutor)
+      throws SoySyntaxException {
+
+    final SoyFileSetNode soyTree = newSoyFileSetParser().parse();
+    runMiddleendPasses(soyTree, true);
+
+    // Note: Globals should have been substituted already. The pass below is just a check.
+    (new SubstituteGlobalsVisitor(generalOptions.getCompileTimeGlobals(), true)).exec(soyTree);
+
+    final SoyJavaSrcOptions javaSrcOptions = new SoyJavaSrcOptions();
+    javaSrcOptions.setCodeStyle(SoyJavaSrcOptions.CodeStyle.STRINGBUILDER);
+
+    BytecodeTofu.RuntimesCompiler runtimesCompiler = new BytecodeTofu.RuntimesCompiler() {
+      @Override public SoyTemplateRuntimes compile(@Nullable SoyMsgBundle msgBundle) {
+        // The Java Src backend modifies the tree, so compile a copy for each message bundle.
+        return SoyToJavaDynamicCompiler.compileToRuntimes(
+            BYTECODE_BUNDLE_NAME,
+            javaSrcMainProvider.get().genJavaSrc(soyTree.clone(), javaSrcOptions, msgBundle));
+      }
+    };
+
+    // The fallback Tofu gets its own copy of the tree since SoyDoc strings are cleared for it.
+    SoyFileSetNode soyTreeForFallback = soyTree.clone();
+    (new ClearSoyDocStringsVisitor()).exec(soyTreeForFallback);
+
+    int cacheMaxSize = tofuOptions.getCacheMaxSize();
+    return new BytecodeTofu(
+        runtimesCompiler, baseTofuFactory.create(soyTreeForFallback, true, cacheMaxSize),
+        cacheMaxSize, compileExecutor);
   }
 
 
@@ -698,7 +868,7 @@ public final class SoyFileSet {
       private void compile() throws SoySyntaxException {
 
         Pair<SoyFileSetNode, List<SoyFileSupplier.Version>> soyTreeAndVersions =
-            (new SoyFileSetParser(soyFileSuppliers)).parseWithVersions();
+            newSoyFileSetParser().parseWithVersions();
         SoyFileSetNode soyTree = soyTreeAndVersions.first;
         runMiddleendPasses(soyTree, true);
 
@@ -746,7 +916,7 @@ public final class SoyFileSet {
    */
   public String compileToJavaSrc(SoyJavaSrcOptions javaSrcOptions, SoyMsgBundle msgBundle) {
 
-    SoyFileSetNode soyTree = (new SoyFileSetParser(soyFileSuppliers)).parse();
+    SoyFileSetNode soyTree = newSoyFileSetParser().parse();
     runMiddleendPasses(soyTree, true);
 
     return compileFileSetToJavaSrc(soyTree, javaSrcOptions, msgBundle);
@@ -788,7 +958,7 @@ public final class SoyFileSet {
       throws SoySyntaxException {
 
     boolean doEnforceSyntaxVersionV2 = ! jsSrcOptions.shouldAllowDeprecatedSyntax();
-    SoyFileSetNode soyTree = (new SoyFileSetParser(soyFileSuppliers))
+    SoyFileSetNode soyTree = newSoyFileSetParser()
         .setDoEnforceSyntaxVersionV2(doEnforceSyntaxVersionV2).parse();
     runMiddleendPasses(soyTree, doEnforceSyntaxVersionV2);
 
@@ -805,17 +975,25 @@ public final class SoyFileSet {
    * @param jsSrcOptions The compilation options for the JS Src output target.
    * @param locales The list of locales. Can be an empty list if not applicable.
    * @param messageFilePathFormat The message file path format, or null if not applicable.
+   * @param numThreads The number of threads to generate the JS for different locales with. The
+   *     output is the same as with one thread.
+   * @return Map from each locale (in the given order) to the time in milliseconds it took to
+   *     generate its JS files (including reading its message file, but not including any code
+   *     generation shared with other locales), or an empty map if there are no locales.
    * @throws SoySyntaxException If a syntax error is found.
    * @throws IOException If there is an error in opening/reading a message file or opening/writing
    *     an output JS file.
    */
-  void compileToJsSrcFiles(
-      String outputPathFormat, String inputFilePathPrefix, SoyJsSrcOptions jsSrcOptions,
-      List<String> locales, @Nullable String messageFilePathFormat)
+  ImmutableMap<String, Long> compileToJsSrcFiles(
+      final String outputPathFormat, final String inputFilePathPrefix,
+      final SoyJsSrcOptions jsSrcOptions, List<String> locales,
+      @Nullable final String messageFilePathFormat, int numThreads)
       throws SoySyntaxException, IOException {
 
+    Preconditions.checkArgument(numThreads >= 1);
+
     boolean doEnforceSyntaxVersionV2 = ! jsSrcOptions.shouldAllowDeprecatedSyntax();
-    SoyFileSetNode soyTree = (new SoyFileSetParser(soyFileSuppliers))
+    SoyFileSetNode soyTree = newSoyFileSetParser()
         .setDoEnforceSyntaxVersionV2(doEnforceSyntaxVersionV2).parse();
     runMiddleendPasses(soyTree, doEnforceSyntaxVersionV2);
 
@@ -823,31 +1001,170 @@ public final class SoyFileSet {
       // Not generating localized JS.
       jsSrcMainProvider.get().genJsFiles(
           soyTree, jsSrcOptions, null, null, outputPathFormat, inputFilePathPrefix);
+      return ImmutableMap.of();
+    }
 
-    } else {
-      // Generating localized JS.
-      for (String locale : locales) {
-
-        SoyFileSetNode soyTreeClone = soyTree.clone();
-
-        String msgFilePath =
-            JsSrcUtils.buildFilePath(messageFilePathFormat, locale, null, inputFilePathPrefix);
-
-        SoyMsgBundle msgBundle =
-            msgBundleHandlerProvider.get().createFromFile(new File(msgFilePath));
-        if (msgBundle.getLocaleString() == null) {
-          // TODO: Remove this check (but make sure no projects depend on this behavior).
-          // There was an error reading the message file. We continue processing only if the locale
-          // begins with "en", because falling back to the Soy source will proably be fine.
-          if (!locale.startsWith("en")) {
-            throw new IOException("Error opening or reading message file " + msgFilePath);
+    // Generating localized JS. If the output paths don't depend on the locale, then every locale
+    // writes the same files (and the last one wins), so the locales must be done in order.
+    if (!outputPathFormat.contains("{LOCALE}") &&
+        !outputPathFormat.contains("{LOCALE_LOWER_CASE}")) {
+      numThreads = 1;
+    }
+
+    final SoyFileSetNode finalSoyTree = soyTree;
+    List<Callable<Long>> localeTasks = Lists.newArrayListWithCapacity(locales.size());
+
+    if (jsSrcOptions.shouldShareCodeGenAcrossLocales() &&
+        !jsSrcOptions.shouldGenerateGoogMsgDefs()) {
+      // Generate the code once for each bidi global directionality, and then only fill in the
+      // translated messages for each locale. The time for each locale includes reading its message
+      // file, but not the shared code generation.
+      final long[] localeNanos = new long[locales.size()];
+      List<Callable<SoyMsgBundle>> msgBundleTasks = Lists.newArrayListWithCapacity(locales.size());
+      for (int i = 0; i < locales.size(); i++) {
+        final int localeIndex = i;
+        final String locale = locales.get(i);
+        msgBundleTasks.add(new Callable<SoyMsgBundle>() {
+          @Override public SoyMsgBundle call() throws IOException {
+            long startTimeNanos = System.nanoTime();
+            SoyMsgBundle msgBundle =
+                loadMsgBundleForLocale(locale, messageFilePathFormat, inputFilePathPrefix);
+            localeNanos[localeIndex] = System.nanoTime() - startTimeNanos;
+            return msgBundle;
           }
+        });
+      }
+      final List<SoyMsgBundle> msgBundles = runLocaleTasks(msgBundleTasks, numThreads);
+
+      final Map<Integer, List<JsCodeWithMsgSlots>> bidiGlobalDirToJsCode = Maps.newHashMap();
+      for (int i = 0; i < locales.size(); i++) {
+        final int localeIndex = i;
+        final String locale = locales.get(i);
+        final int bidiGlobalDir = (jsSrcOptions.getBidiGlobalDir() != 0) ?
+            jsSrcOptions.getBidiGlobalDir() :
+            BidiGlobalDir.forStaticLocale(msgBundles.get(i).getLocaleString()).getStaticValue();
+        if (!bidiGlobalDirToJsCode.containsKey(bidiGlobalDir)) {
+          bidiGlobalDirToJsCode.put(
+              bidiGlobalDir,
+              jsSrcMainProvider.get().genJsSrcWithMsgSlots(
+                  soyTree.clone(), jsSrcOptions, bidiGlobalDir));
         }
+        localeTasks.add(new Callable<Long>() {
+          @Override public Long call() throws IOException {
+            long startTimeNanos = System.nanoTime();
+            jsSrcMainProvider.get().genJsFiles(
+                finalSoyTree, bidiGlobalDirToJsCode.get(bidiGlobalDir), locale,
+                msgBundles.get(localeIndex), outputPathFormat, inputFilePathPrefix);
+            return (localeNanos[localeIndex] + System.nanoTime() - startTimeNanos) / 1000000;
+          }
+        });
+      }
 
-        jsSrcMainProvider.get().genJsFiles(
-            soyTreeClone, jsSrcOptions, locale, msgBundle, outputPathFormat, inputFilePathPrefix);
+    } else {
+      // Each locale works on its own clone of the tree.
+      for (final String locale : locales) {
+        localeTasks.add(new Callable<Long>() {
+          @Override public Long call() throws IOException {
+            long startTimeNanos = System.nanoTime();
+            SoyMsgBundle msgBundle =
+                loadMsgBundleForLocale(locale, messageFilePathFormat, inputFilePathPrefix);
+            jsSrcMainProvider.get().genJsFiles(
+                finalSoyTree.clone(), jsSrcOptions, locale, msgBundle, outputPathFormat,
+                inputFilePathPrefix);
+            return (System.nanoTime() - startTimeNanos) / 1000000;
+          }
+        });
       }
     }
+
+    List<Long> localeMillis = runLocaleTasks(localeTasks, numThreads);
+    ImmutableMap.Builder<String, Long> localeToMillis = ImmutableMap.builder();
+    for (int i = 0; i < locales.size(); i++) {
+      localeToMillis.put(locales.get(i), localeMillis.get(i));
+    }
+    return localeToMillis.build();
+  }
+
+
+  /**
+   * Private helper for {@code compileToJsSrcFiles()} to read the message file for a locale.
+   *
+   * @param locale The locale.
+   * @param messageFilePathFormat The message file path format.
+   * @param inputFilePathPrefix The prefix prepended to all input file paths (can be empty string).
+   * @return The bundle of translated messages for the locale.
+   * @throws IOException If there is an error in opening/reading the message file.
+   */
+  private SoyMsgBundle loadMsgBundleForLocale(
+      String locale, String messageFilePathFormat, String inputFilePathPrefix)
+      throws IOException {
+
+    String msgFilePath =
+        JsSrcUtils.buildFilePath(messageFilePathFormat, locale, null, inputFilePathPrefix);
+
+    SoyMsgBundle msgBundle =
+        msgBundleHandlerProvider.get().createFromFile(new File(msgFilePath));
+    if (msgBundle.getLocaleString() == null) {
+      // TODO: Remove this check (but make sure no projects depend on this behavior).
+      // There was an error reading the message file. We continue processing only if the locale
+      // begins with "en", because falling back to the Soy source will proably be fine.
+      if (!locale.startsWith("en")) {
+        throw new IOException("Error opening or reading message file " + msgFilePath);
+      }
+    }
+    return msgBundle;
+  }
+
+
+  /**
+   * Private helper for {@code compileToJsSrcFiles()} to run one task per locale, using the given
+   * number of threads. The results are collected in locale order, so that the same error is
+   * reported as when running the tasks one at a time.
+   *
+   * @param tasks The tasks, in locale order.
+   * @param numThreads The number of threads to run the tasks with.
+   * @return The results of the tasks, in the same order.
+   * @throws IOException If a task throws an IOException.
+   */
+  private static <T> List<T> runLocaleTasks(List<Callable<T>> tasks, int numThreads)
+      throws IOException {
+
+    List<Future<T>> futures = Lists.newArrayListWithCapacity(tasks.size());
+    ExecutorService executor = (numThreads > 1) ?
+        Executors.newFixedThreadPool(Math.min(numThreads, tasks.size())) :
+        MoreExecutors.sameThreadExecutor();
+    try {
+      for (Callable<T> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+
+      List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while generating localized JS.", ie);
+    } catch (ExecutionException ee) {
+      Throwables.propagateIfPossible(ee.getCause(), IOException.class);
+      throw Throwables.propagate(ee.getCause());
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Creates a parser for the Soy files in this file set, using the number of parser threads from
+   * the general options. If some of the files are volatile, then the parser only parses the files
+   * that have changed since the last time this file set was compiled.
+   */
+  private SoyFileSetParser newSoyFileSetParser() {
+    return (new SoyFileSetParser(soyFileSuppliers))
+        .setNumThreads(generalOptions.getNumParserThreads()).setParseCache(parseCache);
   }
 
 
@@ -104,6 +104,10 @@ public final class SoyMsgExtractor {
                   " the XliffMsgPlugin.")
   private String messagePluginModule = XliffMsgPluginModule.class.getName();
 
+  @Option(name = "--numThreads",
+          usage = "The number of threads to parse the Soy files with (default 1).")
+  private int numThreads = 1;
+
   /** The remaining arguments after parsing command-line flags. */
   @Argument
   private List<String> arguments = Lists.newArrayList();
@@ -141,6 +145,10 @@ public final class SoyMsgExtractor {
     MainClassUtils.addSoyFilesToBuilder(
         sfsBuilder, inputPrefix, srcs, arguments, ImmutableList.<String>of(), exitWithErrorFn);
     sfsBuilder.setAllowExternalCalls(allowExternalCalls);
+    if (numThreads < 1) {
+      exitWithErrorFn.apply("Number of threads must be at least 1.");
+    }
+    sfsBuilder.setNumParserThreads(numThreads);
 
     File outputFile0;
     if (outputPathFormat.length() != 0) {
@@ -32,6 +32,7 @@ import org.kohsuke.args4j.Option;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -164,6 +165,15 @@ public final class SoyToJsSrcCompiler {
                   " for your messages.")
   private boolean googMsgsAreExternal = false;
 
+  @Option(name = "--shouldShareCodeGenAcrossLocales",
+          usage = "[Only applicable if --locales is given and --shouldGenerateGoogMsgDefs is" +
+                  " false] When this option is used, the JS code is generated only once for all" +
+                  " locales with the same bidi global directionality, and then only the" +
+                  " translated messages are filled in for each locale. This is much faster when" +
+                  " there are many locales. Do not use this option if a plugin generates JS code" +
+                  " that depends on the locale.")
+  private boolean shouldShareCodeGenAcrossLocales = false;
+
   @Option(name = "--bidiGlobalDir",
           usage = "The bidi global directionality (ltr=1, rtl=-1). Only applicable if your Soy" +
                   " code uses bidi functions/directives. Also note that this flag is usually not" +
@@ -210,6 +220,11 @@ public final class SoyToJsSrcCompiler {
                   " print directive plugins (comma-delimited list).")
   private String pluginModules = "";
 
+  @Option(name = "--numThreads",
+          usage = "The number of threads to parse the Soy files and to generate the JS for" +
+                  " different locales with (default 1).")
+  private int numThreads = 1;
+
   /** The remaining arguments after parsing command-line flags. */
   @Argument
   private List<String> arguments = Lists.newArrayList();
@@ -252,6 +267,10 @@ public final class SoyToJsSrcCompiler {
     SoyFileSet.Builder sfsBuilder = injector.getInstance(SoyFileSet.Builder.class);
     MainClassUtils.addSoyFilesToBuilder(sfsBuilder, inputPrefix, srcs, arguments, deps,
         exitWithErrorFn);
+    if (numThreads < 1) {
+      exitWithErrorFn.apply("Number of threads must be at least 1.");
+    }
+    sfsBuilder.setNumParserThreads(numThreads);
     sfsBuilder.setAllowExternalCalls(allowExternalCalls);
     String cssHandlingSchemeUc = cssHandlingScheme.toUpperCase();
     sfsBuilder.setCssHandlingScheme(
@@ -271,18 +290,23 @@ public final class SoyToJsSrcCompiler {
     jsSrcOptions.setShouldDeclareTopLevelNamespaces(shouldDeclareTopLevelNamespaces);
     jsSrcOptions.setShouldGenerateGoogMsgDefs(shouldGenerateGoogMsgDefs);
     jsSrcOptions.setGoogMsgsAreExternal(googMsgsAreExternal);
+    jsSrcOptions.setShouldShareCodeGenAcrossLocales(shouldShareCodeGenAcrossLocales);
     jsSrcOptions.setBidiGlobalDir(bidiGlobalDir);
     jsSrcOptions.setUseGoogIsRtlForBidiGlobalDir(useGoogIsRtlForBidiGlobalDir);
 
     // Compile.
     if (locales.size() == 0) {
       // Not generating localized JS.
-      sfs.compileToJsSrcFiles(outputPathFormat, inputPrefix, jsSrcOptions, locales, null);
+      sfs.compileToJsSrcFiles(outputPathFormat, inputPrefix, jsSrcOptions, locales, null, 1);
 
     } else {
       // Generating localized JS.
-      sfs.compileToJsSrcFiles(
-          outputPathFormat, inputPrefix, jsSrcOptions, locales, messageFilePathFormat);
+      Map<String, Long> localeToMillis = sfs.compileToJsSrcFiles(
+          outputPathFormat, inputPrefix, jsSrcOptions, locales, messageFilePathFormat, numThreads);
+      for (Map.Entry<String, Long> entry : localeToMillis.entrySet()) {
+        System.err.println(
+            "Generated JS for locale " + entry.getKey() + " in " + entry.getValue() + " ms.");
+      }
     }
   }
 
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -39,8 +40,10 @@ public class BaseUtils {
   private BaseUtils() {}
 
 
-  /** Used by {@code ensureDirsExistInPath()}. Keeps track of known existing directory paths. */
-  private static final Set<String> KNOWN_EXISTING_DIRS = Sets.newHashSet();
+  /** Used by {@code ensureDirsExistInPath()}. Keeps track of known existing directory paths.
+   *  Synchronized because JS files for different locales may be written concurrently. */
+  private static final Set<String> KNOWN_EXISTING_DIRS =
+      Collections.synchronizedSet(Sets.<String>newHashSet());
 
 
   /** Regular expression for an identifier. */
@@ -18,7 +18,7 @@ package com.google.template.soy.base;
 
 
 /**
- * A generator of incrementing unique integer ids, starting from 0.
+ * A generator of incrementing unique integer ids, starting from 0 (or a given first id).
  *
  * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
  *
@@ -33,6 +33,13 @@ public final class IncrementingIdGenerator implements IdGenerator {
     currId = 0;
   }
 
+  /**
+   * @param firstId The first id to generate.
+   */
+  public IncrementingIdGenerator(int firstId) {
+    currId = firstId;
+  }
+
   protected IncrementingIdGenerator(IncrementingIdGenerator orig) {
     this.currId = orig.currId;
   }
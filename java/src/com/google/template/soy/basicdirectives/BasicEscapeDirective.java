@@ -17,6 +17,7 @@
 package com.google.template.soy.basicdirectives;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.template.soy.data.SanitizedContent.ContentKind;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.restricted.StringData;
 import com.google.template.soy.javasrc.restricted.JavaCodeUtils;
@@ -24,12 +25,16 @@ import com.google.template.soy.javasrc.restricted.JavaExpr;
 import com.google.template.soy.javasrc.restricted.SoyJavaSrcPrintDirective;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.SoyJsSrcPrintDirective;
+import com.google.template.soy.shared.restricted.EscapingConventions;
 import com.google.template.soy.shared.restricted.Sanitizers;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
 import com.google.template.soy.tofu.restricted.SoyAbstractTofuPrintDirective;
 
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 
 /**
  * An escaping directive that is backed by {@link Sanitizers} in java, and {@code soyutils.js} or
@@ -40,7 +45,7 @@ import java.util.Set;
  * @author Mike Samuel
  */
 public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
-    implements SoyJsSrcPrintDirective, SoyJavaSrcPrintDirective {
+    implements SoyJsSrcPrintDirective, SoyJavaSrcPrintDirective, SoyStreamingPrintDirective {
 
 
   /**
@@ -55,6 +60,11 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeCssString(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      return EscapingConventions.EscapeCssString.INSTANCE;
+    }
   }
 
 
@@ -100,6 +110,13 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeHtmlRcdata(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      // Sanitized HTML content is handled specially by escape().
+      return (inputContentKind != ContentKind.HTML) ?
+          EscapingConventions.EscapeHtml.INSTANCE : null;
+    }
   }
 
 
@@ -115,6 +132,13 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeHtmlAttribute(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      // Sanitized HTML content is handled specially by escape().
+      return (inputContentKind != ContentKind.HTML) ?
+          EscapingConventions.EscapeHtml.INSTANCE : null;
+    }
   }
 
 
@@ -130,6 +154,13 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeHtmlAttributeNospace(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      // Sanitized HTML content is handled specially by escape().
+      return (inputContentKind != ContentKind.HTML) ?
+          EscapingConventions.EscapeHtmlNospace.INSTANCE : null;
+    }
   }
 
 
@@ -175,6 +206,11 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeJsRegex(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      return EscapingConventions.EscapeJsRegex.INSTANCE;
+    }
   }
 
 
@@ -190,6 +226,13 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.escapeJsString(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      // Sanitized JS_STR_CHARS content is handled specially by escape().
+      return (inputContentKind != ContentKind.JS_STR_CHARS) ?
+          EscapingConventions.EscapeJsString.INSTANCE : null;
+    }
   }
 
 
@@ -235,6 +278,11 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
     @Override protected String escape(SoyData value) {
       return Sanitizers.normalizeUri(value);
     }
+
+    @Override protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+        @Nullable ContentKind inputContentKind) {
+      return EscapingConventions.NormalizeUri.INSTANCE;
+    }
   }
 
 
@@ -271,6 +319,17 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
   protected abstract String escape(SoyData value);
 
 
+  /**
+   * Returns the escaper that does the same escaping as {@link #escape} for input of the given
+   * content kind, or null if this directive can't be applied in a streaming fashion to such input.
+   * This default implementation returns null.
+   */
+  @Nullable protected EscapingConventions.CrossLanguageStringXform getStreamingEscaper(
+      @Nullable ContentKind inputContentKind) {
+    return null;
+  }
+
+
   /**
    * The name of the Soy directive that this instance implements.
    */
@@ -299,6 +358,20 @@ public abstract class BasicEscapeDirective extends SoyAbstractTofuPrintDirective
   }
 
 
+  @Override
+  public final Appendable wrapForStreaming(
+      Appendable out, @Nullable ContentKind inputContentKind) {
+    EscapingConventions.CrossLanguageStringXform escaper = getStreamingEscaper(inputContentKind);
+    return (escaper != null) ? escaper.escape(out) : null;
+  }
+
+
+  @Override
+  public final ContentKind getStreamingOutputContentKind(@Nullable ContentKind inputContentKind) {
+    return null;  // the escapers never leave their input unchanged
+  }
+
+
   @Override
   public JavaExpr applyForJavaSrc(JavaExpr value, List<JavaExpr> args) {
     return new JavaExpr(
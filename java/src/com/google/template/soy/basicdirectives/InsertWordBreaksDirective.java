@@ -16,6 +16,8 @@
 
 package com.google.template.soy.basicdirectives;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -23,13 +25,16 @@ import com.google.template.soy.data.SanitizedContent;
 import com.google.template.soy.data.SanitizedContentOperator;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyDataException;
+import com.google.template.soy.data.restricted.IntegerData;
 import com.google.template.soy.javasrc.restricted.JavaCodeUtils;
 import com.google.template.soy.javasrc.restricted.JavaExpr;
 import com.google.template.soy.javasrc.restricted.SoyJavaSrcPrintDirective;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.SoyJsSrcPrintDirective;
+import com.google.template.soy.shared.restricted.EscapingConventions;
 import com.google.template.soy.tofu.restricted.SoyAbstractTofuPrintDirective;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -148,6 +153,56 @@ public class InsertWordBreaksDirective extends SoyAbstractTofuPrintDirective
   }
 
 
+  /**
+   * Applies {@code |escapeHtml} followed by this directive in a single pass over the value. The
+   * result is the same as applying the two directives in sequence.
+   *
+   * @param value The value to escape and insert word breaks into.
+   * @param maxCharsBetweenWordBreaks The max number of chars between word breaks. Must be positive.
+   * @return The escaped value with word breaks inserted.
+   */
+  public SoyData applyAfterEscapeHtml(SoyData value, int maxCharsBetweenWordBreaks) {
+
+    Preconditions.checkArgument(maxCharsBetweenWordBreaks > 0);
+
+    if (value instanceof SanitizedContent &&
+        ((SanitizedContent) value).getContentKind() == SanitizedContent.ContentKind.HTML) {
+      // The 'escapeHtml' directive leaves HTML content unchanged.
+      return apply(
+          value, ImmutableList.<SoyData>of(IntegerData.forValue(maxCharsBetweenWordBreaks)));
+    }
+
+    StringBuilder result = new StringBuilder();
+    Appendable escapingResult = EscapingConventions.EscapeHtml.INSTANCE.escape(result);
+
+    // After escaping, the value contains no HTML tags, and each escaped char becomes an HTML entity
+    // that counts as one char. So there's no need to track whether we're inside a tag or an entity.
+    int numCharsWithoutBreak = 0;  // number of characters since the last word break
+
+    String str = value.toString();
+    try {
+      for (int codePoint, i = 0, n = str.length(); i < n; i += Character.charCount(codePoint)) {
+        codePoint = str.codePointAt(i);
+
+        // If hit maxCharsBetweenWordBreaks, and next char is not a space, then add <wbr>.
+        if (numCharsWithoutBreak >= maxCharsBetweenWordBreaks && codePoint != ' ') {
+          result.append("<wbr>");
+          numCharsWithoutBreak = 0;
+        }
+
+        // When we see a space, reset the numCharsWithoutBreak count. Else increment it.
+        numCharsWithoutBreak = (codePoint == ' ') ? 0 : numCharsWithoutBreak + 1;
+
+        escapingResult.append(str, i, i + Character.charCount(codePoint));
+      }
+    } catch (IOException e) {
+      throw new AssertionError(e);  // StringBuilders should not throw IOExceptions.
+    }
+
+    return SoyData.createFromExistingData(result.toString());
+  }
+
+
   @Override public JsExpr applyForJsSrc(JsExpr value, List<JsExpr> args) {
 
     return new JsExpr(
@@ -27,11 +27,14 @@ import com.google.template.soy.javasrc.restricted.SoyJavaSrcPrintDirective;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.SoyJsSrcPrintDirective;
 import com.google.template.soy.shared.restricted.EscapingConventions;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
 import com.google.template.soy.tofu.restricted.SoyAbstractTofuPrintDirective;
 
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 
 /**
  * A directive that HTML-escapes the output.
@@ -40,7 +43,7 @@ import java.util.Set;
  */
 @Singleton
 public class EscapeHtmlDirective extends SoyAbstractTofuPrintDirective
-    implements SoyJsSrcPrintDirective, SoyJavaSrcPrintDirective {
+    implements SoyJsSrcPrintDirective, SoyJavaSrcPrintDirective, SoyStreamingPrintDirective {
 
 
   public static final String NAME = "|escapeHtml";
@@ -77,6 +80,21 @@ public class EscapeHtmlDirective extends SoyAbstractTofuPrintDirective
   }
 
 
+  @Override public Appendable wrapForStreaming(
+      Appendable out, @Nullable SanitizedContent.ContentKind inputContentKind) {
+    if (inputContentKind == SanitizedContent.ContentKind.HTML) {
+      return out;
+    }
+    return EscapingConventions.EscapeHtml.INSTANCE.escape(out);
+  }
+
+
+  @Override public SanitizedContent.ContentKind getStreamingOutputContentKind(
+      @Nullable SanitizedContent.ContentKind inputContentKind) {
+    return (inputContentKind == SanitizedContent.ContentKind.HTML) ? inputContentKind : null;
+  }
+
+
   @Override public JsExpr applyForJsSrc(JsExpr value, List<JsExpr> args) {
     return new JsExpr("soy.$$escapeHtml(" + value.getText() + ")", Integer.MAX_VALUE);
   }
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.template.soy.data.restricted.BooleanData;
+import com.google.template.soy.data.restricted.FloatData;
+import com.google.template.soy.data.restricted.IntegerData;
+import com.google.template.soy.data.restricted.NullData;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An immutable map data node in a Soy data tree, which uses much less memory than a
+ * {@code SoyMapData}, and can be cached and shared by concurrent renders.
+ *
+ * <p> The keys and values are stored in two arrays (in insertion order), and lookups go through an
+ * open-addressed hash table of indices into these arrays (small maps are just scanned), so each
+ * entry costs 8 to 24 bytes (with compressed references) instead of the ~50 bytes of a
+ * {@code LinkedHashMap} entry.
+ *
+ * <p> Create instances with {@link Builder} or {@link #copyOf}. Putting and removing data throws
+ * {@code UnsupportedOperationException}. Note that the values themselves (e.g. a nested
+ * {@code SoyListData}) are not necessarily immutable.
+ */
+public final class ImmutableSoyMapData extends SoyMapData {
+
+
+  /**
+   * Builder for an {@code ImmutableSoyMapData}. Putting a key that's already present replaces its
+   * value (keeping its original position).
+   */
+  public static final class Builder {
+
+    /** The entries put so far. */
+    private final Map<String, SoyData> entries = Maps.newLinkedHashMap();
+
+    /**
+     * Puts a value at the given key.
+     * @param key An individual key (must not contain '.').
+     * @param value The value to put at the given key.
+     * @return This builder.
+     */
+    public Builder put(String key, SoyData value) {
+      Preconditions.checkArgument(
+          key.length() > 0 && key.indexOf('.') < 0, "Invalid key \"%s\".", key);
+      entries.put(key, (value != null) ? value : NullData.INSTANCE);
+      return this;
+    }
+
+    /**
+     * Puts a value at the given key.
+     * @param key An individual key (must not contain '.').
+     * @param value The value to put at the given key.
+     * @return This builder.
+     */
+    public Builder put(String key, boolean value) {
+      return put(key, BooleanData.forValue(value));
+    }
+
+    /**
+     * Puts a value at the given key.
+     * @param key An individual key (must not contain '.').
+     * @param value The value to put at the given key.
+     * @return This builder.
+     */
+    public Builder put(String key, int value) {
+      return put(key, IntegerData.forValue(value));
+    }
+
+    /**
+     * Puts a value at the given key.
+     * @param key An individual key (must not contain '.').
+     * @param value The value to put at the given key.
+     * @return This builder.
+     */
+    public Builder put(String key, double value) {
+      return put(key, FloatData.forValue(value));
+    }
+
+    /**
+     * Puts a value at the given key.
+     * @param key An individual key (must not contain '.').
+     * @param value The value to put at the given key.
+     * @return This builder.
+     */
+    public Builder put(String key, String value) {
+      return put(key, SoyData.createFromExistingData(value));
+    }
+
+    /**
+     * Builds the {@code ImmutableSoyMapData}.
+     * @return The new map data.
+     */
+    public ImmutableSoyMapData build() {
+      return new ImmutableSoyMapData(
+          entries.keySet().toArray(new String[entries.size()]),
+          entries.values().toArray(new SoyData[entries.size()]));
+    }
+  }
+
+
+  /**
+   * Creates an {@code ImmutableSoyMapData} from an existing map. The values are converted using
+   * {@link SoyData#createFromExistingData}, except that nested Maps are also converted to
+   * {@code ImmutableSoyMapData}.
+   *
+   * @param data The existing map.
+   * @return The new map data.
+   * @throws SoyDataException If the map can't be converted to Soy data.
+   */
+  public static ImmutableSoyMapData copyOf(Map<String, ?> data) {
+
+    Builder builder = new Builder();
+    for (Map.Entry<String, ?> entry : data.entrySet()) {
+
+      String key;
+      try {
+        key = entry.getKey();
+      } catch (ClassCastException cce) {
+        throw new SoyDataException(
+            "Attempting to convert a map with non-string key to Soy data (key type " +
+            ((Map.Entry<?, ?>) entry).getKey().getClass().getName() + ").");
+      }
+
+      Object value = entry.getValue();
+      try {
+        if (value instanceof Map<?, ?> && !(value instanceof SoyData)) {
+          @SuppressWarnings("unchecked")
+          Map<String, ?> valueCast = (Map<String, ?>) value;
+          builder.put(key, copyOf(valueCast));
+        } else {
+          builder.put(key, SoyData.createFromExistingData(value));
+        }
+
+      } catch (SoyDataException sde) {
+        sde.prependKeyToDataPath(key);
+        throw sde;
+      }
+    }
+    return builder.build();
+  }
+
+
+  /** The max number of entries for which lookups scan the keys instead of using a hash table. */
+  private static final int MAX_SIZE_FOR_SCAN = 16;
+
+
+  /** The keys, in insertion order. */
+  private final String[] keys;
+
+  /** The values, in the same order as the keys. */
+  private final SoyData[] values;
+
+  /** Open-addressed hash table (with linear probing) of indices into the keys/values arrays, each
+   *  plus 1 (so that 0 marks an empty slot). The size is a power of 2, at least twice the number of
+   *  entries. Null if there are at most MAX_SIZE_FOR_SCAN entries. */
+  private final int[] hashTable;
+
+
+  /**
+   * Private constructor. Use {@link Builder} or {@link #copyOf}.
+   * @param keys The keys (no duplicates).
+   * @param values The values, in the same order as the keys.
+   */
+  private ImmutableSoyMapData(String[] keys, SoyData[] values) {
+
+    super((Void) null);  // don't allocate the superclass's underlying map
+    this.keys = keys;
+    this.values = values;
+
+    if (keys.length <= MAX_SIZE_FOR_SCAN) {
+      hashTable = null;
+      return;
+    }
+
+    int hashTableSize = 2;
+    while (hashTableSize < 2 * keys.length) {
+      hashTableSize <<= 1;
+    }
+    hashTable = new int[hashTableSize];
+    int mask = hashTableSize - 1;
+    for (int i = 0; i < keys.length; i++) {
+      int slot = smear(keys[i].hashCode()) & mask;
+      while (hashTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      hashTable[slot] = i + 1;
+    }
+  }
+
+
+  @Override public Map<String, SoyData> asMap() {
+
+    Map<String, SoyData> map = Maps.newLinkedHashMap();
+    for (int i = 0; i < keys.length; i++) {
+      map.put(keys[i], values[i]);
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+
+  @Override public Set<String> getKeys() {
+    return ImmutableSet.copyOf(Arrays.asList(keys));
+  }
+
+
+  @Override public String toString() {
+    return toStringHelper(asMap());
+  }
+
+
+  @Override public void appendTo(Appendable outputBuf) throws IOException {
+
+    outputBuf.append('{');
+    for (int i = 0; i < keys.length; i++) {
+      if (i > 0) {
+        outputBuf.append(", ");
+      }
+      outputBuf.append(keys[i]).append(": ");
+      values[i].appendTo(outputBuf);
+    }
+    outputBuf.append('}');
+  }
+
+
+  /**
+   * Gets the number of entries in this map data.
+   * @return The number of entries.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Superpackage-private methods.
+
+
+  /**
+   * This object is immutable, so putting is prohibited.
+   */
+  @Override public void putSingle(String key, SoyData value) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * This object is immutable, so removal is prohibited.
+   */
+  @Override public void removeSingle(String key) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  @Override public SoyData getSingle(String key) {
+
+    if (hashTable == null) {
+      // String caches its hash code, so comparing hash codes first is cheap.
+      int hashCode = key.hashCode();
+      for (int i = 0; i < keys.length; i++) {
+        String currKey = keys[i];
+        if (currKey == key || (currKey.hashCode() == hashCode && currKey.equals(key))) {
+          return values[i];
+        }
+      }
+      return null;
+    }
+
+    int mask = hashTable.length - 1;
+    for (int slot = smear(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int index = hashTable[slot] - 1;
+      if (index < 0) {
+        return null;
+      }
+      String currKey = keys[index];
+      if (currKey == key || currKey.equals(key)) {
+        return values[index];
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to spread the bits of a hash code, so that keys whose hash codes only differ in
+   * the high bits don't collide in the hash table.
+   */
+  private static int smear(int hashCode) {
+    return hashCode ^ (hashCode >>> 16);
+  }
+
+}
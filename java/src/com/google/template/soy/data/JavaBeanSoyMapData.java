@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A read-only map data node that is a lazy view of the properties of an existing Java object.
+ *
+ * <p> The keys are the names of the object's readable Java bean properties (e.g. 'name' for a
+ * method {@code getName()} or 'active' for a method {@code isActive()}), plus the names of
+ * record-style accessors, i.e. public no-arg methods named the same as one of the object's fields
+ * (e.g. 'name' for a method {@code name()} and a field {@code name}). A property is read and
+ * converted to SoyData (using {@link SoyData#createLazyFromExistingData}) only when it's first
+ * read, and the converted value is then reused.
+ *
+ * <p> The properties of the object must not change after creating this object.
+ *
+ * <p> This class is thread-safe (as long as the properties of the object don't change).
+ */
+public class JavaBeanSoyMapData extends SoyMapData {
+
+
+  /** Cache of the accessors (key to read method) of each Java class seen. */
+  private static final LoadingCache<Class<?>, ImmutableMap<String, Method>> ACCESSORS_CACHE =
+      CacheBuilder.newBuilder().weakKeys().build(
+          new CacheLoader<Class<?>, ImmutableMap<String, Method>>() {
+            @Override public ImmutableMap<String, Method> load(Class<?> beanClass)
+                throws IntrospectionException {
+              return findAccessors(beanClass);
+            }
+          });
+
+
+  /** The underlying object. */
+  private final Object bean;
+
+  /** The accessors of the underlying object's class. */
+  private final ImmutableMap<String, Method> accessors;
+
+  /** The values that have been converted so far. */
+  private final ConcurrentMap<String, SoyData> convertedValues;
+
+
+  /**
+   * @param bean The underlying object.
+   * @throws SoyDataException If the object has no readable properties.
+   */
+  public JavaBeanSoyMapData(Object bean) {
+
+    this.bean = Preconditions.checkNotNull(bean);
+    try {
+      this.accessors = ACCESSORS_CACHE.getUnchecked(bean.getClass());
+    } catch (UncheckedExecutionException uee) {
+      throw new SoyDataException(
+          "Failed to find the properties of object type " + bean.getClass().getName() + ".",
+          uee.getCause());
+    }
+    if (accessors.isEmpty()) {
+      throw new SoyDataException(
+          "Attempting to convert unrecognized object to Soy data (object type " +
+          bean.getClass().getName() + ").");
+    }
+    this.convertedValues = Maps.newConcurrentMap();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, this reads and converts all the properties.
+   */
+  @Override public Map<String, SoyData> asMap() {
+
+    Map<String, SoyData> map = Maps.newLinkedHashMap();
+    for (String key : accessors.keySet()) {
+      map.put(key, getSingle(key));
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+
+  @Override public Set<String> getKeys() {
+    return accessors.keySet();
+  }
+
+
+  @Override public String toString() {
+    return toStringHelper(asMap());
+  }
+
+
+  /**
+   * This object is a read-only view, so putting is prohibited.
+   */
+  @Override public void putSingle(String key, SoyData value) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * This object is a read-only view, so removal is prohibited.
+   */
+  @Override public void removeSingle(String key) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, reads and converts the property if it hasn't been read yet.
+   */
+  @Override public SoyData getSingle(String key) {
+
+    SoyData value = convertedValues.get(key);
+    if (value != null) {
+      return value;
+    }
+
+    Method accessor = accessors.get(key);
+    if (accessor == null) {
+      return null;
+    }
+    try {
+      value = SoyData.createLazyFromExistingData(accessor.invoke(bean));
+    } catch (IllegalAccessException iae) {
+      throw new SoyDataException(key, "Failed to read property.", iae);
+    } catch (InvocationTargetException ite) {
+      throw new SoyDataException(key, "Failed to read property.", ite.getCause());
+    } catch (SoyDataException sde) {
+      sde.prependKeyToDataPath(key);
+      throw sde;
+    }
+    // If another thread converted the same value in the meantime, use its result so that every
+    // read returns the same object.
+    SoyData prevValue = convertedValues.putIfAbsent(key, value);
+    return (prevValue != null) ? prevValue : value;
+  }
+
+
+  /**
+   * Private helper to find the accessors of a Java class.
+   * @param beanClass The class.
+   * @return A map from key to read method, for the class's Java bean properties and record-style
+   *     accessors.
+   * @throws IntrospectionException If the class can't be introspected.
+   */
+  private static ImmutableMap<String, Method> findAccessors(Class<?> beanClass)
+      throws IntrospectionException {
+
+    Map<String, Method> accessors = Maps.newLinkedHashMap();
+
+    for (PropertyDescriptor property :
+         Introspector.getBeanInfo(beanClass, Object.class).getPropertyDescriptors()) {
+      Method readMethod = property.getReadMethod();
+      if (readMethod != null) {
+        accessors.put(property.getName(), readMethod);
+      }
+    }
+
+    for (Field field : beanClass.getDeclaredFields()) {
+      String name = field.getName();
+      if (Modifier.isStatic(field.getModifiers()) || accessors.containsKey(name)) {
+        continue;
+      }
+      try {
+        Method method = beanClass.getMethod(name);
+        if (method.getReturnType() != void.class && !Modifier.isStatic(method.getModifiers())) {
+          accessors.put(name, method);
+        }
+      } catch (NoSuchMethodException nsme) {
+        // Not a record-style accessor.
+      }
+    }
+
+    for (Method accessor : accessors.values()) {
+      // Needed for public methods of non-public classes.
+      try {
+        accessor.setAccessible(true);
+      } catch (RuntimeException re) {
+        // E.g. SecurityException. Use the method as is.
+      }
+    }
+
+    return ImmutableMap.copyOf(accessors);
+  }
+
+}
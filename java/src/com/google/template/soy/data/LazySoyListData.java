@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A read-only list data node that is a lazy view of an existing Java list. Each element is
+ * converted to SoyData (using {@link SoyData#createLazyFromExistingData}) only when it's first
+ * read, and the converted element is then reused.
+ *
+ * <p> The underlying list must not be modified after creating this object. Lists that don't
+ * support fast random access (and other Iterables) are first copied into an ArrayList, but the
+ * elements are still converted lazily.
+ *
+ * <p> This class is thread-safe (as long as the underlying list isn't modified).
+ */
+public class LazySoyListData extends SoyListData {
+
+
+  /** The underlying list. */
+  private final List<?> underlyingList;
+
+  /** The elements that have been converted so far (null for the others). */
+  private final AtomicReferenceArray<SoyData> convertedElements;
+
+
+  /**
+   * @param data The underlying data.
+   */
+  public LazySoyListData(Iterable<?> data) {
+    this.underlyingList = (data instanceof List<?> && data instanceof RandomAccess) ?
+        (List<?>) data : Lists.newArrayList(data);
+    this.convertedElements = new AtomicReferenceArray<SoyData>(underlyingList.size());
+  }
+
+
+  @Override public List<SoyData> asList() {
+    return new AbstractList<SoyData>() {
+      @Override public SoyData get(int index) {
+        if (index < 0 || index >= size()) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return LazySoyListData.this.get(index);
+      }
+      @Override public int size() {
+        return length();
+      }
+    };
+  }
+
+
+  @Override public String toString() {
+    return "[" + Joiner.on(", ").join(asList()) + "]";
+  }
+
+
+  @Override public int length() {
+    return convertedElements.length();
+  }
+
+
+  @Override public Iterator<SoyData> iterator() {
+    return Iterators.unmodifiableIterator(asList().iterator());
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, converts the element if it hasn't been converted yet.
+   */
+  @Override public SoyData get(int index) {
+
+    if (index < 0 || index >= convertedElements.length()) {
+      return null;
+    }
+
+    SoyData element = convertedElements.get(index);
+    if (element == null) {
+      try {
+        element = SoyData.createLazyFromExistingData(underlyingList.get(index));
+      } catch (SoyDataException sde) {
+        sde.prependIndexToDataPath(index);
+        throw sde;
+      }
+      // If another thread converted the same element in the meantime, use its result so that
+      // every read returns the same object.
+      if (!convertedElements.compareAndSet(index, null, element)) {
+        element = convertedElements.get(index);
+      }
+    }
+    return element;
+  }
+
+
+  /**
+   * This object is a read-only view, so adding is prohibited.
+   */
+  @Override public void add(SoyData value) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * This object is a read-only view, so setting is prohibited.
+   */
+  @Override public void set(int index, SoyData value) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * This object is a read-only view, so removal is prohibited.
+   */
+  @Override public void remove(int index) {
+    throw new UnsupportedOperationException();
+  }
+
+}
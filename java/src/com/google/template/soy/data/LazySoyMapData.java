@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * A read-only map data node that is a lazy view of an existing Java map. Each value is converted
+ * to SoyData (using {@link SoyData#createLazyFromExistingData}) only when it's first read, and the
+ * converted value is then reused.
+ *
+ * <p> The underlying map must have string keys and must not be modified after creating this
+ * object.
+ *
+ * <p> This class is thread-safe (as long as the underlying map isn't modified).
+ */
+public class LazySoyMapData extends SoyMapData {
+
+
+  /** The underlying map. */
+  private final Map<String, ?> underlyingMap;
+
+  /** The values that have been converted so far. */
+  private final ConcurrentMap<String, SoyData> convertedValues;
+
+
+  /**
+   * @param data The underlying data.
+   */
+  public LazySoyMapData(Map<String, ?> data) {
+    this.underlyingMap = Preconditions.checkNotNull(data);
+    this.convertedValues = Maps.newConcurrentMap();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, this converts all the values.
+   */
+  @Override public Map<String, SoyData> asMap() {
+
+    Map<String, SoyData> map = Maps.newLinkedHashMap();
+    for (String key : underlyingMap.keySet()) {
+      map.put(key, getSingle(key));
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+
+  @Override public Set<String> getKeys() {
+    return Collections.unmodifiableSet(underlyingMap.keySet());
+  }
+
+
+  @Override public String toString() {
+    return toStringHelper(asMap());
+  }
+
+
+  /**
+   * This object is a read-only view, so putting is prohibited.
+   */
+  @Override public void putSingle(String key, SoyData value) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * This object is a read-only view, so removal is prohibited.
+   */
+  @Override public void removeSingle(String key) {
+    throw new UnsupportedOperationException();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, converts the value if it hasn't been converted yet.
+   */
+  @Override public SoyData getSingle(String key) {
+
+    SoyData value = convertedValues.get(key);
+    if (value != null) {
+      return value;
+    }
+
+    Object rawValue = underlyingMap.get(key);
+    if (rawValue == null && !underlyingMap.containsKey(key)) {
+      return null;
+    }
+    try {
+      value = SoyData.createLazyFromExistingData(rawValue);
+    } catch (SoyDataException sde) {
+      sde.prependKeyToDataPath(key);
+      throw sde;
+    }
+    // If another thread converted the same value in the meantime, use its result so that every
+    // read returns the same object.
+    SoyData prevValue = convertedValues.putIfAbsent(key, value);
+    return (prevValue != null) ? prevValue : value;
+  }
+
+}
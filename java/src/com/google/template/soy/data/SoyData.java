@@ -22,6 +22,7 @@ import com.google.template.soy.data.restricted.IntegerData;
 import com.google.template.soy.data.restricted.NullData;
 import com.google.template.soy.data.restricted.StringData;
 
+import java.io.IOException;
 import java.util.Map;
 
 
@@ -89,6 +90,42 @@ public abstract class SoyData {
   }
 
 
+  /**
+   * Creation function for creating a SoyData object that is a lazy view of any existing primitive,
+   * data object, data structure, or Java bean.
+   *
+   * <p> Unlike {@link #createFromExistingData(Object)}, Maps and Iterables are not copied. Instead,
+   * a Map is wrapped in a {@link LazySoyMapData}, an Iterable is wrapped in a
+   * {@link LazySoyListData}, and each value within them is only converted when it's first read.
+   * This makes the cost of converting a large data structure proportional to the part of it that's
+   * actually used. Other objects that can't be converted by {@code createFromExistingData()} are
+   * wrapped in a {@link JavaBeanSoyMapData} if they have any readable properties.
+   *
+   * <p> The resulting SoyData objects are read-only views, so the given data structure must not be
+   * modified while they're in use. Errors in the data structure are only reported when the
+   * offending part is read (e.g. during rendering).
+   *
+   * @param obj The existing object or data structure to convert.
+   * @return A SoyData object that corresponds to the given object.
+   * @throws SoyDataException If the given object cannot be converted to SoyData.
+   */
+  public static SoyData createLazyFromExistingData(Object obj) {
+
+    if (obj instanceof Map<?, ?>) {
+      @SuppressWarnings("unchecked")
+      Map<String, ?> objCast = (Map<String, ?>) obj;
+      return new LazySoyMapData(objCast);
+    } else if (obj instanceof Iterable<?>) {
+      return new LazySoyListData((Iterable<?>) obj);
+    } else if (obj == null || obj instanceof SoyData || obj instanceof String ||
+               obj instanceof Boolean || obj instanceof Number) {
+      return createFromExistingData(obj);
+    } else {
+      return new JavaBeanSoyMapData(obj);
+    }
+  }
+
+
   /** A special case of {@link #createFromExistingData(Object)}. */
   public static SoyData createFromExistingData(String str) {
     if (str == null) {
@@ -106,6 +143,19 @@ public abstract class SoyData {
   @Override public abstract String toString();
 
 
+  /**
+   * Appends this data object, coerced into a string, to the given output (e.g. when printing it).
+   * The appended text is the same as {@link #toString}, but subclasses may append it without
+   * building an intermediate string.
+   *
+   * @param outputBuf The output to append to.
+   * @throws IOException If appending to the output fails.
+   */
+  public void appendTo(Appendable outputBuf) throws IOException {
+    outputBuf.append(toString());
+  }
+
+
   /**
    * Converts this data object into a boolean (e.g. when used in a boolean context). In other words,
    * this method tells whether this object is truthy.
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+/**
+ * A parsed key string, i.e. a path of map keys and/or list indices within a Soy data tree, such as
+ * {@code "foo.goo.0.moo"}.
+ *
+ * <p> Code that repeatedly puts or gets data at the same key strings (e.g. data-building code in
+ * a server, or generated code) should parse each key string once, keep the resulting
+ * {@code SoyDataPath} (e.g. in a static field), and pass it to methods such as
+ * {@code CollectionData.put(SoyDataPath, ...)} and {@code CollectionData.get(SoyDataPath)}, which
+ * then don't need to split the key string and parse list indices on every call.
+ *
+ * <p> This class is immutable and thread-safe.
+ */
+public final class SoyDataPath {
+
+
+  /** The individual keys (interned). */
+  private final String[] keys;
+
+  /** The list index corresponding to each key, or -1 if the key is not a valid list index. */
+  private final int[] indices;
+
+  /** The original key string. */
+  private final String keyStr;
+
+
+  /**
+   * Parses a key string.
+   * @param keyStr One or more map keys and/or list indices (separated by '.' if multiple parts).
+   * @return The parsed key string.
+   */
+  public static SoyDataPath parse(String keyStr) {
+
+    int numKeys = 1;
+    for (int i = 0, n = keyStr.length(); i < n; i++) {
+      if (keyStr.charAt(i) == '.') {
+        numKeys++;
+      }
+    }
+
+    String[] keys = new String[numKeys];
+    int[] indices = new int[numKeys];
+    int currPartStart = 0;
+    for (int i = 0; i < numKeys; i++) {
+      int currPartEnd = keyStr.indexOf('.', currPartStart);
+      if (currPartEnd == -1) {
+        currPartEnd = keyStr.length();
+      }
+      String key = keyStr.substring(currPartStart, currPartEnd).intern();
+      keys[i] = key;
+      indices[i] = parseIndex(key);
+      currPartStart = currPartEnd + 1;
+    }
+
+    return new SoyDataPath(keys, indices, keyStr);
+  }
+
+
+  /**
+   * Private constructor. Use {@link #parse}.
+   */
+  private SoyDataPath(String[] keys, int[] indices, String keyStr) {
+    this.keys = keys;
+    this.indices = indices;
+    this.keyStr = keyStr;
+  }
+
+
+  /**
+   * Gets the number of individual keys in this path.
+   * @return The number of individual keys.
+   */
+  public int size() {
+    return keys.length;
+  }
+
+
+  /**
+   * Gets one of the individual keys in this path.
+   * @param i The position of the key in this path.
+   * @return The individual key at the given position (interned).
+   */
+  public String getKey(int i) {
+    return keys[i];
+  }
+
+
+  /**
+   * Gets one of the individual keys in this path as a list index.
+   * @param i The position of the key in this path.
+   * @return The list index at the given position, or -1 if the key at the given position is not a
+   *     valid list index.
+   */
+  public int getIndex(int i) {
+    return indices[i];
+  }
+
+
+  @Override public boolean equals(Object other) {
+    return other instanceof SoyDataPath && keyStr.equals(((SoyDataPath) other).keyStr);
+  }
+
+
+  @Override public int hashCode() {
+    return keyStr.hashCode();
+  }
+
+
+  /**
+   * Returns the original key string.
+   */
+  @Override public String toString() {
+    return keyStr;
+  }
+
+
+  /**
+   * Private helper for {@code parse()} to parse a list index, matching
+   * {@code SoyListData.getSingle()}.
+   * @param key An individual key.
+   * @return The list index, or -1 if the key is not a valid list index.
+   */
+  private static int parseIndex(String key) {
+
+    int length = key.length();
+    if (length == 0 || length > 9) {
+      // Also treats very long digit strings as non-indices, which avoids overflow.
+      return -1;
+    }
+    int index = 0;
+    for (int i = 0; i < length; i++) {
+      char c = key.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      index = index * 10 + (c - '0');
+    }
+    return index;
+  }
+
+}
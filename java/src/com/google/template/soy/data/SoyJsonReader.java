@@ -0,0 +1,481 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.template.soy.data.restricted.BooleanData;
+import com.google.template.soy.data.restricted.FloatData;
+import com.google.template.soy.data.restricted.IntegerData;
+import com.google.template.soy.data.restricted.NullData;
+import com.google.template.soy.data.restricted.StringData;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+
+/**
+ * Reads JSON directly into a Soy data tree, in a single pass and without building intermediate
+ * Java maps and lists.
+ *
+ * <p> JSON objects become {@code SoyMapData}, arrays become {@code SoyListData}, numbers become
+ * {@code IntegerData} if they're integers that fit in an int and {@code FloatData} otherwise, and
+ * strings, booleans and null become {@code StringData}, {@code BooleanData} and {@code NullData}.
+ * If an object has duplicate keys, the last value wins.
+ *
+ * <p> See {@link SoyJsonWriter} for the reverse conversion.
+ */
+public final class SoyJsonReader {
+
+
+  /**
+   * Reads a JSON value into Soy data.
+   * @param json The JSON text.
+   * @return The resulting Soy data.
+   * @throws SoyDataException If the text is not valid JSON.
+   */
+  public static SoyData read(String json) {
+    try {
+      return read(new StringReader(json));
+    } catch (IOException ioe) {
+      throw new AssertionError(ioe);  // StringReader never throws IOException on read()
+    }
+  }
+
+
+  /**
+   * Reads a JSON value encoded in UTF-8 into Soy data. Reads the buffer from its position to its
+   * limit.
+   * @param json The JSON text, encoded in UTF-8.
+   * @return The resulting Soy data.
+   * @throws SoyDataException If the text is not valid JSON.
+   */
+  public static SoyData read(ByteBuffer json) {
+
+    CharBuffer chars = Charsets.UTF_8.decode(json);
+    Reader reader = chars.hasArray() ?
+        new CharArrayReader(
+            chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()) :
+        new StringReader(chars.toString());
+    try {
+      return read(reader);
+    } catch (IOException ioe) {
+      throw new AssertionError(ioe);  // CharArrayReader never throws IOException on read()
+    }
+  }
+
+
+  /**
+   * Reads a JSON value into Soy data. Reads the reader until its end, but doesn't close it.
+   * @param reader The reader of the JSON text. Doesn't need to be buffered.
+   * @return The resulting Soy data.
+   * @throws IOException If reading fails.
+   * @throws SoyDataException If the text is not valid JSON.
+   */
+  public static SoyData read(Reader reader) throws IOException {
+
+    SoyJsonReader jsonReader = new SoyJsonReader(reader);
+    SoyData result = jsonReader.readValue();
+    if (jsonReader.skipWhitespace() != -1) {
+      throw jsonReader.createSyntaxException("Unexpected text after the JSON value");
+    }
+    return result;
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Instance state and methods.
+
+
+  /** The size of the read buffer. */
+  private static final int BUFFER_SIZE = 8192;
+
+
+  /** The underlying reader. */
+  private final Reader reader;
+
+  /** The read buffer. */
+  private final char[] buffer = new char[BUFFER_SIZE];
+
+  /** The position of the next char to read in the buffer. */
+  private int bufferPos = 0;
+
+  /** The number of valid chars in the buffer. */
+  private int bufferLimit = 0;
+
+  /** The number of chars consumed before the start of the buffer (for error messages). */
+  private long bufferStartOffset = 0;
+
+  /** Reused buffer for building strings and number tokens. */
+  private final StringBuilder tokenBuilder = new StringBuilder();
+
+
+  /**
+   * Private constructor. Use one of the static {@code read()} methods.
+   * @param reader The underlying reader.
+   */
+  private SoyJsonReader(Reader reader) {
+    this.reader = Preconditions.checkNotNull(reader);
+  }
+
+
+  /**
+   * Private helper to read the next value, skipping leading whitespace.
+   */
+  private SoyData readValue() throws IOException {
+
+    int c = skipWhitespace();
+    switch (c) {
+      case '{':
+        bufferPos++;
+        return readObject();
+      case '[':
+        bufferPos++;
+        return readArray();
+      case '"':
+        bufferPos++;
+        return StringData.forValue(readString());
+      case 't':
+        readLiteral("true");
+        return BooleanData.TRUE;
+      case 'f':
+        readLiteral("false");
+        return BooleanData.FALSE;
+      case 'n':
+        readLiteral("null");
+        return NullData.INSTANCE;
+      case -1:
+        throw createSyntaxException("Unexpected end of input");
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return readNumber();
+        }
+        throw createSyntaxException("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+
+  /**
+   * Private helper to read an object, after its opening brace.
+   */
+  private SoyMapData readObject() throws IOException {
+
+    SoyMapData map = new SoyMapData();
+    if (skipWhitespace() == '}') {
+      bufferPos++;
+      return map;
+    }
+
+    while (true) {
+      expect('"');
+      String key = readString();
+      expect(':');
+      try {
+        map.putSingle(key, readValue());
+      } catch (SoyDataException sde) {
+        sde.prependKeyToDataPath(key);
+        throw sde;
+      }
+      int c = skipWhitespace();
+      bufferPos++;
+      if (c == '}') {
+        return map;
+      } else if (c != ',') {
+        bufferPos--;
+        throw createSyntaxException("Expected ',' or '}'");
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to read an array, after its opening bracket.
+   */
+  private SoyListData readArray() throws IOException {
+
+    SoyListData list = new SoyListData();
+    if (skipWhitespace() == ']') {
+      bufferPos++;
+      return list;
+    }
+
+    while (true) {
+      try {
+        list.add(readValue());
+      } catch (SoyDataException sde) {
+        sde.prependIndexToDataPath(list.length());
+        throw sde;
+      }
+      int c = skipWhitespace();
+      bufferPos++;
+      if (c == ']') {
+        return list;
+      } else if (c != ',') {
+        bufferPos--;
+        throw createSyntaxException("Expected ',' or ']'");
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to read a string, after its opening quote.
+   */
+  private String readString() throws IOException {
+
+    tokenBuilder.setLength(0);
+    while (true) {
+      if (bufferPos == bufferLimit && !fillBuffer()) {
+        throw createSyntaxException("Unterminated string");
+      }
+
+      // Copy runs of plain chars in bulk.
+      int runStart = bufferPos;
+      char c = 0;
+      while (bufferPos < bufferLimit) {
+        c = buffer[bufferPos];
+        if (c == '"' || c == '\\' || c < 0x20) {
+          break;
+        }
+        bufferPos++;
+      }
+      tokenBuilder.append(buffer, runStart, bufferPos - runStart);
+      if (bufferPos == bufferLimit) {
+        continue;
+      }
+
+      bufferPos++;
+      if (c == '"') {
+        return tokenBuilder.toString();
+      } else if (c == '\\') {
+        tokenBuilder.append(readEscapedChar());
+      } else {
+        bufferPos--;
+        throw createSyntaxException("Unescaped control character in string");
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to read an escape sequence in a string, after its backslash.
+   */
+  private char readEscapedChar() throws IOException {
+
+    int c = nextChar();
+    switch (c) {
+      case '"': return '"';
+      case '\\': return '\\';
+      case '/': return '/';
+      case 'b': return '\b';
+      case 'f': return '\f';
+      case 'n': return '\n';
+      case 'r': return '\r';
+      case 't': return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(nextChar(), 16);
+          if (digit < 0) {
+            throw createSyntaxException("Invalid \\u escape sequence");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw createSyntaxException("Invalid escape sequence");
+    }
+  }
+
+
+  /**
+   * Private helper to read a number.
+   */
+  private SoyData readNumber() throws IOException {
+
+    tokenBuilder.setLength(0);
+    boolean isInteger = true;
+    while (true) {
+      if (bufferPos == bufferLimit && !fillBuffer()) {
+        break;
+      }
+      char c = buffer[bufferPos];
+      if (c >= '0' && c <= '9' || c == '-' || c == '+') {
+        // Digits and signs. The format is checked by the number parsers below.
+      } else if (c == '.' || c == 'e' || c == 'E') {
+        isInteger = false;
+      } else {
+        break;
+      }
+      tokenBuilder.append(c);
+      bufferPos++;
+    }
+
+    String token = tokenBuilder.toString();
+    if (!isValidNumber(token)) {
+      throw createSyntaxException("Invalid number \"" + token + "\"");
+    }
+    if (isInteger && token.length() <= 11) {
+      long value = Long.parseLong(token);
+      if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+        return IntegerData.forValue((int) value);
+      }
+    }
+    return FloatData.forValue(Double.parseDouble(token));
+  }
+
+
+  /**
+   * Private helper to check that a number token has the JSON number format, i.e.
+   * {@code -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][-+]?[0-9]+)?}.
+   */
+  private static boolean isValidNumber(String token) {
+
+    int i = 0;
+    int n = token.length();
+    if (i < n && token.charAt(i) == '-') {
+      i++;
+    }
+    if (i < n && token.charAt(i) == '0') {
+      i++;
+    } else {
+      int digitsStart = i;
+      i = skipDigits(token, i);
+      if (i == digitsStart) {
+        return false;
+      }
+    }
+    if (i < n && token.charAt(i) == '.') {
+      int digitsStart = ++i;
+      i = skipDigits(token, i);
+      if (i == digitsStart) {
+        return false;
+      }
+    }
+    if (i < n && (token.charAt(i) == 'e' || token.charAt(i) == 'E')) {
+      i++;
+      if (i < n && (token.charAt(i) == '-' || token.charAt(i) == '+')) {
+        i++;
+      }
+      int digitsStart = i;
+      i = skipDigits(token, i);
+      if (i == digitsStart) {
+        return false;
+      }
+    }
+    return i == n;
+  }
+
+
+  /**
+   * Private helper for {@code isValidNumber()} to skip digits.
+   * @return The index of the first non-digit char at or after the given index.
+   */
+  private static int skipDigits(String token, int i) {
+    while (i < token.length() && token.charAt(i) >= '0' && token.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+
+
+  /**
+   * Private helper to read the given literal (true, false, or null).
+   */
+  private void readLiteral(String literal) throws IOException {
+    for (int i = 0, n = literal.length(); i < n; i++) {
+      if (nextChar() != literal.charAt(i)) {
+        bufferPos--;
+        throw createSyntaxException("Expected \"" + literal + "\"");
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to skip whitespace and consume the given char.
+   */
+  private void expect(char expected) throws IOException {
+    if (skipWhitespace() != expected) {
+      throw createSyntaxException("Expected '" + expected + "'");
+    }
+    bufferPos++;
+  }
+
+
+  /**
+   * Private helper to skip whitespace.
+   * @return The next char (not consumed), or -1 at the end of the input.
+   */
+  private int skipWhitespace() throws IOException {
+    while (true) {
+      if (bufferPos == bufferLimit && !fillBuffer()) {
+        return -1;
+      }
+      char c = buffer[bufferPos];
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c;
+      }
+      bufferPos++;
+    }
+  }
+
+
+  /**
+   * Private helper to consume the next char.
+   */
+  private int nextChar() throws IOException {
+    if (bufferPos == bufferLimit && !fillBuffer()) {
+      throw createSyntaxException("Unexpected end of input");
+    }
+    return buffer[bufferPos++];
+  }
+
+
+  /**
+   * Private helper to refill the buffer once it's been fully consumed.
+   * @return Whether any chars were read (false at the end of the input).
+   */
+  private boolean fillBuffer() throws IOException {
+    bufferStartOffset += bufferLimit;
+    bufferPos = 0;
+    bufferLimit = 0;
+    int numRead;
+    do {
+      numRead = reader.read(buffer, 0, BUFFER_SIZE);
+    } while (numRead == 0);
+    if (numRead < 0) {
+      return false;
+    }
+    bufferLimit = numRead;
+    return true;
+  }
+
+
+  /**
+   * Private helper to create an exception for a syntax error at the current position.
+   */
+  private SoyDataException createSyntaxException(String message) {
+    return new SoyDataException(
+        "Invalid JSON: " + message + " at offset " + (bufferStartOffset + bufferPos) + ".");
+  }
+
+}
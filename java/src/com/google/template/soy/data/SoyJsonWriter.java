@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.template.soy.data.restricted.BooleanData;
+import com.google.template.soy.data.restricted.FloatData;
+import com.google.template.soy.data.restricted.IntegerData;
+import com.google.template.soy.data.restricted.NullData;
+import com.google.template.soy.data.restricted.StringData;
+
+import java.io.IOException;
+import java.util.Map;
+
+
+/**
+ * Writes a Soy data tree as JSON, directly to an output (without building intermediate strings
+ * for the collections).
+ *
+ * <p> Map data becomes JSON objects, list data becomes arrays, strings and sanitized content
+ * become strings, and numbers, booleans and null become the corresponding JSON values. Undefined
+ * values and non-finite floats have no JSON representation, so writing them is an error.
+ *
+ * <p> Reading the output with {@link SoyJsonReader} gives back the same data, except that sanitized
+ * content comes back as strings.
+ */
+public final class SoyJsonWriter {
+
+
+  private SoyJsonWriter() {}
+
+
+  /**
+   * Writes Soy data as JSON.
+   * @param data The data to write.
+   * @return The JSON text.
+   * @throws SoyDataException If the data contains values that have no JSON representation.
+   */
+  public static String write(SoyData data) {
+
+    StringBuilder sb = new StringBuilder();
+    try {
+      write(data, sb);
+    } catch (IOException ioe) {
+      throw new AssertionError(ioe);  // StringBuilder never throws IOException
+    }
+    return sb.toString();
+  }
+
+
+  /**
+   * Writes Soy data as JSON to the given output.
+   * @param data The data to write.
+   * @param out The output to write to.
+   * @throws IOException If writing to the output fails.
+   * @throws SoyDataException If the data contains values that have no JSON representation.
+   */
+  public static void write(SoyData data, Appendable out) throws IOException {
+
+    if (data instanceof SoyMapData) {
+      out.append('{');
+      boolean isFirst = true;
+      for (Map.Entry<String, SoyData> entry : ((SoyMapData) data).asMap().entrySet()) {
+        if (isFirst) {
+          isFirst = false;
+        } else {
+          out.append(',');
+        }
+        String key = entry.getKey();
+        writeString(key, out);
+        out.append(':');
+        try {
+          write(entry.getValue(), out);
+        } catch (SoyDataException sde) {
+          sde.prependKeyToDataPath(key);
+          throw sde;
+        }
+      }
+      out.append('}');
+
+    } else if (data instanceof SoyListData) {
+      SoyListData list = (SoyListData) data;
+      out.append('[');
+      for (int i = 0, n = list.length(); i < n; i++) {
+        if (i > 0) {
+          out.append(',');
+        }
+        try {
+          write(list.get(i), out);
+        } catch (SoyDataException sde) {
+          sde.prependIndexToDataPath(i);
+          throw sde;
+        }
+      }
+      out.append(']');
+
+    } else if (data instanceof StringData || data instanceof SanitizedContent) {
+      writeString(data.toString(), out);
+
+    } else if (data instanceof IntegerData || data instanceof BooleanData ||
+               data instanceof NullData) {
+      data.appendTo(out);
+
+    } else if (data instanceof FloatData) {
+      double value = data.floatValue();
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        throw new SoyDataException("Cannot write non-finite float " + value + " as JSON.");
+      }
+      data.appendTo(out);
+
+    } else {
+      throw new SoyDataException(
+          "Cannot write value of type " + data.getClass().getSimpleName() + " as JSON.");
+    }
+  }
+
+
+  /**
+   * Private helper to write a JSON string.
+   * @param value The string value.
+   * @param out The output to write to.
+   */
+  private static void writeString(String value, Appendable out) throws IOException {
+
+    out.append('"');
+    int runStart = 0;
+    for (int i = 0, n = value.length(); i < n; i++) {
+      char c = value.charAt(i);
+      String escape;
+      switch (c) {
+        case '"': escape = "\\\""; break;
+        case '\\': escape = "\\\\"; break;
+        case '\n': escape = "\\n"; break;
+        case '\r': escape = "\\r"; break;
+        case '\t': escape = "\\t"; break;
+        default:
+          // Also escape the JavaScript line terminators U+2028 and U+2029, so that the output is
+          // valid JavaScript too.
+          if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+            escape = String.format("\\u%04x", (int) c);
+          } else {
+            continue;
+          }
+      }
+      out.append(value, runStart, i).append(escape);
+      runStart = i + 1;
+    }
+    out.append(value, runStart, value.length());
+    out.append('"');
+  }
+
+}
@@ -24,6 +24,7 @@ import com.google.template.soy.data.restricted.FloatData;
 import com.google.template.soy.data.restricted.IntegerData;
 import com.google.template.soy.data.restricted.StringData;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -87,6 +88,24 @@ public class SoyListData extends CollectionData implements Iterable<SoyData> {
   }
 
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For list data, the elements are appended directly, without building their strings first.
+   */
+  @Override public void appendTo(Appendable outputBuf) throws IOException {
+
+    outputBuf.append('[');
+    for (int i = 0, n = length(); i < n; i++) {
+      if (i > 0) {
+        outputBuf.append(", ");
+      }
+      get(i).appendTo(outputBuf);
+    }
+    outputBuf.append(']');
+  }
+
+
   /**
    * {@inheritDoc}
    *
@@ -19,11 +19,14 @@ package com.google.template.soy.data;
 import com.google.common.collect.Maps;
 import com.google.template.soy.data.restricted.CollectionData;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 
 /**
  * A map data node in a Soy data tree.
@@ -33,7 +36,7 @@ import java.util.Set;
 public class SoyMapData extends CollectionData {
 
 
-  /** Underlying map. */
+  /** Underlying map (null for subclasses that store their entries themselves). */
   private final Map<String, SoyData> map;
 
 
@@ -42,6 +45,17 @@ public class SoyMapData extends CollectionData {
   }
 
 
+  /**
+   * Constructor for subclasses in this package that store their entries themselves (such as
+   * ImmutableSoyMapData), so that no underlying map is allocated. Such subclasses must override
+   * every method that uses the underlying map.
+   * @param noUnderlyingMap Only distinguishes this constructor. Pass null.
+   */
+  SoyMapData(@Nullable Void noUnderlyingMap) {
+    map = null;
+  }
+
+
   /**
    * Constructor that initializes this SoyMapData from an existing map.
    * @param data The initial data in an existing map.
@@ -139,6 +153,43 @@ public class SoyMapData extends CollectionData {
   }
 
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For map data, the values are appended directly, without building their strings first.
+   */
+  @Override public void appendTo(Appendable outputBuf) throws IOException {
+    appendToHelper(asMap(), outputBuf);
+  }
+
+
+  /**
+   * Protected helper for {@code appendTo()}. Appends a regular Map, in the same format as
+   * {@code toStringHelper()}.
+   * @param map The map to append.
+   * @param outputBuf The output to append to.
+   * @throws IOException If appending to the output fails.
+   */
+  protected static void appendToHelper(Map<String, SoyData> map, Appendable outputBuf)
+      throws IOException {
+
+    outputBuf.append('{');
+
+    boolean isFirst = true;
+    for (Map.Entry<String, SoyData> entry : map.entrySet()) {
+      if (isFirst) {
+        isFirst = false;
+      } else {
+        outputBuf.append(", ");
+      }
+      outputBuf.append(entry.getKey()).append(": ");
+      entry.getValue().appendTo(outputBuf);
+    }
+
+    outputBuf.append('}');
+  }
+
+
   /**
    * {@inheritDoc}
    *
@@ -20,6 +20,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyDataException;
+import com.google.template.soy.data.SoyDataPath;
 import com.google.template.soy.data.SoyListData;
 import com.google.template.soy.data.SoyMapData;
 
@@ -33,6 +34,12 @@ import java.util.Set;
  * Augmented map data combining a base map data object with some additional data that may hide some
  * of the base map data (if they have the same keys).
  *
+ * <p> Augmenting an AugmentedSoyMapData (e.g. for nested calls that pass all data and add params)
+ * doesn't build a chain of wrappers. Instead, the new object copies the additional data of the one
+ * it augments and uses the same underlying base data, so that lookups take at most two map lookups
+ * regardless of the nesting depth. This means that an AugmentedSoyMapData must not be modified
+ * after it's been augmented (Soy code only adds data to a new AugmentedSoyMapData before using it).
+ *
  * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
  *
  * @author Kai Huang
@@ -40,7 +47,7 @@ import java.util.Set;
 public class AugmentedSoyMapData extends SoyMapData {
 
 
-  /** The base map data object. */
+  /** The base map data object (never itself an AugmentedSoyMapData). */
   private final SoyMapData baseData;
 
 
@@ -49,7 +56,26 @@ public class AugmentedSoyMapData extends SoyMapData {
    */
   public AugmentedSoyMapData(SoyMapData baseData) {
     Preconditions.checkNotNull(baseData);
-    this.baseData = baseData;
+
+    if (baseData instanceof AugmentedSoyMapData) {
+      // Flatten: Start with a copy of the other object's additional data, on top of its base data.
+      AugmentedSoyMapData augmentedBaseData = (AugmentedSoyMapData) baseData;
+      this.baseData = augmentedBaseData.baseData;
+      for (Map.Entry<String, SoyData> entry : augmentedBaseData.getAdditionalData().entrySet()) {
+        super.putSingle(entry.getKey(), entry.getValue());
+      }
+    } else {
+      this.baseData = baseData;
+    }
+  }
+
+
+  /**
+   * Private helper to get the additional data (i.e. excluding the base data).
+   * @return A view of the additional data.
+   */
+  private Map<String, SoyData> getAdditionalData() {
+    return super.asMap();
   }
 
 
@@ -57,7 +83,7 @@ public class AugmentedSoyMapData extends SoyMapData {
 
     SoyMapData combinedMapData = new SoyMapData();
     addMapDataHelper(combinedMapData, "", baseData.asMap());
-    addMapDataHelper(combinedMapData, "", super.asMap());
+    addMapDataHelper(combinedMapData, "", getAdditionalData());
     return Collections.unmodifiableMap(combinedMapData.asMap());
   }
 
@@ -133,6 +159,16 @@ public class AugmentedSoyMapData extends SoyMapData {
   }
 
 
+  @Override public void put(SoyDataPath path, SoyData value) {
+    if (path.size() > 1) {
+      throw new SoyDataException(
+          "Attempted to put multi-part key string into AugmentedSoyMapData. Please ensure that" +
+          " all of your 'param' commands only use top-level keys.");
+    }
+    super.putSingle(path.getKey(0), value);
+  }
+
+
   // Note: No need to override putSingle since it would do same thing as super method.
 
 
@@ -144,6 +180,14 @@ public class AugmentedSoyMapData extends SoyMapData {
   }
 
 
+  /**
+   * Removal of data from AugmentedSoyMapData is not well defined, so it's prohibited.
+   */
+  @Override public void remove(SoyDataPath path) {
+    throw new UnsupportedOperationException();
+  }
+
+
   /**
    * Removal of data from AugmentedSoyMapData is not well defined, so it's prohibited.
    */
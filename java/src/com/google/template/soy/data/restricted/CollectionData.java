@@ -16,14 +16,12 @@
 
 package com.google.template.soy.data.restricted;
 
-import com.google.common.collect.Lists;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyDataException;
+import com.google.template.soy.data.SoyDataPath;
 import com.google.template.soy.data.SoyListData;
 import com.google.template.soy.data.SoyMapData;
 
-import java.util.List;
-
 
 /**
  * Abstract superclass for a node in a Soy data tree that represents a collection of data (i.e. an
@@ -73,31 +71,65 @@ public abstract class CollectionData extends SoyData {
    */
   public void put(String keyStr, SoyData value) {
 
-    List<String> keys = split(keyStr, '.');
-    int numKeys = keys.size();
+    CollectionData collectionData = this;
+    int currPartStart = 0;
+    int currPartEnd;
+    while ((currPartEnd = keyStr.indexOf('.', currPartStart)) != -1) {
+
+      String key = keyStr.substring(currPartStart, currPartEnd);
+      SoyData nextSoyData = collectionData.getSingle(key);
+      if (nextSoyData != null && !(nextSoyData instanceof CollectionData)) {
+        throw new SoyDataException(
+            "Failed to evaluate key string \"" + keyStr + "\" for put().");
+      }
+      CollectionData nextCollectionData = (CollectionData) nextSoyData;
+
+      if (nextCollectionData == null) {
+        // Create the SoyData object that will be bound to the current key. We need to check the
+        // first char of the next key to know whether to create a SoyMapData or SoyListData.
+        nextCollectionData = (Character.isDigit(keyStr.charAt(currPartEnd + 1))) ?
+            new SoyListData() : new SoyMapData();
+        collectionData.putSingle(key, nextCollectionData);
+      }
+      collectionData = nextCollectionData;
+      currPartStart = currPartEnd + 1;
+    }
+
+    collectionData.putSingle(keyStr.substring(currPartStart), ensureValidValue(value));
+  }
+
+
+  /**
+   * Puts data into this data tree at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @param value The data to put at the specified location.
+   */
+  public void put(SoyDataPath path, SoyData value) {
+
+    int numKeys = path.size();
 
     CollectionData collectionData = this;
     for (int i = 0; i <= numKeys - 2; ++i) {
 
-      SoyData nextSoyData = collectionData.getSingle(keys.get(i));
+      SoyData nextSoyData = getSingleHelper(collectionData, path, i);
       if (nextSoyData != null && !(nextSoyData instanceof CollectionData)) {
         throw new SoyDataException(
-            "Failed to evaluate key string \"" + keyStr + "\" for put().");
+            "Failed to evaluate key string \"" + path + "\" for put().");
       }
       CollectionData nextCollectionData = (CollectionData) nextSoyData;
 
       if (nextCollectionData == null) {
-        // Create the SoyData object that will be bound to keys.get(i). We need to check the first
-        // part of keys[i+1] to know whether to create a SoyMapData or SoyListData (checking the
+        // Create the SoyData object that will be bound to key i. We need to check the first
+        // part of key i+1 to know whether to create a SoyMapData or SoyListData (checking the
         // first char is sufficient).
-        nextCollectionData =
-            (Character.isDigit(keys.get(i + 1).charAt(0))) ? new SoyListData() : new SoyMapData();
-        collectionData.putSingle(keys.get(i), nextCollectionData);
+        nextCollectionData = (Character.isDigit(path.getKey(i + 1).charAt(0))) ?
+            new SoyListData() : new SoyMapData();
+        putSingleHelper(collectionData, path, i, nextCollectionData);
       }
       collectionData = nextCollectionData;
     }
 
-    collectionData.putSingle(keys.get(numKeys - 1), ensureValidValue(value));
+    putSingleHelper(collectionData, path, numKeys - 1, ensureValidValue(value));
   }
 
 
@@ -141,6 +173,42 @@ public abstract class CollectionData extends SoyData {
     put(keyStr, StringData.forValue(value));
   }
 
+  /**
+   * Puts data into this data tree at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @param value The data to put at the specified location.
+   */
+  public void put(SoyDataPath path, boolean value) {
+    put(path, BooleanData.forValue(value));
+  }
+
+  /**
+   * Puts data into this data tree at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @param value The data to put at the specified location.
+   */
+  public void put(SoyDataPath path, int value) {
+    put(path, IntegerData.forValue(value));
+  }
+
+  /**
+   * Puts data into this data tree at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @param value The data to put at the specified location.
+   */
+  public void put(SoyDataPath path, double value) {
+    put(path, FloatData.forValue(value));
+  }
+
+  /**
+   * Puts data into this data tree at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @param value The data to put at the specified location.
+   */
+  public void put(SoyDataPath path, String value) {
+    put(path, StringData.forValue(value));
+  }
+
 
   // ------------ remove() ------------
 
@@ -152,19 +220,45 @@ public abstract class CollectionData extends SoyData {
    */
   public void remove(String keyStr) {
 
-    List<String> keys = split(keyStr, '.');
-    int numKeys = keys.size();
+    CollectionData collectionData = this;
+    int currPartStart = 0;
+    int currPartEnd;
+    while ((currPartEnd = keyStr.indexOf('.', currPartStart)) != -1) {
+      SoyData soyData = collectionData.getSingle(keyStr.substring(currPartStart, currPartEnd));
+      if (soyData == null || !(soyData instanceof CollectionData)) {
+        return;
+      }
+      collectionData = (CollectionData) soyData;
+      currPartStart = currPartEnd + 1;
+    }
+
+    collectionData.removeSingle(keyStr.substring(currPartStart));
+  }
+
+
+  /**
+   * Removes the data at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   */
+  public void remove(SoyDataPath path) {
+
+    int numKeys = path.size();
 
     CollectionData collectionData = this;
     for (int i = 0; i <= numKeys - 2; ++i) {
-      SoyData soyData = collectionData.getSingle(keys.get(i));
+      SoyData soyData = getSingleHelper(collectionData, path, i);
       if (soyData == null || !(soyData instanceof CollectionData)) {
         return;
       }
       collectionData = (CollectionData) soyData;
     }
 
-    collectionData.removeSingle(keys.get(numKeys - 1));
+    int lastIndex = path.getIndex(numKeys - 1);
+    if (lastIndex >= 0 && collectionData instanceof SoyListData) {
+      ((SoyListData) collectionData).remove(lastIndex);
+    } else {
+      collectionData.removeSingle(path.getKey(numKeys - 1));
+    }
   }
 
 
@@ -179,19 +273,43 @@ public abstract class CollectionData extends SoyData {
    */
   public SoyData get(String keyStr) {
 
-    List<String> keys = split(keyStr, '.');
-    int numKeys = keys.size();
+    // Walks the key string instead of splitting it, so that no list is built and a single key is
+    // not even copied.
+    CollectionData collectionData = this;
+    int currPartStart = 0;
+    int currPartEnd;
+    while ((currPartEnd = keyStr.indexOf('.', currPartStart)) != -1) {
+      SoyData soyData = collectionData.getSingle(keyStr.substring(currPartStart, currPartEnd));
+      if (soyData == null || !(soyData instanceof CollectionData)) {
+        return null;
+      }
+      collectionData = (CollectionData) soyData;
+      currPartStart = currPartEnd + 1;
+    }
+
+    return collectionData.getSingle(keyStr.substring(currPartStart));
+  }
+
+
+  /**
+   * Gets the data at the specified path.
+   * @param path The parsed key string. Indicates the path to the location within this data tree.
+   * @return The data at the specified path, or null if there's no data at the location.
+   */
+  public SoyData get(SoyDataPath path) {
+
+    int numKeys = path.size();
 
     CollectionData collectionData = this;
     for (int i = 0; i <= numKeys - 2; ++i) {
-      SoyData soyData = collectionData.getSingle(keys.get(i));
+      SoyData soyData = getSingleHelper(collectionData, path, i);
       if (soyData == null || !(soyData instanceof CollectionData)) {
         return null;
       }
       collectionData = (CollectionData) soyData;
     }
 
-    return collectionData.getSingle(keys.get(numKeys - 1));
+    return getSingleHelper(collectionData, path, numKeys - 1);
   }
 
 
@@ -331,28 +449,40 @@ public abstract class CollectionData extends SoyData {
 
 
   /**
-   * Splits a string into tokens at the specified delimiter.
-   * @param str The string to split.  Must not be null.
-   * @param delim The delimiter character.
-   * @return A list of tokens. Will not return null.
+   * Private helper to get the data at one key of a path from a collection, using the pre-parsed
+   * list index if the collection is a list.
+   * @param collectionData The collection to get the data from.
+   * @param path The parsed key string.
+   * @param i The position of the key in the path.
+   * @return The data at the key, or null if the key is not defined.
    */
-  private static List<String> split(String str, char delim) {
-
-    List<String> result = Lists.newArrayList();
+  private static SoyData getSingleHelper(CollectionData collectionData, SoyDataPath path, int i) {
 
-    int currPartStart = 0;
-    while (true) {
-      int currPartEnd = str.indexOf(delim, currPartStart);
-      if (currPartEnd == -1) {
-        result.add(str.substring(currPartStart));
-        break;
-      } else {
-        result.add(str.substring(currPartStart, currPartEnd));
-        currPartStart = currPartEnd + 1;
-      }
+    int index = path.getIndex(i);
+    if (index >= 0 && collectionData instanceof SoyListData) {
+      return ((SoyListData) collectionData).get(index);
     }
+    return collectionData.getSingle(path.getKey(i));
+  }
+
 
-    return result;
+  /**
+   * Private helper to put data at one key of a path into a collection, using the pre-parsed list
+   * index if the collection is a list.
+   * @param collectionData The collection to put the data into.
+   * @param path The parsed key string.
+   * @param i The position of the key in the path.
+   * @param value The data to put.
+   */
+  private static void putSingleHelper(
+      CollectionData collectionData, SoyDataPath path, int i, SoyData value) {
+
+    int index = path.getIndex(i);
+    if (index >= 0 && collectionData instanceof SoyListData) {
+      ((SoyListData) collectionData).set(index, value);
+    } else {
+      collectionData.putSingle(path.getKey(i), value);
+    }
   }
 
 }
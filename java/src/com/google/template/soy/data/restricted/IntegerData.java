@@ -16,6 +16,10 @@
 
 package com.google.template.soy.data.restricted;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.IOException;
+
 import javax.annotation.concurrent.Immutable;
 
 
@@ -30,8 +34,6 @@ import javax.annotation.concurrent.Immutable;
 public class IntegerData extends NumberData {
 
 
-  // Note: ZERO, ONE, and MINUS_ONE are public. The rest are private.
-
   /** Static instance of IntegerData with value 0. */
   public static final IntegerData ZERO = new IntegerData(0);
 
@@ -41,32 +43,40 @@ public class IntegerData extends NumberData {
   /** Static instance of IntegerData with value -1. */
   public static final IntegerData MINUS_ONE = new IntegerData(-1);
 
-  /** Static instance of IntegerData with value 2. */
-  private static final IntegerData TWO = new IntegerData(2);
-
-  /** Static instance of IntegerData with value 3. */
-  private static final IntegerData THREE = new IntegerData(3);
 
-  /** Static instance of IntegerData with value 4. */
-  private static final IntegerData FOUR = new IntegerData(4);
+  /** The smallest value for which {@link #forValue} returns a cached instance. */
+  private static final int CACHE_LOW = -128;
 
-  /** Static instance of IntegerData with value 5. */
-  private static final IntegerData FIVE = new IntegerData(5);
+  /** The largest allowed value of CACHE_HIGH, so that the cache stays a reasonable size (and its
+   *  length can't overflow). */
+  @VisibleForTesting static final int MAX_CACHE_HIGH = 65535;
 
-  /** Static instance of IntegerData with value 6. */
-  private static final IntegerData SIX = new IntegerData(6);
+  /** The largest value for which {@link #forValue} returns a cached instance. Defaults to 1023, and
+   *  can be changed with the system property named below (but is always from 10 to
+   *  MAX_CACHE_HIGH). */
+  private static final int CACHE_HIGH = computeCacheHigh(Integer.getInteger(
+      "com.google.template.soy.data.restricted.IntegerData.cacheHigh", 1023));
 
-  /** Static instance of IntegerData with value 7. */
-  private static final IntegerData SEVEN = new IntegerData(7);
-
-  /** Static instance of IntegerData with value 8. */
-  private static final IntegerData EIGHT = new IntegerData(8);
+  /** Cached instances for the values from CACHE_LOW to CACHE_HIGH, so that common values such as
+   *  loop indices and small sums don't allocate a new object. */
+  private static final IntegerData[] CACHE = new IntegerData[CACHE_HIGH - CACHE_LOW + 1];
+  static {
+    for (int i = 0; i < CACHE.length; i++) {
+      int value = i + CACHE_LOW;
+      CACHE[i] = (value == 0) ? ZERO : (value == 1) ? ONE : (value == -1) ? MINUS_ONE :
+          new IntegerData(value);
+    }
+  }
 
-  /** Static instance of IntegerData with value 9. */
-  private static final IntegerData NINE = new IntegerData(9);
 
-  /** Static instance of IntegerData with value 10. */
-  private static final IntegerData TEN = new IntegerData(10);
+  /**
+   * Private helper to clamp the requested largest cached value to the allowed range.
+   * @param requestedCacheHigh The requested largest cached value.
+   * @return The largest cached value to use, from 10 to MAX_CACHE_HIGH.
+   */
+  @VisibleForTesting static int computeCacheHigh(int requestedCacheHigh) {
+    return Math.min(MAX_CACHE_HIGH, Math.max(10, requestedCacheHigh));
+  }
 
 
   /** The integer value. */
@@ -90,21 +100,10 @@ public class IntegerData extends NumberData {
    * @return A IntegerData instance with the given value.
    */
   public static IntegerData forValue(int value) {
-    switch (value) {
-      case -1: return MINUS_ONE;
-      case 0: return ZERO;
-      case 1: return ONE;
-      case 2: return TWO;
-      case 3: return THREE;
-      case 4: return FOUR;
-      case 5: return FIVE;
-      case 6: return SIX;
-      case 7: return SEVEN;
-      case 8: return EIGHT;
-      case 9: return NINE;
-      case 10: return TEN;
-      default: return new IntegerData(value);
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return CACHE[value - CACHE_LOW];
     }
+    return new IntegerData(value);
   }
 
 
@@ -124,6 +123,15 @@ public class IntegerData extends NumberData {
   }
 
 
+  @Override public void appendTo(Appendable outputBuf) throws IOException {
+    if (outputBuf instanceof StringBuilder) {
+      ((StringBuilder) outputBuf).append(value);
+    } else {
+      outputBuf.append(Integer.toString(value));
+    }
+  }
+
+
   /**
    * {@inheritDoc}
    *
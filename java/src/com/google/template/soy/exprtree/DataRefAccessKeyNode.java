@@ -27,7 +27,7 @@ package com.google.template.soy.exprtree;
 public class DataRefAccessKeyNode extends DataRefAccessNode {
 
 
-  /** The key. */
+  /** The key (interned). */
   private final String key;
 
 
@@ -37,7 +37,9 @@ public class DataRefAccessKeyNode extends DataRefAccessNode {
    */
   public DataRefAccessKeyNode(boolean isNullSafe, String key) {
     super(isNullSafe);
-    this.key = key;
+    // Interned so that map lookups during rendering usually find the key by identity (data keys
+    // are usually string literals, which are interned), instead of comparing the characters.
+    this.key = key.intern();
   }
 
 
@@ -56,7 +58,7 @@ public class DataRefAccessKeyNode extends DataRefAccessNode {
   }
 
 
-  /** Returns the key. */
+  /** Returns the key (interned). */
   public String getKey() {
     return key;
   }
@@ -39,7 +39,10 @@ public class DataRefNode extends AbstractParentExprNode {
   /** Whether this node is a reference to local var data, or null if unknown. */
   private Boolean isLocalVarDataRef;
 
-  /** The first key. */
+  /** The index of the local var slot this node refers to, or -1 if unknown or not a local var. */
+  private int localVarSlot;
+
+  /** The first key (interned). */
   private final String firstKey;
 
 
@@ -52,7 +55,9 @@ public class DataRefNode extends AbstractParentExprNode {
     this.isIjDataRef = isIjDataRef;
     this.isNullSafeIjDataRef = isNullSafeIjDataRef;
     this.isLocalVarDataRef = null;
-    this.firstKey = firstKey;
+    this.localVarSlot = -1;
+    // Interned for faster map lookups during rendering (see DataRefAccessKeyNode).
+    this.firstKey = firstKey.intern();
   }
 
 
@@ -65,6 +70,7 @@ public class DataRefNode extends AbstractParentExprNode {
     this.isIjDataRef = orig.isIjDataRef;
     this.isNullSafeIjDataRef = orig.isNullSafeIjDataRef;
     this.isLocalVarDataRef = orig.isLocalVarDataRef;
+    this.localVarSlot = orig.localVarSlot;
     this.firstKey = orig.firstKey;
   }
 
@@ -107,7 +113,24 @@ public class DataRefNode extends AbstractParentExprNode {
 
 
   /**
-   * Returns the first key.
+   * Sets the index of the local var slot this node refers to, or -1 if unknown or not a local var.
+   */
+  public void setLocalVarSlot(int localVarSlot) {
+    this.localVarSlot = localVarSlot;
+  }
+
+
+  /**
+   * Returns the index of the local var slot this node refers to, or -1 if unknown or not a local
+   * var.
+   */
+  public int getLocalVarSlot() {
+    return localVarSlot;
+  }
+
+
+  /**
+   * Returns the first key (interned).
    */
   public String getFirstKey() {
     return firstKey;
@@ -17,6 +17,8 @@
 package com.google.template.soy.javasrc.codedeps;
 
 import com.google.template.soy.data.SoyData;
+import com.google.template.soy.data.SoyDataPath;
+import com.google.template.soy.data.SoyListData;
 import com.google.template.soy.data.SoyMapData;
 import com.google.template.soy.data.internal.AugmentedSoyMapData;
 import com.google.template.soy.data.restricted.BooleanData;
@@ -57,6 +59,13 @@ public class SoyUtils {
   }
 
 
+  public static SoyData $$getData(SoyData collectionData, SoyDataPath path) {
+
+    SoyData value = ((CollectionData) collectionData).get(path);
+    return (value != null) ? value : UndefinedData.INSTANCE;
+  }
+
+
   // TODO: Use this in generated Java code instead of $$getData(), whenever possible.
   public static SoyData $$getDataSingle(SoyData collectionData, String key) {
 
@@ -65,6 +74,15 @@ public class SoyUtils {
   }
 
 
+  public static SoyData $$getDataSingle(SoyData collectionData, int index) {
+
+    SoyData value = (collectionData instanceof SoyListData) ?
+        ((SoyListData) collectionData).get(index) :
+        ((CollectionData) collectionData).getSingle(Integer.toString(index));
+    return (value != null) ? value : UndefinedData.INSTANCE;
+  }
+
+
   public static SoyMapData $$augmentData(SoyMapData baseData, SoyMapData additionalData) {
 
     AugmentedSoyMapData augmentedData = new AugmentedSoyMapData(baseData);
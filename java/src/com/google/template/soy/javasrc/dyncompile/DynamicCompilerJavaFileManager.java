@@ -16,11 +16,13 @@
 
 package com.google.template.soy.javasrc.dyncompile;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -120,8 +122,9 @@ final class DynamicCompilerJavaFileManager implements JavaFileManager {
       }
     }
 
-    // Delegate the boot classpath to the file manager we got from the javac wrapper.
-    if (StandardLocation.PLATFORM_CLASS_PATH.equals(location)) {
+    // Delegate the boot classpath (and, on Java 9+, the system modules) to the file manager we got
+    // from the javac wrapper.
+    if (!isOwnLocation(location)) {
       results.addAll(standardFileManager.list(location, packageName, kinds, recurse));
     }
 
@@ -169,6 +172,15 @@ final class DynamicCompilerJavaFileManager implements JavaFileManager {
 
   @Override
   public boolean hasLocation(Location location) {
+    return isOwnLocation(location) || standardFileManager.hasLocation(location);
+  }
+
+
+  /**
+   * Whether the given location is handled by this file manager itself (rather than by the standard
+   * file manager).
+   */
+  private static boolean isOwnLocation(Location location) {
     return StandardLocation.CLASS_OUTPUT.equals(location)  // outputFiles
         || StandardLocation.SOURCE_PATH.equals(location)  // inputFiles
         || StandardLocation.CLASS_PATH.equals(location);  // via ClassLoader
@@ -179,8 +191,14 @@ final class DynamicCompilerJavaFileManager implements JavaFileManager {
   public JavaFileObject getJavaFileForInput(
       Location location, String className, JavaFileObject.Kind kind)
       throws IOException {
-    // Only annotation processors need this and we're not running any over compiled Soy.
-    throw new IOException();
+    if (!isOwnLocation(location)) {
+      // E.g. module-info of the system modules on Java 9+.
+      return standardFileManager.getJavaFileForInput(location, className, kind);
+    }
+    // Otherwise only needed by annotation processors and for the module-info of the unnamed module.
+    // We're not running any annotation processors over compiled Soy, and there are no modules, so
+    // report that the file doesn't exist.
+    return null;
   }
 
 
@@ -221,6 +239,72 @@ final class DynamicCompilerJavaFileManager implements JavaFileManager {
   }
 
 
+  // -----------------------------------------------------------------------------------------------
+  // Methods added to JavaFileManager in Java 9 for modules. The system modules (which hold the
+  // platform classes) are found by the standard file manager. These methods are not annotated with
+  // @Override, and call the standard file manager via reflection, so that this class still compiles
+  // against older JDKs.
+
+
+  @SuppressWarnings("unchecked")
+  public Iterable<Set<Location>> listLocationsForModules(Location location) throws IOException {
+    if (isOwnLocation(location)) {
+      return ImmutableList.of();
+    }
+    return (Iterable<Set<Location>>) callStandardFileManager(
+        "listLocationsForModules", new Class<?>[] {Location.class}, location);
+  }
+
+
+  public Location getLocationForModule(Location location, String moduleName) throws IOException {
+    return (Location) callStandardFileManager(
+        "getLocationForModule", new Class<?>[] {Location.class, String.class}, location,
+        moduleName);
+  }
+
+
+  public Location getLocationForModule(Location location, JavaFileObject fo) throws IOException {
+    return (Location) callStandardFileManager(
+        "getLocationForModule", new Class<?>[] {Location.class, JavaFileObject.class}, location,
+        fo);
+  }
+
+
+  public String inferModuleName(Location location) throws IOException {
+    return (String) callStandardFileManager(
+        "inferModuleName", new Class<?>[] {Location.class}, location);
+  }
+
+
+  public boolean contains(Location location, FileObject fo) throws IOException {
+    if (isOwnLocation(location)) {
+      return false;  // Only used for checking source files against module locations.
+    }
+    return (Boolean) callStandardFileManager(
+        "contains", new Class<?>[] {Location.class, FileObject.class}, location, fo);
+  }
+
+
+  /**
+   * Private helper to call a method of the standard file manager that may not exist at compile
+   * time.
+   */
+  private Object callStandardFileManager(String methodName, Class<?>[] paramTypes, Object... args)
+      throws IOException {
+    try {
+      return JavaFileManager.class.getMethod(methodName, paramTypes).invoke(
+          standardFileManager, args);
+    } catch (InvocationTargetException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } catch (NoSuchMethodException e) {
+      throw new UnsupportedOperationException(methodName, e);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+
   @Override
   public void flush() throws IOException {
     standardFileManager.flush();
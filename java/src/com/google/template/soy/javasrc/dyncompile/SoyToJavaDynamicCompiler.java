@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.template.soy.base.BaseUtils;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.internal.base.Pair;
 import com.google.template.soy.javasrc.SoyTemplateRuntime;
 import com.google.template.soy.javasrc.SoyTemplateRuntimes;
 import com.google.template.soy.shared.SoyCssRenamingMap;
@@ -34,6 +35,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
@@ -60,6 +62,11 @@ public final class SoyToJavaDynamicCompiler {
 
 
   /**
+   * Compiles a bundle of templates, returning one shared runtime per template.
+   *
+   * <p> Note: Each returned runtime holds the data set on it, so it should not be shared across
+   * threads. Use {@link #compileToRuntimes} to get a fresh runtime per render.
+   *
    * @param bundleName The class name used for the bundle of Soy templates.  This will show up in
    *     Java stack traces.
    * @param javaClassBody Java source code as from
@@ -67,6 +74,55 @@ public final class SoyToJavaDynamicCompiler {
    */
   public static ImmutableMap<String, SoyTemplateRuntime> compile(
       String bundleName, String javaClassBody) {
+
+    Pair<Constructor<?>, ImmutableMap<String, Method>> compiled =
+        compileTemplateMethods(bundleName, javaClassBody);
+
+    ImmutableMap.Builder<String, SoyTemplateRuntime> runtimes = ImmutableMap.builder();
+    for (Map.Entry<String, Method> entry : compiled.second.entrySet()) {
+      runtimes.put(
+          entry.getKey(), newRuntime(entry.getKey(), compiled.first, entry.getValue()));
+    }
+    return runtimes.build();
+  }
+
+
+  /**
+   * Compiles a bundle of templates, returning a {@code SoyTemplateRuntimes} whose
+   * {@code newRenderer()} creates a new runtime on each call (or returns null if there is no
+   * template with the given name). The compiled class is shared by all renderers, so this is the
+   * method to use when rendering from multiple threads.
+   *
+   * @param bundleName The class name used for the bundle of Soy templates.  This will show up in
+   *     Java stack traces.
+   * @param javaClassBody Java source code as from
+   *     {@link com.google.template.soy.SoyFileSet#compileToJavaSrc}.
+   */
+  public static SoyTemplateRuntimes compileToRuntimes(String bundleName, String javaClassBody) {
+
+    final Pair<Constructor<?>, ImmutableMap<String, Method>> compiled =
+        compileTemplateMethods(bundleName, javaClassBody);
+
+    return new SoyTemplateRuntimes() {
+      @Override public SoyTemplateRuntime newRenderer(String templateName) {
+        Method method = compiled.second.get(templateName);
+        return (method == null) ? null : newRuntime(templateName, compiled.first, method);
+      }
+    };
+  }
+
+
+  /**
+   * Compiles a bundle of templates into a class loaded into this JVM.
+   *
+   * @param bundleName The class name used for the bundle of Soy templates.
+   * @param javaClassBody Java source code as from
+   *     {@link com.google.template.soy.SoyFileSet#compileToJavaSrc}.
+   * @return A pair of the compiled class's constructor (taking the injected data and the CSS
+   *     renaming map) and the map from template name to the method that renders the template.
+   */
+  private static Pair<Constructor<?>, ImmutableMap<String, Method>> compileTemplateMethods(
+      String bundleName, String javaClassBody) {
     if (!BaseUtils.isDottedIdentifier(bundleName)) {
       throw new IllegalArgumentException(
           "Bundle name should be a dotted identifier, not " + bundleName);
@@ -168,9 +224,8 @@ public final class SoyToJavaDynamicCompiler {
         templateClassLoader.defineClassCompiledFromSoy(outputClass.getByteContent());
       }
 
-      // Now that we've defined the class, we can generate a list of templates, and create our
-      // template runtime objects.
-      ImmutableMap.Builder<String, SoyTemplateRuntime> runtimes = ImmutableMap.builder();
+      // Now that we've defined the class, we can generate a list of templates.
+      ImmutableMap.Builder<String, Method> templateMethods = ImmutableMap.builder();
       try {
         Class<?> compiledClass = templateClassLoader.loadClass(className);
 
@@ -187,7 +242,7 @@ public final class SoyToJavaDynamicCompiler {
         }
 
         // Look for public methods that take a Map and a buffer.
-        // For each of these, create a SoyTemplateRuntime.
+        // For each of these, record the template method.
         for (final Method method : compiledClass.getDeclaredMethods()) {
           int modifiers = method.getModifiers();
           // The Soy methods in the generated Java have the form
@@ -208,46 +263,19 @@ public final class SoyToJavaDynamicCompiler {
               }
 
               String methodName = method.getName();
-              final String templateName = methodName.replace('$', '.');
-
-              runtimes.put(templateName, new AbstractSoyTemplateRuntime() {
-
-
-                @Override
-                protected void renderMain(
-                    SoyMapData data, SoyMapData ijData, SoyCssRenamingMap cssRenamingMap,
-                    StringBuilder out) {
-                  try {
-                    method.invoke(ctor.newInstance(ijData, cssRenamingMap), data, out);
-                  } catch (InvocationTargetException ex) {
-                    // Checked above that there are no checked exceptions.
-                    Throwables.propagate(ex.getTargetException());
-                  } catch (InstantiationException ex) {
-                    // Checked above that there are no checked exceptions.
-                    Throwables.propagate(ex);
-                  } catch (IllegalAccessException ex) {
-                    // Checked isPublic above, and the generated class is a public top-level class.
-                    Throwables.propagate(ex);
-                  }
-                }
-
-
-                @Override
-                public String toString() {
-                  return "[SoyTemplateRuntime " + templateName + "]";
-                }
-
-              });
-
+              templateMethods.put(methodName.replace('$', '.'), method);
             }
           }
         }
 
+        return Pair.<Constructor<?>, ImmutableMap<String, Method>>of(
+            ctor, templateMethods.build());
+
       } catch (ClassNotFoundException ex) {
-        Throwables.propagate(ex);  // The class we successfully compiled should be present.
+        // The class we successfully compiled should be present.
+        throw Throwables.propagate(ex);
       }
 
-      return runtimes.build();
     } else {
       // TODO: Choose an appropriate way to signal failure, and collect the javac output.
       System.err.println("Java code\n" + javaSourceCode + "\n");
@@ -256,6 +284,51 @@ public final class SoyToJavaDynamicCompiler {
   }
 
 
+  /**
+   * Creates a new runtime that renders a template by invoking the given method on a new instance of
+   * the compiled class.
+   *
+   * @param templateName The full name of the template.
+   * @param ctor The compiled class's constructor (taking the injected data and the CSS renaming
+   *     map).
+   * @param method The method that renders the template.
+   */
+  private static SoyTemplateRuntime newRuntime(
+      final String templateName, final Constructor<?> ctor, final Method method) {
+
+    return new AbstractSoyTemplateRuntime() {
+
+      @Override
+      protected void renderMain(
+          SoyMapData data, SoyMapData ijData, SoyCssRenamingMap cssRenamingMap,
+          StringBuilder out) {
+        try {
+          // The generated code reads injected data without a null check.
+          method.invoke(
+              ctor.newInstance((ijData != null) ? ijData : new SoyMapData(), cssRenamingMap),
+              data, out);
+        } catch (InvocationTargetException ex) {
+          // Checked above that there are no checked exceptions.
+          Throwables.propagate(ex.getTargetException());
+        } catch (InstantiationException ex) {
+          // Checked above that there are no checked exceptions.
+          Throwables.propagate(ex);
+        } catch (IllegalAccessException ex) {
+          // Checked isPublic above, and the generated class is a public top-level class.
+          Throwables.propagate(ex);
+        }
+      }
+
+
+      @Override
+      public String toString() {
+        return "[SoyTemplateRuntime " + templateName + "]";
+      }
+
+    };
+  }
+
+
   private SoyToJavaDynamicCompiler() {
     // Uninstantiable.  Consists only of static methods.
   }
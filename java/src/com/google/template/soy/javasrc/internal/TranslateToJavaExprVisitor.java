@@ -269,9 +269,8 @@ public class TranslateToJavaExprVisitor extends AbstractReturningExprNodeVisitor
               refText, ((DataRefAccessKeyNode) accessNode).getKey());
           break;
         case DATA_REF_ACCESS_INDEX_NODE:
-          refText = genGetDataSingleCallWithKey(
-              refText,
-              Integer.toString(((DataRefAccessIndexNode) accessNode).getIndex()));
+          refText = genGetDataSingleCallWithIndex(
+              refText, ((DataRefAccessIndexNode) accessNode).getIndex());
           break;
         case DATA_REF_ACCESS_EXPR_NODE:
           JavaExpr keyExpr = visit(accessNode.getChild(0));
@@ -298,6 +297,11 @@ public class TranslateToJavaExprVisitor extends AbstractReturningExprNodeVisitor
   }
 
 
+  private static String genGetDataSingleCallWithIndex(String dataExprText, int index) {
+    return genFunctionCall(UTILS_LIB + ".$$getDataSingle", dataExprText, Integer.toString(index));
+  }
+
+
   private static String genGetDataSingleCallWithKeyExpr(String dataExprText, JavaExpr keyExpr) {
     return genFunctionCall(
         UTILS_LIB + ".$$getDataSingle", dataExprText,
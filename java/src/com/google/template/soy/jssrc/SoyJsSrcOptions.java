@@ -65,6 +65,10 @@ public class SoyJsSrcOptions implements Cloneable {
   /** Whether the Closure Library messages are external, i.e. "MSG_EXTERNAL_[soyGeneratedMsgId]". */
   private boolean googMsgsAreExternal;
 
+  /** Whether to generate the code once for all locales with the same bidi global directionality
+   *  (only filling in the translated messages for each locale). */
+  private boolean shouldShareCodeGenAcrossLocales;
+
   /**
    * The bidi global directionality as a static value, 1: ltr, -1: rtl, 0: unspecified. If 0, and
    * useGoogIsRtlForBidiGlobalDir is false, the bidi global directionality will actually be inferred
@@ -92,6 +96,7 @@ public class SoyJsSrcOptions implements Cloneable {
     shouldDeclareTopLevelNamespaces = true;
     shouldGenerateGoogMsgDefs = false;
     googMsgsAreExternal = false;
+    shouldShareCodeGenAcrossLocales = false;
     bidiGlobalDir = 0;
     useGoogIsRtlForBidiGlobalDir = false;
   }
@@ -297,6 +302,35 @@ public class SoyJsSrcOptions implements Cloneable {
   }
 
 
+  /**
+   * Sets whether, when generating localized JS for multiple locales (only applicable if
+   * shouldGenerateGoogMsgDefs is false), to generate the code once for all the locales with the
+   * same bidi global directionality, and then only fill in the translated messages for each
+   * locale. This is much faster when there are many locales. The generated code computes each
+   * message into a local variable before using it, so it looks slightly different, but it
+   * produces the same output.
+   *
+   * Only use this option if no function or print directive plugin generates JS code that depends
+   * on the locale.
+   *
+   * @param shouldShareCodeGenAcrossLocales The value to set.
+   */
+  public void setShouldShareCodeGenAcrossLocales(boolean shouldShareCodeGenAcrossLocales) {
+    this.shouldShareCodeGenAcrossLocales = shouldShareCodeGenAcrossLocales;
+  }
+
+
+  /**
+   * Returns whether, when generating localized JS for multiple locales (only applicable if
+   * shouldGenerateGoogMsgDefs is false), to generate the code once for all the locales with the
+   * same bidi global directionality, and then only fill in the translated messages for each
+   * locale.
+   */
+  public boolean shouldShareCodeGenAcrossLocales() {
+    return shouldShareCodeGenAcrossLocales;
+  }
+
+
   /**
    * Sets the bidi global directionality to a static value, 1: ltr, -1: rtl, 0: unspecified. If 0,
    * and useGoogIsRtlForBidiGlobalDir is false, the bidi global directionality will actually be
@@ -122,9 +122,17 @@ class GenJsCodeVisitor extends AbstractSoyNodeVisitor<List<String>> {
   /** Factory for creating an instance of GenJsExprsVisitor. */
   private final GenJsExprsVisitorFactory genJsExprsVisitorFactory;
 
-  /** The contents of the generated JS files. */
+  /** Whether to generate message slots for GoogMsgNodes instead of goog.getMsg() definitions (see
+   *  execWithMsgSlots()). */
+  private boolean isGeneratingMsgSlots;
+
+  /** The contents of the generated JS files (when not generating message slots). */
   private List<String> jsFilesContents;
 
+  /** The contents of the generated JS files, with message slots (when generating message
+   *  slots). */
+  private List<JsCodeWithMsgSlots> jsFilesWithMsgSlots;
+
   /** The JsCodeBuilder to build the current JS file being generated (during a run). */
   @VisibleForTesting protected JsCodeBuilder jsCodeBuilder;
 
@@ -166,7 +174,9 @@ class GenJsCodeVisitor extends AbstractSoyNodeVisitor<List<String>> {
 
 
   @Override public List<String> exec(SoyNode node) {
+    isGeneratingMsgSlots = false;
     jsFilesContents = Lists.newArrayList();
+    jsFilesWithMsgSlots = null;
     jsCodeBuilder = null;
     localVarTranslations = null;
     genJsExprsVisitor = null;
@@ -176,6 +186,29 @@ class GenJsCodeVisitor extends AbstractSoyNodeVisitor<List<String>> {
   }
 
 
+  /**
+   * Generates locale-independent JS code, in which each GoogMsgNode defines its variable using a
+   * message slot instead of a goog.getMsg() call. The JS code for a specific locale is then built
+   * by filling in the message slots with the translated messages.
+   *
+   * <p> Plural/select messages are not supported.
+   *
+   * @param node The node to generate code for (usually the full parse tree).
+   * @return The generated code with message slots, for each generated JS file.
+   */
+  public List<JsCodeWithMsgSlots> execWithMsgSlots(SoyNode node) {
+    isGeneratingMsgSlots = true;
+    jsFilesContents = null;
+    jsFilesWithMsgSlots = Lists.newArrayList();
+    jsCodeBuilder = null;
+    localVarTranslations = null;
+    genJsExprsVisitor = null;
+    assistantForMsgs = null;
+    visit(node);
+    return jsFilesWithMsgSlots;
+  }
+
+
   /**
    * This method must only be called by assistant visitors, in particular
    * GenJsCodeVisitorAssistantForMsgs.
@@ -314,7 +347,11 @@ class GenJsCodeVisitor extends AbstractSoyNodeVisitor<List<String>> {
       }
     }
 
-    jsFilesContents.add(jsCodeBuilder.getCode());
+    if (isGeneratingMsgSlots) {
+      jsFilesWithMsgSlots.add(jsCodeBuilder.getCodeWithMsgSlots());
+    } else {
+      jsFilesContents.add(jsCodeBuilder.getCode());
+    }
     jsCodeBuilder = null;
   }
 
@@ -572,7 +609,7 @@ class GenJsCodeVisitor extends AbstractSoyNodeVisitor<List<String>> {
     if (assistantForMsgs == null) {
       assistantForMsgs = new GenJsCodeVisitorAssistantForMsgs(
           this, jsExprTranslator, genCallCodeUtils, isComputableAsJsExprsVisitor, jsCodeBuilder,
-          localVarTranslations, genJsExprsVisitor);
+          localVarTranslations, genJsExprsVisitor, isGeneratingMsgSlots);
     }
     assistantForMsgs.visitForUseByMaster(node);
   }
@@ -18,10 +18,14 @@ package com.google.template.soy.jssrc.internal;
 
 import com.google.common.base.CaseFormat;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.template.soy.base.BaseUtils;
+import com.google.template.soy.jssrc.internal.JsCodeWithMsgSlots.MsgSlot;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.JsExprUtils;
+import com.google.template.soy.msgs.internal.MsgUtils;
+import com.google.template.soy.msgs.internal.MsgUtils.MsgPartsAndIds;
 import com.google.template.soy.msgs.restricted.IcuSyntaxUtils;
 import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
 import com.google.template.soy.soytree.CallNode;
@@ -43,6 +47,7 @@ import com.google.template.soy.soytree.SoyNode.BlockNode;
 import com.google.template.soy.soytree.SoyNode.CommandNode;
 import com.google.template.soy.soytree.SoyNode.StandaloneNode;
 import com.google.template.soy.soytree.SoySyntaxExceptionUtils;
+import com.google.template.soy.soytree.TemplateNode;
 import com.google.template.soy.soytree.jssrc.GoogMsgNode;
 
 import java.util.Deque;
@@ -89,6 +94,9 @@ class GenJsCodeVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
    *  special functions) current in scope. */
   private final Deque<Map<String, JsExpr>> localVarTranslations;
 
+  /** Whether to generate message slots instead of goog.getMsg() definitions. */
+  private final boolean isGeneratingMsgSlots;
+
 
   /**
    * @param master The master GenJsCodeVisitor instance.
@@ -98,11 +106,14 @@ class GenJsCodeVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
    * @param jsCodeBuilder The current JsCodeBuilder.
    * @param localVarTranslations The current local var translations.
    * @param genJsExprsVisitor The current GenJsExprsVisitor.
+   * @param isGeneratingMsgSlots Whether to generate message slots instead of goog.getMsg()
+   *     definitions (see {@link GenJsCodeVisitor#execWithMsgSlots}).
    */
   GenJsCodeVisitorAssistantForMsgs(
       GenJsCodeVisitor master, JsExprTranslator jsExprTranslator, GenCallCodeUtils genCallCodeUtils,
       IsComputableAsJsExprsVisitor isComputableAsJsExprsVisitor, JsCodeBuilder jsCodeBuilder,
-      Deque<Map<String, JsExpr>> localVarTranslations, GenJsExprsVisitor genJsExprsVisitor) {
+      Deque<Map<String, JsExpr>> localVarTranslations, GenJsExprsVisitor genJsExprsVisitor,
+      boolean isGeneratingMsgSlots) {
     this.master = master;
     this.jsExprTranslator = jsExprTranslator;
     this.genCallCodeUtils = genCallCodeUtils;
@@ -110,6 +121,7 @@ class GenJsCodeVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
     this.jsCodeBuilder = jsCodeBuilder;
     this.localVarTranslations = localVarTranslations;
     this.genJsExprsVisitor = genJsExprsVisitor;
+    this.isGeneratingMsgSlots = isGeneratingMsgSlots;
   }
 
 
@@ -153,6 +165,11 @@ class GenJsCodeVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
    */
   @Override protected void visitGoogMsgNode(GoogMsgNode node) {
 
+    if (isGeneratingMsgSlots) {
+      genMsgSlotCode(node);
+      return;
+    }
+
     boolean isPlrselMsg = node.isPlrselMsg();
 
     // Build the code for the message text and the individual code bits for each placeholder (i.e.
@@ -228,6 +245,63 @@ class GenJsCodeVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
   }
 
 
+  /**
+   * Private helper for visitGoogMsgNode().
+   * Generates the variable definition for a message as a message slot, which is filled in with the
+   * translated message for each locale. For example, instead of
+   * <xmp>
+   *   var MSG_UNNAMED_10 = goog.getMsg(
+   *       'Click {$startLink}here{$endLink}.',
+   *       {startLink: '<a href="' + opt_data.url + '">',
+   *        endLink: '</a>'});
+   * </xmp>
+   * the code for one locale might be
+   * <xmp>
+   *   var msg10 = 'Click <a href="' + opt_data.url + '">here</a>.';
+   * </xmp>
+   *
+   * @param node The GoogMsgNode (must not be a plural/select message).
+   */
+  private void genMsgSlotCode(GoogMsgNode node) {
+
+    if (node.isPlrselMsg()) {
+      throw SoySyntaxExceptionUtils.createWithNode(
+          "JS code generation currently only supports plural/select messages when" +
+              " shouldGenerateGoogMsgDefs is true.",
+          node);
+    }
+
+    // Build the JS exprs for the placeholders. The JS exprs must be generated here, where the local
+    // vars they may reference are in scope.
+    Map<String, JsExpr> placeholderJsExprs = Maps.newHashMap();
+    for (StandaloneNode child : node.getChildren()) {
+      if (child instanceof MsgPlaceholderNode) {
+        String placeholderName = node.getPlaceholderName((MsgPlaceholderNode) child);
+        // If the placeholder name has not already been seen, then this child must be its
+        // representative node.
+        if (!placeholderJsExprs.containsKey(placeholderName)) {
+          placeholderJsExprs.put(
+              placeholderName, genGoogMsgPlaceholderExpr((MsgPlaceholderNode) child));
+        }
+      } else if (!(child instanceof RawTextNode)) {
+        String nodeStringForErrorMsg = (child instanceof CommandNode) ?
+            "Tag " + ((CommandNode) child).getTagString() : "Node " + child.toString();
+        throw SoySyntaxExceptionUtils.createWithNode(
+            nodeStringForErrorMsg + " is not allowed to be a direct child of a message.", child);
+      }
+    }
+
+    // The message parts and id are usually already cached on the node (copied from the MsgNode).
+    MsgPartsAndIds msgPartsAndIds = MsgUtils.buildMsgPartsAndComputeMsgIdForDualFormat(node);
+
+    jsCodeBuilder.indent().append("var ", node.getGoogMsgVarName(), " = ");
+    jsCodeBuilder.appendMsgSlot(
+        new MsgSlot(msgPartsAndIds.id, msgPartsAndIds.parts, placeholderJsExprs,
+                    node.getNearestAncestor(TemplateNode.class).getTemplateNameForUserMsgs()));
+    jsCodeBuilder.append(";\n");
+  }
+
+
   /**
    * Private helper class for visitGoogMsgNode().
    * Stores the data require for generating goog.geMsg() code.
@@ -16,9 +16,12 @@
 
 package com.google.template.soy.jssrc.internal;
 
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 import com.google.template.soy.base.SoySyntaxException;
 import com.google.template.soy.internal.base.Pair;
 import com.google.template.soy.jssrc.SoyJsSrcOptions.CodeStyle;
+import com.google.template.soy.jssrc.internal.JsCodeWithMsgSlots.MsgSlot;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.JsExprUtils;
 
@@ -88,6 +91,12 @@ class JsCodeBuilder {
   /** Whether the current output variable is initialized. */
   private boolean currOutputVarIsInited;
 
+  /** The offsets in the code of the message slots appended so far. */
+  private final List<Integer> msgSlotOffsets;
+
+  /** The message slots appended so far. */
+  private final List<MsgSlot> msgSlots;
+
 
   /**
    * Constructs a new instance. At the start, the code is empty and the indent is 0 spaces.
@@ -101,6 +110,8 @@ class JsCodeBuilder {
     outputVars = new ArrayDeque<Pair<String, Boolean>>();
     currOutputVarName = null;
     currOutputVarIsInited = false;
+    msgSlotOffsets = Lists.newArrayList();
+    msgSlots = Lists.newArrayList();
   }
 
 
@@ -213,6 +224,19 @@ class JsCodeBuilder {
   }
 
 
+  /**
+   * Appends a slot for a message, to be filled in with the JS expression for the message when
+   * building the code for a specific locale (see {@link #getCodeWithMsgSlots}).
+   * @param msgSlot The message slot.
+   * @return This JsCodeBuilder (for stringing together operations).
+   */
+  public JsCodeBuilder appendMsgSlot(MsgSlot msgSlot) {
+    msgSlotOffsets.add(code.length());
+    msgSlots.add(msgSlot);
+    return this;
+  }
+
+
   /**
    * Appends the name of the current output variable.
    * @return This JsCodeBuilder (for stringing together operations).
@@ -292,7 +316,18 @@ class JsCodeBuilder {
    * @return The generated code.
    */
   public String getCode() {
+    if (!msgSlots.isEmpty()) {
+      throw new IllegalStateException("Code has message slots (use getCodeWithMsgSlots()).");
+    }
     return code.toString();
   }
 
+
+  /**
+   * @return The generated code, with the message slots appended so far.
+   */
+  public JsCodeWithMsgSlots getCodeWithMsgSlots() {
+    return new JsCodeWithMsgSlots(code.toString(), Ints.toArray(msgSlotOffsets), msgSlots);
+  }
+
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.jssrc.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.template.soy.base.BaseUtils;
+import com.google.template.soy.jssrc.restricted.JsExpr;
+import com.google.template.soy.jssrc.restricted.JsExprUtils;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.SoyMsgException;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPlaceholderPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * The locale-independent JS code for one Soy file, with a slot for each message. The code is
+ * generated once, and then the JS for each locale is built by filling in the slots with the JS
+ * expressions for the translated messages.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ */
+public final class JsCodeWithMsgSlots {
+
+
+  /**
+   * A slot for one message in the generated code. Holds everything needed to generate the JS
+   * expression for any translation of the message.
+   */
+  static final class MsgSlot {
+
+    /** The message id (for looking up the translation). */
+    private final long msgId;
+
+    /** The parts of the message from the Soy source (used if there's no translation). */
+    private final List<SoyMsgPart> srcMsgParts;
+
+    /** Map from placeholder name to the JS expression for its content. */
+    private final Map<String, JsExpr> placeholderJsExprs;
+
+    /** The name of the template containing the message (for error messages). */
+    private final String templateNameForUserMsgs;
+
+    /**
+     * @param msgId The message id (for looking up the translation).
+     * @param srcMsgParts The parts of the message from the Soy source.
+     * @param placeholderJsExprs Map from placeholder name to the JS expression for its content.
+     * @param templateNameForUserMsgs The name of the template containing the message (for error
+     *     messages).
+     */
+    MsgSlot(long msgId, List<SoyMsgPart> srcMsgParts, Map<String, JsExpr> placeholderJsExprs,
+            String templateNameForUserMsgs) {
+      this.msgId = msgId;
+      this.srcMsgParts = ImmutableList.copyOf(srcMsgParts);
+      this.placeholderJsExprs = ImmutableMap.copyOf(placeholderJsExprs);
+      this.templateNameForUserMsgs = templateNameForUserMsgs;
+    }
+
+    /**
+     * Generates the JS expression for the translation of this message in the given bundle.
+     * @param msgBundle The bundle of translated messages, or null to use the message from the Soy
+     *     source.
+     * @return The JS expression for the message.
+     * @throws SoyMsgException If the translation has a placeholder that the message in the Soy
+     *     source doesn't have.
+     */
+    JsExpr genJsExpr(@Nullable SoyMsgBundle msgBundle) {
+
+      SoyMsg soyMsg = (msgBundle == null) ? null : msgBundle.getMsg(msgId);
+      List<SoyMsgPart> msgParts = (soyMsg != null) ? soyMsg.getParts() : srcMsgParts;
+
+      List<JsExpr> jsExprs = Lists.newArrayListWithCapacity(msgParts.size());
+      for (SoyMsgPart msgPart : msgParts) {
+        if (msgPart instanceof SoyMsgRawTextPart) {
+          // Same as GenJsExprsVisitor.visitRawTextNode().
+          String exprText =
+              BaseUtils.escapeToSoyString(((SoyMsgRawTextPart) msgPart).getRawText(), false);
+          exprText = JsSrcUtils.escapeUnicodeFormatChars(exprText);
+          jsExprs.add(new JsExpr(exprText, Integer.MAX_VALUE));
+
+        } else if (msgPart instanceof SoyMsgPlaceholderPart) {
+          String placeholderName = ((SoyMsgPlaceholderPart) msgPart).getPlaceholderName();
+          JsExpr placeholderJsExpr = placeholderJsExprs.get(placeholderName);
+          if (placeholderJsExpr == null) {
+            // The message file doesn't match the Soy source. Report enough to find the bad
+            // translation.
+            throw new SoyMsgException(
+                "Translation of message " + msgId + " (in template " + templateNameForUserMsgs +
+                ") for locale " + soyMsg.getLocaleString() + " has placeholder " +
+                placeholderName + ", which is not in the source message (expected one of " +
+                Ordering.natural().sortedCopy(placeholderJsExprs.keySet()) + ").");
+          }
+          jsExprs.add(placeholderJsExpr);
+
+        } else {
+          throw new AssertionError();
+        }
+      }
+
+      return JsExprUtils.concatJsExprs(jsExprs);
+    }
+  }
+
+
+  /** The generated code, without the message slots. */
+  private final String code;
+
+  /** The offsets in the code at which the message slots go (in increasing order). */
+  private final int[] msgSlotOffsets;
+
+  /** The message slots, in the same order as msgSlotOffsets. */
+  private final List<MsgSlot> msgSlots;
+
+
+  /**
+   * @param code The generated code, without the message slots.
+   * @param msgSlotOffsets The offsets in the code at which the message slots go.
+   * @param msgSlots The message slots, in the same order as msgSlotOffsets.
+   */
+  JsCodeWithMsgSlots(String code, int[] msgSlotOffsets, List<MsgSlot> msgSlots) {
+    this.code = code;
+    this.msgSlotOffsets = msgSlotOffsets;
+    this.msgSlots = ImmutableList.copyOf(msgSlots);
+  }
+
+
+  /**
+   * Builds the JS code for one locale by filling in the message slots. Can be called concurrently.
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @return The JS code for the locale of the given bundle.
+   */
+  public String fillInMsgs(@Nullable SoyMsgBundle msgBundle) {
+
+    StringBuilder sb = new StringBuilder(code.length() + 64 * msgSlots.size());
+    int prevOffset = 0;
+    for (int i = 0; i < msgSlotOffsets.length; i++) {
+      sb.append(code, prevOffset, msgSlotOffsets[i]);
+      sb.append(msgSlots.get(i).genJsExpr(msgBundle).getText());
+      prevOffset = msgSlotOffsets[i];
+    }
+    sb.append(code, prevOffset, code.length());
+    return sb.toString();
+  }
+
+}
@@ -17,12 +17,10 @@
 package com.google.template.soy.jssrc.internal;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Supplier;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.inject.Inject;
 import com.google.inject.Key;
@@ -48,8 +46,8 @@ import com.google.template.soy.soytree.SoySyntaxExceptionUtils;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -119,6 +117,32 @@ public class JsSrcMain {
       SoyFileSetNode soyTree, SoyJsSrcOptions jsSrcOptions, @Nullable SoyMsgBundle msgBundle)
       throws SoySyntaxException {
 
+    apiCallScope.enter();
+    try {
+      prepareForCodeGen(soyTree, jsSrcOptions, msgBundle);
+      return genJsCodeVisitorProvider.get().exec(soyTree);
+
+    } finally {
+      apiCallScope.exit();
+    }
+  }
+
+
+  /**
+   * Private helper for {@code genJsSrc()} and {@code genJsFiles()} to seed the API call scope and
+   * run the passes that must precede the code generation. Must be called within the API call
+   * scope.
+   *
+   * @param soyTree The Soy parse tree to generate JS source code for.
+   * @param jsSrcOptions The compilation options relevant to this backend.
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  private void prepareForCodeGen(
+      SoyFileSetNode soyTree, SoyJsSrcOptions jsSrcOptions, @Nullable SoyMsgBundle msgBundle)
+      throws SoySyntaxException {
+
     // Generate code with the opt_ijData param if either (a) the user specified the compiler flag
     // --isUsingIjData or (b) any of the Soy code in the file set references injected data.
     boolean isUsingIjData =
@@ -132,41 +156,94 @@ public class JsSrcMain {
         "Do not specify useGoogIsRtlForBidiGlobalDir without either" +
         " shouldProvideRequireSoyNamespaces or shouldProvideRequireJsFunctions.");
 
+    // Seed the scoped parameters.
+    apiCallScope.seed(SoyJsSrcOptions.class, jsSrcOptions);
+    apiCallScope.seed(Key.get(Boolean.class, IsUsingIjData.class), isUsingIjData);
+    BidiGlobalDir bidiGlobalDir = SoyBidiUtils.decodeBidiGlobalDirFromOptions(
+        jsSrcOptions.getBidiGlobalDir(),
+        jsSrcOptions.getUseGoogIsRtlForBidiGlobalDir());
+    ApiCallScopeUtils.seedSharedParams(apiCallScope, msgBundle, bidiGlobalDir);
+
+    // Replace MsgNodes.
+    if (jsSrcOptions.shouldGenerateGoogMsgDefs()) {
+      replaceMsgsWithGoogMsgsVisitorProvider.get().exec(soyTree);
+      (new MoveGoogMsgNodesEarlierVisitor()).exec(soyTree);
+      Preconditions.checkState(
+          bidiGlobalDir != null,
+          "If enabling shouldGenerateGoogMsgDefs, must also set bidi global directionality.");
+    } else {
+      Preconditions.checkState(
+          bidiGlobalDir == null || bidiGlobalDir.isStaticValue(),
+          "If using bidiGlobalIsRtlCodeSnippet, must also enable shouldGenerateGoogMsgDefs.");
+      try {
+        (new InsertMsgsVisitor(msgBundle, false)).exec(soyTree);
+      } catch (EncounteredPlrselMsgException e) {
+        throw SoySyntaxExceptionUtils.createWithNode(
+            "JS code generation currently only supports plural/select messages when" +
+                " shouldGenerateGoogMsgDefs is true.",
+            e.msgNode);
+      }
+    }
+
+    // Run the optimization passes for the code generation.
+    optimizeBidiCodeGenVisitorProvider.get().exec(soyTree);
+    simplifyVisitor.exec(soyTree);
+  }
+
+
+  /**
+   * Generates locale-independent JS source code with a slot for each message, given a Soy parse
+   * tree and an options object. The JS source code for each locale is then built by just filling in
+   * the translated messages (see {@link JsCodeWithMsgSlots#fillInMsgs}), which is much cheaper than
+   * generating all the code for each locale. Unlike in the code generated by {@code genJsSrc()},
+   * each message is computed into a local variable before it's used.
+   *
+   * <p> The generated code depends on the bidi global directionality (but not on the locale), so it
+   * can be shared by all the locales with the same directionality. As when generating localized JS
+   * with {@code genJsSrc()}, plural/select messages are not supported.
+   *
+   * @param soyTree The Soy parse tree to generate JS source code for.
+   * @param jsSrcOptions The compilation options relevant to this backend. Must not enable
+   *     shouldGenerateGoogMsgDefs.
+   * @param bidiGlobalDir The bidi global directionality of the locales that will use the code
+   *     (ltr=1, rtl=-1). Must agree with jsSrcOptions if it specifies the directionality.
+   * @return A list with the JS source code (with message slots) for each JS file. The generated JS
+   *     files correspond one-to-one to the original Soy source files.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  public List<JsCodeWithMsgSlots> genJsSrcWithMsgSlots(
+      SoyFileSetNode soyTree, SoyJsSrcOptions jsSrcOptions, int bidiGlobalDir)
+      throws SoySyntaxException {
+
+    Preconditions.checkArgument(
+        !jsSrcOptions.shouldGenerateGoogMsgDefs(),
+        "Message slots are only used when not generating goog.getMsg() definitions.");
+    Preconditions.checkArgument(
+        (bidiGlobalDir == 1 || bidiGlobalDir == -1) &&
+        (jsSrcOptions.getBidiGlobalDir() == 0 || jsSrcOptions.getBidiGlobalDir() == bidiGlobalDir));
+    Preconditions.checkState(
+        !jsSrcOptions.getUseGoogIsRtlForBidiGlobalDir(),
+        "If using bidiGlobalIsRtlCodeSnippet, must also enable shouldGenerateGoogMsgDefs.");
+
+    boolean isUsingIjData =
+        jsSrcOptions.isUsingIjData() || (new IsUsingIjDataVisitor()).exec(soyTree);
+
     apiCallScope.enter();
     try {
-      // Seed the scoped parameters.
+      // Seed the scoped parameters. There's no message bundle, since the code must not depend on
+      // the locale.
       apiCallScope.seed(SoyJsSrcOptions.class, jsSrcOptions);
       apiCallScope.seed(Key.get(Boolean.class, IsUsingIjData.class), isUsingIjData);
-      BidiGlobalDir bidiGlobalDir = SoyBidiUtils.decodeBidiGlobalDirFromOptions(
-          jsSrcOptions.getBidiGlobalDir(),
-          jsSrcOptions.getUseGoogIsRtlForBidiGlobalDir());
-      ApiCallScopeUtils.seedSharedParams(apiCallScope, msgBundle, bidiGlobalDir);
-
-      // Replace MsgNodes.
-      if (jsSrcOptions.shouldGenerateGoogMsgDefs()) {
-        replaceMsgsWithGoogMsgsVisitorProvider.get().exec(soyTree);
-        (new MoveGoogMsgNodesEarlierVisitor()).exec(soyTree);
-        Preconditions.checkState(
-            bidiGlobalDir != null,
-            "If enabling shouldGenerateGoogMsgDefs, must also set bidi global directionality.");
-      } else {
-        Preconditions.checkState(
-            bidiGlobalDir == null || bidiGlobalDir.isStaticValue(),
-            "If using bidiGlobalIsRtlCodeSnippet, must also enable shouldGenerateGoogMsgDefs.");
-        try {
-          (new InsertMsgsVisitor(msgBundle, false)).exec(soyTree);
-        } catch (EncounteredPlrselMsgException e) {
-          throw SoySyntaxExceptionUtils.createWithNode(
-              "JS code generation currently only supports plural/select messages when" +
-                  " shouldGenerateGoogMsgDefs is true.",
-              e.msgNode);
-        }
-      }
+      ApiCallScopeUtils.seedSharedParams(apiCallScope, null, bidiGlobalDir);
+
+      // Replace MsgNodes with GoogMsgNodes, whose variables will be defined using message slots.
+      replaceMsgsWithGoogMsgsVisitorProvider.get().exec(soyTree);
+      (new MoveGoogMsgNodesEarlierVisitor()).exec(soyTree);
 
       // Do the code generation.
       optimizeBidiCodeGenVisitorProvider.get().exec(soyTree);
       simplifyVisitor.exec(soyTree);
-      return genJsCodeVisitorProvider.get().exec(soyTree);
+      return genJsCodeVisitorProvider.get().execWithMsgSlots(soyTree);
 
     } finally {
       apiCallScope.exit();
@@ -190,32 +267,105 @@ public class JsSrcMain {
    * @throws IOException If there is an error in opening/writing an output JS file.
    */
   public void genJsFiles(
-      SoyFileSetNode soyTree, SoyJsSrcOptions jsSrcOptions, @Nullable String locale,
+      final SoyFileSetNode soyTree, SoyJsSrcOptions jsSrcOptions, @Nullable String locale,
       @Nullable SoyMsgBundle msgBundle, String outputPathFormat, String inputPathsPrefix)
       throws SoySyntaxException, IOException {
 
-    List<String> jsFileContents = genJsSrc(soyTree, jsSrcOptions, msgBundle);
+    apiCallScope.enter();
+    try {
+      prepareForCodeGen(soyTree, jsSrcOptions, msgBundle);
+
+      // Generate the code for one file at a time, so that it can be written out before the code
+      // for the next file is generated.
+      final GenJsCodeVisitor genJsCodeVisitor = genJsCodeVisitorProvider.get();
+      writeJsFiles(
+          soyTree,
+          new Function<Integer, String>() {
+            @Override public String apply(Integer fileIndex) {
+              SoyFileNode soyFile = soyTree.getChild(fileIndex);
+              List<String> jsFileContents;
+              try {
+                jsFileContents = genJsCodeVisitor.exec(soyFile);
+              } catch (SoySyntaxException sse) {
+                throw sse.associateMetaInfo(null, soyFile.getFilePath(), null);
+              }
+              if (jsFileContents.size() != 1) {
+                throw new AssertionError();
+              }
+              return jsFileContents.get(0);
+            }
+          },
+          locale, outputPathFormat, inputPathsPrefix);
 
-    int numFiles = soyTree.numChildren();
-    if (numFiles != jsFileContents.size()) {
+    } finally {
+      apiCallScope.exit();
+    }
+  }
+
+
+  /**
+   * Generates JS source files for one locale given the JS source code with message slots (from
+   * {@code genJsSrcWithMsgSlots()}), a bundle of translated messages, and information on where to
+   * put the output files. Can be called concurrently for different locales.
+   *
+   * @param soyTree The Soy parse tree that the JS source code was generated for.
+   * @param jsCodeWithMsgSlots The JS source code with message slots, for each JS file.
+   * @param locale The current locale that we're generating JS for.
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @param outputPathFormat The format string defining how to build the output file path
+   *     corresponding to an input file path.
+   * @param inputPathsPrefix The input path prefix, or empty string if none.
+   * @throws IOException If there is an error in opening/writing an output JS file.
+   */
+  public void genJsFiles(
+      SoyFileSetNode soyTree, final List<JsCodeWithMsgSlots> jsCodeWithMsgSlots, String locale,
+      @Nullable final SoyMsgBundle msgBundle, String outputPathFormat, String inputPathsPrefix)
+      throws IOException {
+
+    if (soyTree.numChildren() != jsCodeWithMsgSlots.size()) {
       throw new AssertionError();
     }
 
-    // Maps output paths to indices of inputs that should be emitted to them.
-    Multimap<String, Integer> outputs = Multimaps.newListMultimap(
-        Maps.<String, Collection<Integer>>newLinkedHashMap(),
-        new Supplier<List<Integer>>() {
-          @Override
-          public List<Integer> get() {
-            return Lists.newArrayList();
+    writeJsFiles(
+        soyTree,
+        new Function<Integer, String>() {
+          @Override public String apply(Integer fileIndex) {
+            return jsCodeWithMsgSlots.get(fileIndex).fillInMsgs(msgBundle);
           }
-        });
+        },
+        locale, outputPathFormat, inputPathsPrefix);
+  }
+
+
+  /**
+   * Private helper for {@code genJsFiles()} to write the generated JS source files. The code for
+   * each file is requested just before it's written, and each output file is closed as soon as
+   * the code for all of its input files has been written, so that the code for only one file
+   * needs to be held in memory at a time.
+   *
+   * @param soyTree The Soy parse tree that the JS source code is generated for.
+   * @param genJsFileContents Function that generates the JS source code for the input file with a
+   *     given index.
+   * @param locale The current locale that we're generating JS for, or null if not applicable.
+   * @param outputPathFormat The format string defining how to build the output file path
+   *     corresponding to an input file path.
+   * @param inputPathsPrefix The input path prefix, or empty string if none.
+   * @throws IOException If there is an error in opening/writing an output JS file.
+   */
+  private void writeJsFiles(
+      SoyFileSetNode soyTree, Function<Integer, String> genJsFileContents,
+      @Nullable String locale, String outputPathFormat, String inputPathsPrefix)
+      throws IOException {
+
+    int numFiles = soyTree.numChildren();
 
-    // First, check that the parent directories for all output files exist, and group the output
-    // files by the inputs that go there.
-    // This means that the compiled source from multiple input files might be written to a single
-    // output file, as is the case when there are multiple inputs, and the output format string
-    // contains no wildcards.
+    // First, check that the parent directories for all output files exist, and find the last input
+    // that goes to each output file.
+    // The compiled source from multiple input files might be written to a single output file, as is
+    // the case when there are multiple inputs, and the output format string contains no wildcards.
+    String[] outputFilePaths = new String[numFiles];
+    Map<String, Integer> outputFilePathToLastInputIndex = Maps.newHashMap();
     for (int i = 0; i < numFiles; ++i) {
       SoyFileNode inputFile = soyTree.getChild(i);
       String inputFilePath = inputFile.getFilePath();
@@ -223,26 +373,36 @@ public class JsSrcMain {
           JsSrcUtils.buildFilePath(outputPathFormat, locale, inputFilePath, inputPathsPrefix);
 
       BaseUtils.ensureDirsExistInPath(outputFilePath);
-      outputs.put(outputFilePath, i);
+      outputFilePaths[i] = outputFilePath;
+      outputFilePathToLastInputIndex.put(outputFilePath, i);
     }
 
-    for (String outputFilePath : outputs.keySet()) {
-      Writer out = Files.newWriter(new File(outputFilePath), Charsets.UTF_8);
-      try {
-        boolean isFirst = true;
-        for (int inputFileIndex : outputs.get(outputFilePath)) {
-          if (isFirst) {
-            isFirst = false;
-          } else {
-            // Concatenating JS files is not safe unless we know that the last statement from one
-            // couldn't combine with the isFirst statement of the next.  Inserting a semicolon will
-            // prevent this from happening.
-            out.write("\n;\n");
-          }
-          out.write(jsFileContents.get(inputFileIndex));
+    Map<String, Writer> openOutputs = Maps.newHashMap();
+    try {
+      for (int i = 0; i < numFiles; ++i) {
+        String outputFilePath = outputFilePaths[i];
+        Writer out = openOutputs.get(outputFilePath);
+        if (out == null) {
+          out = Files.newWriter(new File(outputFilePath), Charsets.UTF_8);
+          openOutputs.put(outputFilePath, out);
+        } else {
+          // Concatenating JS files is not safe unless we know that the last statement from one
+          // couldn't combine with the first statement of the next.  Inserting a semicolon will
+          // prevent this from happening.
+          out.write("\n;\n");
         }
-      } finally {
-        out.close();
+        out.write(genJsFileContents.apply(i));
+
+        if (outputFilePathToLastInputIndex.get(outputFilePath) == i) {
+          openOutputs.remove(outputFilePath);
+          out.close();
+        }
+      }
+
+    } finally {
+      // Only reached with open outputs if there was an error.
+      for (Writer out : openOutputs.values()) {
+        Closeables.closeQuietly(out);
       }
     }
   }
@@ -108,9 +108,17 @@ class ReplaceMsgsWithGoogMsgsVisitor extends AbstractSoyNodeVisitor<Void> {
   private void replaceMsgNodeHelper(MsgNode msgNode, IdGenerator nodeIdGen) {
 
     int googMsgNodeId = nodeIdGen.genId();
-    String googMsgVarName = jsSrcOptions.googMsgsAreExternal() ?
-        "MSG_EXTERNAL_" + MsgUtils.computeMsgIdForDualFormat(msgNode) :
-        "MSG_UNNAMED_" + googMsgNodeId;
+    String googMsgVarName;
+    if (!jsSrcOptions.shouldGenerateGoogMsgDefs()) {
+      // The variables are defined using message slots (see JsSrcMain.genJsSrcWithMsgSlots()).
+      // Don't use the "MSG_" prefix, because the Closure Compiler expects such variables to be
+      // defined using goog.getMsg().
+      googMsgVarName = "msg" + googMsgNodeId;
+    } else if (jsSrcOptions.googMsgsAreExternal()) {
+      googMsgVarName = "MSG_EXTERNAL_" + MsgUtils.computeMsgIdForDualFormat(msgNode);
+    } else {
+      googMsgVarName = "MSG_UNNAMED_" + googMsgNodeId;
+    }
 
     GoogMsgNode googMsgNode = new GoogMsgNode(googMsgNodeId, msgNode, googMsgVarName);
     GoogMsgRefNode googMsgRefNode =
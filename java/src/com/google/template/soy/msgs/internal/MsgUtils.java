@@ -16,6 +16,7 @@
 
 package com.google.template.soy.msgs.internal;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.template.soy.internal.base.Pair;
 import com.google.template.soy.msgs.restricted.SoyMsgIdComputer;
@@ -26,8 +27,8 @@ import com.google.template.soy.msgs.restricted.SoyMsgPluralPart;
 import com.google.template.soy.msgs.restricted.SoyMsgPluralRemainderPart;
 import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
 import com.google.template.soy.msgs.restricted.SoyMsgSelectPart;
+import com.google.template.soy.soytree.AbstractMsgNode;
 import com.google.template.soy.soytree.CaseOrDefaultNode;
-import com.google.template.soy.soytree.MsgNode;
 import com.google.template.soy.soytree.MsgPlaceholderNode;
 import com.google.template.soy.soytree.MsgPluralCaseNode;
 import com.google.template.soy.soytree.MsgPluralDefaultNode;
@@ -63,30 +64,59 @@ public class MsgUtils {
    * Builds the list of SoyMsgParts and computes the unique message id for the given MsgNode,
    * assuming a specific dual format.
    *
+   * <p> The parts and id are cached on the node the first time they're computed, and then reused
+   * by all the passes (and renders) that need them.
+   *
    * Note: The field {@code idUsingBracedPhs} in the return value is simply set to -1L.
    *
    * @param msgNode The message parsed from the Soy source.
    * @return A {@code MsgPartsAndIds} object, asssuming a specific dual format, with field
-   *     {@code idUsingBracedPhs} set to -1L.
+   *     {@code idUsingBracedPhs} set to -1L. The parts are immutable.
    */
-  public static MsgPartsAndIds buildMsgPartsAndComputeMsgIdForDualFormat(MsgNode msgNode) {
+  public static MsgPartsAndIds buildMsgPartsAndComputeMsgIdForDualFormat(
+      AbstractMsgNode msgNode) {
 
-    if (msgNode.isPlrselMsg()) {
-      MsgPartsAndIds mpai = buildMsgPartsAndComputeMsgIds(msgNode, true);
-      return new MsgPartsAndIds(mpai.parts, mpai.idUsingBracedPhs, -1L);
-    } else {
-      return buildMsgPartsAndComputeMsgIds(msgNode, false);
+    List<SoyMsgPart> msgParts = msgNode.getCachedMsgParts();
+    if (msgParts == null) {
+      cacheMsgPartsAndIdForDualFormat(msgNode);
+      msgParts = msgNode.getCachedMsgParts();
     }
+    return new MsgPartsAndIds(msgParts, msgNode.getCachedMsgId(), -1L);
   }
 
 
   /**
    * Computes the unique message id for the given MsgNode, assuming a specific dual format.
+   *
+   * <p> The id is cached on the node the first time it's computed.
+   *
    * @param msgNode The message parsed from the Soy source.
    * @return The message id, assuming a specific dual format.
    */
-  public static long computeMsgIdForDualFormat(MsgNode msgNode) {
-    return msgNode.isPlrselMsg() ? computeMsgIdUsingBracedPhs(msgNode) : computeMsgId(msgNode);
+  public static long computeMsgIdForDualFormat(AbstractMsgNode msgNode) {
+
+    if (msgNode.getCachedMsgParts() == null) {
+      cacheMsgPartsAndIdForDualFormat(msgNode);
+    }
+    return msgNode.getCachedMsgId();
+  }
+
+
+  /**
+   * Private helper to build the list of SoyMsgParts and compute the unique message id for the given
+   * MsgNode, assuming a specific dual format, and to cache them on the node.
+   * @param msgNode The message parsed from the Soy source.
+   */
+  private static void cacheMsgPartsAndIdForDualFormat(AbstractMsgNode msgNode) {
+
+    // Note: Harmless if several threads compute the same parts and id concurrently.
+    if (msgNode.isPlrselMsg()) {
+      MsgPartsAndIds mpai = buildMsgPartsAndComputeMsgIds(msgNode, true);
+      msgNode.setCachedMsgPartsAndId(ImmutableList.copyOf(mpai.parts), mpai.idUsingBracedPhs);
+    } else {
+      MsgPartsAndIds mpai = buildMsgPartsAndComputeMsgIds(msgNode, false);
+      msgNode.setCachedMsgPartsAndId(ImmutableList.copyOf(mpai.parts), mpai.id);
+    }
   }
 
 
@@ -123,7 +153,7 @@ public class MsgUtils {
    * @return A {@code MsgPartsAndIds} object.
    */
   private static MsgPartsAndIds buildMsgPartsAndComputeMsgIds(
-      MsgNode msgNode, boolean doComputeMsgIdUsingBracedPhs) {
+      AbstractMsgNode msgNode, boolean doComputeMsgIdUsingBracedPhs) {
 
     List<SoyMsgPart> msgParts = buildMsgParts(msgNode);
     long msgId =
@@ -136,29 +166,6 @@ public class MsgUtils {
   }
 
 
-  /**
-   * Computes the unique message id for the given MsgNode.
-   * @param msgNode The message parsed from the Soy source.
-   * @return The message id.
-   */
-  private static long computeMsgId(MsgNode msgNode) {
-    return SoyMsgIdComputer.computeMsgId(
-        buildMsgParts(msgNode), msgNode.getMeaning(), msgNode.getContentType());
-  }
-
-
-  /**
-   * Computes the alternate unique id for this message. Only use this if you use braced
-   * placeholders.
-   * @param msgNode The message parsed from the Soy source.
-   * @return The alternate message id using braced placeholders.
-   */
-  private static long computeMsgIdUsingBracedPhs(MsgNode msgNode) {
-    return SoyMsgIdComputer.computeMsgIdUsingBracedPhs(
-        buildMsgParts(msgNode), msgNode.getMeaning(), msgNode.getContentType());
-  }
-
-
   // -----------------------------------------------------------------------------------------------
   // Helpers for building the list of message parts.
 
@@ -168,7 +175,7 @@ public class MsgUtils {
    * @param msgNode The message parsed from the Soy source.
    * @return The list of SoyMsgParts.
    */
-  private static List<SoyMsgPart> buildMsgParts(MsgNode msgNode) {
+  private static List<SoyMsgPart> buildMsgParts(AbstractMsgNode msgNode) {
     return buildMsgPartsForChildren(msgNode, msgNode);
   }
 
@@ -180,7 +187,7 @@ public class MsgUtils {
    * @param msgNode The MsgNode containing 'parent'.
    */
   private static List<SoyMsgPart> buildMsgPartsForChildren(
-      BlockNode parent, MsgNode msgNode) {
+      BlockNode parent, AbstractMsgNode msgNode) {
 
     List<SoyMsgPart> msgParts = Lists.newArrayList();
 
@@ -212,7 +219,7 @@ public class MsgUtils {
    * @return A SoyMsgPluralPart.
    */
   private static SoyMsgPluralPart buildMsgPartForPlural(
-      MsgPluralNode msgPluralNode, MsgNode msgNode) {
+      MsgPluralNode msgPluralNode, AbstractMsgNode msgNode) {
 
     // This is the list of the cases.
     List<Pair<SoyMsgPluralCaseSpec, List<SoyMsgPart>>> pluralCases = Lists.newArrayList();
@@ -247,7 +254,7 @@ public class MsgUtils {
    * @return A SoyMsgSelectPart.
    */
   private static SoyMsgSelectPart buildMsgPartForSelect(
-      MsgSelectNode msgSelectNode, MsgNode msgNode) {
+      MsgSelectNode msgSelectNode, AbstractMsgNode msgNode) {
 
     // This is the list of the cases.
     List<Pair<String, List<SoyMsgPart>>> selectCases = Lists.newArrayList();
@@ -55,11 +55,15 @@ public class SoyGeneralOptions implements Cloneable {
   /** Map from compile-time global name to value. */
   private ImmutableMap<String, PrimitiveData> compileTimeGlobals;
 
+  /** The number of threads to parse Soy files with. */
+  private int numParserThreads;
+
 
   public SoyGeneralOptions() {
     allowExternalCalls = null;
     cssHandlingScheme = CssHandlingScheme.LITERAL;
     compileTimeGlobals = null;
+    numParserThreads = 1;
   }
 
 
@@ -99,6 +103,25 @@ public class SoyGeneralOptions implements Cloneable {
   }
 
 
+  /**
+   * Sets the number of threads to parse Soy files with.
+   *
+   * @param numParserThreads The number of threads to set (must be positive).
+   */
+  public void setNumParserThreads(int numParserThreads) {
+    Preconditions.checkArgument(numParserThreads >= 1);
+    this.numParserThreads = numParserThreads;
+  }
+
+
+  /**
+   * Returns the number of threads to parse Soy files with.
+   */
+  public int getNumParserThreads() {
+    return numParserThreads;
+  }
+
+
   /**
    * Sets the map from compile-time global name to value.
    *
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.shared.restricted;
+
+import com.google.template.soy.data.SanitizedContent.ContentKind;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Interface for a Soy print directive (taking no arguments) that can be applied to output as it is
+ * being rendered, instead of to a fully rendered string. Used when rendering calls whose output
+ * needs escaping, so that the callee's output can be streamed to the final output.
+ *
+ * <p> Writing text to the returned Appendable must produce the same output as applying the
+ * directive to the whole text (with the given content kind) and appending the result.
+ *
+ * <p> Important: This may only be used in implementing print directive plugins.
+ */
+public interface SoyStreamingPrintDirective extends SoyPrintDirective {
+
+
+  /**
+   * Wraps the given output so that text appended to the result has this directive applied to it
+   * before being appended to the given output.
+   *
+   * @param out The output to append the result of applying this directive to.
+   * @param inputContentKind The content kind of the input, or null if the input is not sanitized
+   *     content.
+   * @return An Appendable that applies this directive to text appended to it (or {@code out}
+   *     itself if this directive leaves input of the given content kind unchanged), or null if this
+   *     directive can't be applied in a streaming fashion to input of the given content kind.
+   */
+  @Nullable public Appendable wrapForStreaming(
+      Appendable out, @Nullable ContentKind inputContentKind);
+
+
+  /**
+   * Gets the content kind of the output of this directive for input of the given content kind,
+   * without wrapping any output. Used to find the input content kind of each directive in a chain
+   * before wrapping the output with the chain.
+   *
+   * @param inputContentKind The content kind of the input, or null if the input is not sanitized
+   *     content.
+   * @return The given content kind if this directive leaves input of that content kind unchanged
+   *     (i.e. {@link #wrapForStreaming} returns {@code out} itself), else null.
+   */
+  @Nullable public ContentKind getStreamingOutputContentKind(
+      @Nullable ContentKind inputContentKind);
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.template.soy.exprtree.AbstractExprNodeVisitor;
+import com.google.template.soy.exprtree.DataRefNode;
+import com.google.template.soy.exprtree.ExprNode;
+import com.google.template.soy.exprtree.ExprNode.ParentExprNode;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.ExprUnion;
+import com.google.template.soy.soytree.ForNode;
+import com.google.template.soy.soytree.ForeachNonemptyNode;
+import com.google.template.soy.soytree.LetNode;
+import com.google.template.soy.soytree.SoyFileNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.BlockNode;
+import com.google.template.soy.soytree.SoyNode.ExprHolderNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+import com.google.template.soy.soytree.TemplateNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+
+/**
+ * Visitor for assigning slots in a flat per-template array to local vars, so that local vars can
+ * be stored and retrieved by index during rendering instead of by name in a stack of maps.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ *
+ * <p> This visitor must be called on a SoyFileSetNode, SoyFileNode, or TemplateNode (i.e. template
+ * or ancestor of a template).
+ *
+ * <p> Each 'let' var and 'for' loop var is assigned one slot. Each 'foreach' loop var is assigned
+ * three consecutive slots: the loop var, the current index, and the last index. Slots are never
+ * reused within a template. DataRefNodes referencing local vars are marked with the slot of the
+ * local var they reference (see {@link DataRefNode#setLocalVarSlot}), and each template is marked
+ * with the number of slots it needs (see {@link TemplateNode#setNumLocalVarSlots}).
+ *
+ * <p> Note: Expressions not in V1 syntax will not have expression trees, so this pass doesn't
+ * handle them.
+ */
+public class AssignLocalVarSlotsVisitor extends AbstractSoyNodeVisitor<Void> {
+
+
+  /** Stack of frames mapping the local vars currently defined to their slots (during pass). */
+  private Deque<Map<String, Integer>> localVarFrames;
+
+  /** The number of slots assigned so far in the current template (during pass). */
+  private int numLocalVarSlots;
+
+  /** The associated expr visitor instance. */
+  private AssignLocalVarSlotsInExprVisitor assignLocalVarSlotsInExprVisitor;
+
+
+  @Override public Void exec(SoyNode node) {
+
+    Preconditions.checkArgument(
+        node instanceof SoyFileSetNode || node instanceof SoyFileNode ||
+        node instanceof TemplateNode);
+
+    return super.exec(node);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Implementations for specific nodes.
+
+
+  @Override protected void visitTemplateNode(TemplateNode node) {
+
+    localVarFrames = new ArrayDeque<Map<String, Integer>>();
+    numLocalVarSlots = 0;
+    assignLocalVarSlotsInExprVisitor = new AssignLocalVarSlotsInExprVisitor(localVarFrames);
+
+    visitSoyNode(node);
+
+    node.setNumLocalVarSlots(numLocalVarSlots);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Fallback implementation.
+
+
+  @Override protected void visitSoyNode(SoyNode node) {
+
+    if (node instanceof ExprHolderNode) {
+      visitExprHolderHelper((ExprHolderNode) node);
+    }
+
+    if (node instanceof LetNode) {
+      LetNode nodeAsLet = (LetNode) node;
+      nodeAsLet.setLocalVarSlot(numLocalVarSlots);
+      localVarFrames.peek().put(nodeAsLet.getVarName(), numLocalVarSlots);
+      numLocalVarSlots += 1;
+    }
+
+    if (node instanceof ParentSoyNode<?>) {
+
+      if (node instanceof ForeachNonemptyNode) {
+        ForeachNonemptyNode nodeAsForeachNonempty = (ForeachNonemptyNode) node;
+        nodeAsForeachNonempty.setLocalVarSlot(numLocalVarSlots);
+        visitLocalVarBlockHelper(nodeAsForeachNonempty, nodeAsForeachNonempty.getVarName(), 3);
+
+      } else if (node instanceof ForNode) {
+        ForNode nodeAsFor = (ForNode) node;
+        nodeAsFor.setLocalVarSlot(numLocalVarSlots);
+        visitLocalVarBlockHelper(nodeAsFor, nodeAsFor.getVarName(), 1);
+
+      } else if (node instanceof BlockNode) {
+        localVarFrames.push(Maps.<String, Integer>newHashMap());
+        visitChildren((BlockNode) node);
+        localVarFrames.pop();
+
+      } else {
+        visitChildren((ParentSoyNode<?>) node);
+      }
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Helper for visiting a block that defines a local var for its children.
+   * @param node The block to visit.
+   * @param varName The name of the local var defined by the block.
+   * @param numSlots The number of slots to assign to the local var.
+   */
+  private void visitLocalVarBlockHelper(BlockNode node, String varName, int numSlots) {
+
+    Map<String, Integer> newLocalVarFrame = Maps.newHashMap();
+    newLocalVarFrame.put(varName, numLocalVarSlots);
+    numLocalVarSlots += numSlots;
+
+    localVarFrames.push(newLocalVarFrame);
+    visitChildren(node);
+    localVarFrames.pop();
+  }
+
+
+  /**
+   * Helper for visiting a node that holds one or more expressions.
+   * @param exprHolder The node holding the expressions to be visited.
+   */
+  private void visitExprHolderHelper(ExprHolderNode exprHolder) {
+    for (ExprUnion exprUnion : exprHolder.getAllExprUnions()) {
+      if (exprUnion.getExpr() != null) {
+        assignLocalVarSlotsInExprVisitor.exec(exprUnion.getExpr());
+      }
+    }
+  }
+
+
+  /**
+   * Helper visitor to mark the DataRefNodes within an expression with the slots of the local vars
+   * they reference.
+   */
+  private static class AssignLocalVarSlotsInExprVisitor extends AbstractExprNodeVisitor<Void> {
+
+    /** The stack of frames mapping the local vars currently defined to their slots. */
+    private final Deque<Map<String, Integer>> localVarFrames;
+
+    /**
+     * @param localVarFrames The stack of frames mapping the local vars currently defined to their
+     *     slots.
+     */
+    public AssignLocalVarSlotsInExprVisitor(Deque<Map<String, Integer>> localVarFrames) {
+      this.localVarFrames = localVarFrames;
+    }
+
+    // ------ Implementations for specific nodes. ------
+
+    @Override protected void visitDataRefNode(DataRefNode node) {
+
+      // Find the slot of the innermost local var with the same name as the first key, if any.
+      int localVarSlot = -1;
+      if (!node.isIjDataRef()) {
+        String firstKey = node.getFirstKey();
+        for (Map<String, Integer> localVarFrame : localVarFrames) {
+          Integer slot = localVarFrame.get(firstKey);
+          if (slot != null) {
+            localVarSlot = slot;
+            break;
+          }
+        }
+      }
+
+      node.setLocalVarSlot(localVarSlot);
+
+      // Important: Must visit children since children may be expressions that contain data refs.
+      visitChildren(node);
+    }
+
+    // ------ Fallback implementation. ------
+
+    @Override protected void visitExprNode(ExprNode node) {
+      if (node instanceof ParentExprNode) {
+        visitChildren((ParentExprNode) node);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,666 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.template.soy.exprtree.AbstractExprNodeVisitor;
+import com.google.template.soy.exprtree.DataRefAccessExprNode;
+import com.google.template.soy.exprtree.DataRefAccessKeyNode;
+import com.google.template.soy.exprtree.DataRefNode;
+import com.google.template.soy.exprtree.ExprNode;
+import com.google.template.soy.exprtree.ExprNode.ParentExprNode;
+import com.google.template.soy.exprtree.ExprRootNode;
+import com.google.template.soy.exprtree.FunctionNode;
+import com.google.template.soy.exprtree.StringNode;
+import com.google.template.soy.sharedpasses.FindUsedDataPathsVisitor.UsedDataPathsInfo;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.CallBasicNode;
+import com.google.template.soy.soytree.CallDelegateNode;
+import com.google.template.soy.soytree.CallNode;
+import com.google.template.soy.soytree.CallParamNode;
+import com.google.template.soy.soytree.CallParamValueNode;
+import com.google.template.soy.soytree.ExprUnion;
+import com.google.template.soy.soytree.ForeachNode;
+import com.google.template.soy.soytree.ForeachNonemptyNode;
+import com.google.template.soy.soytree.LetContentNode;
+import com.google.template.soy.soytree.LetValueNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.BlockNode;
+import com.google.template.soy.soytree.SoyNode.ExprHolderNode;
+import com.google.template.soy.soytree.SoyNode.LocalVarBlockNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+import com.google.template.soy.soytree.TemplateBasicNode;
+import com.google.template.soy.soytree.TemplateNode;
+import com.google.template.soy.soytree.TemplateRegistry;
+import com.google.template.soy.soytree.TemplateRegistry.DelegateTemplateDivision;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Visitor for finding the data paths that a given template (and its transitive callees) may read
+ * from its params.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ *
+ * <p> {@link #exec} should be called on a {@code TemplateNode}.
+ *
+ * <p> Data paths are relative to the params of the template, with list indices and dynamic keys
+ * replaced by "[]", e.g. "user.name" for {@code $user.name} or "items[].price" for
+ * {@code $item.price} in {@code {foreach $item in $items}}. Data read through 'let' variables,
+ * 'foreach' loop variables, call params and the 'data' of calls is attributed to the data path
+ * that the variable or the callee's param was set from. Injected data is not included (see
+ * {@link FindIjParamsVisitor}).
+ *
+ * <p> Each data path in the result is a value that may be used as a whole (e.g. printed, compared,
+ * or passed to a function). The prefixes of the data paths are only used to reach these values, so
+ * a server can skip computing any data that's not at or under one of the data paths. The analysis
+ * is conservative. In particular, the data passed to a recursive call (i.e. a call to a template
+ * that is already being analyzed) is treated as used as a whole, since recursive data structures
+ * would have infinitely many data paths. Likewise, the data passed to a call that may go to a
+ * template outside the Soy tree (an external basic call, or any delegate call) is treated as used
+ * as a whole. If all the data is passed to such a call, then the result includes
+ * {@link #WHOLE_DATA_PATH}, meaning that the whole data of the template may be used.
+ *
+ * <p> If you need to call this visitor for multiple templates in the same tree (without modifying
+ * the tree), it's more efficient to reuse the same instance of this visitor because we memoize
+ * results from previous calls to exec.
+ */
+public class FindUsedDataPathsVisitor extends AbstractSoyNodeVisitor<UsedDataPathsInfo> {
+
+
+  /** The data path of the whole data of a template (i.e. all of its params). */
+  public static final String WHOLE_DATA_PATH = "";
+
+
+  /**
+   * Return value for {@code FindUsedDataPathsVisitor}.
+   */
+  public static class UsedDataPathsInfo {
+
+    /** Sorted set of the data paths that may be read. */
+    public final ImmutableSortedSet<String> dataPaths;
+
+    /** Whether the template (that the pass was run on) may read data paths in external basic
+     *  calls. */
+    public final boolean mayHaveDataPathsInExternalCalls;
+
+    /** Whether the template (that the pass was run on) may read data paths in external delegate
+     *  calls. */
+    public final boolean mayHaveDataPathsInExternalDelCalls;
+
+    /**
+     * @param dataPaths Sorted set of the data paths that may be read.
+     * @param mayHaveDataPathsInExternalCalls Whether the template (that the pass was run on) may
+     *     read data paths in external basic calls.
+     * @param mayHaveDataPathsInExternalDelCalls Whether the template (that the pass was run on)
+     *     may read data paths in external delegate calls.
+     */
+    public UsedDataPathsInfo(
+        ImmutableSortedSet<String> dataPaths, boolean mayHaveDataPathsInExternalCalls,
+        boolean mayHaveDataPathsInExternalDelCalls) {
+      this.dataPaths = dataPaths;
+      this.mayHaveDataPathsInExternalCalls = mayHaveDataPathsInExternalCalls;
+      this.mayHaveDataPathsInExternalDelCalls = mayHaveDataPathsInExternalDelCalls;
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Classes for info collected about a specific template (not including its callees).
+
+
+  /**
+   * Info about a local variable in scope.
+   */
+  private static class LocalVar {
+
+    /** The data path that the variable was set from, or null if it wasn't set from a data path. */
+    public final String dataPath;
+
+    /** For 'foreach' loop variables, the data path of the list, which is read as a whole if the
+     *  loop variable is never read. Else null. */
+    public final String listDataPath;
+
+    /** Whether the variable has been read. */
+    public boolean isUsed;
+
+    public LocalVar(@Nullable String dataPath, @Nullable String listDataPath) {
+      this.dataPath = dataPath;
+      this.listDataPath = listDataPath;
+      this.isUsed = false;
+    }
+  }
+
+
+  /**
+   * Info about a call, for mapping the data paths read by the callee to data paths of the caller.
+   */
+  private static class CallInfo {
+
+    /** The call. */
+    public final CallNode callNode;
+
+    /** The prefix to add to a callee data path that isn't an explicit param of the call, i.e. ""
+     *  if passing all data, the data path of the data plus "." if passing some data, or null if
+     *  not passing data or if the data isn't from a data path. */
+    public final String dataPathPrefix;
+
+    /** Map from the key of each explicit param of the call to the data path that the param was
+     *  set from, or to null if the param wasn't set from a data path. */
+    public final Map<String, String> paramDataPaths;
+
+    public CallInfo(
+        CallNode callNode, @Nullable String dataPathPrefix, Map<String, String> paramDataPaths) {
+      this.callNode = callNode;
+      this.dataPathPrefix = dataPathPrefix;
+      this.paramDataPaths = paramDataPaths;
+    }
+
+    /**
+     * Maps a data path read by the callee to the corresponding data path of the caller.
+     * @param calleeDataPath A data path relative to the callee's params.
+     * @return The data path relative to the caller's params, or null if the callee's data at that
+     *     path doesn't come from the caller's params.
+     */
+    public String mapCalleeDataPath(String calleeDataPath) {
+
+      int keyEnd = 0;
+      while (keyEnd < calleeDataPath.length() &&
+             calleeDataPath.charAt(keyEnd) != '.' && calleeDataPath.charAt(keyEnd) != '[') {
+        keyEnd++;
+      }
+      String key = calleeDataPath.substring(0, keyEnd);
+
+      if (paramDataPaths.containsKey(key)) {
+        String paramDataPath = paramDataPaths.get(key);
+        return (paramDataPath != null) ? paramDataPath + calleeDataPath.substring(keyEnd) : null;
+      }
+      return (dataPathPrefix != null) ? dataPathPrefix + calleeDataPath : null;
+    }
+
+    /**
+     * Adds the data paths passed to the callee to the given set, i.e. treats the data passed as
+     * used as a whole.
+     * @param dataPaths The set to add to.
+     * @param doIncludeAllData Whether to add {@link #WHOLE_DATA_PATH} if the call passes all data.
+     *     Should be false for recursive calls, whose reads of the data are already accounted for.
+     */
+    public void addPassedDataPaths(Set<String> dataPaths, boolean doIncludeAllData) {
+
+      if (dataPathPrefix != null) {
+        if (dataPathPrefix.length() > 0) {
+          dataPaths.add(dataPathPrefix.substring(0, dataPathPrefix.length() - 1));
+        } else if (doIncludeAllData) {
+          dataPaths.add(WHOLE_DATA_PATH);
+        }
+      }
+      for (String paramDataPath : paramDataPaths.values()) {
+        if (paramDataPath != null) {
+          dataPaths.add(paramDataPath);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Info collected about a specific template (not including its callees).
+   */
+  private static class LocalInfo {
+
+    /** The data paths read by the template itself. */
+    public final Set<String> dataPaths = Sets.newHashSet();
+
+    /** The calls in the template. */
+    public final List<CallInfo> calls = Lists.newArrayList();
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // FindUsedDataPathsVisitor body.
+
+
+  /** Registry of all templates in the Soy tree. */
+  private TemplateRegistry templateRegistry;
+
+  /** Map from template node to finished info found in this or a previous pass. */
+  private final Map<TemplateNode, UsedDataPathsInfo> templateToFinishedInfoMap;
+
+  /** Map from template node to local info found in this or a previous pass. */
+  private final Map<TemplateNode, LocalInfo> templateToLocalInfoMap;
+
+  /** The templates whose finished info we're in the midst of computing, in call order. */
+  private List<TemplateNode> activeTemplates;
+
+  /** The lowest index in activeTemplates of a template that was skipped as a recursive callee
+   *  while computing the info of the current template, or Integer.MAX_VALUE if none. */
+  private int minRecursiveCalleeIndex;
+
+  /** Local info for the current template whose body we're visiting. */
+  private LocalInfo currLocalInfo;
+
+  /** Stack of frames of local variables in scope (map from variable name to info). */
+  private Deque<Map<String, LocalVar>> localVarFrames;
+
+  /** Visitor for finding the data paths read by an expression. */
+  private final FindUsedDataPathsInExprVisitor exprVisitor;
+
+
+  /**
+   * @param templateRegistry Map from template name to TemplateNode to use during the pass.
+   */
+  public FindUsedDataPathsVisitor(@Nullable TemplateRegistry templateRegistry) {
+    this.templateRegistry = templateRegistry;
+    this.templateToFinishedInfoMap = Maps.newHashMap();
+    this.templateToLocalInfoMap = Maps.newHashMap();
+    this.exprVisitor = new FindUsedDataPathsInExprVisitor();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> Note: This method is not thread-safe.
+   */
+  @Override public UsedDataPathsInfo exec(SoyNode node) {
+
+    Preconditions.checkArgument(node instanceof TemplateNode);
+    TemplateNode nodeAsTemplate = (TemplateNode) node;
+
+    if (templateRegistry == null) {
+      SoyFileSetNode soyTree = nodeAsTemplate.getParent().getParent();
+      templateRegistry = new TemplateRegistry(soyTree);
+    }
+
+    activeTemplates = Lists.newArrayList();
+    minRecursiveCalleeIndex = Integer.MAX_VALUE;
+    UsedDataPathsInfo info = getFinishedInfo(nodeAsTemplate);
+    if (!activeTemplates.isEmpty()) {
+      throw new AssertionError();
+    }
+    return info;
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Implementations for specific nodes.
+
+
+  @Override protected void visitTemplateNode(TemplateNode node) {
+
+    currLocalInfo = new LocalInfo();
+    localVarFrames = new ArrayDeque<Map<String, LocalVar>>();
+    visitBlockHelper(node, null, null);
+  }
+
+
+  @Override protected void visitLetValueNode(LetValueNode node) {
+    localVarFrames.peek().put(
+        node.getVarName(), new LocalVar(getAliasedDataPath(node.getValueExpr()), null));
+  }
+
+
+  @Override protected void visitLetContentNode(LetContentNode node) {
+    visitBlockHelper(node, null, null);
+    localVarFrames.peek().put(node.getVarName(), new LocalVar(null, null));
+  }
+
+
+  @Override protected void visitForeachNode(ForeachNode node) {
+
+    String listDataPath = getAliasedDataPath(node.getExpr());
+    for (SoyNode child : node.getChildren()) {
+      if (child instanceof ForeachNonemptyNode) {
+        ForeachNonemptyNode nonemptyNode = (ForeachNonemptyNode) child;
+        LocalVar loopVar =
+            new LocalVar((listDataPath != null) ? listDataPath + "[]" : null, listDataPath);
+        visitBlockHelper(nonemptyNode, nonemptyNode.getVarName(), loopVar);
+      } else {
+        visit(child);
+      }
+    }
+  }
+
+
+  @Override protected void visitCallNode(CallNode node) {
+
+    String dataPathPrefix;
+    if (node.isPassingAllData()) {
+      dataPathPrefix = "";
+    } else if (node.isPassingData()) {
+      String dataPath = getAliasedDataPath(node.getDataExpr());
+      dataPathPrefix = (dataPath != null) ? dataPath + "." : null;
+    } else {
+      dataPathPrefix = null;
+    }
+
+    Map<String, String> paramDataPaths = Maps.newHashMap();
+    for (CallParamNode param : node.getChildren()) {
+      if (param instanceof CallParamValueNode) {
+        paramDataPaths.put(
+            param.getKey(),
+            getAliasedDataPath(((CallParamValueNode) param).getValueExprUnion().getExpr()));
+      } else {
+        paramDataPaths.put(param.getKey(), null);
+        visit(param);
+      }
+    }
+
+    currLocalInfo.calls.add(new CallInfo(node, dataPathPrefix, paramDataPaths));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Fallback implementation.
+
+
+  @Override protected void visitSoyNode(SoyNode node) {
+
+    if (node instanceof ExprHolderNode) {
+      for (ExprUnion exprUnion : ((ExprHolderNode) node).getAllExprUnions()) {
+        if (exprUnion.getExpr() != null) {
+          exprVisitor.exec(exprUnion.getExpr());
+        }
+      }
+    }
+
+    if (node instanceof LocalVarBlockNode) {
+      // E.g. a 'for' loop, whose variable isn't from the data.
+      LocalVarBlockNode nodeAsLocalVarBlock = (LocalVarBlockNode) node;
+      visitBlockHelper(
+          nodeAsLocalVarBlock, nodeAsLocalVarBlock.getVarName(), new LocalVar(null, null));
+    } else if (node instanceof BlockNode) {
+      visitBlockHelper((BlockNode) node, null, null);
+    } else if (node instanceof ParentSoyNode<?>) {
+      visitChildren((ParentSoyNode<?>) node);
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Private helper to get the finished info for a template, computing it if necessary.
+   * @param template The template to get the finished info for.
+   * @return The finished info.
+   */
+  private UsedDataPathsInfo getFinishedInfo(TemplateNode template) {
+
+    UsedDataPathsInfo finishedInfo = templateToFinishedInfoMap.get(template);
+    if (finishedInfo != null) {
+      return finishedInfo;
+    }
+
+    LocalInfo localInfo = templateToLocalInfoMap.get(template);
+    if (localInfo == null) {
+      visit(template);
+      localInfo = currLocalInfo;
+      currLocalInfo = null;
+      templateToLocalInfoMap.put(template, localInfo);
+    }
+
+    int activeIndex = activeTemplates.size();
+    activeTemplates.add(template);
+    int prevMinRecursiveCalleeIndex = minRecursiveCalleeIndex;
+    minRecursiveCalleeIndex = Integer.MAX_VALUE;
+
+    Set<String> dataPaths = Sets.newHashSet(localInfo.dataPaths);
+    boolean mayHaveDataPathsInExternalCalls = false;
+    boolean mayHaveDataPathsInExternalDelCalls = false;
+
+    for (CallInfo call : localInfo.calls) {
+
+      List<TemplateNode> callees;
+      if (call.callNode instanceof CallBasicNode) {
+        TemplateBasicNode callee =
+            templateRegistry.getBasicTemplate(((CallBasicNode) call.callNode).getCalleeName());
+        // Note the template may be null because we allow calls to external templates not within
+        // this Soy file set. The data passed to it is treated as used as a whole.
+        if (callee == null) {
+          mayHaveDataPathsInExternalCalls = true;
+          call.addPassedDataPaths(dataPaths, true);
+          continue;
+        }
+        callees = ImmutableList.<TemplateNode>of(callee);
+
+      } else {
+        // The current Soy file bundle may not contain all the delegate implementations that could
+        // potentially be used, so the data passed is treated as used as a whole.
+        mayHaveDataPathsInExternalDelCalls = true;
+        call.addPassedDataPaths(dataPaths, true);
+        callees = Lists.newArrayList();
+        Set<DelegateTemplateDivision> delTemplateDivisions =
+            templateRegistry.getDelTemplateDivisionsForAllVariants(
+                ((CallDelegateNode) call.callNode).getDelCalleeName());
+        if (delTemplateDivisions != null) {
+          for (DelegateTemplateDivision division : delTemplateDivisions) {
+            callees.addAll(division.delPackageNameToDelTemplateMap.values());
+          }
+        }
+      }
+
+      for (TemplateNode callee : callees) {
+        int calleeActiveIndex = activeTemplates.indexOf(callee);
+        if (calleeActiveIndex >= 0) {
+          // Recursive call. The data passed to it is treated as used as a whole.
+          minRecursiveCalleeIndex = Math.min(minRecursiveCalleeIndex, calleeActiveIndex);
+          call.addPassedDataPaths(dataPaths, false);
+          continue;
+        }
+        UsedDataPathsInfo calleeInfo = getFinishedInfo(callee);
+        mayHaveDataPathsInExternalCalls |= calleeInfo.mayHaveDataPathsInExternalCalls;
+        mayHaveDataPathsInExternalDelCalls |= calleeInfo.mayHaveDataPathsInExternalDelCalls;
+        for (String calleeDataPath : calleeInfo.dataPaths) {
+          if (calleeDataPath.equals(WHOLE_DATA_PATH)) {
+            // The callee may use its whole data, i.e. all the data passed to it.
+            call.addPassedDataPaths(dataPaths, true);
+            continue;
+          }
+          String dataPath = call.mapCalleeDataPath(calleeDataPath);
+          if (dataPath != null) {
+            dataPaths.add(dataPath);
+          }
+        }
+      }
+    }
+
+    activeTemplates.remove(activeIndex);
+    finishedInfo = new UsedDataPathsInfo(
+        ImmutableSortedSet.copyOf(dataPaths), mayHaveDataPathsInExternalCalls,
+        mayHaveDataPathsInExternalDelCalls);
+
+    if (minRecursiveCalleeIndex >= activeIndex) {
+      // Any recursive calls below this template only go back to this template, so the info doesn't
+      // depend on which template the pass was run on.
+      templateToFinishedInfoMap.put(template, finishedInfo);
+      minRecursiveCalleeIndex = prevMinRecursiveCalleeIndex;
+    } else {
+      // The info is missing the data paths of a template that's further up the call path, so it
+      // must be recomputed when needed for other passes.
+      minRecursiveCalleeIndex = Math.min(prevMinRecursiveCalleeIndex, minRecursiveCalleeIndex);
+    }
+
+    return finishedInfo;
+  }
+
+
+  /**
+   * Private helper to visit the children of a block in a new frame of local variables.
+   * @param node The block to visit.
+   * @param varName The name of the local variable defined by the block, or null if none.
+   * @param localVar The info for the local variable defined by the block, or null if none.
+   */
+  private void visitBlockHelper(
+      ParentSoyNode<?> node, @Nullable String varName, @Nullable LocalVar localVar) {
+
+    Map<String, LocalVar> localVarFrame = Maps.newHashMap();
+    if (varName != null) {
+      localVarFrame.put(varName, localVar);
+    }
+    localVarFrames.push(localVarFrame);
+    visitChildren(node);
+    localVarFrames.pop();
+
+    for (LocalVar var : localVarFrame.values()) {
+      if (!var.isUsed && var.listDataPath != null) {
+        // The loop variable isn't read, but the loop still depends on the list.
+        currLocalInfo.dataPaths.add(var.listDataPath);
+      }
+    }
+  }
+
+
+  /**
+   * Private helper to get the data path that an expression is an alias of (i.e. if the expression
+   * is just a data ref), for an expression whose value is assigned to a variable or param.
+   *
+   * <p> If the expression is an alias, then its own data path is not recorded (the data paths read
+   * through the variable or param are recorded instead). Other data read by the expression (e.g.
+   * the data refs in {@code $foo[$bar]} or in {@code $foo + $bar}) is recorded as usual.
+   *
+   * @param expr The expression, or null for a V1 expression.
+   * @return The data path that the expression is an alias of, or null if it's not an alias of a
+   *     data path.
+   */
+  private String getAliasedDataPath(@Nullable ExprRootNode<?> expr) {
+
+    if (expr == null) {
+      return null;
+    }
+
+    ExprNode exprChild = expr.getChild(0);
+    if (exprChild instanceof DataRefNode) {
+      DataRefNode dataRef = (DataRefNode) exprChild;
+      for (ExprNode accessNode : dataRef.getChildren()) {
+        exprVisitor.exec(accessNode);
+      }
+      return getDataPath(dataRef);
+    }
+
+    exprVisitor.exec(expr);
+    return null;
+  }
+
+
+  /**
+   * Private helper to get the data path of a data ref.
+   * @param dataRef The data ref.
+   * @return The data path, or null if the data ref doesn't read from the params (e.g. it reads
+   *     injected data, or a local var that wasn't set from a data path).
+   */
+  private String getDataPath(DataRefNode dataRef) {
+
+    if (dataRef.isIjDataRef()) {
+      return null;
+    }
+
+    StringBuilder dataPath = new StringBuilder();
+    String firstKey = dataRef.getFirstKey();
+    LocalVar localVar = getLocalVar(firstKey);
+    if (localVar != null) {
+      localVar.isUsed = true;
+      if (localVar.dataPath == null) {
+        return null;
+      }
+      dataPath.append(localVar.dataPath);
+    } else {
+      dataPath.append(firstKey);
+    }
+
+    // Note: Same format as the data paths recorded when tracing renders (see EvalVisitor).
+    for (ExprNode child : dataRef.getChildren()) {
+      if (child.getKind() == ExprNode.Kind.DATA_REF_ACCESS_KEY_NODE) {
+        dataPath.append('.').append(((DataRefAccessKeyNode) child).getKey());
+      } else if (child.getKind() == ExprNode.Kind.DATA_REF_ACCESS_EXPR_NODE &&
+                 ((DataRefAccessExprNode) child).getChild(0) instanceof StringNode) {
+        // A constant key, e.g. $foo['bar'].
+        dataPath.append('.').append(
+            ((StringNode) ((DataRefAccessExprNode) child).getChild(0)).getValue());
+      } else {
+        dataPath.append("[]");
+      }
+    }
+    return dataPath.toString();
+  }
+
+
+  /**
+   * Private helper to get the info for a local variable in scope.
+   * @param varName The name of the variable.
+   * @return The info for the variable, or null if there's no local variable with the given name
+   *     in scope (i.e. the name refers to a param).
+   */
+  private LocalVar getLocalVar(String varName) {
+
+    for (Map<String, LocalVar> localVarFrame : localVarFrames) {
+      LocalVar localVar = localVarFrame.get(varName);
+      if (localVar != null) {
+        return localVar;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Private helper visitor for finding the data paths read by an expression.
+   */
+  private class FindUsedDataPathsInExprVisitor extends AbstractExprNodeVisitor<Void> {
+
+    @Override protected void visitDataRefNode(DataRefNode node) {
+      String dataPath = getDataPath(node);
+      if (dataPath != null) {
+        currLocalInfo.dataPaths.add(dataPath);
+      }
+      visitChildren(node);
+    }
+
+    @Override protected void visitFunctionNode(FunctionNode node) {
+      String functionName = node.getFunctionName();
+      if ((functionName.equals("isFirst") || functionName.equals("isLast") ||
+           functionName.equals("index")) &&
+          node.numChildren() == 1 && node.getChild(0) instanceof DataRefNode &&
+          ((DataRefNode) node.getChild(0)).numChildren() == 0) {
+        // Only uses the position of a 'foreach' loop variable, not its value.
+        return;
+      }
+      visitChildren(node);
+    }
+
+    @Override protected void visitExprNode(ExprNode node) {
+      if (node instanceof ParentExprNode) {
+        visitChildren((ParentExprNode) node);
+      }
+    }
+  }
+
+}
@@ -30,6 +30,8 @@ import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 
 /**
  * Visitor for preevaluating expressions in which all data values known at compile time.
@@ -50,12 +52,14 @@ class PreevalVisitor extends EvalVisitor {
    * @param soyJavaRuntimeFunctionsMap Map of all SoyJavaRuntimeFunctions (name to function).
    * @param data The current template data.
    * @param env The current environment.
+   * @param localVarSlots The current template's local var slots, or null if the template's local
+   *     vars are kept in the environment.
    */
   PreevalVisitor(
       Map<String, SoyJavaRuntimeFunction> soyJavaRuntimeFunctionsMap, SoyMapData data,
-      Deque<Map<String, SoyData>> env) {
+      Deque<Map<String, SoyData>> env, @Nullable SoyData[] localVarSlots) {
 
-    super(soyJavaRuntimeFunctionsMap, data, null, env);
+    super(soyJavaRuntimeFunctionsMap, data, null, env, localVarSlots);
   }
 
 
@@ -56,18 +56,19 @@ public class PreevalVisitorFactory implements EvalVisitorFactory {
 
   public PreevalVisitor create(SoyMapData data, Deque<Map<String, SoyData>> env) {
 
-    return new PreevalVisitor(soyJavaRuntimeFunctionsMap, data, env);
+    return new PreevalVisitor(soyJavaRuntimeFunctionsMap, data, env, null);
   }
 
 
   @Override
   public PreevalVisitor create(
-      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env) {
+      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+      @Nullable SoyData[] localVarSlots) {
 
     // PreevalVisitor cannot handle ijData references.
     Preconditions.checkArgument(ijData == null);
 
-    return new PreevalVisitor(soyJavaRuntimeFunctionsMap, data, env);
+    return new PreevalVisitor(soyJavaRuntimeFunctionsMap, data, env, localVarSlots);
   }
 
 }
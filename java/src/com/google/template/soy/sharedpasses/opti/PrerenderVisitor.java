@@ -67,7 +67,7 @@ class PrerenderVisitor extends RenderVisitor {
 
     super(
         soyJavaRuntimeDirectivesMap, preevalVisitorFactory, outputBuf,
-        templateRegistry, data, null, env, null, null, null);
+        templateRegistry, data, null, env, null, null, null, null);
   }
 
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses.render;
+
+
+/**
+ * Receives the data paths read by the templates during a traced render (see
+ * {@link RenderVisitor#setDataAccessRecorder}).
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ */
+public interface DataAccessRecorder {
+
+
+  /**
+   * Records that a template read a data path.
+   *
+   * @param templateName The full name of the template that read the data.
+   * @param dataPath The data path that was read, relative to the template's params, with list
+   *     indices and dynamic keys replaced by "[]" (e.g. "foo.bar[].baz").
+   */
+  public void recordDataAccess(String templateName, String dataPath);
+
+}
@@ -16,6 +16,7 @@
 
 package com.google.template.soy.sharedpasses.render;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyListData;
@@ -29,11 +30,13 @@ import com.google.template.soy.data.restricted.StringData;
 import com.google.template.soy.data.restricted.UndefinedData;
 import com.google.template.soy.exprtree.AbstractReturningExprNodeVisitor;
 import com.google.template.soy.exprtree.BooleanNode;
+import com.google.template.soy.exprtree.DataRefAccessExprNode;
 import com.google.template.soy.exprtree.DataRefAccessIndexNode;
 import com.google.template.soy.exprtree.DataRefAccessKeyNode;
 import com.google.template.soy.exprtree.DataRefAccessNode;
 import com.google.template.soy.exprtree.DataRefNode;
 import com.google.template.soy.exprtree.ExprNode;
+import com.google.template.soy.exprtree.ExprNode.ParentExprNode;
 import com.google.template.soy.exprtree.ExprRootNode;
 import com.google.template.soy.exprtree.FloatNode;
 import com.google.template.soy.exprtree.FunctionNode;
@@ -61,6 +64,8 @@ import com.google.template.soy.exprtree.StringNode;
 import com.google.template.soy.shared.internal.NonpluginFunction;
 import com.google.template.soy.shared.restricted.SoyJavaRuntimeFunction;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
@@ -92,10 +97,13 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
      * @param data The current template data.
      * @param ijData The current injected data.
      * @param env The current environment.
+     * @param localVarSlots The current template's local var slots, or null if the template's local
+     *     vars are kept in the environment.
      * @return The newly created EvalVisitor instance.
      */
     public EvalVisitor create(
-        SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env);
+        SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+        @Nullable SoyData[] localVarSlots);
   }
 
 
@@ -111,6 +119,35 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
   /** The current environment. */
   private final Deque<Map<String, SoyData>> env;
 
+  /** The current template's local var slots, or null if local vars are kept in the environment. */
+  private final SoyData[] localVarSlots;
+
+  /** The result of the last call to evalOperand() that returned true. */
+  private int intResult;
+
+  /** The result of the last call to evalOperand() that returned false. */
+  private SoyData nonIntResult;
+
+  /** The operands evaluated by the last call to evalOperands() that returned true. */
+  private int intOperand0, intOperand1;
+
+  /** The operands evaluated by the last call to evalOperands() that returned false. */
+  private SoyData operand0, operand1;
+
+  /** The string concatenation operands to append in execAndAppend() (reused, lazily created). */
+  private List<SoyData> concatOperands;
+
+  /** The recorder of data accesses, or null if not tracing data accesses. */
+  private DataAccessRecorder dataAccessRecorder;
+
+  /** The name of the current template (only set when tracing data accesses). */
+  private String templateName;
+
+  /** Stack of local var scopes (innermost first), each mapping the names of the local vars
+   *  defined in the scope to the data paths they were set from, or to null for local vars that
+   *  weren't set from a data path (only used when tracing data accesses). */
+  private Deque<Map<String, String>> localVarDataPathScopes;
+
 
   /**
    * @param soyJavaRuntimeFunctionsMap Map of all SoyJavaRuntimeFunctions (name to function). Can be
@@ -119,15 +156,125 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
    * @param data The current template data.
    * @param ijData The current injected data.
    * @param env The current environment.
+   * @param localVarSlots The current template's local var slots, or null if the template's local
+   *     vars are kept in the environment.
    */
   protected EvalVisitor(
       @Nullable Map<String, SoyJavaRuntimeFunction> soyJavaRuntimeFunctionsMap, SoyMapData data,
-      @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env) {
+      @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+      @Nullable SoyData[] localVarSlots) {
 
     this.soyJavaRuntimeFunctionsMap = soyJavaRuntimeFunctionsMap;
     this.data = data;
     this.ijData = ijData;
     this.env = env;
+    this.localVarSlots = localVarSlots;
+  }
+
+
+  /**
+   * Evaluates an expression and appends its value to the given output, e.g. for printing it. The
+   * appended text is the same as {@code exec(node).toString()}, except that a string concatenation
+   * at the top of the expression (e.g. {@code $a + ' ' + $b}) appends its operands directly instead
+   * of building the concatenated strings.
+   *
+   * <p> Nothing is appended until the whole expression has been evaluated, so if evaluating any
+   * operand fails, the output is left unchanged (as when printing {@code exec(node)}).
+   *
+   * @param node The expression to evaluate.
+   * @param outputBuf The output to append to.
+   * @throws IOException If appending to the output fails.
+   */
+  public void execAndAppend(ExprNode node, Appendable outputBuf) throws IOException {
+
+    if (node instanceof ExprRootNode<?>) {
+      node = ((ExprRootNode<?>) node).getChild(0);
+    }
+    if (node.getKind() != ExprNode.Kind.PLUS_OP_NODE) {
+      visit(node).appendTo(outputBuf);
+      return;
+    }
+
+    if (concatOperands == null) {
+      concatOperands = Lists.newArrayList();
+    }
+    try {
+      SoyData result = evalPlusOperands(node, concatOperands);
+      if (result != null) {
+        result.appendTo(outputBuf);
+      } else {
+        for (SoyData operand : concatOperands) {
+          operand.appendTo(outputBuf);
+        }
+      }
+    } finally {
+      concatOperands.clear();
+    }
+  }
+
+
+  /**
+   * Turns on tracing of the data paths read by data references (see {@link DataAccessRecorder}).
+   * @param dataAccessRecorder The recorder of data accesses.
+   * @param templateName The full name of the current template.
+   */
+  void setDataAccessRecorder(DataAccessRecorder dataAccessRecorder, String templateName) {
+    this.dataAccessRecorder = dataAccessRecorder;
+    this.templateName = templateName;
+    this.localVarDataPathScopes = new ArrayDeque<Map<String, String>>();
+    enterLocalVarDataPathScope();  // The template's scope.
+  }
+
+
+  /**
+   * When tracing data accesses, enters a block in which local vars may be defined (that are only
+   * visible within the block). Must be balanced by {@link #exitLocalVarDataPathScope}.
+   */
+  void enterLocalVarDataPathScope() {
+    if (dataAccessRecorder != null) {
+      localVarDataPathScopes.push(Maps.<String, String>newHashMap());
+    }
+  }
+
+
+  /**
+   * When tracing data accesses, exits the block entered by the last call to
+   * {@link #enterLocalVarDataPathScope}, forgetting the local vars defined in it.
+   */
+  void exitLocalVarDataPathScope() {
+    if (dataAccessRecorder != null) {
+      localVarDataPathScopes.pop();
+    }
+  }
+
+
+  /**
+   * When tracing data accesses, notes the data path that a local var (defined in the current
+   * scope) was set from, so that data accesses through the local var are attributed to that data
+   * path.
+   * @param localVarName The name of the local var.
+   * @param valueExpr The expression that the local var was set from, or null if it wasn't set from
+   *     an expression (e.g. a 'let' with content, or a 'for' loop var).
+   * @param isListElement Whether the local var is set to the elements of the list that the
+   *     expression evaluates to (i.e. whether it's a 'foreach' loop var).
+   */
+  void setLocalVarDataSource(
+      String localVarName, @Nullable ExprNode valueExpr, boolean isListElement) {
+
+    if (dataAccessRecorder == null) {
+      return;
+    }
+    if (valueExpr instanceof ExprRootNode<?>) {
+      valueExpr = ((ExprRootNode<?>) valueExpr).getChild(0);
+    }
+    String dataPath = (valueExpr instanceof DataRefNode) ?
+        getDataPath((DataRefNode) valueExpr) : null;
+    if (dataPath != null && isListElement) {
+      dataPath += "[]";
+    }
+    // Note: A null data path is recorded too, since the local var hides any outer local var or
+    // param with the same name.
+    localVarDataPathScopes.peek().put(localVarName, dataPath);
   }
 
 
@@ -203,6 +350,13 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
   @Override protected SoyData visitDataRefNode(DataRefNode node) {
 
+    if (dataAccessRecorder != null) {
+      String dataPath = getDataPath(node);
+      if (dataPath != null) {
+        dataAccessRecorder.recordDataAccess(templateName, dataPath);
+      }
+    }
+
     // First resolve the first key, which may reference a variable, data, or injected data.
     SoyData value0 = resolveDataRefFirstKey(node);
 
@@ -283,14 +437,13 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
   // Implementations for operators.
 
 
-  @Override protected SoyData visitNegativeOpNode(NegativeOpNode node) {
+  // Note: The arithmetic and comparison operators evaluate their operands via evalOperand(), which
+  // doesn't box integer results, so that e.g. '$a * 2 + $b < $c - 1' only allocates for the final
+  // result (if at all).
 
-    SoyData operand = visit(node.getChild(0));
-    if (operand instanceof IntegerData) {
-      return convertResult( - operand.integerValue() );
-    } else {
-      return convertResult( - operand.floatValue() );
-    }
+
+  @Override protected SoyData visitNegativeOpNode(NegativeOpNode node) {
+    return evalOperand(node) ? convertResult(intResult) : nonIntResult;
   }
 
 
@@ -302,14 +455,7 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
 
   @Override protected SoyData visitTimesOpNode(TimesOpNode node) {
-
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() * operand1.integerValue());
-    } else {
-      return convertResult(operand0.numberValue() * operand1.numberValue());
-    }
+    return evalOperand(node) ? convertResult(intResult) : nonIntResult;
   }
 
 
@@ -323,47 +469,24 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
 
   @Override protected SoyData visitModOpNode(ModOpNode node) {
-
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    return convertResult(operand0.integerValue() % operand1.integerValue());
+    return evalOperand(node) ? convertResult(intResult) : nonIntResult;
   }
 
 
   @Override protected SoyData visitPlusOpNode(PlusOpNode node) {
-
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() + operand1.integerValue());
-    } else if (operand0 instanceof StringData || operand1 instanceof StringData) {
-      // String concatenation. Note we're calling toString() instead of stringValue() in case one
-      // of the operands needs to be coerced to a string.
-      return convertResult(operand0.toString() + operand1.toString());
-    } else {
-      return convertResult(operand0.numberValue() + operand1.numberValue());
-    }
+    return evalOperand(node) ? convertResult(intResult) : nonIntResult;
   }
 
 
   @Override protected SoyData visitMinusOpNode(MinusOpNode node) {
-
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() - operand1.integerValue());
-    } else {
-      return convertResult(operand0.numberValue() - operand1.numberValue());
-    }
+    return evalOperand(node) ? convertResult(intResult) : nonIntResult;
   }
 
 
   @Override protected SoyData visitLessThanOpNode(LessThanOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() < operand1.integerValue());
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 < intOperand1);
     } else {
       return convertResult(operand0.numberValue() < operand1.numberValue());
     }
@@ -372,10 +495,8 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
   @Override protected SoyData visitGreaterThanOpNode(GreaterThanOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() > operand1.integerValue());
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 > intOperand1);
     } else {
       return convertResult(operand0.numberValue() > operand1.numberValue());
     }
@@ -384,10 +505,8 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
   @Override protected SoyData visitLessThanOrEqualOpNode(LessThanOrEqualOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() <= operand1.integerValue());
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 <= intOperand1);
     } else {
       return convertResult(operand0.numberValue() <= operand1.numberValue());
     }
@@ -396,10 +515,8 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
   @Override protected SoyData visitGreaterThanOrEqualOpNode(GreaterThanOrEqualOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
-      return convertResult(operand0.integerValue() >= operand1.integerValue());
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 >= intOperand1);
     } else {
       return convertResult(operand0.numberValue() >= operand1.numberValue());
     }
@@ -408,17 +525,21 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
   @Override protected SoyData visitEqualOpNode(EqualOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    return convertResult(operand0.equals(operand1));
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 == intOperand1);
+    } else {
+      return convertResult(operand0.equals(operand1));
+    }
   }
 
 
   @Override protected SoyData visitNotEqualOpNode(NotEqualOpNode node) {
 
-    SoyData operand0 = visit(node.getChild(0));
-    SoyData operand1 = visit(node.getChild(1));
-    return convertResult(!operand0.equals(operand1));
+    if (evalOperands(node)) {
+      return convertResult(intOperand0 != intOperand1);
+    } else {
+      return convertResult(!operand0.equals(operand1));
+    }
   }
 
 
@@ -541,9 +662,7 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
     int localVarIndex;
     try {
-      DataRefNode dataRef = (DataRefNode) node.getChild(0);
-      String localVarName = dataRef.getFirstKey();
-      localVarIndex = getLocalVar(localVarName + "__index").integerValue();
+      localVarIndex = getForeachIndex((DataRefNode) node.getChild(0), false);
     } catch (Exception e) {
       throw new RenderException("Failed to evaluate function call " + node.toSourceString() + ".");
     }
@@ -556,9 +675,8 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
     int localVarIndex, localVarLastIndex;
     try {
       DataRefNode dataRef = (DataRefNode) node.getChild(0);
-      String localVarName = dataRef.getFirstKey();
-      localVarIndex = getLocalVar(localVarName + "__index").integerValue();
-      localVarLastIndex = getLocalVar(localVarName + "__lastIndex").integerValue();
+      localVarIndex = getForeachIndex(dataRef, false);
+      localVarLastIndex = getForeachIndex(dataRef, true);
     } catch (Exception e) {
       throw new RenderException("Failed to evaluate function call " + node.toSourceString() + ".");
     }
@@ -570,9 +688,7 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
 
     int localVarIndex;
     try {
-      DataRefNode dataRef = (DataRefNode) node.getChild(0);
-      String localVarName = dataRef.getFirstKey();
-      localVarIndex = getLocalVar(localVarName + "__index").integerValue();
+      localVarIndex = getForeachIndex((DataRefNode) node.getChild(0), false);
     } catch (Exception e) {
       throw new RenderException("Failed to evaluate function call " + node.toSourceString() + ".");
     }
@@ -584,6 +700,150 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
   // Private helpers.
 
 
+  /**
+   * Private helper to evaluate an operand of an arithmetic or comparison operator without boxing
+   * integer results. Arithmetic operators are evaluated here directly, so that nested arithmetic
+   * on integers doesn't allocate intermediate IntegerData objects.
+   *
+   * @param node The operand to evaluate.
+   * @return True if the result is an integer, in which case it's stored in {@code intResult}, or
+   *     false otherwise, in which case it's stored in {@code nonIntResult}.
+   */
+  private boolean evalOperand(ExprNode node) {
+
+    switch (node.getKind()) {
+
+      case INTEGER_NODE:
+        intResult = ((IntegerNode) node).getValue();
+        return true;
+
+      case NEGATIVE_OP_NODE:
+        if (evalOperand(((NegativeOpNode) node).getChild(0))) {
+          intResult = - intResult;
+          return true;
+        } else {
+          nonIntResult = convertResult( - nonIntResult.floatValue() );
+          return false;
+        }
+
+      case TIMES_OP_NODE:
+        if (evalOperands((TimesOpNode) node)) {
+          intResult = intOperand0 * intOperand1;
+          return true;
+        } else {
+          nonIntResult = convertResult(operand0.numberValue() * operand1.numberValue());
+          return false;
+        }
+
+      case MOD_OP_NODE:
+        if (evalOperands((ModOpNode) node)) {
+          intResult = intOperand0 % intOperand1;
+        } else {
+          intResult = operand0.integerValue() % operand1.integerValue();
+        }
+        return true;
+
+      case PLUS_OP_NODE:
+        if (evalOperands((PlusOpNode) node)) {
+          intResult = intOperand0 + intOperand1;
+          return true;
+        } else if (operand0 instanceof StringData || operand1 instanceof StringData) {
+          // String concatenation. Note we're calling toString() instead of stringValue() in case
+          // one of the operands needs to be coerced to a string.
+          nonIntResult = convertResult(operand0.toString() + operand1.toString());
+          return false;
+        } else {
+          nonIntResult = convertResult(operand0.numberValue() + operand1.numberValue());
+          return false;
+        }
+
+      case MINUS_OP_NODE:
+        if (evalOperands((MinusOpNode) node)) {
+          intResult = intOperand0 - intOperand1;
+          return true;
+        } else {
+          nonIntResult = convertResult(operand0.numberValue() - operand1.numberValue());
+          return false;
+        }
+
+      default:
+        SoyData result = visit(node);
+        if (result instanceof IntegerData) {
+          intResult = result.integerValue();
+          return true;
+        } else {
+          nonIntResult = result;
+          return false;
+        }
+    }
+  }
+
+
+  /**
+   * Private helper for {@code execAndAppend()}. Evaluates an expression, except that if it's a
+   * string concatenation, collects the operands of the concatenation instead.
+   *
+   * @param node The expression to evaluate.
+   * @param concatOperands The list to add the operands of a string concatenation to, in order.
+   * @return The value of the expression, or null if it was a string concatenation whose operands
+   *     have been added to {@code concatOperands}.
+   */
+  private SoyData evalPlusOperands(ExprNode node, List<SoyData> concatOperands) {
+
+    if (node.getKind() != ExprNode.Kind.PLUS_OP_NODE) {
+      return visit(node);
+    }
+
+    PlusOpNode plusOpNode = (PlusOpNode) node;
+    SoyData operand0 = evalPlusOperands(plusOpNode.getChild(0), concatOperands);
+    if (operand0 == null) {
+      // The left side was a string concatenation, so this is one too.
+      concatOperands.add(visit(plusOpNode.getChild(1)));
+      return null;
+    }
+
+    SoyData operand1 = visit(plusOpNode.getChild(1));
+    if (operand0 instanceof IntegerData && operand1 instanceof IntegerData) {
+      return convertResult(operand0.integerValue() + operand1.integerValue());
+    } else if (operand0 instanceof StringData || operand1 instanceof StringData) {
+      concatOperands.add(operand0);
+      concatOperands.add(operand1);
+      return null;
+    } else {
+      return convertResult(operand0.numberValue() + operand1.numberValue());
+    }
+  }
+
+
+  /**
+   * Private helper to evaluate the two operands of a binary arithmetic or comparison operator
+   * without boxing them if they're both integers.
+   *
+   * @param node The operator node.
+   * @return True if both operands are integers, in which case they're stored in
+   *     {@code intOperand0} and {@code intOperand1}, or false otherwise, in which case they're
+   *     stored in {@code operand0} and {@code operand1}.
+   */
+  private boolean evalOperands(ParentExprNode node) {
+
+    // Note: Evaluating the second operand overwrites the fields, so keep the first one in locals.
+    boolean isInt0 = evalOperand(node.getChild(0));
+    int int0 = intResult;
+    SoyData nonInt0 = nonIntResult;
+    boolean isInt1 = evalOperand(node.getChild(1));
+
+    if (isInt0 && isInt1) {
+      intOperand0 = int0;
+      intOperand1 = intResult;
+      return true;
+    } else {
+      operand0 = isInt0 ? convertResult(int0) : nonInt0;
+      operand1 = isInt1 ? convertResult(intResult) : nonIntResult;
+      return false;
+    }
+  }
+
+
   /**
    * Private helper to convert a boolean result.
    * @param b The boolean to convert.
@@ -617,6 +877,56 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
   }
 
 
+  /**
+   * Private helper to get the data path that a data ref reads, for tracing data accesses.
+   * @param dataRef The data ref.
+   * @return The data path, relative to the current template's params and with list indices and
+   *     dynamic keys replaced by "[]", or null if the data ref doesn't read from the params (e.g.
+   *     it reads injected data, or a local var that wasn't set from the params).
+   */
+  private String getDataPath(DataRefNode dataRef) {
+
+    if (dataRef.isIjDataRef()) {
+      return null;
+    }
+
+    StringBuilder dataPath = new StringBuilder();
+    String firstKey = dataRef.getFirstKey();
+    Map<String, String> localVarScope = null;
+    for (Map<String, String> scope : localVarDataPathScopes) {
+      if (scope.containsKey(firstKey)) {
+        localVarScope = scope;
+        break;
+      }
+    }
+    if (localVarScope != null) {
+      String localVarDataPath = localVarScope.get(firstKey);
+      if (localVarDataPath == null) {
+        return null;
+      }
+      dataPath.append(localVarDataPath);
+    } else if (dataRef.isLocalVarDataRef() == Boolean.TRUE || dataRef.getLocalVarSlot() >= 0) {
+      return null;
+    } else {
+      dataPath.append(firstKey);
+    }
+
+    for (ExprNode child : dataRef.getChildren()) {
+      if (child.getKind() == ExprNode.Kind.DATA_REF_ACCESS_KEY_NODE) {
+        dataPath.append('.').append(((DataRefAccessKeyNode) child).getKey());
+      } else if (child.getKind() == ExprNode.Kind.DATA_REF_ACCESS_EXPR_NODE &&
+                 ((DataRefAccessExprNode) child).getChild(0) instanceof StringNode) {
+        // A constant key, e.g. $foo['bar'].
+        dataPath.append('.').append(
+            ((StringNode) ((DataRefAccessExprNode) child).getChild(0)).getValue());
+      } else {
+        dataPath.append("[]");
+      }
+    }
+    return dataPath.toString();
+  }
+
+
   /**
    * Private helper to get the value of a local variable (from the environment).
    * Note: Throws an AssertionError if the given name is not defined in the environment.
@@ -636,6 +946,25 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
   }
 
 
+  /**
+   * Private helper to get the current index or the last index of a foreach loop.
+   * @param dataRef The data ref of the foreach loop var.
+   * @param isLastIndex Whether to get the last index (instead of the current index).
+   * @return The requested index.
+   */
+  private int getForeachIndex(DataRefNode dataRef, boolean isLastIndex) {
+
+    int localVarSlot = dataRef.getLocalVarSlot();
+    if (localVarSlots != null && localVarSlot >= 0) {
+      // The current index and the last index are kept in the two slots following the loop var.
+      return localVarSlots[localVarSlot + (isLastIndex ? 2 : 1)].integerValue();
+    }
+
+    String localVarName = dataRef.getFirstKey();
+    return getLocalVar(localVarName + (isLastIndex ? "__lastIndex" : "__index")).integerValue();
+  }
+
+
   /**
    * Private helper to get the value of the first part of a data ref.
    * @param dataRefNode The data ref whose first key we want to retrieve.
@@ -661,6 +990,10 @@ public class EvalVisitor extends AbstractReturningExprNodeVisitor<SoyData> {
         }
       }
 
+    } else if (localVarSlots != null && dataRefNode.getLocalVarSlot() >= 0) {
+      // Retrieve from the current template's local var slots.
+      value = localVarSlots[dataRefNode.getLocalVarSlot()];
+
     } else {
 
       Boolean isLocalVarDataRef = dataRefNode.isLocalVarDataRef();  // null if unknown
@@ -53,9 +53,10 @@ public class EvalVisitorFactoryImpl implements EvalVisitorFactory {
 
   @Override
   public EvalVisitor create(
-      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env) {
+      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+      @Nullable SoyData[] localVarSlots) {
 
-    return new EvalVisitor(soyJavaRuntimeFunctionsMap, data, ijData, env);
+    return new EvalVisitor(soyJavaRuntimeFunctionsMap, data, ijData, env, localVarSlots);
   }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses.render;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.internal.MsgUtils;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPluralPart;
+import com.google.template.soy.msgs.restricted.SoyMsgSelectPart;
+import com.google.template.soy.soytree.MsgNode;
+
+import com.ibm.icu.text.PluralRules;
+import com.ibm.icu.util.ULocale;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * The translation of a message in a given bundle, resolved ahead of rendering.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ *
+ * <p> Resolving the translation up front means that rendering the message doesn't need to compute
+ * its id, look it up in the bundle, or set up the plural rules of the translation's locale. This
+ * matters for plural/select messages, which can't be inserted into the Soy tree ahead of rendering
+ * and so are otherwise resolved on every render.
+ */
+public final class MsgRenderPlan {
+
+
+  /** The max number of locales whose plural rules are kept in PLURAL_RULES_BY_LOCALE. */
+  private static final int MAX_NUM_PLURAL_RULES_LOCALES = 500;
+
+  /**
+   * Cache from locale string to the plural rules for the locale. It's shared JVM-wide (by all plans
+   * and by the uncached rendering path, which creates a plan per render), since the rules only
+   * depend on the locale. It's bounded because the locale strings come from the message bundles,
+   * which a long-running server may keep loading; the bound is well above the number of real
+   * locales, so it only guards against unbounded growth.
+   */
+  private static final LoadingCache<String, PluralRules> PLURAL_RULES_BY_LOCALE =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_NUM_PLURAL_RULES_LOCALES)
+          .build(new CacheLoader<String, PluralRules>() {
+            @Override public PluralRules load(String localeString) {
+              return PluralRules.forLocale(new ULocale(localeString));
+            }
+          });
+
+
+  /** The parts of the translated message, or null to use the message from the Soy source. */
+  private final List<SoyMsgPart> msgParts;
+
+  /** The plural rules for the locale of the translated message, or null if not needed. */
+  private final PluralRules pluralRules;
+
+
+  /**
+   * @param msgParts The parts of the translated message, or null to use the message from the Soy
+   *     source.
+   * @param pluralRules The plural rules for the locale of the translated message, or null if not
+   *     needed.
+   */
+  private MsgRenderPlan(@Nullable List<SoyMsgPart> msgParts, @Nullable PluralRules pluralRules) {
+    this.msgParts = msgParts;
+    this.pluralRules = pluralRules;
+  }
+
+
+  /**
+   * Resolves the translation of a message in a bundle.
+   * @param msgNode The message to resolve.
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @return The resolved translation.
+   */
+  public static MsgRenderPlan create(MsgNode msgNode, @Nullable SoyMsgBundle msgBundle) {
+
+    SoyMsg soyMsg = null;
+    if (msgBundle != null) {
+      soyMsg = msgBundle.getMsg(MsgUtils.computeMsgIdForDualFormat(msgNode));
+    }
+    if (soyMsg == null) {
+      return new MsgRenderPlan(null, null);
+    }
+
+    List<SoyMsgPart> msgParts = soyMsg.getParts();
+    PluralRules pluralRules = null;
+    if (msgParts.size() > 0 &&
+        (msgParts.get(0) instanceof SoyMsgPluralPart ||
+         msgParts.get(0) instanceof SoyMsgSelectPart /*may contain plural parts*/)) {
+      pluralRules = getPluralRules(soyMsg.getLocaleString());
+    }
+    return new MsgRenderPlan(msgParts, pluralRules);
+  }
+
+
+  /**
+   * Returns the parts of the translated message, or null to use the message from the Soy source.
+   */
+  @Nullable public List<SoyMsgPart> getMsgParts() {
+    return msgParts;
+  }
+
+
+  /**
+   * Returns the plural rules for the locale of the translated message. Only available if the
+   * translated message is a plural/select message.
+   */
+  @Nullable public PluralRules getPluralRules() {
+    return pluralRules;
+  }
+
+
+  /**
+   * Private helper to get the plural rules for a locale, creating them if necessary.
+   * @param localeString The locale string.
+   * @return The plural rules for the locale.
+   */
+  private static PluralRules getPluralRules(@Nullable String localeString) {
+
+    if (localeString == null) {
+      // Can't be cached under a null key.
+      return PluralRules.forLocale(new ULocale(localeString));
+    }
+
+    return PLURAL_RULES_BY_LOCALE.getUnchecked(localeString);
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses.render;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.template.soy.data.SoyData;
+import com.google.template.soy.data.internalutils.DataUtils;
+import com.google.template.soy.exprtree.ExprNode.PrimitiveNode;
+import com.google.template.soy.exprtree.ExprRootNode;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * The print directives of a 'print' tag, resolved ahead of rendering into an immutable pipeline.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ *
+ * <p> Resolving the directives up front means that rendering a 'print' tag doesn't need to look up
+ * the directives by name or check their numbers of args. Args that are primitive literals are
+ * evaluated once, when the chain is built, so that applying such directives allocates nothing
+ * beyond what the directives themselves allocate.
+ */
+public final class PrintDirectiveChain {
+
+
+  /**
+   * A print directive bound to the args it is applied with.
+   */
+  public abstract static class BoundDirective {
+
+    /** The arg expressions, or null if all args are constant. */
+    private final List<ExprRootNode<?>> argExprs;
+
+    /** The args, if they are all constant (else null). */
+    private final List<SoyData> constantArgs;
+
+    /**
+     * @param argExprs The arg expressions.
+     */
+    protected BoundDirective(List<ExprRootNode<?>> argExprs) {
+
+      List<SoyData> tempConstantArgs = Lists.newArrayListWithCapacity(argExprs.size());
+      for (ExprRootNode<?> argExpr : argExprs) {
+        if (!(argExpr.getChild(0) instanceof PrimitiveNode)) {
+          tempConstantArgs = null;
+          break;
+        }
+        tempConstantArgs.add(DataUtils.convertPrimitiveExprToData(
+            (PrimitiveNode) argExpr.getChild(0)));
+      }
+
+      if (tempConstantArgs != null) {
+        this.argExprs = null;
+        this.constantArgs = ImmutableList.copyOf(tempConstantArgs);
+      } else {
+        this.argExprs = ImmutableList.copyOf(argExprs);
+        this.constantArgs = null;
+      }
+    }
+
+    /** Returns the args if they are all constant, or null otherwise. */
+    @Nullable public List<SoyData> getConstantArgs() {
+      return constantArgs;
+    }
+
+    /**
+     * Applies the directive.
+     * @param value The value to apply the directive to.
+     * @param args The args (evaluated).
+     * @return The result of applying the directive.
+     */
+    protected abstract SoyData apply(SoyData value, List<SoyData> args);
+  }
+
+
+  /** The bound directives, in the order they are applied. */
+  private final BoundDirective[] boundDirectives;
+
+
+  /**
+   * @param boundDirectives The bound directives, in the order they are applied.
+   */
+  public PrintDirectiveChain(List<? extends BoundDirective> boundDirectives) {
+    this.boundDirectives = boundDirectives.toArray(new BoundDirective[boundDirectives.size()]);
+  }
+
+
+  /**
+   * Applies the directives in this chain to the given value.
+   * @param value The value to apply the directives to.
+   * @param evalVisitor The EvalVisitor to use for evaluating non-constant args.
+   * @return The result of applying the directives.
+   */
+  public SoyData apply(SoyData value, EvalVisitor evalVisitor) {
+
+    for (BoundDirective boundDirective : boundDirectives) {
+      List<SoyData> args = boundDirective.constantArgs;
+      if (args == null) {
+        args = Lists.newArrayListWithCapacity(boundDirective.argExprs.size());
+        for (ExprRootNode<?> argExpr : boundDirective.argExprs) {
+          args.add(evalVisitor.exec(argExpr));
+        }
+      }
+      value = boundDirective.apply(value, args);
+    }
+    return value;
+  }
+
+}
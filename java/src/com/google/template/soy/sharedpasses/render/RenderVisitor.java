@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.template.soy.data.SanitizedContent;
+import com.google.template.soy.data.SanitizedContent.ContentKind;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyDataException;
 import com.google.template.soy.data.SoyListData;
@@ -36,6 +37,8 @@ import com.google.template.soy.exprtree.ExprRootNode;
 import com.google.template.soy.msgs.SoyMsgBundle;
 import com.google.template.soy.shared.SoyCssRenamingMap;
 import com.google.template.soy.shared.restricted.SoyJavaRuntimePrintDirective;
+import com.google.template.soy.shared.restricted.SoyPrintDirective;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
 import com.google.template.soy.sharedpasses.render.EvalVisitor.EvalVisitorFactory;
 import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
 import com.google.template.soy.soytree.CallBasicNode;
@@ -72,6 +75,7 @@ import com.google.template.soy.soytree.TemplateNode;
 import com.google.template.soy.soytree.TemplateRegistry;
 import com.google.template.soy.soytree.TemplateRegistry.DelegateTemplateConflictException;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Deque;
@@ -120,10 +124,25 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
   /** CSS renaming map. */
   protected final SoyCssRenamingMap cssRenamingMap;
 
+  /** Names of templates after which to flush the output (if Flushable), or null if none. */
+  protected final Set<String> flushPointTemplateNames;
+
+  /**
+   * The local var slots of the template being rendered, or null if the template's local vars are
+   * kept in the environment (e.g. slots have not been assigned by AssignLocalVarSlotsVisitor).
+   */
+  private SoyData[] localVarSlots;
+
   /** The EvalVisitor for this instance (can reuse since 'data' and 'env' references stay same). */
   // Note: Don't use directly. Call eval() instead.
   private EvalVisitor evalVisitor;
 
+  /** The recorder of data accesses, or null if not tracing data accesses. */
+  private DataAccessRecorder dataAccessRecorder;
+
+  /** The name of the template being rendered (only set when tracing data accesses). */
+  private String templateName;
+
   /** The assistant visitor for msgs (lazily initialized). */
   private RenderVisitorAssistantForMsgs assistantForMsgs;
 
@@ -150,13 +169,16 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
    * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
    *     source.
    * @param cssRenamingMap The CSS renaming map, or null if not applicable.
+   * @param flushPointTemplateNames The names of templates after which to flush the output (if the
+   *     output is Flushable), or null if none.
    */
   protected RenderVisitor(
       @Nullable Map<String, SoyJavaRuntimePrintDirective> soyJavaRuntimeDirectivesMap,
       EvalVisitorFactory evalVisitorFactory, Appendable outputBuf,
       @Nullable TemplateRegistry templateRegistry, SoyMapData data, @Nullable SoyMapData ijData,
       @Nullable Deque<Map<String, SoyData>> env, @Nullable Set<String> activeDelPackageNames,
-      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap) {
+      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap,
+      @Nullable Set<String> flushPointTemplateNames) {
 
     Preconditions.checkNotNull(data);
 
@@ -169,7 +191,9 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
     this.activeDelPackageNames = activeDelPackageNames;
     this.msgBundle = msgBundle;
     this.cssRenamingMap = cssRenamingMap;
+    this.flushPointTemplateNames = flushPointTemplateNames;
 
+    this.localVarSlots = null;  // allocated when visiting the template
     this.evalVisitor = null;  // lazily initialized
     this.assistantForMsgs = null;  // lazily initialized
 
@@ -189,7 +213,32 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
     return new RenderVisitor(
         soyJavaRuntimeDirectivesMap, evalVisitorFactory, outputBuf, templateRegistry,
-        data, ijData, null, activeDelPackageNames, msgBundle, cssRenamingMap);
+        data, ijData, null, activeDelPackageNames, msgBundle, cssRenamingMap,
+        flushPointTemplateNames);
+  }
+
+
+  /**
+   * Turns on tracing of the data paths read by the templates rendered by this instance (including
+   * called templates). Must be called before rendering.
+   * @param dataAccessRecorder The recorder of data accesses, or null to turn off tracing.
+   */
+  public void setDataAccessRecorder(@Nullable DataAccessRecorder dataAccessRecorder) {
+    this.dataAccessRecorder = dataAccessRecorder;
+  }
+
+
+  /**
+   * Private helper to create a helper instance for rendering a called template, which also traces
+   * data accesses if this instance does.
+   * @param outputBuf The Appendable to append the output to.
+   * @param data The template data.
+   * @return The newly created RenderVisitor instance.
+   */
+  private RenderVisitor createHelperInstanceForCallee(Appendable outputBuf, SoyMapData data) {
+    RenderVisitor rv = createHelperInstance(outputBuf, data);
+    rv.setDataAccessRecorder(dataAccessRecorder);
+    return rv;
   }
 
 
@@ -207,9 +256,33 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
 
   @Override protected void visitTemplateNode(TemplateNode node) {
+
+    // If slots have been assigned to the template's local vars, keep the local vars in a flat array
+    // instead of in the environment. Note that this must happen before the EvalVisitor is created.
+    int numLocalVarSlots = node.getNumLocalVarSlots();
+    if (numLocalVarSlots >= 0 && localVarSlots == null && evalVisitor == null) {
+      localVarSlots = new SoyData[numLocalVarSlots];
+    }
+    if (dataAccessRecorder != null) {
+      templateName = node.getTemplateName();
+    }
+
     try {
       visitBlockHelper(node);
 
+      // Flush the output if this template is a flush point. Note that when rendering into a
+      // temporary buffer (e.g. for a param) or through an escaping wrapper, the current output
+      // buffer is not Flushable, so there's nothing to do.
+      if (flushPointTemplateNames != null &&
+          flushPointTemplateNames.contains(node.getTemplateName()) &&
+          currOutputBuf instanceof Flushable) {
+        try {
+          ((Flushable) currOutputBuf).flush();
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+
     } catch (RenderException re) {
       throw (re.getTemplateName() != null) ? re : re.setTemplateName(node.getTemplateName());
     }
@@ -236,27 +309,42 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
   @Override protected void visitPrintNode(PrintNode node) {
 
-    SoyData result = eval(node.getExprUnion().getExpr());
+    // If the print tag has no directives, append the value directly (in particular, the operands of
+    // a string concatenation are appended without building the concatenated string).
+    ExprRootNode<?> expr = node.getExprUnion().getExpr();
+    if (node.numChildren() == 0 && expr != null &&
+        expr.getChild(0).getKind() == ExprNode.Kind.PLUS_OP_NODE) {
+      evalAndAppend(expr);
+      return;
+    }
+
+    SoyData result = eval(expr);
     if (result instanceof UndefinedData) {
       throw new RenderException(
           "In 'print' tag, expression \"" + node.getExprText() + "\" evaluates to undefined.");
     }
 
     // Process directives.
-    for (PrintDirectiveNode directiveNode : node.getChildren()) {
+    PrintDirectiveChain directiveChain = getPrintDirectiveChain(node);
+    if (directiveChain != null) {
+      result = directiveChain.apply(result, evalVisitor);
 
-      // Evaluate directive args.
-      List<ExprRootNode<?>> argsExprs = directiveNode.getArgs();
-      List<SoyData> argsSoyDatas = Lists.newArrayListWithCapacity(argsExprs.size());
-      for (ExprRootNode<?> argExpr : argsExprs) {
-        argsSoyDatas.add(evalVisitor.exec(argExpr));
-      }
+    } else {
+      for (PrintDirectiveNode directiveNode : node.getChildren()) {
 
-      // Apply directive.
-      result = applyDirective(directiveNode.getName(), result, argsSoyDatas, node);
+        // Evaluate directive args.
+        List<ExprRootNode<?>> argsExprs = directiveNode.getArgs();
+        List<SoyData> argsSoyDatas = Lists.newArrayListWithCapacity(argsExprs.size());
+        for (ExprRootNode<?> argExpr : argsExprs) {
+          argsSoyDatas.add(evalVisitor.exec(argExpr));
+        }
+
+        // Apply directive.
+        result = applyDirective(directiveNode.getName(), result, argsSoyDatas, node);
+      }
     }
 
-    append(currOutputBuf, result.toString());
+    append(currOutputBuf, result);
   }
 
 
@@ -264,7 +352,7 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
     ExprRootNode<?> componentNameExpr = node.getComponentNameExpr();
     if (componentNameExpr != null) {
-      append(currOutputBuf, eval(componentNameExpr).toString());
+      append(currOutputBuf, eval(componentNameExpr));
       append(currOutputBuf, "-");
     }
 
@@ -297,7 +385,10 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
 
   @Override protected void visitLetValueNode(LetValueNode node) {
-    env.peek().put(node.getVarName(), eval(node.getValueExpr()));
+    setLocalVar(node.getLocalVarSlot(), node.getVarName(), eval(node.getValueExpr()));
+    if (dataAccessRecorder != null) {
+      getEvalVisitor().setLocalVarDataSource(node.getVarName(), node.getValueExpr(), false);
+    }
   }
 
 
@@ -314,7 +405,10 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
           renderedBlock.stringValue(), node.getContentKind());
     }
 
-    env.peek().put(node.getVarName(), renderedBlock);
+    setLocalVar(node.getLocalVarSlot(), node.getVarName(), renderedBlock);
+    if (dataAccessRecorder != null) {
+      getEvalVisitor().setLocalVarDataSource(node.getVarName(), null, false);
+    }
   }
 
 
@@ -378,20 +472,41 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
     if (foreachList.length() > 0) {
       // Case 1: Nonempty list.
-      String varName = node.getVarName();
+      ForeachNonemptyNode nonemptyNode = (ForeachNonemptyNode) node.getChild(0);
+      enterLocalVarDataPathScope();
+      if (dataAccessRecorder != null) {
+        getEvalVisitor().setLocalVarDataSource(node.getVarName(), node.getExpr(), true);
+      }
+      int localVarSlot = nonemptyNode.getLocalVarSlot();
+      int length = foreachList.length();
+
+      if (localVarSlots != null && localVarSlot >= 0) {
+        // The current index and the last index are kept in the two slots following the loop var.
+        // Note: No need to save firstIndex as it's always 0.
+        localVarSlots[localVarSlot + 2] = IntegerData.forValue(length - 1);
+        for (int i = 0; i < length; ++i) {
+          localVarSlots[localVarSlot + 1] = IntegerData.forValue(i);
+          localVarSlots[localVarSlot] = foreachList.get(i);
+          visitChildren(nonemptyNode);
+        }
 
-      Map<String, SoyData> newEnvFrame = Maps.newHashMap();
-      // Note: No need to save firstIndex as it's always 0.
-      newEnvFrame.put(varName + "__lastIndex", IntegerData.forValue(foreachList.length() - 1));
-      env.push(newEnvFrame);
+      } else {
+        String varName = node.getVarName();
 
-      for (int i = 0; i < foreachList.length(); ++i) {
-        newEnvFrame.put(varName + "__index", IntegerData.forValue(i));
-        newEnvFrame.put(varName, foreachList.get(i));
-        visitChildren((ForeachNonemptyNode) node.getChild(0));
-      }
+        Map<String, SoyData> newEnvFrame = Maps.newHashMap();
+        // Note: No need to save firstIndex as it's always 0.
+        newEnvFrame.put(varName + "__lastIndex", IntegerData.forValue(length - 1));
+        env.push(newEnvFrame);
 
-      env.pop();
+        for (int i = 0; i < length; ++i) {
+          newEnvFrame.put(varName + "__index", IntegerData.forValue(i));
+          newEnvFrame.put(varName, foreachList.get(i));
+          visitChildren(nonemptyNode);
+        }
+
+        env.pop();
+      }
+      exitLocalVarDataPathScope();
 
     } else {
       // Case 2: Empty list. If the 'ifempty' node exists, visit it.
@@ -420,16 +535,31 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
     int init = (rangeArgValues.size() == 2) ? rangeArgValues.remove(0) : 0 /* default */;
     int limit = rangeArgValues.get(0);
 
-    String localVarName = node.getVarName();
-    Map<String, SoyData> newEnvFrame = Maps.newHashMap();
-    env.push(newEnvFrame);
-
-    for (int i = init; i < limit; i += increment) {
-      newEnvFrame.put(localVarName, IntegerData.forValue(i));
-      visitChildren(node);
+    enterLocalVarDataPathScope();
+    if (dataAccessRecorder != null) {
+      getEvalVisitor().setLocalVarDataSource(node.getVarName(), null, false);
     }
 
-    env.pop();
+    int localVarSlot = node.getLocalVarSlot();
+    if (localVarSlots != null && localVarSlot >= 0) {
+      for (int i = init; i < limit; i += increment) {
+        localVarSlots[localVarSlot] = IntegerData.forValue(i);
+        visitChildren(node);
+      }
+
+    } else {
+      String localVarName = node.getVarName();
+      Map<String, SoyData> newEnvFrame = Maps.newHashMap();
+      env.push(newEnvFrame);
+
+      for (int i = init; i < limit; i += increment) {
+        newEnvFrame.put(localVarName, IntegerData.forValue(i));
+        visitChildren(node);
+      }
+
+      env.pop();
+    }
+    exitLocalVarDataPathScope();
   }
 
 
@@ -543,16 +673,25 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
 
     if (node.getEscapingDirectiveNames().isEmpty()) {
       // No escaping at the call site -- render directly into the output buffer.
-      RenderVisitor rv = createHelperInstance(currOutputBuf, callData);
+      RenderVisitor rv = createHelperInstanceForCallee(currOutputBuf, callData);
       rv.exec(callee);
+      return;
+    }
+
+    // Escaping the call site's result, such as at a strict template boundary.
+    // If all the escaping directives can be applied in a streaming fashion, render the callee
+    // through escaping wrappers around the output buffer.
+    Appendable escapingOutputBuf = wrapWithStreamingDirectives(
+        node.getEscapingDirectiveNames(), callee.getContentKind(), currOutputBuf);
+    if (escapingOutputBuf != null) {
+      RenderVisitor rv = createHelperInstanceForCallee(escapingOutputBuf, callData);
+      rv.exec(callee);
+
     } else {
-      // Escaping the call site's result, such as at a strict template boundary.
-      // TODO: Some optimization is needed here before Strict Soy can be widely used:
-      // - Only create this temporary buffer when contexts mismatch. We could run a pre-pass that
-      // eliminates escaping directives when all callers are known.
-      // - Instead of creating a temporary buffer and copying, wrap with an escaping StringBuilder.
+      // TODO: Only create this temporary buffer when contexts mismatch. We could run a pre-pass
+      // that eliminates escaping directives when all callers are known.
       StringBuilder calleeBuilder = new StringBuilder();
-      RenderVisitor rv = createHelperInstance(calleeBuilder, callData);
+      RenderVisitor rv = createHelperInstanceForCallee(calleeBuilder, callData);
       rv.exec(callee);
       SoyData resultData = (callee.getContentKind() != null) ?
           UnsafeSanitizedContentOrdainer.ordainAsSafe(
@@ -561,11 +700,51 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
       for (String directiveName : node.getEscapingDirectiveNames()) {
         resultData = applyDirective(directiveName, resultData, ImmutableList.<SoyData>of(), node);
       }
-      append(currOutputBuf, resultData.toString());
+      append(currOutputBuf, resultData);
     }
   }
 
 
+  /**
+   * Private helper for visitCallNodeHelper() to wrap an output buffer with the given escaping
+   * directives, so that the output appended to the result is the same as applying the directives
+   * (in order) to the whole text and appending the result to the output buffer.
+   *
+   * @param directiveNames The names of the directives to apply, in order.
+   * @param contentKind The content kind of the text to be escaped, or null if not sanitized.
+   * @param outputBuf The output buffer to wrap.
+   * @return The wrapped output buffer, or null if some directive can't be applied in a streaming
+   *     fashion.
+   */
+  @Nullable private Appendable wrapWithStreamingDirectives(
+      List<String> directiveNames, @Nullable ContentKind contentKind, Appendable outputBuf) {
+
+    int numDirectives = directiveNames.size();
+    SoyStreamingPrintDirective[] directives = new SoyStreamingPrintDirective[numDirectives];
+    ContentKind[] inputContentKinds = new ContentKind[numDirectives];
+
+    // Find each directive and the content kind of its input, without creating any wrappers yet.
+    for (int i = 0; i < numDirectives; i++) {
+      directives[i] = getStreamingDirective(directiveNames.get(i));
+      if (directives[i] == null) {
+        return null;
+      }
+      inputContentKinds[i] = contentKind;
+      contentKind = directives[i].getStreamingOutputContentKind(contentKind);
+    }
+
+    // The first directive is applied first, so it must be the outermost wrapper. Each directive is
+    // wrapped exactly once.
+    for (int i = numDirectives - 1; i >= 0; i--) {
+      outputBuf = directives[i].wrapForStreaming(outputBuf, inputContentKinds[i]);
+      if (outputBuf == null) {
+        return null;
+      }
+    }
+    return outputBuf;
+  }
+
+
   @Override protected void visitCallParamNode(CallParamNode node) {
     // In this visitor, we never directly visit a CallParamNode.
     throw new AssertionError();
@@ -639,7 +818,10 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
    */
   private void visitBlockHelper(BlockNode node) {
 
-    if (node.needsEnvFrameDuringInterp() != Boolean.FALSE /*true or unknown*/) {
+    enterLocalVarDataPathScope();
+    // Note: When the local vars are kept in slots, no env frames are needed.
+    if (localVarSlots == null &&
+        node.needsEnvFrameDuringInterp() != Boolean.FALSE /*true or unknown*/) {
       env.push(Maps.<String, SoyData>newHashMap());
       visitChildren(node);
       env.pop();
@@ -647,6 +829,46 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
     } else {
       visitChildren(node);
     }
+    exitLocalVarDataPathScope();
+  }
+
+
+  /**
+   * Private helper to enter a block in which local vars may be defined, when tracing data accesses
+   * (so that data accesses through the local vars are attributed to the right data paths).
+   */
+  private void enterLocalVarDataPathScope() {
+    if (dataAccessRecorder != null) {
+      getEvalVisitor().enterLocalVarDataPathScope();
+    }
+  }
+
+
+  /**
+   * Private helper to exit the block entered by the last call to
+   * {@code enterLocalVarDataPathScope()}.
+   */
+  private void exitLocalVarDataPathScope() {
+    if (dataAccessRecorder != null) {
+      getEvalVisitor().exitLocalVarDataPathScope();
+    }
+  }
+
+
+  /**
+   * Private helper to set the value of a local var, either in its slot (if the local vars are kept
+   * in slots) or in the current env frame.
+   * @param localVarSlot The slot assigned to the local var, or -1 if unknown.
+   * @param localVarName The name of the local var.
+   * @param value The value to set.
+   */
+  private void setLocalVar(int localVarSlot, String localVarName, SoyData value) {
+
+    if (localVarSlots != null && localVarSlot >= 0) {
+      localVarSlots[localVarSlot] = value;
+    } else {
+      env.peek().put(localVarName, value);
+    }
   }
 
 
@@ -675,13 +897,8 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
       throw new RenderException("Cannot evaluate expression in V1 syntax.");
     }
 
-    // Lazily initialize evalVisitor.
-    if (evalVisitor == null) {
-      evalVisitor = evalVisitorFactory.create(data, ijData, env);
-    }
-
     try {
-      return evalVisitor.exec(expr);
+      return getEvalVisitor().exec(expr);
     } catch (Exception e) {
       Throwable cause = (e instanceof RenderException) ? e.getCause() : e;
       throw new RenderException(
@@ -699,6 +916,48 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
   }
 
 
+  /**
+   * This method must only be called by assistant visitors, in particular
+   * RenderVisitorAssistantForMsgs.
+   */
+  MsgRenderPlan getMsgRenderPlanForUseByAssistants(MsgNode node) {
+    return getMsgRenderPlan(node);
+  }
+
+
+  /**
+   * Private helper to get the EvalVisitor for this instance, creating it if necessary.
+   */
+  private EvalVisitor getEvalVisitor() {
+
+    if (evalVisitor == null) {
+      evalVisitor = evalVisitorFactory.create(data, ijData, env, localVarSlots);
+      if (dataAccessRecorder != null) {
+        evalVisitor.setDataAccessRecorder(dataAccessRecorder, templateName);
+      }
+    }
+    return evalVisitor;
+  }
+
+
+  /**
+   * Private helper to evaluate an expression and append its value to the current output buffer.
+   * @param expr The expression to evaluate.
+   */
+  private void evalAndAppend(ExprNode expr) {
+
+    try {
+      getEvalVisitor().execAndAppend(expr, currOutputBuf);
+    } catch (IOException ioe) {
+      throw Throwables.propagate(ioe);
+    } catch (Exception e) {
+      Throwable cause = (e instanceof RenderException) ? e.getCause() : e;
+      throw new RenderException(
+          "When evaluating \"" + expr.toSourceString() + "\": " + e.getMessage(), cause);
+    }
+  }
+
+
   /**
    * Helper to append text to the output, propagating any exceptions.
    */
@@ -711,6 +970,65 @@ public class RenderVisitor extends AbstractSoyNodeVisitor<Void> {
   }
 
 
+  /**
+   * Helper to append a value (coerced into a string) to the output, propagating any exceptions.
+   */
+  static void append(Appendable outputBuf, SoyData value) {
+    try {
+      value.appendTo(outputBuf);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+
+  /**
+   * Protected helper to get the print directives of a 'print' tag resolved ahead of rendering.
+   *
+   * <p> This default implementation returns null. It can be overridden by subclasses (such as
+   * TofuRenderVisitor) that resolve print directives when building the templates.
+   *
+   * @param node The 'print' tag.
+   * @return The resolved directives, or null if not resolved (in which case the directives are
+   *     applied by name via {@code applyDirective()}).
+   */
+  @Nullable protected PrintDirectiveChain getPrintDirectiveChain(PrintNode node) {
+    return null;
+  }
+
+
+  /**
+   * Protected helper to get the translation of a message resolved ahead of rendering.
+   *
+   * <p> This default implementation returns null. It can be overridden by subclasses (such as
+   * TofuRenderVisitor) that resolve the translations of messages when building the templates.
+   *
+   * @param node The 'msg' tag.
+   * @return The resolved translation, or null if not resolved (in which case the translation is
+   *     looked up in the msgBundle when rendering the message).
+   */
+  @Nullable protected MsgRenderPlan getMsgRenderPlan(MsgNode node) {
+    return null;
+  }
+
+
+  /**
+   * Protected helper to get a print directive that can be applied in a streaming fashion.
+   *
+   * <p> This default implementation can be overridden by subclasses (such as TofuRenderVisitor)
+   * that have access to a potentially larger set of print directives.
+   *
+   * @param directiveName The name of the directive.
+   * @return The directive, or null if there's no such directive that can be applied in a streaming
+   *     fashion.
+   */
+  @Nullable protected SoyStreamingPrintDirective getStreamingDirective(String directiveName) {
+    SoyPrintDirective directive = soyJavaRuntimeDirectivesMap.get(directiveName);
+    return (directive instanceof SoyStreamingPrintDirective) ?
+        (SoyStreamingPrintDirective) directive : null;
+  }
+
+
   /**
    * Protected helper to apply a print directive.
    *
@@ -22,8 +22,6 @@ import com.google.template.soy.data.SoyDataException;
 import com.google.template.soy.exprtree.ExprRootNode;
 import com.google.template.soy.internal.base.Pair;
 import com.google.template.soy.msgs.SoyMsgBundle;
-import com.google.template.soy.msgs.internal.MsgUtils;
-import com.google.template.soy.msgs.restricted.SoyMsg;
 import com.google.template.soy.msgs.restricted.SoyMsgPart;
 import com.google.template.soy.msgs.restricted.SoyMsgPlaceholderPart;
 import com.google.template.soy.msgs.restricted.SoyMsgPluralCaseSpec;
@@ -46,7 +44,6 @@ import com.google.template.soy.soytree.MsgSelectNode;
 import com.google.template.soy.soytree.SoyNode;
 
 import com.ibm.icu.text.PluralRules;
-import com.ibm.icu.util.ULocale;
 
 import java.util.Deque;
 import java.util.List;
@@ -113,28 +110,25 @@ class RenderVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
       env.push(Maps.<String, SoyData>newHashMap());
     }
 
-    SoyMsg soyMsg;
-    if (msgBundle != null) {
-      long msgId = MsgUtils.computeMsgIdForDualFormat(node);
-      soyMsg = msgBundle.getMsg(msgId);
-    } else {
-      soyMsg = null;
+    // Use the translation resolved ahead of rendering if available, else resolve it now.
+    MsgRenderPlan msgRenderPlan = master.getMsgRenderPlanForUseByAssistants(node);
+    if (msgRenderPlan == null) {
+      msgRenderPlan = MsgRenderPlan.create(node, msgBundle);
     }
+    List<SoyMsgPart> msgParts = msgRenderPlan.getMsgParts();
 
-    if (soyMsg != null) {
+    if (msgParts != null) {
       // Case 1: Localized message is provided by the msgBundle.
 
-      List<SoyMsgPart> msgParts = soyMsg.getParts();
-
       if (msgParts.size() > 0) {
         SoyMsgPart firstPart = msgParts.get(0);
 
         if (firstPart instanceof SoyMsgPluralPart) {
-          new PlrselMsgPartsVisitor(node, new ULocale(soyMsg.getLocaleString()))
+          new PlrselMsgPartsVisitor(node, msgRenderPlan.getPluralRules())
               .visitPart((SoyMsgPluralPart) firstPart);
 
         } else if (firstPart instanceof SoyMsgSelectPart) {
-          new PlrselMsgPartsVisitor(node, new ULocale(soyMsg.getLocaleString()))
+          new PlrselMsgPartsVisitor(node, msgRenderPlan.getPluralRules())
               .visitPart((SoyMsgSelectPart) firstPart);
 
         } else {
@@ -265,8 +259,8 @@ class RenderVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
     /** The parent message node for the parts dealt here. */
     private final MsgNode msgNode;
 
-    /** The locale for the translated message considered. */
-    private final ULocale locale;
+    /** The plural rules for the locale of the translated message considered. */
+    private final PluralRules pluralRules;
 
     /** Holds the value of the remainder for the current enclosing plural part. */
     private int currentPluralRemainderValue;
@@ -275,11 +269,11 @@ class RenderVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
     /**
      * Constructor.
      * @param msgNode The parent message node for the parts dealt here.
-     * @param locale The locale of the Soy message.
+     * @param pluralRules The plural rules for the locale of the Soy message.
      */
-    public PlrselMsgPartsVisitor(MsgNode msgNode, ULocale locale) {
+    public PlrselMsgPartsVisitor(MsgNode msgNode, PluralRules pluralRules) {
       this.msgNode = msgNode;
-      this.locale = locale;
+      this.pluralRules = pluralRules;
     }
 
 
@@ -401,7 +395,7 @@ class RenderVisitorAssistantForMsgs extends AbstractSoyNodeVisitor<Void> {
 
       if (caseParts == null) {
         // Didn't match any numeric value.  Check which plural rule it matches.
-        String pluralKeyword = PluralRules.forLocale(locale).select(currentPluralRemainderValue);
+        String pluralKeyword = pluralRules.select(currentPluralRemainderValue);
         SoyMsgPluralCaseSpec.Type correctCaseType =
             new SoyMsgPluralCaseSpec(pluralKeyword).getType();
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.soyparse;
+
+import com.google.common.collect.Maps;
+import com.google.template.soy.base.SoyFileSupplier;
+import com.google.template.soy.soytree.SoyFileNode;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Cache of parsed Soy files, keyed by file supplier and valid as long as the supplier hasn't
+ * changed since the cached version was read. Passing the same cache to several
+ * {@link SoyFileSetParser}s (see {@link SoyFileSetParser#setParseCache}) means that only the files
+ * that have changed since the last parse are parsed again.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ *
+ * <p> This class is thread-safe.
+ */
+public final class SoyFileParseCache {
+
+
+  /**
+   * A Soy file parsed on its own, i.e. with node ids starting from 0.
+   */
+  static final class ParsedSoyFile {
+
+    /** The parse tree of the file. Must not be modified or added to a tree (clone it instead). */
+    final SoyFileNode soyFile;
+
+    /** The number of node ids used in parsing the file. */
+    final int numIds;
+
+    /** The version of the file that was parsed. */
+    final SoyFileSupplier.Version version;
+
+    ParsedSoyFile(SoyFileNode soyFile, int numIds, SoyFileSupplier.Version version) {
+      this.soyFile = soyFile;
+      this.numIds = numIds;
+      this.version = version;
+    }
+  }
+
+
+  /** Map from file supplier to the last parse of the file. Guarded by itself. */
+  private final Map<SoyFileSupplier, ParsedSoyFile> parsedSoyFiles = Maps.newHashMap();
+
+
+  /**
+   * Gets the cached parse of the file from the given supplier, if the file hasn't changed since.
+   * @param soyFileSupplier The supplier of the Soy file.
+   * @return The cached parse, or null if not cached or out of date.
+   */
+  @Nullable ParsedSoyFile get(SoyFileSupplier soyFileSupplier) {
+
+    ParsedSoyFile parsedSoyFile;
+    synchronized (parsedSoyFiles) {
+      parsedSoyFile = parsedSoyFiles.get(soyFileSupplier);
+    }
+    if (parsedSoyFile == null || soyFileSupplier.hasChangedSince(parsedSoyFile.version)) {
+      return null;
+    }
+    return parsedSoyFile;
+  }
+
+
+  /**
+   * Caches the parse of the file from the given supplier, replacing any previous parse.
+   * @param soyFileSupplier The supplier of the Soy file.
+   * @param parsedSoyFile The parse of the file.
+   */
+  void put(SoyFileSupplier soyFileSupplier, ParsedSoyFile parsedSoyFile) {
+    synchronized (parsedSoyFiles) {
+      parsedSoyFiles.put(soyFileSupplier, parsedSoyFile);
+    }
+  }
+
+
+  /**
+   * Removes all cached parses.
+   */
+  public void clear() {
+    synchronized (parsedSoyFiles) {
+      parsedSoyFiles.clear();
+    }
+  }
+
+}
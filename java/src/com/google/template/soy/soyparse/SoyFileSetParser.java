@@ -17,8 +17,10 @@
 package com.google.template.soy.soyparse;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.template.soy.base.IdGenerator;
 import com.google.template.soy.base.IncrementingIdGenerator;
 import com.google.template.soy.base.SoyFileSupplier;
@@ -35,12 +37,23 @@ import com.google.template.soy.parsepasses.VerifyPhnameAttrOnlyOnPlaceholdersVis
 import com.google.template.soy.sharedpasses.AssertSyntaxVersionV2Visitor;
 import com.google.template.soy.sharedpasses.CheckSoyDocVisitor;
 import com.google.template.soy.sharedpasses.RemoveHtmlCommentsVisitor;
+import com.google.template.soy.soyparse.SoyFileParseCache.ParsedSoyFile;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
 import com.google.template.soy.soytree.SoyFileNode;
 import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 
 /**
@@ -68,6 +81,12 @@ public class SoyFileSetParser {
   /** Whether to check overrides. */
   private boolean doCheckOverrides;
 
+  /** The number of threads to parse the Soy files with. */
+  private int numThreads;
+
+  /** Cache of parsed Soy files to reuse and update, or null if not caching. */
+  private SoyFileParseCache parseCache;
+
 
   /**
    * @param soyFileSuppliers The suppliers for the Soy files.
@@ -86,6 +105,8 @@ public class SoyFileSetParser {
     this.doRunCheckingPasses = true;
     this.doEnforceSyntaxVersionV2 = true;
     this.doCheckOverrides = true;
+    this.numThreads = 1;
+    this.parseCache = null;
   }
 
 
@@ -142,6 +163,28 @@ public class SoyFileSetParser {
   }
 
 
+  /**
+   * Sets the number of threads to parse the Soy files with. The resulting parse tree (including
+   * node ids) is the same for any number of threads. Returns self.
+   */
+  public SoyFileSetParser setNumThreads(int numThreads) {
+    Preconditions.checkArgument(numThreads >= 1);
+    this.numThreads = numThreads;
+    return this;
+  }
+
+
+  /**
+   * Sets the cache of parsed Soy files to use. Files that haven't changed since they were cached
+   * are not parsed again, and the cache is updated with the files that are parsed. The resulting
+   * parse tree (including node ids) is the same as without a cache. Returns self.
+   */
+  public SoyFileSetParser setParseCache(@Nullable SoyFileParseCache parseCache) {
+    this.parseCache = parseCache;
+    return this;
+  }
+
+
   /**
    * Parses a set of Soy files and returns the parse tree.
    *
@@ -162,15 +205,21 @@ public class SoyFileSetParser {
   public Pair<SoyFileSetNode, List<SoyFileSupplier.Version>> parseWithVersions()
       throws SoySyntaxException {
 
-    IdGenerator nodeIdGen = new IncrementingIdGenerator();
-    SoyFileSetNode soyTree = new SoyFileSetNode(nodeIdGen.genId(), nodeIdGen);
+    SoyFileSetNode soyTree;
     ImmutableList.Builder<SoyFileSupplier.Version> versions = ImmutableList.builder();
 
-    for (SoyFileSupplier soyFileSupplier : soyFileSuppliers) {
-      Pair<SoyFileNode, SoyFileSupplier.Version> fileAndVersion =
-          parseSoyFileHelper(soyFileSupplier, nodeIdGen);
-      soyTree.addChild(fileAndVersion.first);
-      versions.add(fileAndVersion.second);
+    if (parseCache != null || (numThreads > 1 && soyFileSuppliers.size() > 1)) {
+      soyTree = parseSoyFilesSeparatelyHelper(versions);
+
+    } else {
+      IdGenerator nodeIdGen = new IncrementingIdGenerator();
+      soyTree = new SoyFileSetNode(nodeIdGen.genId(), nodeIdGen);
+      for (SoyFileSupplier soyFileSupplier : soyFileSuppliers) {
+        Pair<SoyFileNode, SoyFileSupplier.Version> fileAndVersion =
+            parseSoyFileHelper(soyFileSupplier, nodeIdGen);
+        soyTree.addChild(fileAndVersion.first);
+        versions.add(fileAndVersion.second);
+      }
     }
 
     // Run passes that are considered part of initial parsing.
@@ -190,6 +239,83 @@ public class SoyFileSetParser {
   }
 
 
+  /**
+   * Private helper for {@code parseWithVersions()} to parse each Soy file on its own, possibly on
+   * multiple threads and possibly reusing cached parses.
+   *
+   * <p> Each file is parsed with its own id generator starting from 0. Afterwards, the ids in each
+   * file are shifted by the number of ids used by the root and the preceding files, so that the
+   * ids are exactly the same as when parsing the files one after another with one id generator.
+   * If several files have errors, the error in the first such file is thrown.
+   *
+   * @param versions Builder to add the versions of the files read to (in file order).
+   * @return The resulting parse tree.
+   * @throws SoySyntaxException If there is an error reading a file or a syntax error is found.
+   */
+  private SoyFileSetNode parseSoyFilesSeparatelyHelper(
+      ImmutableList.Builder<SoyFileSupplier.Version> versions) throws SoySyntaxException {
+
+    int numFiles = soyFileSuppliers.size();
+    List<Future<ParsedSoyFile>> futures = Lists.newArrayListWithCapacity(numFiles);
+
+    ExecutorService executor = (numThreads > 1) ?
+        Executors.newFixedThreadPool(Math.min(numThreads, numFiles)) :
+        MoreExecutors.sameThreadExecutor();
+    try {
+      for (final SoyFileSupplier soyFileSupplier : soyFileSuppliers) {
+        final ParsedSoyFile cachedParsedSoyFile =
+            (parseCache != null) ? parseCache.get(soyFileSupplier) : null;
+        futures.add(executor.submit(new Callable<ParsedSoyFile>() {
+          @Override public ParsedSoyFile call() {
+            if (cachedParsedSoyFile != null) {
+              return cachedParsedSoyFile;
+            }
+            IdGenerator fileNodeIdGen = new IncrementingIdGenerator();
+            Pair<SoyFileNode, SoyFileSupplier.Version> fileAndVersion =
+                parseSoyFileHelper(soyFileSupplier, fileNodeIdGen);
+            ParsedSoyFile parsedSoyFile = new ParsedSoyFile(
+                fileAndVersion.first, fileNodeIdGen.genId() /*number of ids used*/,
+                fileAndVersion.second);
+            if (parseCache != null) {
+              parseCache.put(soyFileSupplier, parsedSoyFile);
+            }
+            return parsedSoyFile;
+          }
+        }));
+      }
+
+      // The root gets id 0, as when parsing sequentially.
+      int nextId = 1;
+      List<SoyFileNode> soyFiles = Lists.newArrayListWithCapacity(numFiles);
+      for (Future<ParsedSoyFile> future : futures) {
+        ParsedSoyFile parsedSoyFile = future.get();
+        // Cached parses are shared, so they must not be modified.
+        SoyFileNode soyFile =
+            (parseCache != null) ? parsedSoyFile.soyFile.clone() : parsedSoyFile.soyFile;
+        (new ShiftIdsVisitor(nextId)).exec(soyFile);
+        nextId += parsedSoyFile.numIds;
+        soyFiles.add(soyFile);
+        versions.add(parsedSoyFile.version);
+      }
+
+      SoyFileSetNode soyTree = new SoyFileSetNode(0, new IncrementingIdGenerator(nextId));
+      for (SoyFileNode soyFile : soyFiles) {
+        soyTree.addChild(soyFile);
+      }
+      return soyTree;
+
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw SoySyntaxException.createCausedWithoutMetaInfo("Interrupted while parsing.", ie);
+    } catch (ExecutionException ee) {
+      throw Throwables.propagate(ee.getCause());
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
   /**
    * Private helper for {@code parseWithVersions()} to parse one Soy file.
    *
@@ -264,4 +390,29 @@ public class SoyFileSetParser {
     (new CheckCallsVisitor()).exec(soyTree);
   }
 
+
+  /**
+   * Private helper for {@code parseSoyFilesSeparatelyHelper()} to add an offset to the ids of all
+   * the nodes in a subtree.
+   */
+  private static class ShiftIdsVisitor extends AbstractSoyNodeVisitor<Void> {
+
+    /** The offset to add to the ids. */
+    private final int idOffset;
+
+    /**
+     * @param idOffset The offset to add to the ids.
+     */
+    public ShiftIdsVisitor(int idOffset) {
+      this.idOffset = idOffset;
+    }
+
+    @Override protected void visitSoyNode(SoyNode node) {
+      node.setId(node.getId() + idOffset);
+      if (node instanceof ParentSoyNode<?>) {
+        visitChildren((ParentSoyNode<?>) node);
+      }
+    }
+  }
+
 }
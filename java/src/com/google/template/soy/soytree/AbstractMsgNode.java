@@ -26,6 +26,7 @@ import com.google.template.soy.exprtree.DataRefNode;
 import com.google.template.soy.exprtree.ExprNode;
 import com.google.template.soy.exprtree.ExprRootNode;
 import com.google.template.soy.exprtree.GlobalNode;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
 import com.google.template.soy.soytree.CommandTextAttributesParser.Attribute;
 import com.google.template.soy.soytree.SoyNode.MsgBlockNode;
 import com.google.template.soy.soytree.SoyNode.StandaloneNode;
@@ -88,6 +89,14 @@ public abstract class AbstractMsgNode extends AbstractBlockCommandNode
   /** The generated map from select node to select var name, or null if not generated. */
   private Map<MsgSelectNode, String> selectNodeToVarNameMap = null;
 
+  /** The cached message parts (see MsgUtils), or null if not cached. Written after cachedMsgId,
+   *  so that a thread that sees the parts also sees the id. */
+  private volatile List<SoyMsgPart> cachedMsgParts = null;
+
+  /** The cached message id (see MsgUtils), assuming a specific dual format. Only applicable when
+   *  cachedMsgParts is not null. */
+  private long cachedMsgId = -1L;
+
 
   /**
    * @param id The id for this node.
@@ -133,6 +142,8 @@ public abstract class AbstractMsgNode extends AbstractBlockCommandNode
     this.selectNodeToVarNameMap =
         (orig.selectNodeToVarNameMap != null) ?
             ImmutableMap.copyOf(orig.selectNodeToVarNameMap) : null;
+    this.cachedMsgId = orig.cachedMsgId;
+    this.cachedMsgParts = orig.cachedMsgParts;
   }
 
 
@@ -150,6 +161,10 @@ public abstract class AbstractMsgNode extends AbstractBlockCommandNode
     // is because the children haven't been added yet. But for cloning, the children already exist,
     // so there's no reason not to run genPhNamesAndSelectPluralVarsHelper now.
     genPhNamesAndSelectPluralVarsHelper();
+    // The message parts and id don't depend on the identity of the children, so they're simply
+    // copied.
+    this.cachedMsgId = orig.cachedMsgId;
+    this.cachedMsgParts = orig.cachedMsgParts;
   }
 
 
@@ -259,6 +274,36 @@ public abstract class AbstractMsgNode extends AbstractBlockCommandNode
   }
 
 
+  /**
+   * Returns the cached message parts, or null if not cached. This method is for use by MsgUtils,
+   * which builds the parts and computes the id the first time they're needed.
+   */
+  public List<SoyMsgPart> getCachedMsgParts() {
+    return cachedMsgParts;
+  }
+
+
+  /**
+   * Returns the cached message id, assuming a specific dual format. Only applicable if
+   * {@link #getCachedMsgParts} returns non-null. This method is for use by MsgUtils.
+   */
+  public long getCachedMsgId() {
+    return cachedMsgId;
+  }
+
+
+  /**
+   * Caches the message parts and id. This method is for use by MsgUtils. Like the placeholder
+   * names, the cached values assume that the children of this node will not change.
+   * @param msgParts The message parts (should be immutable).
+   * @param msgId The message id, assuming a specific dual format.
+   */
+  public void setCachedMsgPartsAndId(List<SoyMsgPart> msgParts, long msgId) {
+    this.cachedMsgId = msgId;
+    this.cachedMsgParts = msgParts;  // must be written last (volatile)
+  }
+
+
   /*
    * Helper function to generate internal maps with details of
    * placeholders, select variables and plural variables and the
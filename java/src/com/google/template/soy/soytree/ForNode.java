@@ -62,6 +62,9 @@ public class ForNode extends AbstractBlockCommandNode
   /** The parsed range args. */
   private final ImmutableList<ExprRootNode<?>> rangeArgs;
 
+  /** The index of the local var slot assigned to the loop var, or -1 if unknown. */
+  private int localVarSlot = -1;
+
 
   /**
    * @param id The id for this node.
@@ -111,6 +114,7 @@ public class ForNode extends AbstractBlockCommandNode
       tempRangeArgs.add(origRangeArg.clone());
     }
     this.rangeArgs = ImmutableList.copyOf(tempRangeArgs);
+    this.localVarSlot = orig.localVarSlot;
   }
 
 
@@ -124,6 +128,22 @@ public class ForNode extends AbstractBlockCommandNode
   }
 
 
+  /**
+   * Sets the index of the local var slot assigned to the loop var, or -1 if unknown.
+   */
+  public void setLocalVarSlot(int localVarSlot) {
+    this.localVarSlot = localVarSlot;
+  }
+
+
+  /**
+   * Returns the index of the local var slot assigned to the loop var, or -1 if unknown.
+   */
+  public int getLocalVarSlot() {
+    return localVarSlot;
+  }
+
+
   /** Returns the texts of the individual range args (sort of canonicalized). */
   public List<String> getRangeArgTexts() {
     return rangeArgTexts;
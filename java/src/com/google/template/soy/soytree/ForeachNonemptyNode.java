@@ -33,11 +33,16 @@ public class ForeachNonemptyNode extends AbstractBlockNode
     implements ConditionalBlockNode, LoopNode, LocalVarBlockNode {
 
 
+  /** The index of the local var slot assigned to the loop var, or -1 if unknown. */
+  private int localVarSlot;
+
+
   /**
    * @param id The id for this node.
    */
   public ForeachNonemptyNode(int id) {
     super(id);
+    this.localVarSlot = -1;
   }
 
 
@@ -47,6 +52,7 @@ public class ForeachNonemptyNode extends AbstractBlockNode
    */
   protected ForeachNonemptyNode(ForeachNonemptyNode orig) {
     super(orig);
+    this.localVarSlot = orig.localVarSlot;
   }
 
 
@@ -65,6 +71,24 @@ public class ForeachNonemptyNode extends AbstractBlockNode
   }
 
 
+  /**
+   * Sets the index of the local var slot assigned to the loop var, or -1 if unknown.
+   */
+  public void setLocalVarSlot(int localVarSlot) {
+    this.localVarSlot = localVarSlot;
+  }
+
+
+  /**
+   * Returns the index of the local var slot assigned to the loop var, or -1 if unknown.
+   * The current index and the last index of the loop are kept in the two slots immediately
+   * following this one.
+   */
+  public int getLocalVarSlot() {
+    return localVarSlot;
+  }
+
+
   /** Returns the text of the expression we're iterating over. */
   public String getExprText() {
     return getParent().getExprText();
@@ -85,6 +85,9 @@ public abstract class LetNode extends AbstractCommandNode
   /** Whether the local var name is already unique (e.g. node id has already been appended). */
   private final boolean isVarNameUnique;
 
+  /** The index of the local var slot assigned to this node's var, or -1 if unknown. */
+  private int localVarSlot;
+
 
   /**
    * @param id The id for this node.
@@ -95,6 +98,7 @@ public abstract class LetNode extends AbstractCommandNode
   protected LetNode(int id, boolean isVarNameUnique, String commandText) {
     super(id, "let", commandText);
     this.isVarNameUnique = isVarNameUnique;
+    this.localVarSlot = -1;
   }
 
 
@@ -105,6 +109,23 @@ public abstract class LetNode extends AbstractCommandNode
   protected LetNode(LetNode orig) {
     super(orig);
     this.isVarNameUnique = orig.isVarNameUnique;
+    this.localVarSlot = orig.localVarSlot;
+  }
+
+
+  /**
+   * Sets the index of the local var slot assigned to this node's var, or -1 if unknown.
+   */
+  public void setLocalVarSlot(int localVarSlot) {
+    this.localVarSlot = localVarSlot;
+  }
+
+
+  /**
+   * Returns the index of the local var slot assigned to this node's var, or -1 if unknown.
+   */
+  public int getLocalVarSlot() {
+    return localVarSlot;
   }
 
 
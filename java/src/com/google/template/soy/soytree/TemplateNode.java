@@ -219,6 +219,9 @@ public abstract class TemplateNode extends AbstractBlockCommandNode implements R
   /** Param source strings with incorrect syntax, or null if no SoyDoc. */
   private final ImmutableList<String> paramSrcsWithIncorrectSyntax;
 
+  /** The number of local var slots needed to render this template, or -1 if unknown. */
+  private int numLocalVarSlots = -1;
+
 
   /**
    * Protected constructor for use by subclasses.
@@ -468,6 +471,7 @@ public abstract class TemplateNode extends AbstractBlockCommandNode implements R
     this.soyDocDesc = orig.soyDocDesc;
     this.soyDocParams = orig.soyDocParams;  // safe to reuse (immutable)
     this.paramSrcsWithIncorrectSyntax = orig.paramSrcsWithIncorrectSyntax;  // safe to reuse
+    this.numLocalVarSlots = orig.numLocalVarSlots;
   }
 
 
@@ -517,6 +521,18 @@ public abstract class TemplateNode extends AbstractBlockCommandNode implements R
   }
 
 
+  /** Sets the number of local var slots needed to render this template, or -1 if unknown. */
+  public void setNumLocalVarSlots(int numLocalVarSlots) {
+    this.numLocalVarSlots = numLocalVarSlots;
+  }
+
+
+  /** Returns the number of local var slots needed to render this template, or -1 if unknown. */
+  public int getNumLocalVarSlots() {
+    return numLocalVarSlots;
+  }
+
+
   /** Clears the SoyDoc text, description, and param descriptions. */
   public void clearSoyDocStrings() {
     soyDoc = null;
@@ -18,6 +18,7 @@ package com.google.template.soy.soytree;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.template.soy.base.SoySyntaxException;
@@ -95,6 +96,16 @@ public class TemplateRegistry {
    * @param soyTree The Soy tree from which to build a template registry.
    */
   public TemplateRegistry(SoyFileSetNode soyTree) {
+    this(getAllTemplates(soyTree));
+  }
+
+
+  /**
+   * Constructor for a registry of templates that aren't necessarily all in the same Soy tree.
+   * @param templates The templates from which to build a template registry. Each template must be
+   *     in a Soy file.
+   */
+  public TemplateRegistry(Iterable<? extends TemplateNode> templates) {
 
     // ------ Iterate through all templates to collect data. ------
 
@@ -103,65 +114,63 @@ public class TemplateRegistry {
     Map<DelTemplateKey, Map<Integer, Map<String, TemplateDelegateNode>>> tempDelTemplatesMap =
         Maps.newHashMap();
 
-    for (SoyFileNode soyFile : soyTree.getChildren()) {
-      for (TemplateNode template : soyFile.getChildren()) {
-
-        if (template instanceof TemplateBasicNode) {
-          // Case 1: Basic template.
-          tempBasicTemplatesMap.put(template.getTemplateName(), (TemplateBasicNode) template);
-
-        } else {
-          // Case 2: Delegate template.
-          TemplateDelegateNode delTemplate = (TemplateDelegateNode) template;
-          DelTemplateKey delTemplateKey = delTemplate.getDelTemplateKey();
-
-          // Add to tempDelTemplateNameToKeysMap.
-          String delTemplateName = delTemplate.getDelTemplateName();
-          Set<DelTemplateKey> keys = tempDelTemplateNameToKeysMap.get(delTemplateName);
-          if (keys == null) {
-            keys = Sets.newLinkedHashSet();
-            tempDelTemplateNameToKeysMap.put(delTemplateName, keys);
-          }
-          keys.add(delTemplateKey);
+    for (TemplateNode template : templates) {
 
-          // Add to tempDelTemplatesMap.
-          int delPriority = delTemplate.getDelPriority();
-          String delPackageName = delTemplate.getDelPackageName();
+      if (template instanceof TemplateBasicNode) {
+        // Case 1: Basic template.
+        tempBasicTemplatesMap.put(template.getTemplateName(), (TemplateBasicNode) template);
 
-          Map<Integer, Map<String, TemplateDelegateNode>> tempDivisions =
-              tempDelTemplatesMap.get(delTemplateKey);
-          if (tempDivisions == null) {
-            tempDivisions = Maps.newHashMap();
-            tempDelTemplatesMap.put(delTemplateKey, tempDivisions);
-          }
+      } else {
+        // Case 2: Delegate template.
+        TemplateDelegateNode delTemplate = (TemplateDelegateNode) template;
+        DelTemplateKey delTemplateKey = delTemplate.getDelTemplateKey();
 
-          Map<String, TemplateDelegateNode> tempDivision = tempDivisions.get(delPriority);
-          if (tempDivision == null) {
-            tempDivision = Maps.newHashMap();
-            tempDivisions.put(delPriority, tempDivision);
-          }
+        // Add to tempDelTemplateNameToKeysMap.
+        String delTemplateName = delTemplate.getDelTemplateName();
+        Set<DelTemplateKey> keys = tempDelTemplateNameToKeysMap.get(delTemplateName);
+        if (keys == null) {
+          keys = Sets.newLinkedHashSet();
+          tempDelTemplateNameToKeysMap.put(delTemplateName, keys);
+        }
+        keys.add(delTemplateKey);
+
+        // Add to tempDelTemplatesMap.
+        int delPriority = delTemplate.getDelPriority();
+        String delPackageName = delTemplate.getDelPackageName();
 
-          if (tempDivision.containsKey(delPackageName)) {
-            TemplateDelegateNode prevTemplate = tempDivision.get(delPackageName);
-            String prevTemplateFilePath =
-                prevTemplate.getNearestAncestor(SoyFileNode.class).getFilePath();
-            String currTemplateFilePath =
-                delTemplate.getNearestAncestor(SoyFileNode.class).getFilePath();
-            String errorMsgPrefix = (delPackageName == null) ?
-                "Found two default implementations" :
-                "Found two implementations in the same delegate package";
-            if (currTemplateFilePath != null && currTemplateFilePath.equals(prevTemplateFilePath)) {
-              throw SoySyntaxException.createWithoutMetaInfo(String.format(
-                  errorMsgPrefix + " for delegate template '%s', both in the file %s.",
-                  delTemplateKey, currTemplateFilePath));
-            } else {
-              throw SoySyntaxException.createWithoutMetaInfo(String.format(
-                  errorMsgPrefix + " for delegate template '%s', in files %s and %s.",
-                  delTemplateKey, prevTemplateFilePath, currTemplateFilePath));
-            }
+        Map<Integer, Map<String, TemplateDelegateNode>> tempDivisions =
+            tempDelTemplatesMap.get(delTemplateKey);
+        if (tempDivisions == null) {
+          tempDivisions = Maps.newHashMap();
+          tempDelTemplatesMap.put(delTemplateKey, tempDivisions);
+        }
+
+        Map<String, TemplateDelegateNode> tempDivision = tempDivisions.get(delPriority);
+        if (tempDivision == null) {
+          tempDivision = Maps.newHashMap();
+          tempDivisions.put(delPriority, tempDivision);
+        }
+
+        if (tempDivision.containsKey(delPackageName)) {
+          TemplateDelegateNode prevTemplate = tempDivision.get(delPackageName);
+          String prevTemplateFilePath =
+              prevTemplate.getNearestAncestor(SoyFileNode.class).getFilePath();
+          String currTemplateFilePath =
+              delTemplate.getNearestAncestor(SoyFileNode.class).getFilePath();
+          String errorMsgPrefix = (delPackageName == null) ?
+              "Found two default implementations" :
+              "Found two implementations in the same delegate package";
+          if (currTemplateFilePath != null && currTemplateFilePath.equals(prevTemplateFilePath)) {
+            throw SoySyntaxException.createWithoutMetaInfo(String.format(
+                errorMsgPrefix + " for delegate template '%s', both in the file %s.",
+                delTemplateKey, currTemplateFilePath));
+          } else {
+            throw SoySyntaxException.createWithoutMetaInfo(String.format(
+                errorMsgPrefix + " for delegate template '%s', in files %s and %s.",
+                delTemplateKey, prevTemplateFilePath, currTemplateFilePath));
           }
-          tempDivision.put(delPackageName, delTemplate);
         }
+        tempDivision.put(delPackageName, delTemplate);
       }
     }
 
@@ -327,4 +336,19 @@ public class TemplateRegistry {
     return null;
   }
 
+
+  /**
+   * Private helper for the constructor to get all the templates in a Soy tree.
+   * @param soyTree The Soy tree.
+   * @return All the templates in the given Soy tree, in file order.
+   */
+  private static List<TemplateNode> getAllTemplates(SoyFileSetNode soyTree) {
+
+    List<TemplateNode> templates = Lists.newArrayList();
+    for (SoyFileNode soyFile : soyTree.getChildren()) {
+      templates.addAll(soyFile.getChildren());
+    }
+    return templates;
+  }
+
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.template.soy.sharedpasses.render.DataAccessRecorder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Records which data paths the templates read, for a sample of renders. Use this to find the
+ * fields of your data that no template renders (e.g. to stop computing them).
+ *
+ * <p> To trace renders, pass the same tracer to {@link SoyTofu.Renderer#setDataAccessTracer} for
+ * each render. Every {@code sampleInterval}-th render is traced; the others are not slowed down.
+ *
+ * <p> Data paths are relative to the params of the template that read them, with list indices and
+ * dynamic keys replaced by "[]". For example, if template {@code ns.foo} contains
+ * <pre>
+ *     {foreach $item in $items}{$item.name}{/foreach}
+ * </pre>
+ * then the recorded paths for {@code ns.foo} are "items" and "items[].name". Data read through
+ * 'let' variables and 'foreach' loop variables is attributed to the data path that the variable was
+ * set from. Injected data is not recorded.
+ *
+ * <p> This class is thread-safe.
+ */
+public final class SoyDataAccessTracer implements DataAccessRecorder {
+
+
+  /** Trace every sampleInterval-th render. */
+  private final int sampleInterval;
+
+  /** The number of renders seen so far (traced or not). */
+  private final AtomicLong numRenders;
+
+  /** The number of renders traced so far. */
+  private final AtomicLong numTracedRenders;
+
+  /** Map from template name to map from data path to number of reads. */
+  private final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> accessCounts;
+
+
+  /**
+   * @param sampleInterval Trace every sampleInterval-th render (1 to trace every render).
+   */
+  public SoyDataAccessTracer(int sampleInterval) {
+    Preconditions.checkArgument(sampleInterval >= 1);
+    this.sampleInterval = sampleInterval;
+    this.numRenders = new AtomicLong();
+    this.numTracedRenders = new AtomicLong();
+    this.accessCounts = Maps.newConcurrentMap();
+  }
+
+
+  /**
+   * Gets the number of renders traced so far.
+   */
+  public long getNumTracedRenders() {
+    return numTracedRenders.get();
+  }
+
+
+  /**
+   * Gets the data paths read by each template during the traced renders so far.
+   * @return A map from template name to map from data path to the number of times it was read,
+   *     sorted by template name and data path.
+   */
+  public ImmutableSortedMap<String, ImmutableSortedMap<String, Long>> getAccessCounts() {
+
+    ImmutableSortedMap.Builder<String, ImmutableSortedMap<String, Long>> resultBuilder =
+        ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<String, ConcurrentMap<String, AtomicLong>> templateEntry :
+         accessCounts.entrySet()) {
+      ImmutableSortedMap.Builder<String, Long> countsBuilder = ImmutableSortedMap.naturalOrder();
+      for (Map.Entry<String, AtomicLong> entry : templateEntry.getValue().entrySet()) {
+        countsBuilder.put(entry.getKey(), entry.getValue().get());
+      }
+      resultBuilder.put(templateEntry.getKey(), countsBuilder.build());
+    }
+    return resultBuilder.build();
+  }
+
+
+  /**
+   * Returns a report of the data paths read by each template, one template per line followed by
+   * its data paths (with read counts), one per line.
+   */
+  @Override public String toString() {
+
+    StringBuilder report = new StringBuilder();
+    report.append("Traced renders: ").append(getNumTracedRenders()).append('\n');
+    for (Map.Entry<String, ImmutableSortedMap<String, Long>> templateEntry :
+         getAccessCounts().entrySet()) {
+      report.append(templateEntry.getKey()).append('\n');
+      for (Map.Entry<String, Long> entry : templateEntry.getValue().entrySet()) {
+        report.append("    ").append(entry.getKey())
+            .append(" (").append(entry.getValue()).append(")\n");
+      }
+    }
+    return report.toString();
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Superpackage-private methods.
+
+
+  /**
+   * Important: Do not call this method from outside Soy code (treat as superpackage-private).
+   *
+   * Counts a render, and determines whether to trace it.
+   * @return Whether to trace the render.
+   */
+  public boolean sampleRender() {
+    if (numRenders.getAndIncrement() % sampleInterval != 0) {
+      return false;
+    }
+    numTracedRenders.incrementAndGet();
+    return true;
+  }
+
+
+  /**
+   * Important: Do not call this method from outside Soy code (treat as superpackage-private).
+   */
+  @Override public void recordDataAccess(String templateName, String dataPath) {
+
+    ConcurrentMap<String, AtomicLong> templateCounts = accessCounts.get(templateName);
+    if (templateCounts == null) {
+      ConcurrentMap<String, AtomicLong> newTemplateCounts = Maps.newConcurrentMap();
+      templateCounts = accessCounts.putIfAbsent(templateName, newTemplateCounts);
+      if (templateCounts == null) {
+        templateCounts = newTemplateCounts;
+      }
+    }
+
+    AtomicLong count = templateCounts.get(dataPath);
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = templateCounts.putIfAbsent(dataPath, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+
+}
@@ -16,6 +16,7 @@
 
 package com.google.template.soy.tofu;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.template.soy.data.SanitizedContent;
 import com.google.template.soy.data.SoyMapData;
@@ -23,8 +24,10 @@ import com.google.template.soy.msgs.SoyMsgBundle;
 import com.google.template.soy.parseinfo.SoyTemplateInfo;
 import com.google.template.soy.shared.SoyCssRenamingMap;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nullable;
 
@@ -86,6 +89,36 @@ public interface SoyTofu {
       @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap);
 
 
+  /**
+   * Primes the cache with each of the given SoyMsgBundles combined with the given
+   * SoyCssRenamingMap, building the cache entries in parallel on the given executor. This is useful
+   * at server startup, when there are many message bundles to prime the cache with. This method
+   * blocks until all the cache entries have been built.
+   *
+   * Only applicable when {@code isCaching()} is true.
+   *
+   * @param msgBundles The message bundles to prime the cache with. May contain null to prime the
+   *     cache for rendering with the messages from the Soy source.
+   * @param cssRenamingMap The CSS renaming map to prime the cache with.
+   * @param executor The executor on which to build the cache entries. This method doesn't shut it
+   *     down.
+   */
+  public void addToCache(
+      Collection<? extends SoyMsgBundle> msgBundles, @Nullable SoyCssRenamingMap cssRenamingMap,
+      ExecutorService executor);
+
+
+  /**
+   * Gets statistics about the cache of intermediate Soy trees, such as the numbers of hits, misses,
+   * and evictions, and the total time spent building cache entries.
+   *
+   * Only applicable when {@code isCaching()} is true.
+   *
+   * @return A snapshot of the cache statistics.
+   */
+  public CacheStats getCacheStats();
+
+
   /**
    * Gets a new Renderer for a template.
    *
@@ -138,6 +171,36 @@ public interface SoyTofu {
   public ImmutableSortedSet<String> getUsedIjParamsForTemplate(String templateName);
 
 
+  /**
+   * Gets the set of data paths that a template (and its transitive callees) may read from the
+   * template's data, e.g. "user.name" or "items[].price" (list indices and dynamic keys are
+   * replaced by "[]"). Data read through 'let' variables, 'foreach' loop variables and call params
+   * is attributed to the data path that the variable or param was set from.
+   *
+   * <p> Each data path in the set is a value that the template may use as a whole, and the prefixes
+   * of the data paths are only used to reach these values. So a server only needs to compute the
+   * data at or under these data paths (e.g. it can skip fetching fields that no template reads).
+   * The data passed to recursive calls, and to calls that may go to templates that are not in this
+   * SoyTofu object (external basic calls and delegate calls), is treated as used as a whole. If all
+   * the data may be used this way, then the set includes the empty data path "", meaning that the
+   * server needs to compute all of the template's data.
+   *
+   * @param templateInfo Info for the template to get data paths of.
+   * @return The sorted set of data paths that the given template may read.
+   */
+  public ImmutableSortedSet<String> getUsedDataPathsForTemplate(SoyTemplateInfo templateInfo);
+
+
+  /**
+   * Gets the set of data paths that a template (and its transitive callees) may read from the
+   * template's data. See {@link #getUsedDataPathsForTemplate(SoyTemplateInfo)}.
+   *
+   * @param templateName The name of the template to get data paths of.
+   * @return The sorted set of data paths that the given template may read.
+   */
+  public ImmutableSortedSet<String> getUsedDataPathsForTemplate(String templateName);
+
+
   // -----------------------------------------------------------------------------------------------
   // Renderer interface.
 
@@ -214,6 +277,27 @@ public interface SoyTofu {
      */
     public Renderer setDontAddToCache(boolean dontAddToCache);
 
+    /**
+     * Sets the names of templates after which the output should be flushed, when rendering with
+     * {@link #render(Appendable)} into an output that is {@link java.io.Flushable} (such as a
+     * {@code Writer} for an HTTP response). Use this to send the early parts of a big page (e.g.
+     * the page header) to the client before the rest of the page has been rendered.
+     *
+     * <p> Note: The output is only flushed when the template's output is being written directly
+     * to the given output, i.e. not when the template is called within a param or let block.
+     *
+     * @param flushPointTemplateNames The full names of the templates after which to flush, or null
+     *     for none.
+     */
+    public Renderer setFlushPoints(Set<String> flushPointTemplateNames);
+
+    /**
+     * Sets the tracer to record the data paths read by the templates into, or null to not trace.
+     * The tracer decides which renders to trace (see {@link SoyDataAccessTracer}), so the same
+     * tracer should be set for every render.
+     */
+    public Renderer setDataAccessTracer(SoyDataAccessTracer dataAccessTracer);
+
     /**
      * Renders the template using the data, injected data, and message bundle previously set.
      */
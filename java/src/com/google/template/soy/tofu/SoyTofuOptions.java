@@ -16,6 +16,8 @@
 
 package com.google.template.soy.tofu;
 
+import com.google.common.base.Preconditions;
+
 
 /**
  * Compilation options for the Tofu backend.
@@ -29,9 +31,14 @@ public class SoyTofuOptions implements Cloneable {
    *  from the SoyMsgBundle and the SoyCssRenamingMap. */
   private boolean useCaching;
 
+  /** The max number of combinations of SoyMsgBundle and SoyCssRenamingMap to cache, or 0 for no
+   *  limit. */
+  private int cacheMaxSize;
+
 
   public SoyTofuOptions() {
     useCaching = false;
+    cacheMaxSize = 0;
   }
 
 
@@ -48,8 +55,12 @@ public class SoyTofuOptions implements Cloneable {
    *
    * <p> The cache will use memory proportional to the number of distinct combinations of
    * SoyMsgBundle and SoyCssRenamingMap your app uses (note most apps have at most one
-   * SoyCssRenamingMap). If you find memory usage to be a problem, you can manually control the
-   * contents of the cache. See {@link SoyTofu.Renderer#setDontAddToCache} for details.
+   * SoyCssRenamingMap). If you find memory usage to be a problem, you can limit the size of the
+   * cache (see {@link #setCacheMaxSize}) or manually control the contents of the cache (see
+   * {@link SoyTofu.Renderer#setDontAddToCache} for details).
+   *
+   * <p> The cache is safe to use from multiple threads. Statistics about the cache are available
+   * from {@link SoyTofu#getCacheStats}.
    *
    * @param useCaching The value to set.
    */
@@ -67,6 +78,29 @@ public class SoyTofuOptions implements Cloneable {
   }
 
 
+  /**
+   * Sets the max number of combinations of SoyMsgBundle and SoyCssRenamingMap that the resulting
+   * SoyTofu instance should cache. When the cache is full, the least recently used combination is
+   * evicted (and rebuilt if it's used again). Only applicable when caching is enabled (see
+   * {@link #setUseCaching}).
+   *
+   * @param cacheMaxSize The value to set, or 0 for no limit (the default).
+   */
+  public void setCacheMaxSize(int cacheMaxSize) {
+    Preconditions.checkArgument(cacheMaxSize >= 0);
+    this.cacheMaxSize = cacheMaxSize;
+  }
+
+
+  /**
+   * Returns the max number of combinations of SoyMsgBundle and SoyCssRenamingMap that the resulting
+   * SoyTofu instance should cache, or 0 for no limit.
+   */
+  public int getCacheMaxSize() {
+    return cacheMaxSize;
+  }
+
+
   @Override public SoyTofuOptions clone() {
     try {
       return (SoyTofuOptions) super.clone();
@@ -17,9 +17,18 @@
 package com.google.template.soy.tofu.internal;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.google.template.soy.data.SanitizedContent;
@@ -33,22 +42,35 @@ import com.google.template.soy.shared.SoyCssRenamingMap;
 import com.google.template.soy.shared.internal.ApiCallScopeUtils;
 import com.google.template.soy.shared.internal.GuiceSimpleScope;
 import com.google.template.soy.shared.restricted.ApiCallScopeBindingAnnotations.ApiCall;
+import com.google.template.soy.sharedpasses.AssignLocalVarSlotsVisitor;
 import com.google.template.soy.sharedpasses.FindIjParamsVisitor;
 import com.google.template.soy.sharedpasses.FindIjParamsVisitor.IjParamsInfo;
+import com.google.template.soy.sharedpasses.FindUsedDataPathsVisitor;
 import com.google.template.soy.sharedpasses.MarkLocalVarDataRefsVisitor;
 import com.google.template.soy.sharedpasses.RenameCssVisitor;
 import com.google.template.soy.sharedpasses.opti.SimplifyVisitor;
+import com.google.template.soy.sharedpasses.render.MsgRenderPlan;
+import com.google.template.soy.sharedpasses.render.PrintDirectiveChain;
 import com.google.template.soy.sharedpasses.render.RenderException;
 import com.google.template.soy.sharedpasses.render.RenderVisitor;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.soytree.PrintNode;
+import com.google.template.soy.soytree.SoyFileNode;
 import com.google.template.soy.soytree.SoyFileSetNode;
 import com.google.template.soy.soytree.TemplateNode;
-import com.google.template.soy.soytree.TemplateRegistry;
+import com.google.template.soy.tofu.SoyDataAccessTracer;
 import com.google.template.soy.tofu.SoyTofu;
 import com.google.template.soy.tofu.SoyTofuException;
+import com.google.template.soy.tofu.restricted.SoyTofuPrintDirective;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -74,8 +96,10 @@ public class BaseTofu implements SoyTofu {
      * @param soyTree The Soy parse tree containing all the files in the Soy file set.
      * @param isCaching Whether this instance caches intermediate Soy trees after substitutions from
      *     the msgBundle and the cssRenamingMap.
+     * @param cacheMaxSize The max number of combinations of msgBundle and cssRenamingMap to cache,
+     *     or 0 for no limit. Only applicable when isCaching is true.
      */
-    public BaseTofu create(SoyFileSetNode soyTree, boolean isCaching);
+    public BaseTofu create(SoyFileSetNode soyTree, boolean isCaching, int cacheMaxSize);
   }
 
 
@@ -85,59 +109,130 @@ public class BaseTofu implements SoyTofu {
   /** Factory for creating an instance of TofuRenderVisitor. */
   private final TofuRenderVisitorFactory tofuRenderVisitorFactory;
 
-  /** The instanceof of SimplifyVisitor to use. */
-  private final SimplifyVisitor simplifyVisitor;
+  /** Provider of SimplifyVisitor instances (one per cached template registry built). */
+  private final Provider<SimplifyVisitor> simplifyVisitorProvider;
 
-  /** The Soy parse tree containing all the files in the Soy file set. */
-  private final SoyFileSetNode soyTree;
+  /** Map of all SoyTofuPrintDirectives (name to directive). */
+  private final Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap;
 
   /** Whether this instance caches intermediate Soy trees after substitutions from the msgBundle
    *  and the cssRenamingMap. */
   private final boolean isCaching;
 
-  /** Map of cached template registries. Only applicable when isCaching is true. */
-  private final
-  Map<Pair<SoyMsgBundle, SoyCssRenamingMap>, TemplateRegistry> cachedTemplateRegistries;
+  /** The templates (already simplified) that are shared by all the cached template registries.
+   *  Only applicable when isCaching is true. */
+  private final ImmutableList<TemplateNode> sharedTemplates;
+
+  /** The template registry of the shared templates. Only applicable when isCaching is true. */
+  private final TofuTemplateRegistry sharedTemplateRegistry;
+
+  /** Soy tree containing the templates that can't be shared, which are copied for each cached
+   *  template registry. Only applicable when isCaching is true. */
+  private final SoyFileSetNode unshareableTemplatesTree;
+
+  /** Cache of template registries (thread-safe). Only applicable when isCaching is true. */
+  private final LoadingCache<Pair<SoyMsgBundle, SoyCssRenamingMap>, TofuTemplateRegistry>
+      cachedTemplateRegistries;
 
   /** The template registry used for no-caching mode of rendering. Applicable when isCaching is
    *  false or when isCaching is true but doAddToCache is false. */
-  private final TemplateRegistry templateRegistryForNoCaching;
+  private final TofuTemplateRegistry templateRegistryForNoCaching;
 
   /** Map from template node to injected params info for all templates. */
   private final ImmutableMap<TemplateNode, IjParamsInfo> templateToIjParamsInfoMap;
 
+  /** Visitor for finding the data paths used by templates, which memoizes its results (computed
+   *  on demand, since most users don't need them). Not thread-safe, so guarded by itself. */
+  private final FindUsedDataPathsVisitor findUsedDataPathsVisitor;
+
 
   /**
    * @param apiCallScope The scope object that manages the API call scope.
    * @param tofuRenderVisitorFactory Factory for creating an instance of TofuRenderVisitor.
-   * @param simplifyVisitor The instance of SimplifyVisitor to use.
+   * @param simplifyVisitorProvider Provider of SimplifyVisitor instances. A new instance is used
+   *     for each cached template registry, since cache entries may be built concurrently.
+   * @param soyTofuDirectivesMap Map of all SoyTofuPrintDirectives (name to directive).
    * @param soyTree The Soy parse tree containing all the files in the Soy file set.
    * @param isCaching Whether this instance caches intermediate Soy trees after substitutions from
    *     the msgBundle and the cssRenamingMap.
+   * @param cacheMaxSize The max number of combinations of msgBundle and cssRenamingMap to cache, or
+   *     0 for no limit. When the cache is full, the least recently used combination is evicted.
+   *     Only applicable when isCaching is true.
    */
   @AssistedInject
   public BaseTofu(
       @ApiCall GuiceSimpleScope apiCallScope, TofuRenderVisitorFactory tofuRenderVisitorFactory,
-      SimplifyVisitor simplifyVisitor, @Assisted SoyFileSetNode soyTree,
-      @Assisted boolean isCaching) {
+      Provider<SimplifyVisitor> simplifyVisitorProvider,
+      Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap, @Assisted SoyFileSetNode soyTree,
+      @Assisted boolean isCaching, @Assisted int cacheMaxSize) {
 
     this.apiCallScope = apiCallScope;
     this.tofuRenderVisitorFactory = tofuRenderVisitorFactory;
-    this.simplifyVisitor = simplifyVisitor;
-    this.soyTree = soyTree;
+    this.simplifyVisitorProvider = simplifyVisitorProvider;
+    this.soyTofuDirectivesMap = soyTofuDirectivesMap;
     this.isCaching = isCaching;
 
     if (isCaching) {
-      cachedTemplateRegistries = Maps.newHashMap();
-      addToCache(null, null);
+      // Most templates are the same after substitutions from any msgBundle and cssRenamingMap, so
+      // they're simplified once here and shared by all the cached template registries. Only the
+      // other templates are copied for each cached combination of msgBundle and cssRenamingMap.
+      IsShareableTemplateVisitor isShareableTemplateVisitor = new IsShareableTemplateVisitor();
+      SoyFileSetNode sharedTemplatesTree = soyTree.clone();
+      removeTemplatesHelper(sharedTemplatesTree, isShareableTemplateVisitor, false);
+      unshareableTemplatesTree = soyTree.clone();
+      removeTemplatesHelper(unshareableTemplatesTree, isShareableTemplateVisitor, true);
+
+      apiCallScope.enter();
+      try {
+        ApiCallScopeUtils.seedSharedParams(apiCallScope, null, 0 /*ltr since msgBundle is null*/);
+        simplifyVisitorProvider.get().exec(sharedTemplatesTree);
+      } finally {
+        apiCallScope.exit();
+      }
+      ImmutableList.Builder<TemplateNode> sharedTemplatesBuilder = ImmutableList.builder();
+      for (SoyFileNode soyFile : sharedTemplatesTree.getChildren()) {
+        sharedTemplatesBuilder.addAll(soyFile.getChildren());
+      }
+      sharedTemplates = sharedTemplatesBuilder.build();
+      sharedTemplateRegistry = buildTemplateRegistry(sharedTemplatesTree);
+
+      CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+      if (cacheMaxSize > 0) {
+        cacheBuilder.maximumSize(cacheMaxSize);
+      }
+      // Note: Concurrent requests for the same missing key wait for a single build.
+      cachedTemplateRegistries = cacheBuilder.build(
+          new CacheLoader<Pair<SoyMsgBundle, SoyCssRenamingMap>, TofuTemplateRegistry>() {
+            @Override public TofuTemplateRegistry load(Pair<SoyMsgBundle, SoyCssRenamingMap> key) {
+              return buildCachedTemplateRegistry(key);
+            }
+          });
+
+      // Prime the cache with the combination of no msgBundle and no cssRenamingMap. This uses put()
+      // rather than addToCache() so that it isn't recorded as a cache miss.
+      apiCallScope.enter();
+      try {
+        ApiCallScopeUtils.seedSharedParams(apiCallScope, null, 0 /*ltr since msgBundle is null*/);
+        Pair<SoyMsgBundle, SoyCssRenamingMap> noSubstitutionsKey = Pair.of(null, null);
+        cachedTemplateRegistries.put(
+            noSubstitutionsKey, buildCachedTemplateRegistry(noSubstitutionsKey));
+      } finally {
+        apiCallScope.exit();
+      }
+
     } else {
+      sharedTemplates = null;
+      sharedTemplateRegistry = null;
+      unshareableTemplatesTree = null;
       cachedTemplateRegistries = null;
     }
+
     SoyFileSetNode soyTreeForNoCaching = soyTree.clone();
     templateRegistryForNoCaching = buildTemplateRegistry(soyTreeForNoCaching);
     templateToIjParamsInfoMap =
         (new FindIjParamsVisitor(templateRegistryForNoCaching)).execForAllTemplates(
             soyTreeForNoCaching);
+    findUsedDataPathsVisitor = new FindUsedDataPathsVisitor(templateRegistryForNoCaching);
   }
 
 
@@ -178,6 +273,26 @@ public class BaseTofu implements SoyTofu {
   }
 
 
+  @Override public void addToCache(
+      Collection<? extends SoyMsgBundle> msgBundles, @Nullable SoyCssRenamingMap cssRenamingMap,
+      ExecutorService executor) {
+    if (!isCaching) {
+      throw new SoyTofuException("Cannot addToCache() when isCaching is false.");
+    }
+
+    addToCacheInParallel(this, msgBundles, cssRenamingMap, executor);
+  }
+
+
+  @Override public CacheStats getCacheStats() {
+    if (!isCaching) {
+      throw new SoyTofuException("Cannot getCacheStats() when isCaching is false.");
+    }
+
+    return cachedTemplateRegistries.stats();
+  }
+
+
   @Override public Renderer newRenderer(SoyTemplateInfo templateInfo) {
     return new RendererImpl(this, templateInfo.getName());
   }
@@ -208,20 +323,127 @@ public class BaseTofu implements SoyTofu {
   }
 
 
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return getUsedDataPathsForTemplate(templateInfo.getName());
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(String templateName) {
+    TemplateNode template = templateRegistryForNoCaching.getBasicTemplate(templateName);
+    if (template == null) {
+      throw new SoyTofuException("Template '" + templateName + "' not found.");
+    }
+    synchronized (findUsedDataPathsVisitor) {
+      return findUsedDataPathsVisitor.exec(template).dataPaths;
+    }
+  }
+
+
+  /**
+   * Gets the combinations of SoyMsgBundle and SoyCssRenamingMap currently in the cache, e.g. so
+   * that a recompiled version of this Tofu can be primed with the same combinations.
+   * @return The cached combinations, or an empty set if {@code isCaching()} is false.
+   */
+  Set<Pair<SoyMsgBundle, SoyCssRenamingMap>> getCachedKeys() {
+    if (!isCaching) {
+      return ImmutableSet.of();
+    }
+    return ImmutableSet.copyOf(cachedTemplateRegistries.asMap().keySet());
+  }
+
+
   // -----------------------------------------------------------------------------------------------
   // Private methods.
 
 
+  /**
+   * Primes the cache of the given SoyTofu with each of the given SoyMsgBundles combined with the
+   * given SoyCssRenamingMap, calling {@code addToCache()} for each bundle on the given executor,
+   * and blocks until all the calls have finished.
+   *
+   * <p> If any of the calls fails, the remaining calls are cancelled and the failure is rethrown.
+   *
+   * @param tofu The SoyTofu whose cache to prime.
+   * @param msgBundles The message bundles to prime the cache with.
+   * @param cssRenamingMap The CSS renaming map to prime the cache with.
+   * @param executor The executor on which to call {@code addToCache()}.
+   */
+  static void addToCacheInParallel(
+      final SoyTofu tofu, Collection<? extends SoyMsgBundle> msgBundles,
+      @Nullable final SoyCssRenamingMap cssRenamingMap, ExecutorService executor) {
+
+    List<Future<?>> futures = Lists.newArrayListWithCapacity(msgBundles.size());
+    try {
+      for (final SoyMsgBundle msgBundle : msgBundles) {
+        futures.add(executor.submit(new Runnable() {
+          @Override public void run() {
+            tofu.addToCache(msgBundle, cssRenamingMap);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SoyTofuException("Interrupted while adding to cache.", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+
+    } finally {
+      // No-op for the futures that are done (i.e. all of them unless there was a failure).
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+
+  /**
+   * Private helper for the constructor to remove either the shareable or the unshareable templates
+   * from a Soy tree.
+   * @param soyTree The Soy tree to remove templates from.
+   * @param isShareableTemplateVisitor The visitor for determining whether a template is shareable.
+   * @param doRemoveShareable Whether to remove the shareable templates (else the unshareable ones).
+   */
+  private static void removeTemplatesHelper(
+      SoyFileSetNode soyTree, IsShareableTemplateVisitor isShareableTemplateVisitor,
+      boolean doRemoveShareable) {
+
+    for (SoyFileNode soyFile : soyTree.getChildren()) {
+      for (TemplateNode template : Lists.newArrayList(soyFile.getChildren()) /*copy*/) {
+        if (isShareableTemplateVisitor.exec(template) == doRemoveShareable) {
+          soyFile.removeChild(template);
+        }
+      }
+    }
+  }
+
+
   /**
    * Builds a template registry for the given Soy tree.
    * @param soyTree The Soy tree to build a template registry for.
    * @return The newly built template registry.
    */
-  private TemplateRegistry buildTemplateRegistry(SoyFileSetNode soyTree) {
+  private TofuTemplateRegistry buildTemplateRegistry(SoyFileSetNode soyTree) {
+    return new TofuTemplateRegistry(soyTree, prepareForRenderingHelper(soyTree));
+  }
+
+
+  /**
+   * Private helper to run the passes that prepare a Soy tree for rendering.
+   * @param soyTree The Soy tree to prepare.
+   * @return Map from 'print' tag to its resolved print directives, for the given Soy tree.
+   */
+  private ImmutableMap<PrintNode, PrintDirectiveChain> prepareForRenderingHelper(
+      SoyFileSetNode soyTree) {
 
     (new MarkParentNodesNeedingEnvFramesVisitor()).exec(soyTree);
     (new MarkLocalVarDataRefsVisitor()).exec(soyTree);
-    return new TemplateRegistry(soyTree);
+    (new AssignLocalVarSlotsVisitor()).exec(soyTree);
+    return (new BuildPrintDirectiveChainsVisitor(soyTofuDirectivesMap, true)).exec(soyTree);
   }
 
 
@@ -230,9 +452,10 @@ public class BaseTofu implements SoyTofu {
    * SoyCssRenamingMap), optionally adding the mapping to the cache if it's not already there.
    *
    * <p> Specifically, if doAddToCache is true, then the mapping will be added to the cache if it's
-   * not already there. Thus, after calling this method with doAddToCache set to true, the given key
-   * is guaranteed to be found in the cache. On the other hand, if doAddToCache is false and the key
-   * is not already in the cache, then this method simply returns null without modifying the cache.
+   * not already there (unless it is evicted, the given key will then be found in the cache). If
+   * several threads request the same missing key concurrently, the template registry is only built
+   * once. On the other hand, if doAddToCache is false and the key is not already in the cache, then
+   * this method simply returns null without modifying the cache.
    *
    * @param key The pair of SoyMsgBundle and SoyCssRenamingMap for which to retrieve the
    *     corresponding template registry.
@@ -241,7 +464,7 @@ public class BaseTofu implements SoyTofu {
    * @return The corresponding template registry, or null if not found in cache and doAddToCache is
    *     false.
    */
-  private TemplateRegistry getCachedTemplateRegistry(
+  private TofuTemplateRegistry getCachedTemplateRegistry(
       Pair<SoyMsgBundle, SoyCssRenamingMap> key, boolean doAddToCache) {
 
     // This precondition check is for SimplifyVisitor, which we use below after making substitutions
@@ -251,19 +474,46 @@ public class BaseTofu implements SoyTofu {
     // in scope.
     Preconditions.checkState(apiCallScope.isActive());
 
-    TemplateRegistry templateRegistry = cachedTemplateRegistries.get(key);
-    if (templateRegistry == null) {
-      if (!doAddToCache) {
-        return null;
-      }
-      SoyFileSetNode soyTreeClone = soyTree.clone();
-      (new InsertMsgsVisitor(key.first, true)).exec(soyTreeClone);
-      (new RenameCssVisitor(key.second)).exec(soyTreeClone);
-      simplifyVisitor.exec(soyTreeClone);
-      templateRegistry = buildTemplateRegistry(soyTreeClone);
-      cachedTemplateRegistries.put(key, templateRegistry);
-    }
-    return templateRegistry;
+    if (!doAddToCache) {
+      return cachedTemplateRegistries.getIfPresent(key);
+    }
+
+    try {
+      return cachedTemplateRegistries.getUnchecked(key);
+    } catch (UncheckedExecutionException uee) {
+      throw Throwables.propagate(uee.getCause());
+    }
+  }
+
+
+  /**
+   * Builds the template registry to cache for the given key (a key is a pair of SoyMsgBundle and
+   * SoyCssRenamingMap). Must be called within the apiCallScope (see getCachedTemplateRegistry()).
+   *
+   * <p> Only the unshareable templates are copied. The new registry also includes the shared
+   * templates, which are not modified.
+   *
+   * @param key The pair of SoyMsgBundle and SoyCssRenamingMap for which to build the template
+   *     registry.
+   * @return The newly built template registry.
+   */
+  private TofuTemplateRegistry buildCachedTemplateRegistry(
+      Pair<SoyMsgBundle, SoyCssRenamingMap> key) {
+
+    SoyFileSetNode soyTreeClone = unshareableTemplatesTree.clone();
+    (new InsertMsgsVisitor(key.first, true)).exec(soyTreeClone);
+    (new RenameCssVisitor(key.second)).exec(soyTreeClone);
+    simplifyVisitorProvider.get().exec(soyTreeClone);
+    ImmutableMap<MsgNode, MsgRenderPlan> msgRenderPlans =
+        (new BuildMsgRenderPlansVisitor(key.first)).exec(soyTreeClone);
+
+    List<TemplateNode> templates = Lists.newArrayList(sharedTemplates);
+    for (SoyFileNode soyFile : soyTreeClone.getChildren()) {
+      templates.addAll(soyFile.getChildren());
+    }
+    return new TofuTemplateRegistry(
+        templates, prepareForRenderingHelper(soyTreeClone), msgRenderPlans,
+        sharedTemplateRegistry);
   }
 
 
@@ -281,17 +531,19 @@ public class BaseTofu implements SoyTofu {
    *     the cache if it's not already there. If set to false, then falls back to the no-caching
    *     mode of rendering when not found in cache. Only applicable if isCaching is true for this
    *     BaseTofu instance.
+   * @param dataAccessTracer The tracer to record the data paths read into, or null if not tracing.
    * @return The rendered text.
    */
   private String renderMain(
       String templateName, @Nullable SoyMapData data, @Nullable SoyMapData ijData,
       @Nullable Set<String> activeDelPackageNames, @Nullable SoyMsgBundle msgBundle,
-      @Nullable SoyCssRenamingMap cssRenamingMap, boolean doAddToCache) {
+      @Nullable SoyCssRenamingMap cssRenamingMap, boolean doAddToCache,
+      @Nullable SoyDataAccessTracer dataAccessTracer) {
 
     StringBuilder outputSb = new StringBuilder();
     renderMain(
         outputSb, templateName, data, ijData, activeDelPackageNames, msgBundle, cssRenamingMap,
-        doAddToCache);
+        doAddToCache, null, dataAccessTracer);
     return outputSb.toString();
   }
 
@@ -309,12 +561,16 @@ public class BaseTofu implements SoyTofu {
    *     the cache if it's not already there. If set to false, then falls back to the no-caching
    *     mode of rendering when not found in cache. Only applicable if isCaching is true for this
    *     BaseTofu instance.
+   * @param flushPointTemplateNames The names of templates after which to flush the output (if the
+   *     output is Flushable), or null if none.
+   * @param dataAccessTracer The tracer to record the data paths read into, or null if not tracing.
    */
   private void renderMain(
       Appendable outputBuf, String templateName, @Nullable SoyMapData data,
       @Nullable SoyMapData ijData, @Nullable Set<String> activeDelPackageNames,
       @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap,
-      boolean doAddToCache) {
+      boolean doAddToCache, @Nullable Set<String> flushPointTemplateNames,
+      @Nullable SoyDataAccessTracer dataAccessTracer) {
 
     if (activeDelPackageNames == null) {
       activeDelPackageNames = Collections.emptySet();
@@ -328,19 +584,21 @@ public class BaseTofu implements SoyTofu {
           apiCallScope, msgBundle, 0 /*use msgBundle locale's direction, ltr if null*/);
 
       // Do the rendering.
-      TemplateRegistry cachedTemplateRegistry = isCaching ?
+      TofuTemplateRegistry cachedTemplateRegistry = isCaching ?
           getCachedTemplateRegistry(Pair.of(msgBundle, cssRenamingMap), doAddToCache) : null;
       // Note: cachedTemplateRegistry may be null even when isCaching is true (specifically, if
       // doAddToCache is false).
       if (cachedTemplateRegistry != null) {
-        // Note: Still need to pass msgBundle because we currently don't cache plural/select msgs.
+        // Note: The plural/select msgs left in the cached templates have their translations
+        // resolved in the cached template registry, so msgBundle is only passed as a fallback.
         renderMainHelper(
             cachedTemplateRegistry, outputBuf, templateName, data, ijData, activeDelPackageNames,
-            msgBundle, null);
+            msgBundle, null, flushPointTemplateNames, dataAccessTracer);
       } else {
         renderMainHelper(
             templateRegistryForNoCaching, outputBuf, templateName, data, ijData,
-            activeDelPackageNames, msgBundle, cssRenamingMap);
+            activeDelPackageNames, msgBundle, cssRenamingMap, flushPointTemplateNames,
+            dataAccessTracer);
       }
 
     } finally {
@@ -361,11 +619,16 @@ public class BaseTofu implements SoyTofu {
    * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
    *     source.
    * @param cssRenamingMap Map for renaming selectors in 'css' tags, or null if not used.
+   * @param flushPointTemplateNames The names of templates after which to flush the output (if the
+   *     output is Flushable), or null if none.
+   * @param dataAccessTracer The tracer to record the data paths read into, or null if not tracing.
    */
   private void renderMainHelper(
-      TemplateRegistry templateRegistry, Appendable outputBuf, String templateName,
+      TofuTemplateRegistry templateRegistry, Appendable outputBuf, String templateName,
       @Nullable SoyMapData data, @Nullable SoyMapData ijData, Set<String> activeDelPackageNames,
-      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap) {
+      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap,
+      @Nullable Set<String> flushPointTemplateNames,
+      @Nullable SoyDataAccessTracer dataAccessTracer) {
 
     TemplateNode template = templateRegistry.getBasicTemplate(templateName);
     if (template == null) {
@@ -379,7 +642,10 @@ public class BaseTofu implements SoyTofu {
     try {
       RenderVisitor rv = tofuRenderVisitorFactory.create(
           outputBuf, templateRegistry, data, ijData, null, activeDelPackageNames, msgBundle,
-          cssRenamingMap);
+          cssRenamingMap, flushPointTemplateNames);
+      if (dataAccessTracer != null && dataAccessTracer.sampleRender()) {
+        rv.setDataAccessRecorder(dataAccessTracer);
+      }
       rv.exec(template);
 
     } catch (RenderException re) {
@@ -405,6 +671,8 @@ public class BaseTofu implements SoyTofu {
     private SoyCssRenamingMap cssRenamingMap;
     private Set<String> activeDelPackageNames;
     private boolean doAddToCache;
+    private Set<String> flushPointTemplateNames;
+    private SoyDataAccessTracer dataAccessTracer;
 
     /**
      * @param baseTofu The underlying BaseTofu object used to perform the rendering.
@@ -419,6 +687,8 @@ public class BaseTofu implements SoyTofu {
       this.msgBundle = null;
       this.cssRenamingMap = null;
       this.doAddToCache = true;
+      this.flushPointTemplateNames = null;
+      this.dataAccessTracer = null;
     }
 
     @Override public Renderer setData(Map<String, ?> data) {
@@ -462,10 +732,20 @@ public class BaseTofu implements SoyTofu {
       return this;
     }
 
+    @Override public Renderer setFlushPoints(Set<String> flushPointTemplateNames) {
+      this.flushPointTemplateNames = flushPointTemplateNames;
+      return this;
+    }
+
+    @Override public Renderer setDataAccessTracer(SoyDataAccessTracer dataAccessTracer) {
+      this.dataAccessTracer = dataAccessTracer;
+      return this;
+    }
+
     @Override public String render() {
       return baseTofu.renderMain(
           templateName, data, ijData, activeDelPackageNames, msgBundle, cssRenamingMap,
-          doAddToCache);
+          doAddToCache, dataAccessTracer);
     }
 
     @Override public SanitizedContent renderAsSanitizedContent() {
@@ -481,7 +761,7 @@ public class BaseTofu implements SoyTofu {
     @Override public void render(Appendable out) {
       baseTofu.renderMain(
           out, templateName, data, ijData, activeDelPackageNames, msgBundle, cssRenamingMap,
-          doAddToCache);
+          doAddToCache, flushPointTemplateNames, dataAccessTracer);
     }
   }
 
@@ -495,14 +775,14 @@ public class BaseTofu implements SoyTofu {
       @Nullable SoyMsgBundle msgBundle) {
     return renderMain(
         templateInfo.getName(), (data == null) ? null : new SoyMapData(data), null, null, msgBundle,
-        null, true);
+        null, true, null);
   }
 
 
   @Deprecated
   @Override public String render(SoyTemplateInfo templateInfo, @Nullable SoyMapData data,
       @Nullable SoyMsgBundle msgBundle) {
-    return renderMain(templateInfo.getName(), data, null, null, msgBundle, null, true);
+    return renderMain(templateInfo.getName(), data, null, null, msgBundle, null, true, null);
   }
 
 
@@ -511,14 +791,14 @@ public class BaseTofu implements SoyTofu {
       @Nullable SoyMsgBundle msgBundle) {
     return renderMain(
         templateName, (data == null) ? null : new SoyMapData(data), null, null, msgBundle, null,
-        true);
+        true, null);
   }
 
 
   @Deprecated
   @Override public String render(String templateName, @Nullable SoyMapData data,
       @Nullable SoyMsgBundle msgBundle) {
-    return renderMain(templateName, data, null, null, msgBundle, null, true);
+    return renderMain(templateName, data, null, null, msgBundle, null, true, null);
   }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.sharedpasses.render.MsgRenderPlan;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Visitor for resolving the translations of all 'msg' tags in a given SoyMsgBundle into
+ * MsgRenderPlans when building the templates, so that TofuRenderVisitor doesn't need to look up the
+ * translations (and set up the plural rules of their locale) on every render.
+ *
+ * <p> {@link #exec} should be called on a full parse tree, usually after InsertMsgsVisitor has
+ * replaced all the messages it can, so that only the plural/select messages are left. The result is
+ * a map from each 'msg' tag to its resolved translation.
+ */
+class BuildMsgRenderPlansVisitor
+    extends AbstractSoyNodeVisitor<ImmutableMap<MsgNode, MsgRenderPlan>> {
+
+
+  /** The bundle of translated messages, or null to use the messages from the Soy source. */
+  private final SoyMsgBundle msgBundle;
+
+  /** Builder for the map of resolved translations (during pass). */
+  private ImmutableMap.Builder<MsgNode, MsgRenderPlan> msgRenderPlansBuilder;
+
+
+  /**
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   */
+  public BuildMsgRenderPlansVisitor(@Nullable SoyMsgBundle msgBundle) {
+    this.msgBundle = msgBundle;
+  }
+
+
+  @Override public ImmutableMap<MsgNode, MsgRenderPlan> exec(SoyNode node) {
+
+    Preconditions.checkArgument(node instanceof SoyFileSetNode);
+
+    msgRenderPlansBuilder = ImmutableMap.builder();
+    visit(node);
+    return msgRenderPlansBuilder.build();
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Implementations for specific nodes.
+
+
+  @Override protected void visitMsgNode(MsgNode node) {
+    msgRenderPlansBuilder.put(node, MsgRenderPlan.create(node, msgBundle));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Fallback implementation.
+
+
+  @Override protected void visitSoyNode(SoyNode node) {
+    if (node instanceof ParentSoyNode<?>) {
+      visitChildren((ParentSoyNode<?>) node);
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.template.soy.basicdirectives.InsertWordBreaksDirective;
+import com.google.template.soy.coredirectives.EscapeHtmlDirective;
+import com.google.template.soy.data.SoyData;
+import com.google.template.soy.data.restricted.IntegerData;
+import com.google.template.soy.exprtree.ExprRootNode;
+import com.google.template.soy.sharedpasses.render.PrintDirectiveChain;
+import com.google.template.soy.sharedpasses.render.PrintDirectiveChain.BoundDirective;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.PrintDirectiveNode;
+import com.google.template.soy.soytree.PrintNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+import com.google.template.soy.tofu.restricted.SoyTofuPrintDirective;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Visitor for resolving the print directives of all 'print' tags into PrintDirectiveChains when
+ * building the templates, so that TofuRenderVisitor doesn't need to look up the directives by name
+ * on every render.
+ *
+ * <p> {@link #exec} should be called on a full parse tree. The result is a map from each 'print'
+ * tag that has directives to its resolved directives. Tags using a directive that can't be
+ * resolved (unknown name or wrong number of args) are left out, so that the usual error is
+ * reported if they are ever rendered.
+ *
+ * <p> Optionally, some common sequences of directives are fused into a single directive that does
+ * the same work in one pass over the value. Currently, this is done for {@code |escapeHtml}
+ * followed by {@code |insertWordBreaks} with a constant arg.
+ */
+class BuildPrintDirectiveChainsVisitor
+    extends AbstractSoyNodeVisitor<ImmutableMap<PrintNode, PrintDirectiveChain>> {
+
+
+  /** Map of all SoyTofuPrintDirectives (name to directive). */
+  private final Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap;
+
+  /** Whether to fuse common sequences of directives. */
+  private final boolean doFuseDirectives;
+
+  /** Builder for the map of resolved directives (during pass). */
+  private ImmutableMap.Builder<PrintNode, PrintDirectiveChain> printDirectiveChainsBuilder;
+
+
+  /**
+   * @param soyTofuDirectivesMap Map of all SoyTofuPrintDirectives (name to directive).
+   * @param doFuseDirectives Whether to fuse common sequences of directives.
+   */
+  public BuildPrintDirectiveChainsVisitor(
+      Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap, boolean doFuseDirectives) {
+    this.soyTofuDirectivesMap = soyTofuDirectivesMap;
+    this.doFuseDirectives = doFuseDirectives;
+  }
+
+
+  @Override public ImmutableMap<PrintNode, PrintDirectiveChain> exec(SoyNode node) {
+
+    Preconditions.checkArgument(node instanceof SoyFileSetNode);
+
+    printDirectiveChainsBuilder = ImmutableMap.builder();
+    visit(node);
+    return printDirectiveChainsBuilder.build();
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Implementations for specific nodes.
+
+
+  @Override protected void visitPrintNode(PrintNode node) {
+
+    List<PrintDirectiveNode> directiveNodes = node.getChildren();
+    int numDirectives = directiveNodes.size();
+    if (numDirectives == 0) {
+      return;
+    }
+
+    List<BoundDirective> boundDirectives = Lists.newArrayListWithCapacity(numDirectives);
+    for (int i = 0; i < numDirectives; i++) {
+
+      BoundTofuDirective boundDirective = bindDirective(directiveNodes.get(i));
+      if (boundDirective == null) {
+        return;
+      }
+
+      if (doFuseDirectives && boundDirective.directive instanceof EscapeHtmlDirective &&
+          i + 1 < numDirectives) {
+        BoundTofuDirective nextBoundDirective = bindDirective(directiveNodes.get(i + 1));
+        if (nextBoundDirective == null) {
+          return;
+        }
+        if (nextBoundDirective.directive instanceof InsertWordBreaksDirective) {
+          List<SoyData> nextArgs = nextBoundDirective.getConstantArgs();
+          if (nextArgs != null && nextArgs.get(0) instanceof IntegerData &&
+              nextArgs.get(0).integerValue() > 0) {
+            boundDirectives.add(new EscapeHtmlAndInsertWordBreaksDirective(
+                (InsertWordBreaksDirective) nextBoundDirective.directive,
+                nextArgs.get(0).integerValue()));
+            i++;
+            continue;
+          }
+        }
+      }
+
+      boundDirectives.add(boundDirective);
+    }
+
+    printDirectiveChainsBuilder.put(node, new PrintDirectiveChain(boundDirectives));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Fallback implementation.
+
+
+  @Override protected void visitSoyNode(SoyNode node) {
+    if (node instanceof ParentSoyNode<?>) {
+      visitChildren((ParentSoyNode<?>) node);
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Private helper to bind a print directive to its args.
+   * @param directiveNode The node of the directive to bind.
+   * @return The bound directive, or null if the directive can't be resolved.
+   */
+  private BoundTofuDirective bindDirective(PrintDirectiveNode directiveNode) {
+
+    SoyTofuPrintDirective directive = soyTofuDirectivesMap.get(directiveNode.getName());
+    if (directive == null ||
+        ! directive.getValidArgsSizes().contains(directiveNode.getArgs().size())) {
+      return null;
+    }
+    return new BoundTofuDirective(directive, directiveNode.getArgs());
+  }
+
+
+  /**
+   * A SoyTofuPrintDirective bound to its args.
+   */
+  private static class BoundTofuDirective extends BoundDirective {
+
+    /** The directive. */
+    private final SoyTofuPrintDirective directive;
+
+    public BoundTofuDirective(SoyTofuPrintDirective directive, List<ExprRootNode<?>> argExprs) {
+      super(argExprs);
+      this.directive = directive;
+    }
+
+    @Override protected SoyData apply(SoyData value, List<SoyData> args) {
+      return directive.applyForTofu(value, args);
+    }
+  }
+
+
+  /**
+   * The fused form of {@code |escapeHtml|insertWordBreaks:N} for a positive constant N.
+   */
+  private static class EscapeHtmlAndInsertWordBreaksDirective extends BoundDirective {
+
+    /** The 'insertWordBreaks' directive. */
+    private final InsertWordBreaksDirective insertWordBreaksDirective;
+
+    /** The max number of chars between word breaks. */
+    private final int maxCharsBetweenWordBreaks;
+
+    public EscapeHtmlAndInsertWordBreaksDirective(
+        InsertWordBreaksDirective insertWordBreaksDirective, int maxCharsBetweenWordBreaks) {
+      super(ImmutableList.<ExprRootNode<?>>of());
+      this.insertWordBreaksDirective = insertWordBreaksDirective;
+      this.maxCharsBetweenWordBreaks = maxCharsBetweenWordBreaks;
+    }
+
+    @Override protected SoyData apply(SoyData value, List<SoyData> args) {
+      return insertWordBreaksDirective.applyAfterEscapeHtml(value, maxCharsBetweenWordBreaks);
+    }
+  }
+
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.template.soy.base.SoySyntaxException;
+import com.google.template.soy.data.SanitizedContent;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.javasrc.SoyTemplateRuntime;
+import com.google.template.soy.javasrc.SoyTemplateRuntimes;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.parseinfo.SoyTemplateInfo;
+import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.tofu.SoyDataAccessTracer;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.SoyTofuException;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Represents a compiled Soy file set whose templates are compiled to JVM classes (one class per
+ * message bundle) instead of being interpreted by walking the Soy tree.
+ *
+ * <p> The first render with a message bundle starts compiling the templates for the bundle on the
+ * compile executor, and renders fall back to an interpreting {@code BaseTofu} until the compiled
+ * classes are ready, so rendering never waits for the Java compiler. Only {@link #addToCache}
+ * compiles on the calling thread (and blocks until the compiled classes are ready). Renders that
+ * the compiled classes cannot handle (e.g. when the file set uses features not supported by the
+ * Java Src backend, when rendering with active delegate packages, or when streaming to an
+ * {@code Appendable} other than a {@code StringBuilder}) also fall back to the interpreting Tofu.
+ * Either way, the output is the same as for {@code SoyFileSet.compileToTofu()}.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ */
+public class BytecodeTofu implements SoyTofu {
+
+
+  /**
+   * Compiles the Soy file set to template runtimes for one message bundle.
+   */
+  public static interface RuntimesCompiler {
+
+    /**
+     * Compiles the Soy file set to template runtimes.
+     *
+     * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+     *     source.
+     * @return The compiled template runtimes.
+     * @throws SoySyntaxException If the file set cannot be compiled by the Java Src backend.
+     * @throws UnsupportedOperationException If the file set uses a feature not supported by the
+     *     Java Src backend.
+     * @throws RuntimeException If the generated Java code fails to compile.
+     */
+    public SoyTemplateRuntimes compile(@Nullable SoyMsgBundle msgBundle);
+  }
+
+
+  /** A logger that receives messages about file sets that could not be compiled. */
+  private static final Logger LOGGER = Logger.getLogger(BytecodeTofu.class.getName());
+
+
+  /** Compiles the Soy file set for a given message bundle. */
+  private final RuntimesCompiler runtimesCompiler;
+
+  /** The interpreting Tofu used for renders that the compiled templates can't handle. */
+  private final BaseTofu fallbackTofu;
+
+  /** The executor on which renders start compiling the templates for a message bundle. */
+  private final Executor compileExecutor;
+
+  /** Cache from message bundle (absent for no bundle) to the task compiling its runtimes (the
+   *  task's result is null if the bundle can't be compiled). Thread-safe. */
+  private final Cache<Optional<SoyMsgBundle>, FutureTask<SoyTemplateRuntimes>>
+      compiledRuntimesCache;
+
+  /** The namespace of this SoyTofu object, or null if none. */
+  private final String namespace;
+
+
+  /**
+   * @param runtimesCompiler Compiles the Soy file set for a given message bundle.
+   * @param fallbackTofu The interpreting Tofu used for renders that the compiled templates can't
+   *     handle.
+   * @param cacheMaxSize The max number of message bundles to keep compiled templates for, or 0 for
+   *     no limit. When the cache is full, the least recently used bundle is evicted.
+   * @param compileExecutor The executor on which renders start compiling the templates for a
+   *     message bundle.
+   */
+  public BytecodeTofu(
+      RuntimesCompiler runtimesCompiler, BaseTofu fallbackTofu, int cacheMaxSize,
+      Executor compileExecutor) {
+    this(runtimesCompiler, fallbackTofu, compileExecutor,
+         BytecodeTofu.<Optional<SoyMsgBundle>, FutureTask<SoyTemplateRuntimes>>newCache(
+             cacheMaxSize),
+         null);
+  }
+
+
+  /**
+   * Private constructor for instances sharing the same compiled runtimes.
+   */
+  private BytecodeTofu(
+      RuntimesCompiler runtimesCompiler, BaseTofu fallbackTofu, Executor compileExecutor,
+      Cache<Optional<SoyMsgBundle>, FutureTask<SoyTemplateRuntimes>> compiledRuntimesCache,
+      @Nullable String namespace) {
+    this.runtimesCompiler = Preconditions.checkNotNull(runtimesCompiler);
+    this.fallbackTofu = Preconditions.checkNotNull(fallbackTofu);
+    this.compileExecutor = Preconditions.checkNotNull(compileExecutor);
+    this.compiledRuntimesCache = compiledRuntimesCache;
+    this.namespace = namespace;
+  }
+
+
+  /**
+   * Private helper for the constructor to create a cache that records its stats.
+   * @param cacheMaxSize The max size of the cache, or 0 for no limit.
+   */
+  private static <K, V> Cache<K, V> newCache(int cacheMaxSize) {
+    CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+    if (cacheMaxSize > 0) {
+      cacheBuilder.maximumSize(cacheMaxSize);
+    }
+    return cacheBuilder.build();
+  }
+
+
+  @Override public String getNamespace() {
+    return namespace;
+  }
+
+
+  @Override public SoyTofu forNamespace(@Nullable String namespace) {
+    if (namespace != null) {
+      checkArgument(
+          namespace.length() > 0 &&
+              namespace.charAt(0) != '.' && namespace.charAt(namespace.length() - 1) != '.',
+          "Invalid namespace '" + namespace + "' (must not begin or end with a dot).");
+    }
+    return new BytecodeTofu(
+        runtimesCompiler, fallbackTofu, compileExecutor, compiledRuntimesCache, namespace);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, the compiled templates are always cached (per message bundle).
+   */
+  @Override public boolean isCaching() {
+    return true;
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, the CSS renaming map is applied at render time, so only the
+   * message bundle affects what is cached. The templates are compiled on the calling thread (unless
+   * a render already started compiling them), and this method blocks until they're compiled.
+   */
+  @Override public void addToCache(
+      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap) {
+    FutureTask<SoyTemplateRuntimes> compileTask = getOrCreateCompileTask(msgBundle, null);
+    // No-op if the task was already run (or is running on another thread).
+    compileTask.run();
+    getResult(compileTask);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, each message bundle is compiled on its own executor thread.
+   */
+  @Override public void addToCache(
+      Collection<? extends SoyMsgBundle> msgBundles, @Nullable SoyCssRenamingMap cssRenamingMap,
+      ExecutorService executor) {
+    BaseTofu.addToCacheInParallel(this, msgBundles, cssRenamingMap, executor);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, these are the statistics of the cache of compiled templates
+   * (one entry per message bundle).
+   */
+  @Override public CacheStats getCacheStats() {
+    return compiledRuntimesCache.stats();
+  }
+
+
+  @Override public Renderer newRenderer(SoyTemplateInfo templateInfo) {
+    return new RendererImpl(this, templateInfo.getName());
+  }
+
+
+  @Override public Renderer newRenderer(String templateName) {
+    return new RendererImpl(this, getFullTemplateName(templateName));
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedIjParamsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return fallbackTofu.getUsedIjParamsForTemplate(templateInfo);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedIjParamsForTemplate(String templateName) {
+    return fallbackTofu.getUsedIjParamsForTemplate(getFullTemplateName(templateName));
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return fallbackTofu.getUsedDataPathsForTemplate(templateInfo);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(String templateName) {
+    return fallbackTofu.getUsedDataPathsForTemplate(getFullTemplateName(templateName));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Private methods.
+
+
+  /**
+   * Gets the full template name (including namespace) for the given template name.
+   * @param templateName The template name, which must be a partial name beginning with a dot if
+   *     this SoyTofu instance is namespaced.
+   */
+  private String getFullTemplateName(String templateName) {
+    if (namespace == null) {
+      return templateName;
+    }
+    if (templateName.charAt(0) != '.') {
+      throw new SoyTofuException(
+          "Partial template name \"" + templateName + "\" must begin with a dot.");
+    }
+    return namespace + templateName;
+  }
+
+
+  /**
+   * Gets the compiled runtimes for the given message bundle for a render, without waiting for them
+   * to be compiled.
+   *
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @param doAddToCache Whether to start compiling the runtimes (on the compile executor) if they
+   *     aren't in the cache.
+   * @return The compiled runtimes, or null if not (yet) compiled, or if the file set can't be
+   *     compiled for the bundle.
+   */
+  private SoyTemplateRuntimes getCompiledRuntimes(
+      @Nullable SoyMsgBundle msgBundle, boolean doAddToCache) {
+
+    FutureTask<SoyTemplateRuntimes> compileTask = doAddToCache ?
+        getOrCreateCompileTask(msgBundle, compileExecutor) :
+        compiledRuntimesCache.getIfPresent(Optional.fromNullable(msgBundle));
+    if (compileTask == null || !compileTask.isDone()) {
+      return null;
+    }
+    return getResult(compileTask);
+  }
+
+
+  /**
+   * Gets the task compiling the runtimes for the given message bundle, creating it if it isn't in
+   * the cache. Each bundle is compiled only once (until evicted from the cache), even if several
+   * threads ask for it concurrently.
+   *
+   * @param msgBundle The bundle of translated messages, or null to use the messages from the Soy
+   *     source.
+   * @param executor The executor to run a newly created task on, or null to leave it to the caller
+   *     to run the task.
+   * @return The task compiling the runtimes.
+   */
+  private FutureTask<SoyTemplateRuntimes> getOrCreateCompileTask(
+      @Nullable final SoyMsgBundle msgBundle, @Nullable Executor executor) {
+
+    final FutureTask<SoyTemplateRuntimes> newTask =
+        new FutureTask<SoyTemplateRuntimes>(new Callable<SoyTemplateRuntimes>() {
+          @Override public SoyTemplateRuntimes call() {
+            try {
+              return runtimesCompiler.compile(msgBundle);
+            } catch (RuntimeException e) {
+              // Includes SoySyntaxException and UnsupportedOperationException from the Java Src
+              // backend, as well as failures of the dynamic Java compiler.
+              LOGGER.log(Level.WARNING, "Falling back to interpreting templates.", e);
+              return null;
+            }
+          }
+        });
+
+    FutureTask<SoyTemplateRuntimes> compileTask;
+    try {
+      compileTask = compiledRuntimesCache.get(
+          Optional.fromNullable(msgBundle), new Callable<FutureTask<SoyTemplateRuntimes>>() {
+            @Override public FutureTask<SoyTemplateRuntimes> call() {
+              return newTask;
+            }
+          });
+    } catch (ExecutionException e) {
+      // The callable above doesn't throw.
+      throw new AssertionError(e);
+    }
+
+    if (compileTask == newTask && executor != null) {
+      executor.execute(compileTask);
+    }
+    return compileTask;
+  }
+
+
+  /**
+   * Private helper to get the result of a task compiling runtimes, waiting for it if necessary.
+   */
+  private static SoyTemplateRuntimes getResult(FutureTask<SoyTemplateRuntimes> compileTask) {
+    try {
+      return compileTask.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SoyTofuException("Interrupted while waiting for templates to be compiled.", e);
+    } catch (ExecutionException e) {
+      // The task catches RuntimeExceptions, so the cause is an Error.
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Renderer implementation.
+
+
+  /**
+   * Simple implementation of the Renderer interface.
+   */
+  private static class RendererImpl implements Renderer {
+
+    private final BytecodeTofu bytecodeTofu;
+    private final String templateName;
+    private SoyMapData data;
+    private SoyMapData ijData;
+    private SoyMsgBundle msgBundle;
+    private SoyCssRenamingMap cssRenamingMap;
+    private Set<String> activeDelPackageNames;
+    private boolean doAddToCache;
+    private Set<String> flushPointTemplateNames;
+    private SoyDataAccessTracer dataAccessTracer;
+
+    /**
+     * @param bytecodeTofu The underlying BytecodeTofu object used to perform the rendering.
+     * @param templateName The full template name (including namespace).
+     */
+    public RendererImpl(BytecodeTofu bytecodeTofu, String templateName) {
+      this.bytecodeTofu = bytecodeTofu;
+      this.templateName = templateName;
+      this.data = null;
+      this.ijData = null;
+      this.activeDelPackageNames = null;
+      this.msgBundle = null;
+      this.cssRenamingMap = null;
+      this.doAddToCache = true;
+      this.flushPointTemplateNames = null;
+      this.dataAccessTracer = null;
+    }
+
+    @Override public Renderer setData(Map<String, ?> data) {
+      this.data = (data == null) ? null : new SoyMapData(data);
+      return this;
+    }
+
+    @Override public Renderer setData(SoyMapData data) {
+      this.data = data;
+      return this;
+    }
+
+    @Override public Renderer setIjData(Map<String, ?> ijData) {
+      this.ijData = (ijData == null) ? null : new SoyMapData(ijData);
+      return this;
+    }
+
+    @Override public Renderer setIjData(SoyMapData ijData) {
+      this.ijData = ijData;
+      return this;
+    }
+
+    @Override public Renderer setActiveDelegatePackageNames(
+        Set<String> activeDelegatePackageNames) {
+      this.activeDelPackageNames = activeDelegatePackageNames;
+      return this;
+    }
+
+    @Override public Renderer setMsgBundle(SoyMsgBundle msgBundle) {
+      this.msgBundle = msgBundle;
+      return this;
+    }
+
+    @Override public Renderer setCssRenamingMap(SoyCssRenamingMap cssRenamingMap) {
+      this.cssRenamingMap = cssRenamingMap;
+      return this;
+    }
+
+    @Override public Renderer setDontAddToCache(boolean dontAddToCache) {
+      this.doAddToCache = !dontAddToCache;
+      return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> For objects of this class, the flush points only apply to renders that fall back to the
+     * interpreting Tofu (which is always the case when rendering to an {@code Appendable} other
+     * than a {@code StringBuilder}).
+     */
+    @Override public Renderer setFlushPoints(Set<String> flushPointTemplateNames) {
+      this.flushPointTemplateNames = flushPointTemplateNames;
+      return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> For objects of this class, renders with a tracer always fall back to the interpreting
+     * Tofu, since compiled templates don't record their data accesses.
+     */
+    @Override public Renderer setDataAccessTracer(SoyDataAccessTracer dataAccessTracer) {
+      this.dataAccessTracer = dataAccessTracer;
+      return this;
+    }
+
+    @Override public String render() {
+      SoyTemplateRuntime runtime = getCompiledRuntime();
+      if (runtime == null) {
+        return newFallbackRenderer().render();
+      }
+      try {
+        return runtime.render();
+      } catch (SoyTofuException ste) {
+        throw ste;
+      } catch (RuntimeException e) {
+        throw newRenderException(e);
+      }
+    }
+
+    @Override public SanitizedContent renderAsSanitizedContent() {
+      // The content kind is only known to the Soy tree, so let the fallback do the work.
+      return newFallbackRenderer().renderAsSanitizedContent();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p> For objects of this class, only rendering to a {@code StringBuilder} uses the compiled
+     * templates, since they can't write their output incrementally. Other {@code Appendable}s
+     * (e.g. network streams) are rendered by the interpreting Tofu, so that the output is streamed
+     * instead of being buffered in full.
+     */
+    @Override public void render(Appendable out) {
+      SoyTemplateRuntime runtime = (out instanceof StringBuilder) ? getCompiledRuntime() : null;
+      if (runtime == null) {
+        newFallbackRenderer().render(out);
+        return;
+      }
+      try {
+        runtime.render((StringBuilder) out);
+      } catch (SoyTofuException ste) {
+        throw ste;
+      } catch (RuntimeException e) {
+        throw newRenderException(e);
+      }
+    }
+
+    /**
+     * Gets a new compiled runtime for the template (with the data and CSS renaming map already
+     * set), or null if the render must fall back to the interpreting Tofu.
+     */
+    private SoyTemplateRuntime getCompiledRuntime() {
+      // The compiled templates do not record data accesses.
+      if (dataAccessTracer != null) {
+        return null;
+      }
+      // The compiled templates do not support delegate templates.
+      if (activeDelPackageNames != null && !activeDelPackageNames.isEmpty()) {
+        return null;
+      }
+      SoyTemplateRuntimes runtimes = bytecodeTofu.getCompiledRuntimes(msgBundle, doAddToCache);
+      if (runtimes == null) {
+        return null;
+      }
+      SoyTemplateRuntime runtime = runtimes.newRenderer(templateName);
+      if (runtime == null) {
+        return null;
+      }
+      return runtime.setData(data).setIjData(ijData).setCssRenamingMap(
+          (cssRenamingMap != null) ? cssRenamingMap : SoyCssRenamingMap.IDENTITY);
+    }
+
+    /**
+     * Wraps an exception thrown by a compiled template, as the interpreting Tofu would.
+     */
+    private SoyTofuException newRenderException(RuntimeException e) {
+      return (new SoyTofuException("Exception in compiled template: " + e, e))
+          .setTemplateName(templateName);
+    }
+
+    /**
+     * Creates a renderer on the interpreting Tofu with the same settings as this renderer.
+     */
+    private Renderer newFallbackRenderer() {
+      return bytecodeTofu.fallbackTofu.newRenderer(templateName)
+          .setData(data).setIjData(ijData).setActiveDelegatePackageNames(activeDelPackageNames)
+          .setMsgBundle(msgBundle).setCssRenamingMap(cssRenamingMap)
+          .setDontAddToCache(!doAddToCache).setFlushPoints(flushPointTemplateNames)
+          .setDataAccessTracer(dataAccessTracer);
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Old render methods.
+
+
+  @Deprecated
+  @Override public String render(SoyTemplateInfo templateInfo, @Nullable Map<String, ?> data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return newRenderer(templateInfo).setData(data).setMsgBundle(msgBundle).render();
+  }
+
+
+  @Deprecated
+  @Override public String render(SoyTemplateInfo templateInfo, @Nullable SoyMapData data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return newRenderer(templateInfo).setData(data).setMsgBundle(msgBundle).render();
+  }
+
+
+  @Deprecated
+  @Override public String render(String templateName, @Nullable Map<String, ?> data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return newRenderer(templateName).setData(data).setMsgBundle(msgBundle).render();
+  }
+
+
+  @Deprecated
+  @Override public String render(String templateName, @Nullable SoyMapData data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return newRenderer(templateName).setData(data).setMsgBundle(msgBundle).render();
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.base.Preconditions;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.CssNode;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.soytree.PrintNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+import com.google.template.soy.soytree.TemplateNode;
+
+
+/**
+ * Visitor for determining whether a template can be shared between the cached template registries
+ * of a BaseTofu, i.e. whether the template is the same after substitutions from any SoyMsgBundle
+ * and SoyCssRenamingMap and after simplification in any API call scope.
+ *
+ * <p> {@link #exec} should be called on a TemplateNode. A template can't be shared if it contains
+ * a 'msg' or 'css' tag, or a 'print' tag with directives (since such a tag may be prerendered
+ * during simplification if its expression turns out to be constant, and the directives may depend
+ * on the message bundle's locale or bidi directionality). Note that an expression referencing data
+ * may still simplify to a constant, e.g. {@code true ? 'x' : $y}.
+ */
+class IsShareableTemplateVisitor extends AbstractSoyNodeVisitor<Boolean> {
+
+
+  /** Whether the template being visited can be shared (during pass). */
+  private boolean isShareable;
+
+
+  /**
+   * Returns whether the given template can be shared between cached template registries.
+   * @param node The template to check.
+   * @return Whether the template can be shared.
+   */
+  @Override public Boolean exec(SoyNode node) {
+
+    Preconditions.checkArgument(node instanceof TemplateNode);
+
+    isShareable = true;
+    visit(node);
+    return isShareable;
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Implementations for specific nodes.
+
+
+  @Override protected void visitMsgNode(MsgNode node) {
+    isShareable = false;
+  }
+
+
+  @Override protected void visitCssNode(CssNode node) {
+    isShareable = false;
+  }
+
+
+  @Override protected void visitPrintNode(PrintNode node) {
+    if (node.numChildren() > 0) {
+      isShareable = false;
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Fallback implementation.
+
+
+  @Override protected void visitSoyNode(SoyNode node) {
+    if (isShareable && node instanceof ParentSoyNode<?>) {
+      visitChildren((ParentSoyNode<?>) node);
+    }
+  }
+
+}
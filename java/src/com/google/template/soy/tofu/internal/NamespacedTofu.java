@@ -19,6 +19,7 @@ package com.google.template.soy.tofu.internal;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.template.soy.data.SoyMapData;
 import com.google.template.soy.msgs.SoyMsgBundle;
@@ -26,7 +27,9 @@ import com.google.template.soy.parseinfo.SoyTemplateInfo;
 import com.google.template.soy.shared.SoyCssRenamingMap;
 import com.google.template.soy.tofu.SoyTofu;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nullable;
 
@@ -100,6 +103,18 @@ class NamespacedTofu implements SoyTofu {
   }
 
 
+  @Override public void addToCache(
+      Collection<? extends SoyMsgBundle> msgBundles, @Nullable SoyCssRenamingMap cssRenamingMap,
+      ExecutorService executor) {
+    baseTofu.addToCache(msgBundles, cssRenamingMap, executor);
+  }
+
+
+  @Override public CacheStats getCacheStats() {
+    return baseTofu.getCacheStats();
+  }
+
+
   @Override public Renderer newRenderer(SoyTemplateInfo templateInfo) {
     return baseTofu.newRenderer(templateInfo);
   }
@@ -121,6 +136,17 @@ class NamespacedTofu implements SoyTofu {
   }
 
 
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return baseTofu.getUsedDataPathsForTemplate(templateInfo);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(String templateName) {
+    return baseTofu.getUsedDataPathsForTemplate(getFullTemplateName(templateName));
+  }
+
+
   // -----------------------------------------------------------------------------------------------
   // Old render methods.
 
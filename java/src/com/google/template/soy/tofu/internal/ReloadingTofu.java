@@ -0,0 +1,377 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.template.soy.base.SoyFileSupplier;
+import com.google.template.soy.base.SoySyntaxException;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.parseinfo.SoyTemplateInfo;
+import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.tofu.SoyTofu;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Represents a compiled Soy file set that is recompiled when any of its Soy files changes.
+ *
+ * <p> At most once per check interval, a render (or other call) schedules a check of the Soy file
+ * suppliers on the reload executor. If any file has changed since the current version was
+ * compiled, the file set is recompiled on the reload executor, the new version's cache is primed
+ * with the message bundles and CSS renaming maps cached by the current version, and then the new
+ * version atomically replaces the current one. Renderers that were already obtained keep using
+ * the version they were obtained from, and callers never wait for a recompile. If the recompile
+ * fails (e.g. because of a syntax error), the failure is logged and the current version is kept
+ * until the next check.
+ *
+ * <p> Important: Do not use outside of Soy code (treat as superpackage-private).
+ */
+public class ReloadingTofu implements SoyTofu {
+
+
+  /**
+   * Compiles the Soy file set.
+   */
+  public static interface TofuCompiler {
+
+    /**
+     * Compiles the Soy file set.
+     *
+     * @return The compiled Tofu and the versions of the Soy files read (in the same order as the
+     *     file suppliers).
+     * @throws SoySyntaxException If a syntax error is found.
+     */
+    public Pair<BaseTofu, List<SoyFileSupplier.Version>> compile() throws SoySyntaxException;
+  }
+
+
+  /** A logger that receives messages about failed recompiles. */
+  private static final Logger LOGGER = Logger.getLogger(ReloadingTofu.class.getName());
+
+
+  /** The state shared by this object and all its namespaced versions. */
+  private final Reloader reloader;
+
+  /** The namespace of this SoyTofu object, or null if none. */
+  private final String namespace;
+
+
+  /**
+   * Compiles the Soy file set for the first time. Errors in this compile are not caught.
+   *
+   * @param tofuCompiler Compiles the Soy file set.
+   * @param soyFileSuppliers The suppliers of the Soy files (in the order of the versions returned
+   *     by {@code tofuCompiler}).
+   * @param reloadExecutor The executor on which to check for changes and recompile.
+   * @param checkIntervalMillis The minimum time between checks for changes, in milliseconds.
+   * @throws SoySyntaxException If a syntax error is found.
+   */
+  public ReloadingTofu(
+      TofuCompiler tofuCompiler, List<? extends SoyFileSupplier> soyFileSuppliers,
+      Executor reloadExecutor, long checkIntervalMillis) throws SoySyntaxException {
+    this(tofuCompiler, soyFileSuppliers, reloadExecutor, checkIntervalMillis,
+         Ticker.systemTicker());
+  }
+
+
+  /**
+   * Compiles the Soy file set for the first time, using the given ticker to measure the check
+   * interval.
+   *
+   * @param ticker The source of time for the check interval.
+   * @see #ReloadingTofu(TofuCompiler, List, Executor, long)
+   */
+  @VisibleForTesting
+  ReloadingTofu(
+      TofuCompiler tofuCompiler, List<? extends SoyFileSupplier> soyFileSuppliers,
+      Executor reloadExecutor, long checkIntervalMillis, Ticker ticker)
+      throws SoySyntaxException {
+    this(new Reloader(
+             tofuCompiler, soyFileSuppliers, reloadExecutor, checkIntervalMillis, ticker),
+         null);
+  }
+
+
+  /**
+   * Private constructor for instances sharing the same reloader.
+   */
+  private ReloadingTofu(Reloader reloader, @Nullable String namespace) {
+    this.reloader = reloader;
+    this.namespace = namespace;
+  }
+
+
+  @Override public String getNamespace() {
+    return namespace;
+  }
+
+
+  @Override public SoyTofu forNamespace(@Nullable String namespace) {
+    if (namespace != null) {
+      checkArgument(
+          namespace.length() > 0 &&
+              namespace.charAt(0) != '.' && namespace.charAt(namespace.length() - 1) != '.',
+          "Invalid namespace '" + namespace + "' (must not begin or end with a dot).");
+    }
+    return new ReloadingTofu(reloader, namespace);
+  }
+
+
+  @Override public boolean isCaching() {
+    return reloader.getCurrentTofu().isCaching();
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, this adds to the cache of the current version. Versions
+   * compiled later are primed with the same combinations before they replace the current version.
+   */
+  @Override public void addToCache(
+      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap) {
+    reloader.getCurrentTofu().addToCache(msgBundle, cssRenamingMap);
+  }
+
+
+  @Override public void addToCache(
+      Collection<? extends SoyMsgBundle> msgBundles, @Nullable SoyCssRenamingMap cssRenamingMap,
+      ExecutorService executor) {
+    reloader.getCurrentTofu().addToCache(msgBundles, cssRenamingMap, executor);
+  }
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p> For objects of this class, these are the statistics of the current version's cache.
+   */
+  @Override public CacheStats getCacheStats() {
+    return reloader.getCurrentTofu().getCacheStats();
+  }
+
+
+  @Override public Renderer newRenderer(SoyTemplateInfo templateInfo) {
+    return getCurrentTofu().newRenderer(templateInfo);
+  }
+
+
+  @Override public Renderer newRenderer(String templateName) {
+    return getCurrentTofu().newRenderer(templateName);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedIjParamsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return getCurrentTofu().getUsedIjParamsForTemplate(templateInfo);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedIjParamsForTemplate(String templateName) {
+    return getCurrentTofu().getUsedIjParamsForTemplate(templateName);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(
+      SoyTemplateInfo templateInfo) {
+    return getCurrentTofu().getUsedDataPathsForTemplate(templateInfo);
+  }
+
+
+  @Override public ImmutableSortedSet<String> getUsedDataPathsForTemplate(String templateName) {
+    return getCurrentTofu().getUsedDataPathsForTemplate(templateName);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Private methods.
+
+
+  /**
+   * Gets the current version of the compiled file set, with this object's namespace.
+   */
+  private SoyTofu getCurrentTofu() {
+    return reloader.getCurrentTofu().forNamespace(namespace);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Reloader.
+
+
+  /**
+   * Holds the current version of the compiled file set and replaces it when the Soy files change.
+   */
+  private static class Reloader implements Runnable {
+
+    /** Compiles the Soy file set. */
+    private final TofuCompiler tofuCompiler;
+
+    /** The suppliers of the Soy files. */
+    private final List<SoyFileSupplier> soyFileSuppliers;
+
+    /** The executor on which to check for changes and recompile. */
+    private final Executor reloadExecutor;
+
+    /** The minimum time between checks for changes, in nanoseconds. */
+    private final long checkIntervalNanos;
+
+    /** The source of time for the check interval. */
+    private final Ticker ticker;
+
+    /** The current version of the compiled file set and the versions of the Soy files read. Both
+     *  are replaced together, so they're kept in one immutable pair. */
+    private volatile Pair<BaseTofu, List<SoyFileSupplier.Version>> current;
+
+    /** The value of {@code ticker.read()} after which the next check may be scheduled. */
+    private volatile long nextCheckNanos;
+
+    /** Whether a check (and possibly a recompile) is scheduled or running. */
+    private final AtomicBoolean isChecking = new AtomicBoolean(false);
+
+    public Reloader(
+        TofuCompiler tofuCompiler, List<? extends SoyFileSupplier> soyFileSuppliers,
+        Executor reloadExecutor, long checkIntervalMillis, Ticker ticker) {
+      checkArgument(checkIntervalMillis >= 0, "checkIntervalMillis must be non-negative.");
+      this.tofuCompiler = Preconditions.checkNotNull(tofuCompiler);
+      this.soyFileSuppliers = ImmutableList.copyOf(soyFileSuppliers);
+      this.reloadExecutor = Preconditions.checkNotNull(reloadExecutor);
+      this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+      this.ticker = Preconditions.checkNotNull(ticker);
+      this.current = tofuCompiler.compile();
+      this.nextCheckNanos = ticker.read() + checkIntervalNanos;
+    }
+
+    /**
+     * Gets the current version of the compiled file set, first scheduling a check for changes if
+     * the check interval has passed. Never waits for the check.
+     */
+    public BaseTofu getCurrentTofu() {
+      if (ticker.read() - nextCheckNanos >= 0 && isChecking.compareAndSet(false, true)) {
+        try {
+          reloadExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+          LOGGER.log(Level.WARNING, "Could not schedule check for changed Soy files.", e);
+          nextCheckNanos = ticker.read() + checkIntervalNanos;
+          isChecking.set(false);
+        }
+      }
+      return current.first;
+    }
+
+    /**
+     * Checks for changes and recompiles if necessary. Runs on the reload executor.
+     */
+    @Override public void run() {
+      try {
+        if (isOutOfDate()) {
+          reload();
+        }
+      } finally {
+        nextCheckNanos = ticker.read() + checkIntervalNanos;
+        isChecking.set(false);
+      }
+    }
+
+    /**
+     * Returns whether any of the Soy files has changed since the current version was compiled.
+     */
+    private boolean isOutOfDate() {
+      List<SoyFileSupplier.Version> versions = current.second;
+      for (int i = 0, n = soyFileSuppliers.size(); i < n; i++) {
+        if (soyFileSuppliers.get(i).hasChangedSince(versions.get(i))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Recompiles the file set, primes the new version's cache like the current version's, and
+     * replaces the current version with the new one. Failures are logged.
+     */
+    private void reload() {
+      try {
+        Pair<BaseTofu, List<SoyFileSupplier.Version>> reloaded = tofuCompiler.compile();
+        BaseTofu reloadedTofu = reloaded.first;
+        if (reloadedTofu.isCaching()) {
+          for (Pair<SoyMsgBundle, SoyCssRenamingMap> key : current.first.getCachedKeys()) {
+            reloadedTofu.addToCache(key.first, key.second);
+          }
+        }
+        current = reloaded;
+      } catch (RuntimeException e) {
+        // Includes SoySyntaxException. Keep rendering with the current version.
+        LOGGER.log(Level.WARNING, "Failed to recompile changed Soy files.", e);
+      }
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Old render methods.
+
+
+  @Deprecated
+  @Override public String render(SoyTemplateInfo templateInfo, @Nullable Map<String, ?> data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return getCurrentTofu().render(templateInfo, data, msgBundle);
+  }
+
+
+  @Deprecated
+  @Override public String render(SoyTemplateInfo templateInfo, @Nullable SoyMapData data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return getCurrentTofu().render(templateInfo, data, msgBundle);
+  }
+
+
+  @Deprecated
+  @Override public String render(String templateName, @Nullable Map<String, ?> data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return getCurrentTofu().render(templateName, data, msgBundle);
+  }
+
+
+  @Deprecated
+  @Override public String render(String templateName, @Nullable SoyMapData data,
+      @Nullable SoyMsgBundle msgBundle) {
+    return getCurrentTofu().render(templateName, data, msgBundle);
+  }
+
+}
@@ -49,12 +49,15 @@ class TofuEvalVisitor extends EvalVisitor {
    * @param data The current template data.
    * @param ijData The current injected data.
    * @param env The current environment.
+   * @param localVarSlots The current template's local var slots, or null if the template's local
+   *     vars are kept in the environment.
    */
   protected TofuEvalVisitor(
       @Nullable Map<String, SoyTofuFunction> soyTofuFunctionsMap, SoyMapData data,
-      @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env) {
+      @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+      @Nullable SoyData[] localVarSlots) {
 
-    super(null, data, ijData, env);
+    super(null, data, ijData, env, localVarSlots);
 
     this.soyTofuFunctionsMap = soyTofuFunctionsMap;
   }
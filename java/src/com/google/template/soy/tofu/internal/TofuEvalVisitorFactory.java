@@ -52,9 +52,10 @@ class TofuEvalVisitorFactory implements EvalVisitorFactory {
 
   @Override
   public EvalVisitor create(
-      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env) {
+      SoyMapData data, @Nullable SoyMapData ijData, Deque<Map<String, SoyData>> env,
+      @Nullable SoyData[] localVarSlots) {
 
-    return new TofuEvalVisitor(soyTofuFunctionsMap, data, ijData, env);
+    return new TofuEvalVisitor(soyTofuFunctionsMap, data, ijData, env, localVarSlots);
   }
 
 }
@@ -20,8 +20,13 @@ import com.google.template.soy.data.SoyData;
 import com.google.template.soy.data.SoyMapData;
 import com.google.template.soy.msgs.SoyMsgBundle;
 import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
+import com.google.template.soy.sharedpasses.render.MsgRenderPlan;
+import com.google.template.soy.sharedpasses.render.PrintDirectiveChain;
 import com.google.template.soy.sharedpasses.render.RenderException;
 import com.google.template.soy.sharedpasses.render.RenderVisitor;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.soytree.PrintNode;
 import com.google.template.soy.soytree.SoyNode;
 import com.google.template.soy.soytree.TemplateRegistry;
 import com.google.template.soy.tofu.restricted.SoyTofuPrintDirective;
@@ -48,6 +53,9 @@ class TofuRenderVisitor extends RenderVisitor {
   /** Map of all SoyTofuPrintDirectives (name to directive). */
   private final Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap;
 
+  /** The template registry, if it holds resolved print directives (else null). */
+  private final TofuTemplateRegistry tofuTemplateRegistry;
+
 
   /**
    * @param soyTofuDirectivesMap Map of all SoyTofuPrintDirectives (name to directive).
@@ -63,19 +71,24 @@ class TofuRenderVisitor extends RenderVisitor {
    * @param msgBundle The bundle of translated messages, or null to use the messages from the
    *     Soy source.
    * @param cssRenamingMap The CSS renaming map, or null if not applicable.
+   * @param flushPointTemplateNames The names of templates after which to flush the output (if the
+   *     output is Flushable), or null if none.
    */
   protected TofuRenderVisitor(
       Map<String, SoyTofuPrintDirective> soyTofuDirectivesMap,
       TofuEvalVisitorFactory tofuEvalVisitorFactory, Appendable outputBuf,
       @Nullable TemplateRegistry templateRegistry, SoyMapData data, @Nullable SoyMapData ijData,
       @Nullable Deque<Map<String, SoyData>> env, @Nullable Set<String> activeDelPackageNames,
-      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap) {
+      @Nullable SoyMsgBundle msgBundle, @Nullable SoyCssRenamingMap cssRenamingMap,
+      @Nullable Set<String> flushPointTemplateNames) {
 
     super(
         null, tofuEvalVisitorFactory, outputBuf, templateRegistry, data, ijData, env,
-        activeDelPackageNames, msgBundle, cssRenamingMap);
+        activeDelPackageNames, msgBundle, cssRenamingMap, flushPointTemplateNames);
 
     this.soyTofuDirectivesMap = soyTofuDirectivesMap;
+    this.tofuTemplateRegistry = (templateRegistry instanceof TofuTemplateRegistry) ?
+        (TofuTemplateRegistry) templateRegistry : null;
   }
 
 
@@ -84,7 +97,26 @@ class TofuRenderVisitor extends RenderVisitor {
 
     return new TofuRenderVisitor(
         soyTofuDirectivesMap, (TofuEvalVisitorFactory) evalVisitorFactory, outputBuf,
-        templateRegistry, data, ijData, null, activeDelPackageNames, msgBundle, cssRenamingMap);
+        templateRegistry, data, ijData, null, activeDelPackageNames, msgBundle, cssRenamingMap,
+        flushPointTemplateNames);
+  }
+
+
+  @Override protected PrintDirectiveChain getPrintDirectiveChain(PrintNode node) {
+    return (tofuTemplateRegistry != null) ?
+        tofuTemplateRegistry.getPrintDirectiveChain(node) : null;
+  }
+
+
+  @Override protected MsgRenderPlan getMsgRenderPlan(MsgNode node) {
+    return (tofuTemplateRegistry != null) ? tofuTemplateRegistry.getMsgRenderPlan(node) : null;
+  }
+
+
+  @Override protected SoyStreamingPrintDirective getStreamingDirective(String directiveName) {
+    SoyTofuPrintDirective directive = soyTofuDirectivesMap.get(directiveName);
+    return (directive instanceof SoyStreamingPrintDirective) ?
+        (SoyStreamingPrintDirective) directive : null;
   }
 
 
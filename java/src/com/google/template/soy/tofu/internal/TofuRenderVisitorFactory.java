@@ -71,17 +71,19 @@ class TofuRenderVisitorFactory {
    * @param msgBundle The bundle of translated messages, or null to use the messages from the
    *     Soy source.
    * @param cssRenamingMap The CSS renaming map, or null if not applicable.
+   * @param flushPointTemplateNames The names of templates after which to flush the output (if the
+   *     output is Flushable), or null if none.
    * @return The newly created TofuRenderVisitor instance.
    */
   public TofuRenderVisitor create(
       Appendable outputBuf, TemplateRegistry templateRegistry, SoyMapData data,
       @Nullable SoyMapData ijData, @Nullable Deque<Map<String, SoyData>> env,
       @Nullable Set<String> activeDelPackageNames, @Nullable SoyMsgBundle msgBundle,
-      @Nullable SoyCssRenamingMap cssRenamingMap) {
+      @Nullable SoyCssRenamingMap cssRenamingMap, @Nullable Set<String> flushPointTemplateNames) {
 
     return new TofuRenderVisitor(
         soyTofuDirectivesMap, tofuEvalVisitorFactory, outputBuf, templateRegistry, data, ijData,
-        env, activeDelPackageNames, msgBundle, cssRenamingMap);
+        env, activeDelPackageNames, msgBundle, cssRenamingMap, flushPointTemplateNames);
   }
 
 }
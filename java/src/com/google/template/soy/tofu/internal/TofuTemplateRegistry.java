@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.template.soy.sharedpasses.render.MsgRenderPlan;
+import com.google.template.soy.sharedpasses.render.PrintDirectiveChain;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.soytree.PrintNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.TemplateNode;
+import com.google.template.soy.soytree.TemplateRegistry;
+
+import javax.annotation.Nullable;
+
+
+/**
+ * Version of {@code TemplateRegistry} for the Tofu backend.
+ *
+ * <p> In addition to the templates, holds the print directives of the templates' 'print' tags,
+ * resolved when the registry is built. A registry built for a particular SoyMsgBundle also holds the
+ * translations of the messages left in its templates (i.e. the plural/select messages).
+ */
+class TofuTemplateRegistry extends TemplateRegistry {
+
+
+  /** Map from 'print' tag to its resolved print directives. */
+  private final ImmutableMap<PrintNode, PrintDirectiveChain> printDirectiveChains;
+
+  /** Map from 'msg' tag to its resolved translation. */
+  private final ImmutableMap<MsgNode, MsgRenderPlan> msgRenderPlans;
+
+  /** The registry whose resolved print directives are also used by this registry, or null. */
+  private final TofuTemplateRegistry sharedRegistry;
+
+
+  /**
+   * @param soyTree The Soy tree from which to build a template registry.
+   * @param printDirectiveChains Map from 'print' tag to its resolved print directives.
+   */
+  public TofuTemplateRegistry(
+      SoyFileSetNode soyTree, ImmutableMap<PrintNode, PrintDirectiveChain> printDirectiveChains) {
+    super(soyTree);
+    this.printDirectiveChains = printDirectiveChains;
+    this.msgRenderPlans = ImmutableMap.of();
+    this.sharedRegistry = null;
+  }
+
+
+  /**
+   * Constructor for a registry that includes templates from another registry.
+   * @param templates The templates from which to build a template registry, including the shared
+   *     templates.
+   * @param printDirectiveChains Map from 'print' tag to its resolved print directives, for the
+   *     'print' tags not in the shared templates.
+   * @param msgRenderPlans Map from 'msg' tag to its resolved translation, for the 'msg' tags not
+   *     in the shared templates (the shared templates have no 'msg' tags).
+   * @param sharedRegistry The registry of the shared templates.
+   */
+  public TofuTemplateRegistry(
+      Iterable<? extends TemplateNode> templates,
+      ImmutableMap<PrintNode, PrintDirectiveChain> printDirectiveChains,
+      ImmutableMap<MsgNode, MsgRenderPlan> msgRenderPlans, TofuTemplateRegistry sharedRegistry) {
+    super(templates);
+    this.printDirectiveChains = printDirectiveChains;
+    this.msgRenderPlans = msgRenderPlans;
+    this.sharedRegistry = sharedRegistry;
+  }
+
+
+  /**
+   * Returns the resolved print directives of the given 'print' tag, or null if not resolved.
+   * @param printNode The 'print' tag.
+   */
+  @Nullable public PrintDirectiveChain getPrintDirectiveChain(PrintNode printNode) {
+    PrintDirectiveChain printDirectiveChain = printDirectiveChains.get(printNode);
+    if (printDirectiveChain == null && sharedRegistry != null) {
+      printDirectiveChain = sharedRegistry.getPrintDirectiveChain(printNode);
+    }
+    return printDirectiveChain;
+  }
+
+
+  /**
+   * Returns the resolved translation of the given 'msg' tag, or null if not resolved.
+   * @param msgNode The 'msg' tag.
+   */
+  @Nullable public MsgRenderPlan getMsgRenderPlan(MsgNode msgNode) {
+    return msgRenderPlans.get(msgNode);
+  }
+
+}
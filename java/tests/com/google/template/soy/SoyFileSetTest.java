@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.template.soy.jssrc.SoyJsSrcOptions;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPlaceholderPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Unit tests for SoyFileSet's generation of localized JS files.
+ */
+public class SoyFileSetTest extends TestCase {
+
+
+  private static final String SOY_FILE_A_CONTENT =
+      "{namespace ns.a}\n" +
+      "\n" +
+      "/** @param name */\n" +
+      "{template .greet}\n" +
+      "  {msg desc=\"Greeting.\"}Hello {$name}!{/msg}\n" +
+      "  {msg desc=\"Farewell.\"}Goodbye{/msg}\n" +
+      "{/template}\n";
+
+  private static final String SOY_FILE_B_CONTENT =
+      "{namespace ns.b}\n" +
+      "\n" +
+      "/** @param count */\n" +
+      "{template .count}\n" +
+      "  {msg desc=\"Count.\"}You have {$count} items.{/msg}\n" +
+      "  <span dir=\"{bidiDirAttr('abc')}\">{$count}</span>\n" +
+      "{/template}\n";
+
+  /** Locales in both directions, including one without a message file entry for every msg. */
+  private static final List<String> LOCALES = ImmutableList.of("en", "x-zz", "ar", "de", "iw");
+
+
+  private SoyFileSet soyFileSet;
+
+  private File tmpDir;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    soyFileSet = (new SoyFileSet.Builder())
+        .add(SOY_FILE_A_CONTENT, "a.soy")
+        .add(SOY_FILE_B_CONTENT, "b.soy")
+        .build();
+    tmpDir = Files.createTempDir();
+    for (String locale : LOCALES) {
+      writeTranslatedMsgsFile(locale);
+    }
+  }
+
+
+  @Override protected void tearDown() throws Exception {
+    deleteRecursively(tmpDir);
+    super.tearDown();
+  }
+
+
+  public void testCompileToJsSrcFilesInParallel() throws Exception {
+    assertParallelOutputSameAsSerial(new SoyJsSrcOptions());
+  }
+
+
+  public void testCompileToJsSrcFilesInParallelWithSharedCodeGen() throws Exception {
+    SoyJsSrcOptions jsSrcOptions = new SoyJsSrcOptions();
+    jsSrcOptions.setShouldShareCodeGenAcrossLocales(true);
+    assertParallelOutputSameAsSerial(jsSrcOptions);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Asserts that generating the localized JS files with several threads writes exactly the same
+   * files as with one thread. The output directories are nested and new for each run, so that the
+   * threads also create them concurrently.
+   */
+  private void assertParallelOutputSameAsSerial(SoyJsSrcOptions jsSrcOptions) throws Exception {
+
+    String msgFilePathFormat = tmpDir + "/msgs/{LOCALE}.xlf";
+
+    File serialDir = new File(tmpDir, "serial");
+    soyFileSet.compileToJsSrcFiles(
+        serialDir + "/{LOCALE}/js/{INPUT_FILE_NAME_NO_EXT}.js", "", jsSrcOptions, LOCALES,
+        msgFilePathFormat, 1);
+
+    for (int run = 0; run < 3; run++) {
+      File parallelDir = new File(tmpDir, "parallel" + run);
+      soyFileSet.compileToJsSrcFiles(
+          parallelDir + "/{LOCALE}/js/{INPUT_FILE_NAME_NO_EXT}.js", "", jsSrcOptions, LOCALES,
+          msgFilePathFormat, LOCALES.size());
+
+      for (String locale : LOCALES) {
+        for (String fileName : new String[] {"a.js", "b.js"}) {
+          String relativePath = locale + "/js/" + fileName;
+          File serialFile = new File(serialDir, relativePath);
+          File parallelFile = new File(parallelDir, relativePath);
+          assertTrue(serialFile.toString(), serialFile.isFile());
+          assertTrue(parallelFile.toString(), parallelFile.isFile());
+          assertTrue(
+              relativePath,
+              Arrays.equals(Files.toByteArray(serialFile), Files.toByteArray(parallelFile)));
+        }
+      }
+    }
+
+    // Sanity check that the locales were actually translated differently.
+    String xzzJs = Files.toString(new File(serialDir, "x-zz/js/a.js"), Charsets.UTF_8);
+    String deJs = Files.toString(new File(serialDir, "de/js/a.js"), Charsets.UTF_8);
+    assertTrue(xzzJs, xzzJs.contains("[x-zz] Goodbye"));
+    assertTrue(deJs, deJs.contains("[de] Goodbye"));
+  }
+
+
+  /**
+   * Writes an XLIFF file translating the messages by tagging them with the locale. The "en" file
+   * leaves out the farewell message, so that it falls back to the Soy source.
+   */
+  private void writeTranslatedMsgsFile(String locale) throws Exception {
+
+    StringBuilder xliff = new StringBuilder();
+    xliff.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<xliff version=\"1.2\" xmlns=\"urn:oasis:names:tc:xliff:document:1.2\">\n")
+        .append("  <file original=\"SoyMsgBundle\" datatype=\"x-soy-msg-bundle\"")
+        .append(" xml:space=\"preserve\" source-language=\"en\" target-language=\"")
+        .append(locale).append("\">\n")
+        .append("    <body>\n");
+    for (SoyMsg msg : soyFileSet.extractMsgs()) {
+      if (locale.equals("en") && msg.getDesc().equals("Farewell.")) {
+        continue;
+      }
+      xliff.append("      <trans-unit id=\"").append(msg.getId()).append("\" datatype=\"html\">")
+          .append("<target>[").append(locale).append("] ");
+      for (SoyMsgPart part : msg.getParts()) {
+        if (part instanceof SoyMsgRawTextPart) {
+          xliff.append(((SoyMsgRawTextPart) part).getRawText());
+        } else {
+          xliff.append("<x id=\"")
+              .append(((SoyMsgPlaceholderPart) part).getPlaceholderName()).append("\"/>");
+        }
+      }
+      xliff.append("</target></trans-unit>\n");
+    }
+    xliff.append("    </body>\n")
+        .append("  </file>\n")
+        .append("</xliff>\n");
+
+    File msgsFile = new File(tmpDir, "msgs/" + locale + ".xlf");
+    Files.createParentDirs(msgsFile);
+    Files.write(xliff, msgsFile, Charsets.UTF_8);
+  }
+
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+}
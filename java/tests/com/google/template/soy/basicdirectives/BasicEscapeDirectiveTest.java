@@ -241,4 +241,36 @@ public class BasicEscapeDirectiveTest extends AbstractSoyPrintDirectiveTestCase
         .runTests();
   }
 
+
+  public final void testStreaming() {
+    BasicEscapeDirective escapeJsString = new BasicEscapeDirective.EscapeJsString();
+    assertStreamingOutput("foo\\bar 'a' \"b\" \r\n \u2028", escapeJsString);
+    assertStreamingOutput(
+        UnsafeSanitizedContentOrdainer.ordainAsSafe(
+            "foo\\bar", SanitizedContent.ContentKind.HTML), escapeJsString);
+    // Sanitized JS_STR_CHARS are handled specially, so can't be streamed.
+    assertNull(escapeJsString.wrapForStreaming(
+        new StringBuilder(), SanitizedContent.ContentKind.JS_STR_CHARS));
+    // The escapers always change their input.
+    assertNull(escapeJsString.getStreamingOutputContentKind(SanitizedContent.ContentKind.HTML));
+
+    BasicEscapeDirective escapeHtmlAttributeNospace =
+        new BasicEscapeDirective.EscapeHtmlAttributeNospace();
+    assertStreamingOutput("a b=\"c\" <d>&`", escapeHtmlAttributeNospace);
+    assertStreamingOutput(
+        UnsafeSanitizedContentOrdainer.ordainAsSafe("a b", SanitizedContent.ContentKind.CSS),
+        escapeHtmlAttributeNospace);
+    assertNull(escapeHtmlAttributeNospace.wrapForStreaming(
+        new StringBuilder(), SanitizedContent.ContentKind.HTML));
+
+    assertStreamingOutput(
+        "a/b?c=d&e=\u00e9 f", new BasicEscapeDirective.NormalizeUri());
+    assertStreamingOutput("a'b\"c<d>", new BasicEscapeDirective.EscapeCssString());
+    assertStreamingOutput("a.b*c/d", new BasicEscapeDirective.EscapeJsRegex());
+
+    // Filters can't be streamed.
+    assertNull(new BasicEscapeDirective.FilterCssValue().wrapForStreaming(
+        new StringBuilder(), null));
+  }
+
 }
@@ -17,6 +17,11 @@
 package com.google.template.soy.basicdirectives;
 
 import com.google.common.collect.ImmutableList;
+import com.google.template.soy.coredirectives.EscapeHtmlDirective;
+import com.google.template.soy.data.SanitizedContent;
+import com.google.template.soy.data.SoyData;
+import com.google.template.soy.data.UnsafeSanitizedContentOrdainer;
+import com.google.template.soy.data.restricted.IntegerData;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.shared.AbstractSoyPrintDirectiveTestCase;
 
@@ -43,6 +48,35 @@ public class InsertWordBreaksDirectiveTest extends AbstractSoyPrintDirectiveTest
   }
 
 
+  public void testApplyAfterEscapeHtml() {
+
+    InsertWordBreaksDirective insertWordBreaksDirective = new InsertWordBreaksDirective();
+    EscapeHtmlDirective escapeHtmlDirective = new EscapeHtmlDirective();
+    for (String input : ImmutableList.of(
+             "", "blah blahblahblah", "blah<br>&lt;blahblah", "a<b>&\"c'd\u0000e f<<<<<<<<<<<<",
+             "\uD835\uDC00\uD835\uDC00\uD835\uDC00 x y")) {
+      for (int maxCharsBetweenBreaks : new int[] {1, 3, 8}) {
+        SoyData expected = insertWordBreaksDirective.applyForTofu(
+            escapeHtmlDirective.applyForTofu(SoyData.createFromExistingData(input),
+                ImmutableList.<SoyData>of()),
+            ImmutableList.<SoyData>of(IntegerData.forValue(maxCharsBetweenBreaks)));
+        assertEquals(
+            expected.toString(),
+            insertWordBreaksDirective.applyAfterEscapeHtml(
+                SoyData.createFromExistingData(input), maxCharsBetweenBreaks).toString());
+      }
+    }
+
+    // HTML is not escaped.
+    assertEquals(
+        "<b>blahblah<wbr>blah</b>",
+        insertWordBreaksDirective.applyAfterEscapeHtml(
+            UnsafeSanitizedContentOrdainer.ordainAsSafe(
+                "<b>blahblahblah</b>", SanitizedContent.ContentKind.HTML),
+            8).toString());
+  }
+
+
   public void testApplyForJsSrc() {
 
     InsertWordBreaksDirective insertWordBreaksDirective = new InsertWordBreaksDirective();
@@ -50,6 +50,26 @@ public class AugmentMapFunctionTest extends TestCase {
   }
 
 
+  public void testComputeNested() {
+
+    AugmentMapFunction augmentMapFunction = new AugmentMapFunction();
+    SoyMapData origMap = new SoyMapData("aaa", "blah", "bbb", "bleh");
+    SoyMapData augmentedMap1 = (SoyMapData) augmentMapFunction.compute(
+        ImmutableList.<SoyData>of(origMap, new SoyMapData("aaa", "bluh", "ccc", 3)));
+    SoyMapData augmentedMap2 = (SoyMapData) augmentMapFunction.compute(
+        ImmutableList.<SoyData>of(augmentedMap1, new SoyMapData("ccc", 4, "ddd", 5)));
+
+    assertEquals("bluh", augmentedMap2.getString("aaa"));
+    assertEquals("bleh", augmentedMap2.getString("bbb"));
+    assertEquals(4, augmentedMap2.getInteger("ccc"));
+    assertEquals(5, augmentedMap2.getInteger("ddd"));
+    assertEquals(4, augmentedMap2.getKeys().size());
+    // The inner augmented map is not affected.
+    assertEquals(3, augmentedMap1.getInteger("ccc"));
+    assertEquals(null, augmentedMap1.get("ddd"));
+  }
+
+
   public void testComputeForJsSrc() {
 
     AugmentMapFunction augmentMapFunction = new AugmentMapFunction();
@@ -59,6 +59,32 @@ public class EscapeHtmlDirectiveTest extends AbstractSoyPrintDirectiveTestCase {
   }
 
 
+  public void testStreaming() {
+
+    EscapeHtmlDirective escapeHtmlDirective = new EscapeHtmlDirective();
+    assertStreamingOutput("", escapeHtmlDirective);
+    assertStreamingOutput("a&b > c", escapeHtmlDirective);
+    assertStreamingOutput("<script>alert('boo');</script>", escapeHtmlDirective);
+    assertStreamingOutput(
+        UnsafeSanitizedContentOrdainer.ordainAsSafe("<foo>", SanitizedContent.ContentKind.HTML),
+        escapeHtmlDirective);
+    assertStreamingOutput(
+        UnsafeSanitizedContentOrdainer.ordainAsSafe("<foo>", SanitizedContent.ContentKind.CSS),
+        escapeHtmlDirective);
+
+    // Sanitized HTML passes through unchanged.
+    StringBuilder output = new StringBuilder();
+    assertSame(
+        output, escapeHtmlDirective.wrapForStreaming(output, SanitizedContent.ContentKind.HTML));
+    assertEquals(
+        SanitizedContent.ContentKind.HTML,
+        escapeHtmlDirective.getStreamingOutputContentKind(SanitizedContent.ContentKind.HTML));
+    assertNull(
+        escapeHtmlDirective.getStreamingOutputContentKind(SanitizedContent.ContentKind.CSS));
+    assertNull(escapeHtmlDirective.getStreamingOutputContentKind(null));
+  }
+
+
   public void testApplyForJsSrc() {
 
     EscapeHtmlDirective escapeHtmlDirective = new EscapeHtmlDirective();
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.template.soy.data.restricted.NullData;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Field;
+
+
+/**
+ * Unit tests for ImmutableSoyMapData.
+ */
+public class ImmutableSoyMapDataTest extends TestCase {
+
+
+  public void testBuilder() {
+
+    ImmutableSoyMapData ismd = (new ImmutableSoyMapData.Builder())
+        .put("woob", true)
+        .put("wooi", 8)
+        .put("woof", 3.14)
+        .put("woos", "woohoo")
+        .put("boo", (SoyData) null)
+        .put("wooi", 9)
+        .put("goo", new SoyListData("moo", 26))
+        .build();
+
+    assertEquals(6, ismd.size());
+    assertEquals(
+        ImmutableList.of("woob", "wooi", "woof", "woos", "boo", "goo"),
+        ImmutableList.copyOf(ismd.getKeys()));
+    assertEquals(true, ismd.getBoolean("woob"));
+    assertEquals(9, ismd.getInteger("wooi"));
+    assertEquals(3.14, ismd.getFloat("woof"));
+    assertEquals("woohoo", ismd.getString("woos"));
+    assertTrue(ismd.get("boo") instanceof NullData);
+    assertEquals(26, ismd.getInteger("goo.1"));
+    assertEquals(null, ismd.get("zoo"));
+    assertEquals("{woob: true, wooi: 9, woof: 3.14, woos: woohoo, boo: null, goo: [moo, 26]}",
+                 ismd.toString());
+
+    try {
+      ismd.put("boo", 1);
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // Test passes.
+    }
+    try {
+      ismd.remove("boo");
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // Test passes.
+    }
+    try {
+      (new ImmutableSoyMapData.Builder()).put("boo.foo", 1);
+      fail();
+    } catch (IllegalArgumentException iae) {
+      // Test passes.
+    }
+  }
+
+
+  public void testManyKeys() {
+
+    ImmutableSoyMapData.Builder builder = new ImmutableSoyMapData.Builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.put("key" + i, i);
+    }
+    ImmutableSoyMapData ismd = builder.build();
+
+    assertEquals(1000, ismd.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, ismd.getInteger("key" + i));
+    }
+    assertEquals(null, ismd.get("key1000"));
+    assertEquals(0, (new ImmutableSoyMapData.Builder()).build().size());
+    assertEquals(null, (new ImmutableSoyMapData.Builder()).build().get("key0"));
+  }
+
+
+  public void testNoUnderlyingMap() throws Exception {
+
+    ImmutableSoyMapData ismd = (new ImmutableSoyMapData.Builder())
+        .put("a", 1).put("b", new SoyListData("x", "y")).build();
+
+    // The superclass's map isn't allocated.
+    Field mapField = SoyMapData.class.getDeclaredField("map");
+    mapField.setAccessible(true);
+    assertNull(mapField.get(ismd));
+
+    // So all the inherited behavior must go through the overrides.
+    assertEquals(ImmutableSet.of("a", "b"), ismd.getKeys());
+    assertEquals(2, ismd.asMap().size());
+    assertEquals("{a: 1, b: [x, y]}", ismd.toString());
+    StringBuilder outputBuf = new StringBuilder();
+    ismd.appendTo(outputBuf);
+    assertEquals("{a: 1, b: [x, y]}", outputBuf.toString());
+    assertTrue(ismd.toBoolean());
+    assertEquals("y", ismd.getString("b.1"));
+    assertNull(ismd.get("c.d"));
+  }
+
+
+  public void testCopyOf() {
+
+    ImmutableSoyMapData ismd = ImmutableSoyMapData.copyOf(ImmutableMap.of(
+        "boo", "foo",
+        "goo", ImmutableMap.of("moo", 26),
+        "hoo", ImmutableSet.of("too")));
+
+    assertEquals("foo", ismd.getString("boo"));
+    assertTrue(ismd.get("goo") instanceof ImmutableSoyMapData);
+    assertEquals(26, ismd.getInteger("goo.moo"));
+    assertEquals("too", ismd.getString("hoo.0"));
+
+    try {
+      ImmutableSoyMapData.copyOf(ImmutableMap.of("goo", ImmutableMap.of("moo", new Object())));
+      fail();
+    } catch (SoyDataException sde) {
+      assertTrue(sde.getMessage().startsWith("At data path 'goo.moo': "));
+    }
+  }
+
+}
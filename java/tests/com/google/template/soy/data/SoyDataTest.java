@@ -19,11 +19,14 @@ package com.google.template.soy.data;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.template.soy.data.restricted.NullData;
 import com.google.template.soy.data.restricted.StringData;
 
 import junit.framework.TestCase;
 
+import java.util.Map;
+
 
 /**
  * Unit tests for SoyData.
@@ -57,4 +60,77 @@ public class SoyDataTest extends TestCase {
     assertEquals(3.14F, (float) SoyData.createFromExistingData(3.14F).floatValue());
   }
 
+
+  public void testCreateLazyFromExistingData() {
+
+    assertTrue(SoyData.createLazyFromExistingData(null) instanceof NullData);
+    assertEquals("boo", SoyData.createLazyFromExistingData("boo").stringValue());
+    assertEquals(8, SoyData.createLazyFromExistingData(8).integerValue());
+
+    Map<String, Object> map = Maps.newLinkedHashMap();
+    map.put("boo", "foo");
+    map.put("list", ImmutableList.of("goo", ImmutableMap.of("moo", 3)));
+    map.put("set", ImmutableSet.of("hoo"));
+    map.put("bean", new TestBean("too", 7));
+    map.put("bad", new Object());
+
+    SoyMapData mapData = (SoyMapData) SoyData.createLazyFromExistingData(map);
+    assertTrue(mapData instanceof LazySoyMapData);
+    assertEquals(ImmutableSet.of("boo", "list", "set", "bean", "bad"), mapData.getKeys());
+    assertEquals("foo", mapData.getString("boo"));
+    assertEquals(null, mapData.get("zoo"));
+    assertEquals("goo", mapData.getString("list.0"));
+    assertEquals(3, mapData.getInteger("list.1.moo"));
+    assertEquals(2, mapData.getListData("list").length());
+    assertEquals(null, mapData.get("list.2"));
+    assertEquals("hoo", mapData.getString("set.0"));
+    // Converted values are reused.
+    assertSame(mapData.get("list.1"), mapData.get("list.1"));
+
+    assertEquals(ImmutableSet.of("name", "size"), mapData.getMapData("bean").getKeys());
+    assertEquals("too", mapData.getString("bean.name"));
+    assertEquals(7, mapData.getInteger("bean.size"));
+
+    // Invalid values are only reported when read.
+    try {
+      mapData.get("bad");
+      fail();
+    } catch (SoyDataException sde) {
+      assertTrue(sde.getMessage().startsWith("At data path 'bad': "));
+    }
+
+    try {
+      mapData.put("boo", "bar");
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // Test passes.
+    }
+    try {
+      mapData.getListData("list").add("bar");
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // Test passes.
+    }
+  }
+
+
+  public static class TestBean {
+
+    private final String name;
+    private final int size;
+
+    public TestBean(String name, int size) {
+      this.name = name;
+      this.size = size;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int size() {
+      return size;
+    }
+  }
+
 }
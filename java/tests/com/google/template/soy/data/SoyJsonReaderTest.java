@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data;
+
+import com.google.common.base.Charsets;
+import com.google.template.soy.data.restricted.FloatData;
+import com.google.template.soy.data.restricted.IntegerData;
+import com.google.template.soy.data.restricted.NullData;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Unit tests for SoyJsonReader and SoyJsonWriter.
+ */
+public class SoyJsonReaderTest extends TestCase {
+
+
+  public void testRead() throws Exception {
+
+    SoyMapData data = (SoyMapData) SoyJsonReader.read(new StringReader(
+        " {\"boo\": 8, \"foo\": null, \"goo\": {\"buntu\": \"bl\\\"ah\\u00e9\", \"dy\": true},\n" +
+        "  \"moo\": [-1.5e2, 2147483648, 0, false, []], \"too\": {}} "));
+
+    assertEquals(8, data.getInteger("boo"));
+    assertEquals(NullData.INSTANCE, data.get("foo"));
+    assertEquals("bl\"ah\u00e9", data.getString("goo.buntu"));
+    assertEquals(true, data.getBoolean("goo.dy"));
+    assertEquals(-150.0, data.getFloat("moo.0"));
+    assertTrue(data.get("moo.1") instanceof FloatData);
+    assertEquals(2147483648.0, data.getFloat("moo.1"));
+    assertTrue(data.get("moo.2") instanceof IntegerData);
+    assertEquals(false, data.getBoolean("moo.3"));
+    assertEquals(0, data.getListData("moo.4").length());
+    assertEquals(0, data.getMapData("too").getKeys().size());
+
+    assertEquals(IntegerData.forValue(-7), SoyJsonReader.read("-7"));
+    assertEquals(
+        "x\u2028y",
+        SoyJsonReader.read(ByteBuffer.wrap("\"x\u2028y\"".getBytes(Charsets.UTF_8))).toString());
+
+    // A long string spanning several read buffers.
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      longString.append("ab\\n");
+    }
+    assertEquals(
+        15000, SoyJsonReader.read("[\"" + longString + "\"]").toString().length() - 2);
+  }
+
+
+  public void testReadErrors() {
+
+    assertReadError("{\"boo\": [1, 2,]}", "At data path 'boo[2]'");
+    assertReadError("{\"boo\" 1}", "Expected ':'");
+    assertReadError("[1 2]", "Expected ',' or ']'");
+    assertReadError("[01]", "Invalid number \"01\"");
+    assertReadError("[1.]", "Invalid number \"1.\"");
+    assertReadError("trux", "Expected \"true\"");
+    assertReadError("\"abc", "Unterminated string");
+    assertReadError("{} {}", "Unexpected text after the JSON value at offset 3");
+    assertReadError("", "Unexpected end of input");
+  }
+
+
+  public void testWriteAndReadBack() {
+
+    SoyMapData data = new SoyMapData(
+        "boo", 8, "foo", null, "goo", new SoyMapData("buntu", "bl\"ah\n\u2028", "dy", true),
+        "moo", new SoyListData(-1.5, 2.0, new SoyListData()));
+    data.put("zoo", UnsafeSanitizedContentOrdainer.ordainAsSafe(
+        "<b>", SanitizedContent.ContentKind.HTML));
+
+    String json = SoyJsonWriter.write(data);
+    assertEquals(
+        "{\"boo\":8,\"foo\":null,\"goo\":{\"buntu\":\"bl\\\"ah\\n\\u2028\",\"dy\":true}," +
+        "\"moo\":[-1.5,2.0,[]],\"zoo\":\"<b>\"}",
+        json);
+    assertEquals(json, SoyJsonWriter.write(SoyJsonReader.read(json)));
+  }
+
+
+  public void testWriteErrors() {
+
+    try {
+      SoyJsonWriter.write(new SoyListData(1, Double.NaN));
+      fail();
+    } catch (SoyDataException sde) {
+      assertTrue(sde.getMessage().contains("At data path '[1]'"));
+    }
+  }
+
+
+  private static void assertReadError(String json, String expectedMessagePart) {
+    try {
+      SoyJsonReader.read(json);
+      fail("Expected error for " + json);
+    } catch (SoyDataException sde) {
+      assertTrue(sde.getMessage(), sde.getMessage().contains(expectedMessagePart));
+    }
+  }
+
+}
@@ -185,6 +185,18 @@ public class SoyListDataTest extends TestCase {
   }
 
 
+  public void testAppendTo() throws Exception {
+
+    SoyListData sld = new SoyListData(8, null, new SoyListData("blah", true), "bleh");
+    sld.put("2.2", new SoyMapData("boo", 2.71828));
+
+    StringBuilder sb = new StringBuilder();
+    sld.appendTo(sb);
+    assertEquals("[8, null, [blah, true, {boo: 2.71828}], bleh]", sb.toString());
+    assertEquals(sld.toString(), sb.toString());
+  }
+
+
   public void testIsEqualto() {
 
     SoyListData sld0 = new SoyListData();
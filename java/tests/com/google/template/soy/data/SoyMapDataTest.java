@@ -19,6 +19,7 @@ package com.google.template.soy.data;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.template.soy.data.restricted.IntegerData;
 import com.google.template.soy.data.restricted.NullData;
 import com.google.template.soy.data.restricted.StringData;
 
@@ -88,6 +89,43 @@ public class SoyMapDataTest extends TestCase {
   }
 
 
+  public void testPutRemoveGetWithPath() {
+
+    SoyDataPath gooMooPath = SoyDataPath.parse("boo.goo.moo");
+    assertEquals(3, gooMooPath.size());
+    assertEquals("goo", gooMooPath.getKey(1));
+    assertEquals(-1, gooMooPath.getIndex(1));
+    assertEquals("boo.goo.moo", gooMooPath.toString());
+    assertEquals(SoyDataPath.parse("boo.goo.moo"), gooMooPath);
+
+    SoyMapData smd = new SoyMapData();
+    smd.put(gooMooPath, 26);
+    assertEquals(26, smd.getInteger("boo.goo.moo"));
+    assertEquals(26, ((IntegerData) smd.get(gooMooPath)).getValue());
+
+    SoyDataPath zooPath = SoyDataPath.parse("boo.zoo.1");
+    assertEquals(1, zooPath.getIndex(2));
+    smd.put(SoyDataPath.parse("boo.zoo.0"), "too");
+    smd.put(zooPath, 1.618);
+    assertEquals("too", smd.getString("boo.zoo.0"));
+    assertEquals(1.618, smd.get(zooPath).floatValue());
+    assertEquals(null, smd.get(SoyDataPath.parse("boo.zoo.2")));
+    assertEquals(null, smd.get(SoyDataPath.parse("boo.goo.moo.too")));
+
+    smd.remove(zooPath);
+    assertEquals(1, smd.getListData("boo.zoo").length());
+    smd.remove(gooMooPath);
+    assertEquals(null, smd.get(gooMooPath));
+
+    try {
+      smd.put(SoyDataPath.parse("boo.zoo.0.moo"), true);
+      fail();
+    } catch (SoyDataException sde) {
+      // Test passes.
+    }
+  }
+
+
   public void testConstruction() {
 
     Map<String, Object> existingMap = Maps.newHashMap();
@@ -181,6 +219,19 @@ public class SoyMapDataTest extends TestCase {
   }
 
 
+  public void testAppendTo() throws Exception {
+
+    SoyMapData smd = new SoyMapData("boo", 8, "foo", new SoyListData("blah", true));
+    smd.put("goo.moo", 2.71828);
+
+    StringBuilder sb = new StringBuilder();
+    smd.appendTo(sb);
+    assertEquals(smd.toString(), sb.toString());
+    assertTrue(sb.toString().contains("foo: [blah, true]"));
+    assertTrue(sb.toString().contains("goo: {moo: 2.71828}"));
+  }
+
+
   public void testIsEqualto() {
 
     SoyMapData smd0 = new SoyMapData();
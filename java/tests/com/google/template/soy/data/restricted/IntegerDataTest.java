@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.data.restricted;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for IntegerData.
+ */
+public class IntegerDataTest extends TestCase {
+
+
+  public void testForValue() {
+
+    assertSame(IntegerData.ZERO, IntegerData.forValue(0));
+    assertSame(IntegerData.ONE, IntegerData.forValue(1));
+    assertSame(IntegerData.MINUS_ONE, IntegerData.forValue(-1));
+    assertSame(IntegerData.forValue(-128), IntegerData.forValue(-128));
+    assertSame(IntegerData.forValue(1023), IntegerData.forValue(1023));
+
+    assertEquals(-129, IntegerData.forValue(-129).getValue());
+    assertEquals(Integer.MAX_VALUE, IntegerData.forValue(Integer.MAX_VALUE).getValue());
+    assertEquals(Integer.MIN_VALUE, IntegerData.forValue(Integer.MIN_VALUE).getValue());
+  }
+
+
+  public void testComputeCacheHigh() {
+
+    assertEquals(1023, IntegerData.computeCacheHigh(1023));
+    assertEquals(10, IntegerData.computeCacheHigh(0));
+    assertEquals(10, IntegerData.computeCacheHigh(Integer.MIN_VALUE));
+    assertEquals(IntegerData.MAX_CACHE_HIGH, IntegerData.computeCacheHigh(Integer.MAX_VALUE));
+    assertEquals(
+        IntegerData.MAX_CACHE_HIGH, IntegerData.computeCacheHigh(IntegerData.MAX_CACHE_HIGH + 1));
+  }
+
+}
@@ -53,4 +53,16 @@ public class DataRefNodeTest extends TestCase {
     assertEquals("$ij?.boo.0?['foo'][5]?.goo", nullSafeIjDrn.toSourceString());
   }
 
+
+  public void testKeysAreInterned() {
+
+    // Keys parsed from template source are substrings, not the string literals used as data keys.
+    DataRefNode drn = new DataRefNode(false, false, new String("boo"));
+    drn.addChild(new DataRefAccessKeyNode(false, new String("goo")));
+
+    assertSame("boo", drn.getFirstKey());
+    assertSame("goo", ((DataRefAccessKeyNode) drn.getChild(0)).getKey());
+    assertSame("boo", drn.clone().getFirstKey());
+  }
+
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.jssrc.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.template.soy.SoyModule;
+import com.google.template.soy.internal.i18n.BidiGlobalDir;
+import com.google.template.soy.jssrc.SoyJsSrcOptions;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.SoyMsgException;
+import com.google.template.soy.msgs.internal.ExtractMsgsVisitor;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPlaceholderPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.soytree.SoyFileSetNode;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+
+/**
+ * Unit tests for JsCodeWithMsgSlots, i.e. for generating the JS code once with message slots (see
+ * {@link JsSrcMain#genJsSrcWithMsgSlots}) and filling in the messages for each locale.
+ */
+public class JsCodeWithMsgSlotsTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/**\n" +
+      " * @param name\n" +
+      " * @param url\n" +
+      " * @param items\n" +
+      " */\n" +
+      "{template .main}\n" +
+      "  {msg desc=\"Greeting.\"}\n" +
+      "    Hello {$name |escapeHtml}, it's <a href=\"{$url |escapeHtml}\">\"here\"</a>.\n" +
+      "  {/msg}\n" +
+      "  {foreach $item in $items}\n" +
+      "    {msg desc=\"Item.\"}\n" +
+      "      Item {$item |escapeHtml}: {call .sub}{param x: $item /}{/call}\n" +
+      "    {/msg}\n" +
+      "  {/foreach}\n" +
+      "  {msg desc=\"Missing.\"}\n" +
+      "    Not 'translated' \\ {$name |escapeHtml}\n" +
+      "  {/msg}\n" +
+      "  <span {bidiDirAttr($name)}>{$name |bidiSpanWrap}</span>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/** @param x */\n" +
+      "{template .sub}\n" +
+      "  [{$x |escapeHtml}]\n" +
+      "{/template}\n";
+
+  /** The JS expression for the data to render the template with. */
+  private static final String DATA_JS =
+      "{name: '<Bob> & Alice', url: 'http://example.com/?a=1&b=\"2\"', items: ['x', '<y>']}";
+
+
+  private JsSrcMain jsSrcMain;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    Injector injector = Guice.createInjector(new SoyModule());
+    jsSrcMain = injector.getInstance(JsSrcMain.class);
+  }
+
+
+  public void testSameOutputAsPerLocaleCodeGen() {
+
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(SOY_FILE_CONTENT);
+    SoyMsgBundle extractedMsgs = (new ExtractMsgsVisitor()).exec(soyTree);
+    SoyJsSrcOptions jsSrcOptions = new SoyJsSrcOptions();
+
+    List<SoyMsgBundle> msgBundles = Lists.newArrayList(
+        null, translate(extractedMsgs, "x-zz"), translate(extractedMsgs, "ar"));
+    for (SoyMsgBundle msgBundle : msgBundles) {
+      String localeString = (msgBundle == null) ? null : msgBundle.getLocaleString();
+      String perLocaleJs = jsSrcMain.genJsSrc(soyTree.clone(), jsSrcOptions, msgBundle).get(0);
+
+      int bidiGlobalDir = BidiGlobalDir.forStaticLocale(localeString).getStaticValue();
+      List<JsCodeWithMsgSlots> jsCodeWithMsgSlots =
+          jsSrcMain.genJsSrcWithMsgSlots(soyTree.clone(), jsSrcOptions, bidiGlobalDir);
+      assertEquals(1, jsCodeWithMsgSlots.size());
+      String sharedJs = jsCodeWithMsgSlots.get(0).fillInMsgs(msgBundle);
+
+      String expectedOutput = renderInJs(perLocaleJs);
+      assertEquals(expectedOutput, renderInJs(sharedJs));
+      // Sanity checks that the output used the translations and the bidi directionality.
+      if (msgBundle != null) {
+        assertTrue(expectedOutput.contains("{" + localeString + "}"));
+      }
+      assertEquals(
+          localeString != null && localeString.equals("ar"),
+          expectedOutput.contains("<span dir=\"ltr\">"));
+    }
+  }
+
+
+  public void testUnknownPlaceholderInTranslation() {
+
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(SOY_FILE_CONTENT);
+    SoyMsgBundle extractedMsgs = (new ExtractMsgsVisitor()).exec(soyTree);
+    SoyMsg greetingMsg = null;
+    for (SoyMsg msg : extractedMsgs) {
+      if (msg.getDesc().equals("Greeting.")) {
+        greetingMsg = msg;
+      }
+    }
+    SoyMsgBundle msgBundle = new SoyMsgBundleImpl(
+        "x-zz",
+        ImmutableList.of(new SoyMsg(
+            greetingMsg.getId(), "x-zz", null, greetingMsg.getDesc(), false, null, null,
+            ImmutableList.<SoyMsgPart>of(
+                new SoyMsgRawTextPart("Hi "), new SoyMsgPlaceholderPart("BOGUS")))));
+
+    List<JsCodeWithMsgSlots> jsCodeWithMsgSlots =
+        jsSrcMain.genJsSrcWithMsgSlots(soyTree, new SoyJsSrcOptions(), 1);
+    try {
+      jsCodeWithMsgSlots.get(0).fillInMsgs(msgBundle);
+      fail();
+    } catch (SoyMsgException sme) {
+      assertTrue(sme.getMessage().contains("message " + greetingMsg.getId()));
+      assertTrue(sme.getMessage().contains("ns.main"));
+      assertTrue(sme.getMessage().contains("x-zz"));
+      assertTrue(sme.getMessage().contains("BOGUS"));
+      assertTrue(sme.getMessage().contains("NAME"));
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Builds a bundle in the given locale that translates each of the extracted messages (except
+   * the one described as missing) into raw text that needs escaping, followed by the parts of the
+   * source message in reverse order (so that the placeholders are reordered).
+   */
+  private static SoyMsgBundle translate(SoyMsgBundle extractedMsgs, String localeString) {
+
+    List<SoyMsg> msgs = Lists.newArrayList();
+    for (SoyMsg msg : extractedMsgs) {
+      if (msg.getDesc().equals("Missing.")) {
+        continue;
+      }
+      List<SoyMsgPart> parts = Lists.newArrayList();
+      parts.add(new SoyMsgRawTextPart("{" + localeString + "} 'q' \"qq\" \\ \u200F\n"));
+      parts.addAll(Lists.reverse(msg.getParts()));
+      msgs.add(new SoyMsg(
+          msg.getId(), localeString, msg.getMeaning(), msg.getDesc(), msg.isHidden(),
+          msg.getContentType(), null, parts));
+    }
+    return new SoyMsgBundleImpl(localeString, msgs);
+  }
+
+
+  /**
+   * Evaluates the given generated JS (with soyutils) and renders the template ns.main.
+   */
+  private String renderInJs(String generatedJs) {
+
+    Context context = new ContextFactory().enterContext();
+    try {
+      context.setOptimizationLevel(-1);  // Only running once.
+      ScriptableObject globalScope = context.initStandardObjects();
+      NativeObject navigator = new NativeObject();
+      ScriptableObject.putConstProperty(navigator, "userAgent", "testZilla");
+      globalScope.defineProperty("navigator", navigator, ScriptableObject.DONTENUM);
+
+      String soyutilsPath = "javascript/soyutils.js";
+      Reader soyutils = new InputStreamReader(new FileInputStream(soyutilsPath), Charsets.UTF_8);
+      try {
+        context.evaluateReader(globalScope, soyutils, "soyutils.js", 1, null);
+      } finally {
+        soyutils.close();
+      }
+
+      context.evaluateString(globalScope, generatedJs, getName() + ".js", 1, null);
+      return (String) context.evaluateString(
+          globalScope, "ns.main(" + DATA_JS + ")", getName(), 1, null);
+
+    } catch (IOException ioe) {
+      throw new AssertionError(ioe);
+    } finally {
+      Context.exit();
+    }
+  }
+
+}
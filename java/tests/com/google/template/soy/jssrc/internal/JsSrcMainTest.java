@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.jssrc.internal;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.template.soy.SoyModule;
+import com.google.template.soy.base.SoyFileKind;
+import com.google.template.soy.base.SoyFileSupplier;
+import com.google.template.soy.jssrc.SoyJsSrcOptions;
+import com.google.template.soy.soyparse.SoyFileSetParser;
+import com.google.template.soy.soytree.SoyFileSetNode;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.List;
+
+
+/**
+ * Unit tests for JsSrcMain's writing of the generated JS files.
+ */
+public class JsSrcMainTest extends TestCase {
+
+
+  /** Input file paths and contents, in input order. The first and last share a directory. */
+  private static final String[][] SOY_FILES = {
+      {"x/a.soy", "{namespace ns.a}\n/***/\n{template .t}\n  A\n{/template}\n"},
+      {"y/b.soy", "{namespace ns.b}\n/***/\n{template .t}\n  B\n{/template}\n"},
+      {"x/c.soy", "{namespace ns.c}\n/***/\n{template .t}\n  C\n{/template}\n"},
+  };
+
+
+  private JsSrcMain jsSrcMain;
+
+  private SoyJsSrcOptions jsSrcOptions;
+
+  private File tmpDir;
+
+  /** The JS generated for each input file, in input order. */
+  private List<String> expectedJsFileContents;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    jsSrcMain = Guice.createInjector(new SoyModule()).getInstance(JsSrcMain.class);
+    jsSrcOptions = new SoyJsSrcOptions();
+    tmpDir = Files.createTempDir();
+    expectedJsFileContents = jsSrcMain.genJsSrc(parseSoyFiles(), jsSrcOptions, null);
+    assertEquals(SOY_FILES.length, expectedJsFileContents.size());
+  }
+
+
+  @Override protected void tearDown() throws Exception {
+    for (String relativePath : new String[] {
+             "all.js", "a.js", "b.js", "c.js", "x/out.js", "y/out.js", "x", "y"}) {
+      (new File(tmpDir, relativePath)).delete();
+    }
+    tmpDir.delete();
+    super.tearDown();
+  }
+
+
+  public void testAllInputsToOneOutput() throws Exception {
+
+    jsSrcMain.genJsFiles(parseSoyFiles(), jsSrcOptions, null, null, tmpDir + "/all.js", "");
+
+    assertEquals(
+        Joiner.on("\n;\n").join(expectedJsFileContents), readFile("all.js"));
+  }
+
+
+  public void testOneOutputPerInput() throws Exception {
+
+    jsSrcMain.genJsFiles(
+        parseSoyFiles(), jsSrcOptions, null, null, tmpDir + "/{INPUT_FILE_NAME_NO_EXT}.js", "");
+
+    assertEquals(expectedJsFileContents.get(0), readFile("a.js"));
+    assertEquals(expectedJsFileContents.get(1), readFile("b.js"));
+    assertEquals(expectedJsFileContents.get(2), readFile("c.js"));
+  }
+
+
+  public void testInterleavedOutputs() throws Exception {
+
+    // The inputs for x/out.js are separated by the input for y/out.js.
+    jsSrcMain.genJsFiles(
+        parseSoyFiles(), jsSrcOptions, null, null, tmpDir + "/{INPUT_DIRECTORY}out.js", "");
+
+    assertEquals(
+        expectedJsFileContents.get(0) + "\n;\n" + expectedJsFileContents.get(2),
+        readFile("x/out.js"));
+    assertEquals(expectedJsFileContents.get(1), readFile("y/out.js"));
+  }
+
+
+  public void testAllInputsToOneOutputWithMsgSlots() throws Exception {
+
+    SoyFileSetNode soyTree = parseSoyFiles();
+    List<JsCodeWithMsgSlots> jsCodeWithMsgSlots =
+        jsSrcMain.genJsSrcWithMsgSlots(soyTree.clone(), jsSrcOptions, 1);
+    jsSrcMain.genJsFiles(soyTree, jsCodeWithMsgSlots, "en", null, tmpDir + "/all.js", "");
+
+    assertEquals(
+        Joiner.on("\n;\n").join(expectedJsFileContents), readFile("all.js"));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  private static SoyFileSetNode parseSoyFiles() {
+    List<SoyFileSupplier> soyFileSuppliers = Lists.newArrayList();
+    for (String[] soyFile : SOY_FILES) {
+      soyFileSuppliers.add(SoyFileSupplier.Factory.create(soyFile[1], SoyFileKind.SRC, soyFile[0]));
+    }
+    return (new SoyFileSetParser(soyFileSuppliers)).parse();
+  }
+
+
+  private String readFile(String relativePath) throws Exception {
+    return Files.toString(new File(tmpDir, relativePath), Charsets.UTF_8);
+  }
+
+}
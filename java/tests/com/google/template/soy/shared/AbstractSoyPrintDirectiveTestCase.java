@@ -19,9 +19,12 @@ package com.google.template.soy.shared;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.template.soy.data.SanitizedContent;
+import com.google.template.soy.data.SanitizedContent.ContentKind;
 import com.google.template.soy.data.SoyData;
 import com.google.template.soy.jssrc.restricted.JsExpr;
 import com.google.template.soy.jssrc.restricted.SoyJsSrcPrintDirective;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
 import com.google.template.soy.tofu.restricted.SoyTofuPrintDirective;
 
 import junit.framework.TestCase;
@@ -83,6 +86,42 @@ public abstract class AbstractSoyPrintDirectiveTestCase extends TestCase {
   }
 
 
+  /**
+   * Asserts that applying the directive in a streaming fashion (appending the input a piece at a
+   * time) gives the same output as {@link SoyTofuPrintDirective#applyForTofu}.
+   *
+   * @param value The test input.
+   * @param directive The directive whose {@link SoyStreamingPrintDirective#wrapForStreaming} is
+   *     under test.
+   */
+  protected <T extends SoyTofuPrintDirective & SoyStreamingPrintDirective>
+      void assertStreamingOutput(Object value, T directive) {
+    SoyData valueData = SoyData.createFromExistingData(value);
+    ContentKind contentKind = (valueData instanceof SanitizedContent) ?
+        ((SanitizedContent) valueData).getContentKind() : null;
+    String valueString = valueData.toString();
+
+    StringBuilder output = new StringBuilder();
+    Appendable streamingOutput = directive.wrapForStreaming(output, contentKind);
+    assertNotNull(streamingOutput);
+    try {
+      // Exercise all the append() methods.
+      int mid = valueString.length() / 2;
+      streamingOutput.append(valueString.subSequence(0, mid));
+      if (mid < valueString.length()) {
+        streamingOutput.append(valueString.charAt(mid));
+        streamingOutput.append(valueString, mid + 1, valueString.length());
+      }
+    } catch (IOException ex) {
+      throw new AssertionError(ex);
+    }
+
+    assertEquals(
+        directive.applyForTofu(valueData, ImmutableList.<SoyData>of()).toString(),
+        output.toString());
+  }
+
+
   /**
    * Aggregates multiple JS tests so that they can be run in a single JS interpreter.
    */
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses;
+
+import com.google.template.soy.exprtree.DataRefNode;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.soytree.ForNode;
+import com.google.template.soy.soytree.ForeachNonemptyNode;
+import com.google.template.soy.soytree.LetValueNode;
+import com.google.template.soy.soytree.PrintNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.TemplateNode;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for AssignLocalVarSlotsVisitor.
+ */
+public class AssignLocalVarSlotsVisitorTest extends TestCase {
+
+
+  public void testAssignSlots() throws Exception {
+
+    String soyCode = "" +
+        "{$boo}\n" +
+        "{let $foo: $boo /}\n" +
+        "{foreach $boo in $booze}\n" +
+        "  {$boo}{$foo}\n" +
+        "  {for $moo in range(0, $moose, $boo)}\n" +
+        "    {$moo}\n" +
+        "  {/for}\n" +
+        "{/foreach}\n" +
+        "{$foo}{$moo}\n";
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyCode(soyCode);
+    TemplateNode template = soyTree.getChild(0).getChild(0);
+
+    LetValueNode letNode = (LetValueNode) SharedTestUtils.getNode(soyTree, 1);
+    ForeachNonemptyNode foreachNonemptyNode =
+        (ForeachNonemptyNode) SharedTestUtils.getNode(soyTree, 2, 0);
+    ForNode forNode = (ForNode) SharedTestUtils.getNode(soyTree, 2, 0, 2);
+
+    DataRefNode boo1 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 0)).getExprUnion().getExpr().getChild(0);
+    DataRefNode booInLetTag = (DataRefNode) letNode.getValueExpr().getChild(0);
+    DataRefNode boo2 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 2, 0, 0))
+            .getExprUnion().getExpr().getChild(0);
+    DataRefNode foo1 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 2, 0, 1))
+            .getExprUnion().getExpr().getChild(0);
+    DataRefNode mooseInForTag = (DataRefNode) forNode.getRangeArgs().get(1).getChild(0);
+    DataRefNode booInForTag = (DataRefNode) forNode.getRangeArgs().get(2).getChild(0);
+    DataRefNode moo1 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 2, 0, 2, 0))
+            .getExprUnion().getExpr().getChild(0);
+    DataRefNode foo2 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 3)).getExprUnion().getExpr().getChild(0);
+    DataRefNode moo2 = (DataRefNode)
+        ((PrintNode) SharedTestUtils.getNode(soyTree, 4)).getExprUnion().getExpr().getChild(0);
+
+    assertEquals(-1, template.getNumLocalVarSlots());
+    assertEquals(-1, letNode.getLocalVarSlot());
+    assertEquals(-1, boo2.getLocalVarSlot());
+
+    (new AssignLocalVarSlotsVisitor()).exec(soyTree);
+
+    // The foreach loop var takes three slots (loop var, current index, last index).
+    assertEquals(5, template.getNumLocalVarSlots());
+    assertEquals(0, letNode.getLocalVarSlot());
+    assertEquals(1, foreachNonemptyNode.getLocalVarSlot());
+    assertEquals(4, forNode.getLocalVarSlot());
+
+    assertEquals(-1, boo1.getLocalVarSlot());
+    assertEquals(-1, booInLetTag.getLocalVarSlot());
+    assertEquals(1, boo2.getLocalVarSlot());
+    assertEquals(0, foo1.getLocalVarSlot());
+    assertEquals(-1, mooseInForTag.getLocalVarSlot());
+    assertEquals(1, booInForTag.getLocalVarSlot());
+    assertEquals(4, moo1.getLocalVarSlot());
+    assertEquals(0, foo2.getLocalVarSlot());
+    assertEquals(-1, moo2.getLocalVarSlot());
+  }
+
+}
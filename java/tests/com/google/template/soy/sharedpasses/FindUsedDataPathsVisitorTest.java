@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.sharedpasses.FindUsedDataPathsVisitor.UsedDataPathsInfo;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.TemplateRegistry;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for FindUsedDataPathsVisitor.
+ */
+public class FindUsedDataPathsVisitorTest extends TestCase {
+
+
+  public void testLocalDataPaths() {
+
+    String fileContent = "" +
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  {$user.name} {$user['id']} {$scores[$i]} {$ij.boo}\n" +
+        "  {let $profile: $user.profile /}\n" +
+        "  {let $unused: $user.email /}\n" +
+        "  {$profile.photo.url}\n" +
+        "  {foreach $item in $items}\n" +
+        "    {if not isFirst($item)}, {/if}{$item.title}\n" +
+        "  {ifempty}\n" +
+        "    {$emptyMsg}\n" +
+        "  {/foreach}\n" +
+        "  {foreach $tag in $tags}\n" +
+        "    {if isLast($tag)}.{/if}\n" +
+        "  {/foreach}\n" +
+        "  {for $j in range($count)}{$j}{/for}\n" +
+        "{/template}\n";
+
+    assertEquals(
+        ImmutableSortedSet.of(
+            "count", "emptyMsg", "i", "items[].title", "scores[]", "tags", "user.id", "user.name",
+            "user.profile.photo.url"),
+        getDataPaths(fileContent, 0).dataPaths);
+  }
+
+
+  public void testCalls() {
+
+    String fileContent = "" +
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  {foreach $item in $items}\n" +
+        "    {call .bbb}\n" +
+        "      {param product: $item.product /}\n" +
+        "      {param label}{$item.label}{/param}\n" +
+        "      {param count: $item.count + 1 /}\n" +
+        "    {/call}\n" +
+        "  {/foreach}\n" +
+        "  {call .ccc data=\"all\"}{param title: $pageTitle /}{/call}\n" +
+        "  {call .ccc data=\"$page\" /}\n" +
+        "  {call .ddd /}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .bbb}\n" +
+        "  {$product.name} {$label} {$count} {$unpassed}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .ccc}\n" +
+        "  {$title} {$author.name}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .ddd}\n" +
+        "  {$foo}\n" +
+        "{/template}\n";
+
+    UsedDataPathsInfo info = getDataPaths(fileContent, 0);
+    assertEquals(
+        ImmutableSortedSet.of(
+            "author.name", "items[].count", "items[].label", "items[].product.name",
+            "page.author.name", "page.title", "pageTitle"),
+        info.dataPaths);
+    assertFalse(info.mayHaveDataPathsInExternalCalls);
+    assertFalse(info.mayHaveDataPathsInExternalDelCalls);
+  }
+
+
+  public void testRecursiveAndExternalCalls() {
+
+    String fileContent = "" +
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  {call .bbb}{param node: $tree /}{/call}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .bbb}\n" +
+        "  {$node.name}\n" +
+        "  {foreach $child in $node.children}\n" +
+        "    {call .bbb}{param node: $child /}{/call}\n" +
+        "  {/foreach}\n" +
+        "  {call .ccc data=\"all\" /}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .ccc}\n" +
+        "  {$node.id}\n" +
+        "  {call .aaa /}\n" +
+        "  {call external.foo data=\"all\" /}\n" +
+        "{/template}\n";
+
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(fileContent);
+    FindUsedDataPathsVisitor fudpv = new FindUsedDataPathsVisitor(new TemplateRegistry(soyTree));
+
+    // The data passed to the recursive call bbb -> bbb is used as a whole. The recursive call
+    // ccc -> aaa passes no data. The external call passes all of ccc's data, so the whole node
+    // passed to bbb is used.
+    UsedDataPathsInfo aaaInfo = fudpv.exec(soyTree.getChild(0).getChild(0));
+    assertEquals(
+        ImmutableSortedSet.of("tree", "tree.children[]", "tree.id", "tree.name"),
+        aaaInfo.dataPaths);
+    assertTrue(aaaInfo.mayHaveDataPathsInExternalCalls);
+    UsedDataPathsInfo cccInfo = fudpv.exec(soyTree.getChild(0).getChild(2));
+    assertEquals(
+        ImmutableSortedSet.of(FindUsedDataPathsVisitor.WHOLE_DATA_PATH, "node.id"),
+        cccInfo.dataPaths);
+    assertTrue(cccInfo.mayHaveDataPathsInExternalCalls);
+  }
+
+
+  public void testExternalBasicCalls() {
+
+    String fileContent = "" +
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  {call external.foo data=\"$page.header\"}\n" +
+        "    {param title: $page.title /}\n" +
+        "    {param label}{$user.name}{/param}\n" +
+        "  {/call}\n" +
+        "  {call .bbb data=\"$user\" /}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .bbb}\n" +
+        "  {call external.bar data=\"all\" /}\n" +
+        "{/template}\n";
+
+    // The data passed to external calls is used as a whole, including all the data passed to bbb.
+    UsedDataPathsInfo info = getDataPaths(fileContent, 0);
+    assertEquals(
+        ImmutableSortedSet.of("page.header", "page.title", "user", "user.name"), info.dataPaths);
+    assertTrue(info.mayHaveDataPathsInExternalCalls);
+    assertFalse(info.mayHaveDataPathsInExternalDelCalls);
+
+    assertEquals(
+        ImmutableSortedSet.of(FindUsedDataPathsVisitor.WHOLE_DATA_PATH),
+        getDataPaths(fileContent, 1).dataPaths);
+  }
+
+
+  public void testDelegateCalls() {
+
+    String fileContent = "" +
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  {delcall ns.noImpl data=\"$page\"}{param count: $numItems /}{/delcall}\n" +
+        "  {delcall ns.noImpl data=\"all\" /}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .bbb}\n" +
+        "  {delcall ns.withImpl}{param item: $items[0] /}{/delcall}\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{deltemplate ns.withImpl}\n" +
+        "  {$item.title}\n" +
+        "{/deltemplate}\n";
+
+    // Delegate calls may go to implementations outside the file set, so the data passed is used as
+    // a whole, whether or not there are implementations in the file set.
+    UsedDataPathsInfo aaaInfo = getDataPaths(fileContent, 0);
+    assertEquals(
+        ImmutableSortedSet.of(FindUsedDataPathsVisitor.WHOLE_DATA_PATH, "numItems", "page"),
+        aaaInfo.dataPaths);
+    assertTrue(aaaInfo.mayHaveDataPathsInExternalDelCalls);
+    UsedDataPathsInfo bbbInfo = getDataPaths(fileContent, 1);
+    assertEquals(ImmutableSortedSet.of("items[]", "items[].title"), bbbInfo.dataPaths);
+    assertTrue(bbbInfo.mayHaveDataPathsInExternalDelCalls);
+  }
+
+
+  private static UsedDataPathsInfo getDataPaths(String fileContent, int templateIndex) {
+
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(fileContent);
+    return (new FindUsedDataPathsVisitor(new TemplateRegistry(soyTree))).exec(
+        soyTree.getChild(0).getChild(templateIndex));
+  }
+
+}
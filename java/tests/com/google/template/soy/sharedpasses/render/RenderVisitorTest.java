@@ -0,0 +1,335 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.sharedpasses.render;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.template.soy.SoyModule;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.shared.restricted.SoyJavaRuntimePrintDirective;
+import com.google.template.soy.shared.restricted.SoyStreamingPrintDirective;
+import com.google.template.soy.sharedpasses.render.EvalVisitor.EvalVisitorFactory;
+import com.google.template.soy.soytree.CallNode;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.TemplateRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+
+/**
+ * Unit tests for RenderVisitor.
+ */
+public class RenderVisitorTest extends TestCase {
+
+
+  private static final String CALLEES =
+      "/***/\n" +
+      "{template .plain}\n" +
+      "  <b class=\"x\">'a' & \\b</b>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .text autoescape=\"strict\" kind=\"text\"}\n" +
+      "  <b class=\"x\">'a' & \\b</b>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .html autoescape=\"strict\" kind=\"html\"}\n" +
+      "  <b class=\"x\">'a' & \\b</b>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/** @param? missing */\n" +
+      "{template .failing autoescape=\"strict\" kind=\"text\"}\n" +
+      "  <b>{$missing}</b>\n" +
+      "{/template}\n";
+
+
+  private Map<String, SoyJavaRuntimePrintDirective> directivesMap;
+
+  private EvalVisitorFactory evalVisitorFactoryToUse;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    Injector injector = Guice.createInjector(new SoyModule());
+    directivesMap = injector.getInstance(
+        Key.get(new TypeLiteral<Map<String, SoyJavaRuntimePrintDirective>>() {}));
+    evalVisitorFactoryToUse = injector.getInstance(EvalVisitorFactory.class);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Tests for calls whose output is escaped.
+
+
+  public void testStreamedEscapedCall() {
+    assertEscapedCall(
+        "&lt;b class=&quot;x&quot;&gt;&#39;a&#39; &amp; \\b&lt;/b&gt;", true, ".plain",
+        "|escapeHtml");
+  }
+
+
+  public void testStreamedEscapedCallWithChainedDirectives() {
+    assertEscapedCall(
+        "\\x3cb class\\x3d\\x22x\\x22\\x3e\\x27a\\x27 \\x26 \\\\b\\x3c\\/b\\x3e", true, ".plain",
+        "|escapeJsString");
+    assertEscapedCall(
+        "\\x26lt;b class\\x3d\\x26quot;x\\x26quot;\\x26gt;\\x26#39;a\\x26#39; \\x26amp; " +
+            "\\\\b\\x26lt;\\/b\\x26gt;",
+        true, ".plain", "|escapeHtml", "|escapeJsString");
+  }
+
+
+  public void testStreamedEscapedCallToStrictCallee() {
+    // A text callee is escaped like unsanitized text.
+    assertEscapedCall(
+        "&lt;b class=&quot;x&quot;&gt;&#39;a&#39; &amp; \\b&lt;/b&gt;", true, ".text",
+        "|escapeHtml");
+    // Escaping HTML leaves an HTML callee unchanged, so the next directive gets HTML content.
+    assertEscapedCall(
+        "<b class=\"x\">'a' & \\b</b>", true, ".html", "|escapeHtml");
+    assertEscapedCall(
+        "\\x3cb class\\x3d\\x22x\\x22\\x3e\\x27a\\x27 \\x26 \\\\b\\x3c\\/b\\x3e", true, ".html",
+        "|escapeHtml", "|escapeJsString");
+  }
+
+
+  public void testBufferedEscapedCallWhenDirectiveCantStream() {
+    // Filters can't stream.
+    assertEscapedCall("zSoyz", false, ".plain", "|filterCssValue");
+    assertEscapedCall("zSoyz", false, ".plain", "|escapeHtml", "|filterCssValue");
+    // Attribute escapers handle sanitized HTML specially, so can't stream it, even after another
+    // directive that streams it unchanged.
+    assertEscapedCall(
+        "&#39;a&#39; & \\b", false, ".html", "|escapeHtmlAttribute");
+    assertEscapedCall(
+        "&#39;a&#39; & \\b", false, ".html", "|escapeHtml",
+        "|escapeHtmlAttribute");
+  }
+
+
+  public void testStreamedEscapedCallLeavesPartialOutputOnError() {
+
+    // Streamed: the escaped output before the error has already been written.
+    StringBuilder outputBuf = new StringBuilder();
+    try {
+      render(outputBuf, true, ".failing", "|escapeHtml");
+      fail();
+    } catch (RenderException expected) {}
+    assertEquals("&lt;b&gt;", outputBuf.toString());
+
+    // Buffered: nothing is written.
+    outputBuf = new StringBuilder();
+    try {
+      render(outputBuf, false, ".failing", "|escapeHtml");
+      fail();
+    } catch (RenderException expected) {}
+    assertEquals("", outputBuf.toString());
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Tests for printing string concatenations and other '+' expressions.
+
+
+  public void testPrintPlus() {
+
+    SoyMapData data = new SoyMapData("i", 1, "j", 2, "f", 1.5, "s", "x");
+
+    assertPrintPlus("3", "$i + $j", data);
+    assertPrintPlus("6", "$i + $j + 3", data);
+    assertPrintPlus("2.5", "$i + $f", data);
+    assertPrintPlus("3.0", "$f + $f", data);
+    assertPrintPlus("x", "'' + $s", data);
+    assertPrintPlus("xx", "$s + $s", data);
+    // String operand first.
+    assertPrintPlus("x12", "$s + $i + $j", data);
+    assertPrintPlus("x1.5", "$s + $f", data);
+    // String operand last, after numbers that are added.
+    assertPrintPlus("3x", "$i + $j + $s", data);
+    assertPrintPlus("2.5x", "$i + $f + $s", data);
+    // Mixed.
+    assertPrintPlus("1x1.52", "$i + $s + $f + $j", data);
+    assertPrintPlus("(3)", "'(' + ($i + $j) + ')'", data);
+    assertPrintPlus("<x>", "'<' + $s + '>'", data);
+  }
+
+
+  public void testPrintPlusWithFailingOperand() {
+
+    SoyMapData data = new SoyMapData("i", 1, "s", "x");
+    for (String expr : new String[] {
+             "'a' + $s + floor('b') + 'c'",
+             "$s + $i + floor('b')",
+             "$i + $i + $s + floor('b')"}) {
+      StringBuilder outputBuf = new StringBuilder();
+      try {
+        render(outputBuf, "<p>{" + expr + "}</p>", data);
+        fail();
+      } catch (RenderException expected) {}
+      // Nothing of the failing print is appended (as when printing the evaluated expression).
+      assertEquals(expr, "<p>", outputBuf.toString());
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Asserts that printing the given expression (which prints the operands of a string concatenation
+   * directly) renders the expected output, and the same output as printing the expression's value
+   * through a print directive.
+   */
+  private void assertPrintPlus(String expectedOutput, String expr, SoyMapData data) {
+
+    StringBuilder outputBuf = new StringBuilder();
+    render(outputBuf, "[{" + expr + "}]", data);
+    assertEquals(expr, "[" + expectedOutput + "]", outputBuf.toString());
+
+    StringBuilder directiveOutputBuf = new StringBuilder();
+    render(directiveOutputBuf, "[{" + expr + " |noAutoescape}]", data);
+    assertEquals(expr, "[" + expectedOutput + "]", directiveOutputBuf.toString());
+  }
+
+
+  /**
+   * Renders a template with the given body.
+   * @param outputBuf The output buffer to render into.
+   * @param templateBody The body of the template.
+   * @param data The template data.
+   */
+  private void render(StringBuilder outputBuf, String templateBody, SoyMapData data) {
+
+    String soyFileContent =
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .main}\n" +
+        templateBody + "\n" +
+        "{/template}\n";
+    TemplateRegistry templateRegistry =
+        new TemplateRegistry(SharedTestUtils.parseSoyFiles(soyFileContent));
+    (new TestRenderVisitor(
+        true, directivesMap, evalVisitorFactoryToUse, outputBuf, templateRegistry, data))
+        .exec(templateRegistry.getBasicTemplate("ns.main"));
+  }
+
+
+  /**
+   * Asserts that calling the given callee with the given escaping directives renders the expected
+   * output, both through streaming escapers (if {@code canStream} is true) and by buffering the
+   * callee's output and applying the directives to it.
+   */
+  private void assertEscapedCall(
+      String expectedOutput, boolean canStream, String calleeName, String... directiveNames) {
+
+    StringBuilder bufferedOutputBuf = new StringBuilder();
+    TestRenderVisitor bufferingRenderVisitor =
+        render(bufferedOutputBuf, false, calleeName, directiveNames);
+    assertEquals(expectedOutput, bufferedOutputBuf.toString());
+    assertFalse(bufferingRenderVisitor.wasCallStreamed(bufferedOutputBuf));
+
+    StringBuilder outputBuf = new StringBuilder();
+    TestRenderVisitor renderVisitor = render(outputBuf, true, calleeName, directiveNames);
+    assertEquals(expectedOutput, outputBuf.toString());
+    assertEquals(canStream, renderVisitor.wasCallStreamed(outputBuf));
+  }
+
+
+  /**
+   * Renders a template that calls the given callee, with the given escaping directives on the call.
+   * @param outputBuf The output buffer to render into.
+   * @param allowStreaming Whether to allow streaming escapers. Otherwise, the callee's output is
+   *     always buffered and then escaped.
+   */
+  private TestRenderVisitor render(
+      StringBuilder outputBuf, boolean allowStreaming, String calleeName,
+      String... directiveNames) {
+
+    String soyFileContent =
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .caller}\n" +
+        "  {call " + calleeName + " /}\n" +
+        "{/template}\n" +
+        "\n" +
+        CALLEES;
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(soyFileContent);
+    for (CallNode callNode : SharedTestUtils.getAllNodesOfType(soyTree, CallNode.class)) {
+      callNode.setEscapingDirectiveNames(ImmutableList.copyOf(directiveNames));
+    }
+    TemplateRegistry templateRegistry = new TemplateRegistry(soyTree);
+
+    TestRenderVisitor renderVisitor = new TestRenderVisitor(
+        allowStreaming, directivesMap, evalVisitorFactoryToUse, outputBuf, templateRegistry,
+        new SoyMapData());
+    renderVisitor.exec(templateRegistry.getBasicTemplate("ns.caller"));
+    return renderVisitor;
+  }
+
+
+  /**
+   * RenderVisitor that can be told not to use streaming escapers, and records the output buffer
+   * that it renders its callee into.
+   */
+  private static class TestRenderVisitor extends RenderVisitor {
+
+    private final boolean allowStreaming;
+
+    /** The output buffer of the last callee rendered by this instance. */
+    private Appendable calleeOutputBuf = null;
+
+    TestRenderVisitor(
+        boolean allowStreaming, Map<String, SoyJavaRuntimePrintDirective> directivesMap,
+        EvalVisitorFactory evalVisitorFactory, Appendable outputBuf,
+        TemplateRegistry templateRegistry, SoyMapData data) {
+      super(
+          directivesMap, evalVisitorFactory, outputBuf, templateRegistry, data, null, null, null,
+          null, null, null);
+      this.allowStreaming = allowStreaming;
+    }
+
+    /**
+     * Returns whether the last call was rendered straight into the given output buffer (possibly
+     * through escaping wrappers), rather than into a temporary buffer.
+     */
+    boolean wasCallStreamed(StringBuilder outputBuf) {
+      return calleeOutputBuf == outputBuf || !(calleeOutputBuf instanceof StringBuilder);
+    }
+
+    @Override protected RenderVisitor createHelperInstance(Appendable outputBuf, SoyMapData data) {
+      calleeOutputBuf = outputBuf;
+      return new TestRenderVisitor(
+          allowStreaming, soyJavaRuntimeDirectivesMap, evalVisitorFactory, outputBuf,
+          templateRegistry, data);
+    }
+
+    @Override protected SoyStreamingPrintDirective getStreamingDirective(String directiveName) {
+      return allowStreaming ? super.getStreamingDirective(directiveName) : null;
+    }
+  }
+
+}
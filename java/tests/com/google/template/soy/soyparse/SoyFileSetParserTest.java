@@ -0,0 +1,198 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.soyparse;
+
+import com.google.common.collect.Lists;
+import com.google.template.soy.base.SoyFileKind;
+import com.google.template.soy.base.SoyFileSupplier;
+import com.google.template.soy.base.SoySyntaxException;
+import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.soytree.AbstractSoyNodeVisitor;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.SoyNode;
+import com.google.template.soy.soytree.SoyNode.ParentSoyNode;
+
+import junit.framework.TestCase;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+
+/**
+ * Unit tests for SoyFileSetParser.
+ */
+public class SoyFileSetParserTest extends TestCase {
+
+
+  public void testParseInParallel() {
+
+    List<SoyFileSupplier> soyFileSuppliers = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      StringBuilder fileContent = new StringBuilder();
+      fileContent.append("{namespace ns").append(i).append("}\n");
+      for (int j = 0; j <= i % 4; j++) {
+        fileContent
+            .append("/** @param foo */\n")
+            .append("{template .t").append(j).append("}\n")
+            .append("  {msg desc=\"\"}Hello {$foo}!{/msg}\n")
+            .append("  {foreach $x in $foo}{$x}{ifempty}none{/foreach}\n")
+            .append("  {call .t").append(j).append(" data=\"all\" /}\n")
+            .append("{/template}\n");
+      }
+      soyFileSuppliers.add(SoyFileSupplier.Factory.create(
+          fileContent.toString(), SoyFileKind.SRC, "file" + i + ".soy"));
+    }
+
+    SoyFileSetNode sequentialSoyTree = (new SoyFileSetParser(soyFileSuppliers)).parse();
+    SoyFileSetNode parallelSoyTree =
+        (new SoyFileSetParser(soyFileSuppliers)).setNumThreads(4).parse();
+
+    assertEquals(getIds(sequentialSoyTree), getIds(parallelSoyTree));
+    for (int i = 0; i < soyFileSuppliers.size(); i++) {
+      assertEquals(
+          sequentialSoyTree.getChild(i).toSourceString(),
+          parallelSoyTree.getChild(i).toSourceString());
+    }
+    assertEquals(
+        sequentialSoyTree.getNodeIdGenerator().genId(),
+        parallelSoyTree.getNodeIdGenerator().genId());
+  }
+
+
+  public void testParseInParallelWithErrors() {
+
+    List<SoyFileSupplier> soyFileSuppliers = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      // Files 3 and 7 have errors.
+      String fileContent = "{namespace ns" + i + "}\n" +
+          "/** */\n" +
+          "{template .t}\n" +
+          ((i == 3 || i == 7) ? "  {if}\n" : "  Hello\n") +
+          "{/template}\n";
+      soyFileSuppliers.add(
+          SoyFileSupplier.Factory.create(fileContent, SoyFileKind.SRC, "file" + i + ".soy"));
+    }
+
+    try {
+      (new SoyFileSetParser(soyFileSuppliers)).setNumThreads(4).parse();
+      fail();
+    } catch (SoySyntaxException sse) {
+      assertEquals("file3.soy", sse.getSourceLocation().getFilePath());
+    }
+  }
+
+
+  public void testParseWithCache() {
+
+    List<TestSoyFileSupplier> testSoyFileSuppliers = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      testSoyFileSuppliers.add(new TestSoyFileSupplier(
+          "file" + i + ".soy",
+          "{namespace ns" + i + "}\n" +
+          "/** @param foo */\n" +
+          "{template .t}\n" +
+          "  {msg desc=\"\"}Hello {$foo}!{/msg}{call .t data=\"all\" /}\n" +
+          "{/template}\n"));
+    }
+    List<SoyFileSupplier> soyFileSuppliers = Lists.<SoyFileSupplier>newArrayList(
+        testSoyFileSuppliers);
+
+    SoyFileParseCache parseCache = new SoyFileParseCache();
+    (new SoyFileSetParser(soyFileSuppliers)).setParseCache(parseCache).parse();
+    for (TestSoyFileSupplier testSoyFileSupplier : testSoyFileSuppliers) {
+      assertEquals(1, testSoyFileSupplier.numOpens);
+    }
+
+    // Change file 2 so that it uses more node ids, which shifts the ids in files 3 and 4.
+    testSoyFileSuppliers.get(2).setContent(
+        "{namespace ns2}\n" +
+        "/** @param foo */\n" +
+        "{template .t}\n" +
+        "  {if $foo}{$foo}{else}{call .t data=\"all\" /}{/if}\n" +
+        "{/template}\n");
+
+    SoyFileSetNode cachedSoyTree =
+        (new SoyFileSetParser(soyFileSuppliers)).setParseCache(parseCache).parse();
+    for (int i = 0; i < testSoyFileSuppliers.size(); i++) {
+      assertEquals(i == 2 ? 2 : 1, testSoyFileSuppliers.get(i).numOpens);
+    }
+
+    SoyFileSetNode uncachedSoyTree = (new SoyFileSetParser(soyFileSuppliers)).parse();
+    assertEquals(getIds(uncachedSoyTree), getIds(cachedSoyTree));
+    for (int i = 0; i < soyFileSuppliers.size(); i++) {
+      assertEquals(
+          uncachedSoyTree.getChild(i).toSourceString(),
+          cachedSoyTree.getChild(i).toSourceString());
+    }
+  }
+
+
+  private static List<Integer> getIds(SoyNode node) {
+
+    final List<Integer> ids = Lists.newArrayList();
+    (new AbstractSoyNodeVisitor<Void>() {
+      @Override protected void visitSoyNode(SoyNode node) {
+        ids.add(node.getId());
+        if (node instanceof ParentSoyNode<?>) {
+          visitChildren((ParentSoyNode<?>) node);
+        }
+      }
+    }).exec(node);
+    return ids;
+  }
+
+
+  /**
+   * Supplier of a Soy file whose content can be changed, and that counts how often it's opened.
+   */
+  private static class TestSoyFileSupplier implements SoyFileSupplier {
+
+    private final String filePath;
+    private String content;
+    private Version version;
+    private int numOpens;
+
+    public TestSoyFileSupplier(String filePath, String content) {
+      this.filePath = filePath;
+      setContent(content);
+    }
+
+    @Override public SoyFileKind getSoyFileKind() {
+      return SoyFileKind.SRC;
+    }
+
+    @Override public String getFilePath() {
+      return filePath;
+    }
+
+    public void setContent(String content) {
+      this.content = content;
+      this.version = new Version() {};
+    }
+
+    @Override public Pair<Reader, Version> open() {
+      numOpens++;
+      return Pair.<Reader, Version>of(new StringReader(content), version);
+    }
+
+    @Override public boolean hasChangedSince(Version version) {
+      return this.version != version;
+    }
+  }
+
+}
@@ -17,10 +17,17 @@
 package com.google.template.soy.soytree;
 
 import com.google.common.collect.Lists;
+import com.google.template.soy.msgs.internal.MsgUtils;
+import com.google.template.soy.msgs.internal.MsgUtils.MsgPartsAndIds;
+import com.google.template.soy.msgs.restricted.SoyMsgIdComputer;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPlaceholderPart;
 import com.google.template.soy.soytree.SoyNode.StandaloneNode;
 
 import junit.framework.TestCase;
 
+import java.util.List;
+
 
 /**
  * Unit tests for MsgNode.
@@ -698,6 +705,32 @@ public class MsgNodeTest extends TestCase {
   }
 
 
+  public void testCachedMsgPartsAndId() throws Exception {
+
+    // {msg desc=""}Hello {$name}!{/msg}
+    MsgNode msg = new MsgNode(0, "desc=\"\"");
+    msg.addChild(new RawTextNode(0, "Hello "));
+    msg.addChild(new MsgPlaceholderNode(0, new PrintNode(0, true, "$name", null)));
+    msg.addChild(new RawTextNode(0, "!"));
+
+    assertNull(msg.getCachedMsgParts());
+    long msgId = MsgUtils.computeMsgIdForDualFormat(msg);
+    List<SoyMsgPart> msgParts = msg.getCachedMsgParts();
+    assertEquals(3, msgParts.size());
+    assertEquals("NAME", ((SoyMsgPlaceholderPart) msgParts.get(1)).getPlaceholderName());
+    assertEquals(
+        SoyMsgIdComputer.computeMsgId(msgParts, msg.getMeaning(), msg.getContentType()), msgId);
+
+    // The parts and id are reused, including by clones.
+    MsgPartsAndIds msgPartsAndIds = MsgUtils.buildMsgPartsAndComputeMsgIdForDualFormat(msg);
+    assertSame(msgParts, msgPartsAndIds.parts);
+    assertEquals(msgId, msgPartsAndIds.id);
+    MsgNode clone = msg.clone();
+    assertSame(msgParts, clone.getCachedMsgParts());
+    assertEquals(msgId, MsgUtils.computeMsgIdForDualFormat(clone));
+  }
+
+
   // -----------------------------------------------------------------------------------------------
   // Helpers.
 
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.data.SoyListData;
+import com.google.template.soy.data.SoyMapData;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for SoyDataAccessTracer.
+ */
+public class SoyDataAccessTracerTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/**\n" +
+      " * @param user\n" +
+      " * @param groups\n" +
+      " * @param items\n" +
+      " * @param item\n" +
+      " */\n" +
+      "{template .main}\n" +
+      "  {let $p: $user.profile /}\n" +
+      "  {$p.name}\n" +
+      "  {foreach $group in $groups}\n" +
+      "    {foreach $member in $group.members}\n" +
+      "      {$member.title}\n" +
+      "    {/foreach}\n" +
+      "  {/foreach}\n" +
+      "  {if $user}\n" +
+      "    {let $p: $user.other /}\n" +
+      "    {$p.inner}\n" +
+      "    {foreach $item in $items}\n" +
+      "      {$item.id}\n" +
+      "    {/foreach}\n" +
+      "  {/if}\n" +
+      // Outside the 'if', $p is the outer 'let' again, and $item is the param.
+      "  {$p.outer} {$item.after}\n" +
+      "  {let $content}{$user.name}{/let}\n" +
+      "  {$content}\n" +
+      "  {for $i in range(2)}{$i}{/for}\n" +
+      "  {call .callee}{param member: $user.best /}{/call}\n" +
+      "{/template}\n" +
+      "\n" +
+      "/** @param member */\n" +
+      "{template .callee}\n" +
+      "  {$member.title}\n" +
+      "{/template}\n";
+
+
+  public void testRecordedDataPaths() {
+
+    SoyFileSet soyFileSet = (new SoyFileSet.Builder()).add(SOY_FILE_CONTENT, "test.soy").build();
+    SoyTofuOptions cachingOptions = new SoyTofuOptions();
+    cachingOptions.setUseCaching(true);
+
+    for (SoyTofu tofu :
+         new SoyTofu[] {soyFileSet.compileToTofu(), soyFileSet.compileToTofu(cachingOptions)}) {
+      SoyDataAccessTracer tracer = new SoyDataAccessTracer(1);
+      tofu.newRenderer("ns.main").setData(newData()).setDataAccessTracer(tracer).render();
+
+      assertEquals(
+          ImmutableSet.of(
+              "user", "user.profile", "user.profile.name", "user.profile.outer", "user.other",
+              "user.other.inner", "user.name", "user.best", "groups", "groups[].members",
+              "groups[].members[].title", "items", "items[].id", "item.after"),
+          tracer.getAccessCounts().get("ns.main").keySet());
+      assertEquals(ImmutableSet.of("member.title"),
+                   tracer.getAccessCounts().get("ns.callee").keySet());
+      // Read once directly and once through a member of each of the two groups.
+      assertEquals(
+          Long.valueOf(2), tracer.getAccessCounts().get("ns.main").get("groups[].members"));
+    }
+  }
+
+
+  public void testSampling() {
+
+    SoyTofu tofu =
+        (new SoyFileSet.Builder()).add(SOY_FILE_CONTENT, "test.soy").build().compileToTofu();
+    SoyDataAccessTracer tracer = new SoyDataAccessTracer(3);
+    for (int i = 0; i < 7; i++) {
+      tofu.newRenderer("ns.main").setData(newData()).setDataAccessTracer(tracer).render();
+    }
+    // Renders 1, 4 and 7.
+    assertEquals(3, tracer.getNumTracedRenders());
+    assertEquals(Long.valueOf(3), tracer.getAccessCounts().get("ns.main").get("user.name"));
+  }
+
+
+  private static SoyMapData newData() {
+    return new SoyMapData(
+        "user", new SoyMapData(
+            "name", "Bob", "profile", new SoyMapData("name", "Bobby", "outer", 1),
+            "other", new SoyMapData("inner", 2), "best", new SoyMapData("title", "Alice")),
+        "groups", new SoyListData(
+            new SoyMapData("members", new SoyListData(new SoyMapData("title", "a"))),
+            new SoyMapData("members", new SoyListData())),
+        "items", new SoyListData(new SoyMapData("id", 3)),
+        "item", new SoyMapData("after", 4));
+  }
+
+}
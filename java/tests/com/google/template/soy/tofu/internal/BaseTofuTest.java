@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.tofu.SoyTofuOptions;
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Unit tests for the caching in BaseTofu, including adding to the cache in parallel.
+ */
+public class BaseTofuTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .main}\n" +
+      "  {msg desc=\"Greeting.\"}Hello{/msg}\n" +
+      "{/template}\n";
+
+
+  private SoyFileSet soyFileSet;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    soyFileSet = (new SoyFileSet.Builder()).add(SOY_FILE_CONTENT, "test.soy").build();
+  }
+
+
+  public void testPrimedWithoutRecordingMiss() {
+
+    BaseTofu tofu = newCachingTofu(0);
+    assertEquals(ImmutableSet.of(Pair.of(null, null)), tofu.getCachedKeys());
+    assertEquals(0, tofu.getCacheStats().requestCount());
+    assertEquals(0, tofu.getCacheStats().loadCount());
+
+    assertEquals("Hello", tofu.newRenderer("ns.main").render());
+    assertEquals(1, tofu.getCacheStats().hitCount());
+    assertEquals(0, tofu.getCacheStats().missCount());
+  }
+
+
+  public void testCacheStats() {
+
+    BaseTofu tofu = newCachingTofu(0);
+    SoyMsgBundle msgBundle = translate("x-zz");
+
+    assertEquals("[x-zz] Hello", tofu.newRenderer("ns.main").setMsgBundle(msgBundle).render());
+    assertEquals("[x-zz] Hello", tofu.newRenderer("ns.main").setMsgBundle(msgBundle).render());
+    tofu.addToCache(msgBundle, null);
+    // Not added to the cache (but recorded as a miss).
+    assertEquals("[x-yy] Hello", tofu.newRenderer("ns.main")
+        .setMsgBundle(translate("x-yy")).setDontAddToCache(true).render());
+
+    assertEquals(2, tofu.getCacheStats().missCount());
+    assertEquals(1, tofu.getCacheStats().loadSuccessCount());
+    assertEquals(2, tofu.getCacheStats().hitCount());
+    assertEquals(
+        ImmutableSet.of(Pair.of(null, null), Pair.of(msgBundle, null)), tofu.getCachedKeys());
+  }
+
+
+  public void testEvictionAtCacheMaxSize() {
+
+    BaseTofu tofu = newCachingTofu(2);
+    SoyMsgBundle msgBundleA = translate("x-aa");
+    SoyMsgBundle msgBundleB = translate("x-bb");
+    SoyCssRenamingMap cssRenamingMap = new SoyCssRenamingMap() {
+      @Override public String get(String key) {
+        return key;
+      }
+    };
+
+    tofu.addToCache(msgBundleA, null);
+    assertEquals(0, tofu.getCacheStats().evictionCount());
+    tofu.addToCache(msgBundleB, null);
+    tofu.addToCache(msgBundleB, cssRenamingMap);
+    assertEquals(2, tofu.getCacheStats().evictionCount());
+    assertEquals(
+        ImmutableSet.of(Pair.of(msgBundleB, null), Pair.of(msgBundleB, cssRenamingMap)),
+        tofu.getCachedKeys());
+
+    // An evicted combination is built again when used.
+    assertEquals("[x-aa] Hello", tofu.newRenderer("ns.main").setMsgBundle(msgBundleA).render());
+    assertEquals(4, tofu.getCacheStats().loadSuccessCount());
+    assertEquals(3, tofu.getCacheStats().evictionCount());
+  }
+
+
+  public void testSingleBuildForConcurrentRequests() throws Exception {
+
+    final BaseTofu tofu = newCachingTofu(0);
+    final SoyMsgBundle msgBundle = translate("x-zz");
+    int numThreads = 8;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Callable<String>> renders = Lists.newArrayList();
+    for (int i = 0; i < numThreads; i++) {
+      renders.add(new Callable<String>() {
+        @Override public String call() throws InterruptedException {
+          startLatch.await();
+          return tofu.newRenderer("ns.main").setMsgBundle(msgBundle).render();
+        }
+      });
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<String>> futures = Lists.newArrayList();
+      for (Callable<String> render : renders) {
+        futures.add(executor.submit(render));
+      }
+      startLatch.countDown();
+      for (Future<String> future : futures) {
+        assertEquals("[x-zz] Hello", future.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, tofu.getCacheStats().loadSuccessCount());
+    assertEquals(numThreads, tofu.getCacheStats().requestCount());
+  }
+
+
+  public void testAddToCacheInParallel() {
+
+    BaseTofu tofu = newCachingTofu(0);
+    List<SoyMsgBundle> msgBundles =
+        ImmutableList.of(translate("x-aa"), translate("x-bb"), translate("x-cc"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      tofu.addToCache(msgBundles, null, executor);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(3, tofu.getCacheStats().loadSuccessCount());
+    for (SoyMsgBundle msgBundle : msgBundles) {
+      assertTrue(tofu.getCachedKeys().contains(Pair.of(msgBundle, null)));
+    }
+  }
+
+
+  public void testAddToCacheInParallelWithFailure() throws Exception {
+
+    BaseTofu tofu = newCachingTofu(0);
+    final BlockingMsgBundle blockingBundle = new BlockingMsgBundle();
+    // Only fails once the blocking bundle is being built, so that its build has to be cancelled.
+    final RuntimeException failure = new RuntimeException("Bad bundle.");
+    SoyMsgBundle failingBundle = new FakeMsgBundle() {
+      @Override public SoyMsg getMsg(long msgId) {
+        try {
+          blockingBundle.started.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        throw failure;
+      }
+    };
+    // Queued behind the others. It may or may not have started when the failure is seen.
+    BlockingMsgBundle queuedBundle = new BlockingMsgBundle();
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      tofu.addToCache(
+          ImmutableList.of(failingBundle, blockingBundle, queuedBundle), null, executor);
+      fail();
+    } catch (RuntimeException e) {
+      assertSame(failure, e);
+    } finally {
+      // The blocked builds only end if they were cancelled.
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    assertEquals(1, blockingBundle.numInterrupts.get());
+    assertEquals(queuedBundle.numCalls.get(), queuedBundle.numInterrupts.get());
+    assertEquals(ImmutableSet.of(Pair.of(null, null)), tofu.getCachedKeys());
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  private BaseTofu newCachingTofu(int cacheMaxSize) {
+    SoyTofuOptions tofuOptions = new SoyTofuOptions();
+    tofuOptions.setUseCaching(true);
+    tofuOptions.setCacheMaxSize(cacheMaxSize);
+    return (BaseTofu) soyFileSet.compileToTofu(tofuOptions);
+  }
+
+
+  /**
+   * Builds a bundle in the given locale that translates the messages by tagging them with the
+   * locale.
+   */
+  private SoyMsgBundle translate(String localeString) {
+
+    List<SoyMsg> msgs = Lists.newArrayList();
+    for (SoyMsg msg : soyFileSet.extractMsgs()) {
+      List<SoyMsgPart> parts = Lists.newArrayList();
+      parts.add(new SoyMsgRawTextPart("[" + localeString + "] "));
+      parts.addAll(msg.getParts());
+      msgs.add(new SoyMsg(
+          msg.getId(), localeString, msg.getMeaning(), msg.getDesc(), msg.isHidden(),
+          msg.getContentType(), null, parts));
+    }
+    return new SoyMsgBundleImpl(localeString, msgs);
+  }
+
+
+  /** Base class for bundles whose getMsg() is overridden to test failures. */
+  private abstract static class FakeMsgBundle implements SoyMsgBundle {
+
+    @Override public String getLocaleString() {
+      return "x-zz";
+    }
+
+    @Override public int getNumMsgs() {
+      return 0;
+    }
+
+    @Override public Iterator<SoyMsg> iterator() {
+      return Iterators.emptyIterator();
+    }
+  }
+
+
+  /** Bundle whose getMsg() blocks until the building thread is interrupted. */
+  private static class BlockingMsgBundle extends FakeMsgBundle {
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger numCalls = new AtomicInteger();
+    final AtomicInteger numInterrupts = new AtomicInteger();
+
+    @Override public SoyMsg getMsg(long msgId) {
+      numCalls.incrementAndGet();
+      started.countDown();
+      try {
+        (new CountDownLatch(1)).await();
+        throw new AssertionError();
+      } catch (InterruptedException e) {
+        numInterrupts.incrementAndGet();
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+}
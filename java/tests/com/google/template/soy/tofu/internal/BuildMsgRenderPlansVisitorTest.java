@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgPluralCaseSpec;
+import com.google.template.soy.msgs.restricted.SoyMsgPluralPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+import com.google.template.soy.msgs.restricted.SoyMsgSelectPart;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.sharedpasses.render.MsgRenderPlan;
+import com.google.template.soy.soytree.MsgNode;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.SoyTofuOptions;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+
+/**
+ * Unit tests for BuildMsgRenderPlansVisitor, checking that plural/select messages render the same
+ * from a cached template registry (where their translations are resolved ahead of rendering) as
+ * without caching.
+ */
+public class BuildMsgRenderPlansVisitorTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/**\n" +
+      " * @param numFiles\n" +
+      " * @param gender\n" +
+      " */\n" +
+      "{template .main}\n" +
+      "  {msg desc=\"Translated plural.\"}\n" +
+      "    {plural $numFiles}\n" +
+      "      {case 1}One file\n" +
+      "      {default}{$numFiles} files\n" +
+      "    {/plural}\n" +
+      "  {/msg}\n" +
+      "  {sp}\n" +
+      "  {msg desc=\"Translated select.\"}\n" +
+      "    {select $gender}\n" +
+      "      {case 'female'}\n" +
+      "        {plural $numFiles}{case 1}She shared a file{default}She shared files{/plural}\n" +
+      "      {default}\n" +
+      "        {plural $numFiles}{case 1}They shared a file{default}They shared files{/plural}\n" +
+      "    {/select}\n" +
+      "  {/msg}\n" +
+      "  {sp}\n" +
+      "  {msg desc=\"Untranslated plural.\"}\n" +
+      "    {plural $numFiles}\n" +
+      "      {case 1}One folder\n" +
+      "      {default}{$numFiles} folders\n" +
+      "    {/plural}\n" +
+      "  {/msg}\n" +
+      "{/template}\n";
+
+
+  private SoyFileSet soyFileSet;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    soyFileSet = (new SoyFileSet.Builder()).add(SOY_FILE_CONTENT, "test.soy").build();
+  }
+
+
+  public void testCachedRenderingMatchesUncached() {
+
+    SoyMsgBundle msgBundle = translate("ru");
+
+    SoyTofuOptions cachingOptions = new SoyTofuOptions();
+    cachingOptions.setUseCaching(true);
+    SoyTofu cachingTofu = soyFileSet.compileToTofu(cachingOptions);
+    cachingTofu.addToCache(msgBundle, null);
+    SoyTofu nonCachingTofu = soyFileSet.compileToTofu(new SoyTofuOptions());
+
+    for (String gender : new String[] {"female", "male"}) {
+      for (int numFiles : new int[] {0, 1, 2, 5, 21}) {
+        SoyMapData data = new SoyMapData("numFiles", numFiles, "gender", gender);
+        String cachedResult =
+            cachingTofu.newRenderer("ns.main").setData(data).setMsgBundle(msgBundle).render();
+        String uncachedResult =
+            nonCachingTofu.newRenderer("ns.main").setData(data).setMsgBundle(msgBundle).render();
+        assertEquals(uncachedResult, cachedResult);
+      }
+    }
+    assertEquals(10, cachingTofu.getCacheStats().hitCount());  // All renders used the cache.
+
+    // Explicit cases and the missing message's fallback don't depend on the locale's plural rules.
+    SoyMapData data = new SoyMapData("numFiles", 1, "gender", "female");
+    assertEquals(
+        "[ru] One file [ru] She shared a file One folder",
+        cachingTofu.newRenderer("ns.main").setData(data).setMsgBundle(msgBundle).render());
+  }
+
+
+  public void testPlansForTranslatedAndMissingMsgs() {
+
+    ImmutableMap<MsgNode, MsgRenderPlan> msgRenderPlans =
+        (new BuildMsgRenderPlansVisitor(translate("ru")))
+            .exec(SharedTestUtils.parseSoyFiles(SOY_FILE_CONTENT));
+    assertEquals(3, msgRenderPlans.size());
+
+    int numTranslated = 0;
+    for (MsgRenderPlan msgRenderPlan : msgRenderPlans.values()) {
+      if (msgRenderPlan.getMsgParts() != null) {
+        numTranslated++;
+        assertNotNull(msgRenderPlan.getPluralRules());
+      } else {
+        assertNull(msgRenderPlan.getPluralRules());
+      }
+    }
+    assertEquals(2, numTranslated);
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /**
+   * Builds a bundle in the given locale that translates all messages except the untranslated one by
+   * tagging their text with the locale, and adds a 'one' case to their plurals so that the locale's
+   * plural rules matter.
+   */
+  private SoyMsgBundle translate(String localeString) {
+
+    List<SoyMsg> msgs = Lists.newArrayList();
+    for (SoyMsg msg : soyFileSet.extractMsgs()) {
+      if (msg.getDesc().startsWith("Untranslated")) {
+        continue;
+      }
+      msgs.add(new SoyMsg(
+          msg.getId(), localeString, msg.getMeaning(), msg.getDesc(), msg.isHidden(),
+          msg.getContentType(), null, translateParts(msg.getParts(), localeString)));
+    }
+    return new SoyMsgBundleImpl(localeString, msgs);
+  }
+
+
+  private static List<SoyMsgPart> translateParts(List<SoyMsgPart> parts, String localeString) {
+
+    List<SoyMsgPart> translatedParts = Lists.newArrayList();
+    for (SoyMsgPart part : parts) {
+
+      if (part instanceof SoyMsgRawTextPart) {
+        String rawText = ((SoyMsgRawTextPart) part).getRawText();
+        translatedParts.add(new SoyMsgRawTextPart("[" + localeString + "] " + rawText));
+
+      } else if (part instanceof SoyMsgPluralPart) {
+        SoyMsgPluralPart pluralPart = (SoyMsgPluralPart) part;
+        List<Pair<SoyMsgPluralCaseSpec, List<SoyMsgPart>>> cases = Lists.newArrayList();
+        for (Pair<SoyMsgPluralCaseSpec, List<SoyMsgPart>> pluralCase : pluralPart.getCases()) {
+          if (pluralCase.first.getType() == SoyMsgPluralCaseSpec.Type.OTHER) {
+            cases.add(Pair.of(
+                new SoyMsgPluralCaseSpec("one"),
+                translateParts(pluralCase.second, localeString + ":one")));
+          }
+          cases.add(Pair.of(pluralCase.first, translateParts(pluralCase.second, localeString)));
+        }
+        translatedParts.add(new SoyMsgPluralPart(
+            pluralPart.getPluralVarName(), pluralPart.getOffset(), cases));
+
+      } else if (part instanceof SoyMsgSelectPart) {
+        SoyMsgSelectPart selectPart = (SoyMsgSelectPart) part;
+        List<Pair<String, List<SoyMsgPart>>> cases = Lists.newArrayList();
+        for (Pair<String, List<SoyMsgPart>> selectCase : selectPart.getCases()) {
+          cases.add(Pair.of(selectCase.first, translateParts(selectCase.second, localeString)));
+        }
+        translatedParts.add(new SoyMsgSelectPart(selectPart.getSelectVarName(), cases));
+
+      } else {
+        translatedParts.add(part);
+      }
+    }
+    return translatedParts;
+  }
+
+}
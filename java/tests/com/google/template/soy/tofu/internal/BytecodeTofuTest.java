@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.data.SoyListData;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.msgs.restricted.SoyMsgPart;
+import com.google.template.soy.msgs.restricted.SoyMsgRawTextPart;
+import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.SoyTofuException;
+import com.google.template.soy.tofu.SoyTofuOptions;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+
+/**
+ * Unit tests for BytecodeTofu.
+ */
+public class BytecodeTofuTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/**\n" +
+      " * @param name\n" +
+      " * @param items\n" +
+      " * @param n\n" +
+      " */\n" +
+      "{template .main}\n" +
+      "  {msg desc=\"Greeting.\"}\n" +
+      "    Hello {$name}!\n" +
+      "  {/msg}\n" +
+      "  {msg desc=\"Not in any bundle.\"}\n" +
+      "    Bye & thanks\n" +
+      "  {/msg}\n" +
+      "  {call .list data=\"all\" /}\n" +
+      "  {if $n > 2}\n" +
+      "    big\n" +
+      "  {else}\n" +
+      "    small\n" +
+      "  {/if}\n" +
+      "  <div class=\"{css foo}\">{$n * 2}</div>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/** @param items */\n" +
+      "{template .list}\n" +
+      "  {foreach $item in $items}\n" +
+      "    {if not isFirst($item)}, {/if}\n" +
+      "    {$item}\n" +
+      "  {ifempty}\n" +
+      "    none\n" +
+      "  {/foreach}\n" +
+      "{/template}\n";
+
+
+  /** Records the warnings logged by BytecodeTofu (i.e. the bundles that couldn't be compiled). */
+  private final List<LogRecord> loggedWarnings = Lists.newArrayList();
+
+  private final Handler logHandler = new Handler() {
+    @Override public void publish(LogRecord record) {
+      if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+        loggedWarnings.add(record);
+      }
+    }
+    @Override public void flush() {}
+    @Override public void close() {}
+  };
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    Logger.getLogger(BytecodeTofu.class.getName()).addHandler(logHandler);
+  }
+
+
+  @Override protected void tearDown() throws Exception {
+    Logger.getLogger(BytecodeTofu.class.getName()).removeHandler(logHandler);
+    super.tearDown();
+  }
+
+
+  public void testSameOutputAsTofu() {
+
+    SoyFileSet soyFileSet = newSoyFileSet(SOY_FILE_CONTENT);
+    SoyTofu tofu = soyFileSet.compileToTofu();
+    SoyTofu bytecodeTofu = soyFileSet.compileToBytecode(
+        new SoyTofuOptions(), MoreExecutors.sameThreadExecutor());
+
+    SoyCssRenamingMap cssRenamingMap = new SoyCssRenamingMap() {
+      @Override public String get(String key) {
+        return key + "-renamed";
+      }
+    };
+    List<SoyMapData> datas = Lists.newArrayList(
+        new SoyMapData("name", "<Bob & Alice>", "items", new SoyListData("a", "<b>", "c"), "n", 3),
+        new SoyMapData("name", "", "items", new SoyListData(), "n", -1));
+    List<SoyMsgBundle> msgBundles = Lists.newArrayList(
+        null, translate(soyFileSet.extractMsgs(), "x-zz"));
+
+    for (SoyMsgBundle msgBundle : msgBundles) {
+      for (SoyMapData data : datas) {
+        for (SoyCssRenamingMap cssMap : Lists.newArrayList(null, cssRenamingMap)) {
+          String expected = tofu.newRenderer("ns.main")
+              .setData(data).setMsgBundle(msgBundle).setCssRenamingMap(cssMap).render();
+          assertEquals(expected, bytecodeTofu.newRenderer("ns.main")
+              .setData(data).setMsgBundle(msgBundle).setCssRenamingMap(cssMap).render());
+          StringBuilder sb = new StringBuilder();
+          bytecodeTofu.newRenderer("ns.main")
+              .setData(data).setMsgBundle(msgBundle).setCssRenamingMap(cssMap).render(sb);
+          assertEquals(expected, sb.toString());
+        }
+      }
+    }
+
+    // Make sure the renders above used the compiled templates instead of falling back because the
+    // file set couldn't be compiled.
+    assertEquals(0, loggedWarnings.size());
+    assertEquals(2, bytecodeTofu.getCacheStats().loadCount());
+  }
+
+
+  public void testCompilesInBackground() {
+
+    SoyFileSet soyFileSet = newSoyFileSet(SOY_FILE_CONTENT);
+    final Queue<Runnable> compileTasks = Lists.newLinkedList();
+    SoyTofu bytecodeTofu = soyFileSet.compileToBytecode(
+        new SoyTofuOptions(),
+        new Executor() {
+          @Override public void execute(Runnable command) {
+            compileTasks.add(command);
+          }
+        });
+
+    SoyMapData data = new SoyMapData("name", "Bob", "items", new SoyListData("a"), "n", 3);
+    String expected = soyFileSet.compileToTofu().newRenderer("ns.main").setData(data).render();
+
+    // The first render starts the compile, but doesn't wait for it.
+    assertEquals(expected, bytecodeTofu.newRenderer("ns.main").setData(data).render());
+    assertEquals(1, compileTasks.size());
+    // Renders before the compile is done don't start another compile.
+    assertEquals(expected, bytecodeTofu.newRenderer("ns.main").setData(data).render());
+    assertEquals(1, compileTasks.size());
+
+    compileTasks.remove().run();
+    assertEquals(expected, bytecodeTofu.newRenderer("ns.main").setData(data).render());
+    assertEquals(0, compileTasks.size());
+    assertEquals(1, bytecodeTofu.getCacheStats().loadCount());
+    assertEquals(0, loggedWarnings.size());
+  }
+
+
+  public void testAddToCacheCompilesOnCallingThread() {
+
+    SoyFileSet soyFileSet = newSoyFileSet(SOY_FILE_CONTENT);
+    SoyTofu bytecodeTofu = soyFileSet.compileToBytecode(
+        new SoyTofuOptions(),
+        new Executor() {
+          @Override public void execute(Runnable command) {
+            fail("addToCache() should not use the compile executor.");
+          }
+        });
+
+    bytecodeTofu.addToCache(null, null);
+    assertEquals(1, bytecodeTofu.getCacheStats().loadCount());
+    // Already compiled, so the render doesn't start a compile.
+    bytecodeTofu.newRenderer("ns.main")
+        .setData(new SoyMapData("name", "Bob", "items", new SoyListData(), "n", 3)).render();
+    assertEquals(1, bytecodeTofu.getCacheStats().loadCount());
+    assertEquals(1, bytecodeTofu.getCacheStats().hitCount());
+  }
+
+
+  public void testCacheMaxSize() {
+
+    SoyFileSet soyFileSet = newSoyFileSet(SOY_FILE_CONTENT);
+    SoyMsgBundle extractedMsgs = soyFileSet.extractMsgs();
+    SoyMsgBundle msgBundleA = translate(extractedMsgs, "x-aa");
+    SoyMsgBundle msgBundleB = translate(extractedMsgs, "x-bb");
+    SoyTofuOptions tofuOptions = new SoyTofuOptions();
+    tofuOptions.setCacheMaxSize(1);
+    SoyTofu bytecodeTofu =
+        soyFileSet.compileToBytecode(tofuOptions, MoreExecutors.sameThreadExecutor());
+
+    SoyMapData data = new SoyMapData("name", "Bob", "items", new SoyListData(), "n", 3);
+    String outputA = bytecodeTofu.newRenderer("ns.main")
+        .setData(data).setMsgBundle(msgBundleA).render();
+    bytecodeTofu.newRenderer("ns.main").setData(data).setMsgBundle(msgBundleB).render();
+    // Bundle A was evicted, so it's compiled again.
+    assertEquals(outputA, bytecodeTofu.newRenderer("ns.main")
+        .setData(data).setMsgBundle(msgBundleA).render());
+
+    assertEquals(3, bytecodeTofu.getCacheStats().loadCount());
+    assertEquals(2, bytecodeTofu.getCacheStats().evictionCount());
+  }
+
+
+  public void testWrapsExceptionsFromCompiledTemplates() {
+
+    SoyFileSet soyFileSet = newSoyFileSet(
+        "{namespace ns}\n" +
+        "\n" +
+        "/** @param x */\n" +
+        "{template .main}\n" +
+        "  {$x.y}\n" +
+        "{/template}\n");
+    SoyTofu bytecodeTofu = soyFileSet.compileToBytecode(
+        new SoyTofuOptions(), MoreExecutors.sameThreadExecutor());
+    bytecodeTofu.addToCache(null, null);
+    assertEquals(0, loggedWarnings.size());
+
+    try {
+      bytecodeTofu.newRenderer("ns.main").setData(new SoyMapData("x", "notAMap")).render();
+      fail();
+    } catch (SoyTofuException ste) {
+      assertEquals("ns.main", ste.getTemplateName());
+    }
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  private static SoyFileSet newSoyFileSet(String soyFileContent) {
+    return (new SoyFileSet.Builder()).add(soyFileContent, "test.soy").build();
+  }
+
+
+  /**
+   * Builds a bundle in the given locale that translates each of the extracted messages (except
+   * the one described as not being in any bundle) by tagging it with the locale.
+   */
+  private static SoyMsgBundle translate(SoyMsgBundle extractedMsgs, String localeString) {
+
+    List<SoyMsg> msgs = Lists.newArrayList();
+    for (SoyMsg msg : extractedMsgs) {
+      if (msg.getDesc().equals("Not in any bundle.")) {
+        continue;
+      }
+      List<SoyMsgPart> parts = Lists.newArrayList();
+      parts.add(new SoyMsgRawTextPart("[" + localeString + "] <"));
+      parts.addAll(msg.getParts());
+      msgs.add(new SoyMsg(
+          msg.getId(), localeString, msg.getMeaning(), msg.getDesc(), msg.isHidden(),
+          msg.getContentType(), null, parts));
+    }
+    return new SoyMsgBundleImpl(localeString, msgs);
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.data.SoyMapData;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.shared.internal.SharedTestUtils;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.soytree.TemplateNode;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.SoyTofuOptions;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Unit tests for IsShareableTemplateVisitor.
+ */
+public class IsShareableTemplateVisitorTest extends TestCase {
+
+
+  public void testShareable() {
+
+    assertTrue(isShareable("Hello world!"));
+    assertTrue(isShareable("{$x} {$x.y + 1}"));
+    assertTrue(isShareable("{if $x}{$y}{else}{call .other data=\"all\" /}{/if}"));
+    assertTrue(isShareable("{foreach $item in $items}{$item}{ifempty}none{/foreach}"));
+  }
+
+
+  public void testNotShareable() {
+
+    assertFalse(isShareable("{msg desc=\"\"}Hello{/msg}"));
+    assertFalse(isShareable("<div class=\"{css foo}\"></div>"));
+    assertFalse(isShareable("{if $x}{msg desc=\"\"}Hello{/msg}{/if}"));
+    // Prints with directives, whether or not the expression references data, since they may be
+    // prerendered during simplification (the expression below simplifies to 'x').
+    assertFalse(isShareable("{'x' |bidiSpanWrap}"));
+    assertFalse(isShareable("{$x |bidiSpanWrap}"));
+    assertFalse(isShareable("{true ? 'x' : $y |bidiSpanWrap}"));
+  }
+
+
+  public void testRenderInRtlBundle() {
+
+    String soyFileContent =
+        "{namespace ns}\n" +
+        "\n" +
+        "/** @param y */\n" +
+        "{template .main}\n" +
+        "  {true ? 'x' : $y |bidiSpanWrap}\n" +
+        "  {$y |bidiUnicodeWrap}\n" +
+        "  {'abc' |bidiUnicodeWrap}\n" +
+        "{/template}\n";
+    SoyFileSet soyFileSet = (new SoyFileSet.Builder()).add(soyFileContent, "test.soy").build();
+
+    SoyTofuOptions tofuOptions = new SoyTofuOptions();
+    tofuOptions.setUseCaching(true);
+    SoyTofu cachingTofu = soyFileSet.compileToTofu(tofuOptions);
+    SoyTofu nonCachingTofu = soyFileSet.compileToTofu();
+
+    SoyMapData data = new SoyMapData("y", "abc");
+    SoyMsgBundle rtlMsgBundle = new SoyMsgBundleImpl("iw", ImmutableList.<SoyMsg>of());
+    String rtlOutput = nonCachingTofu.newRenderer("ns.main")
+        .setData(data).setMsgBundle(rtlMsgBundle).render();
+    String ltrOutput = nonCachingTofu.newRenderer("ns.main").setData(data).render();
+    // Sanity check that the directives do depend on the bundle's directionality.
+    assertFalse(rtlOutput.equals(ltrOutput));
+
+    // Render in both orders, so that whichever directionality is cached first isn't shared.
+    assertEquals(rtlOutput, cachingTofu.newRenderer("ns.main")
+        .setData(data).setMsgBundle(rtlMsgBundle).render());
+    assertEquals(ltrOutput, cachingTofu.newRenderer("ns.main").setData(data).render());
+    assertEquals(rtlOutput, cachingTofu.newRenderer("ns.main")
+        .setData(data).setMsgBundle(rtlMsgBundle).render());
+  }
+
+
+  private static boolean isShareable(String templateBody) {
+
+    String fileContent =
+        "{namespace ns}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .aaa}\n" +
+        "  " + templateBody + "\n" +
+        "{/template}\n" +
+        "\n" +
+        "/***/\n" +
+        "{template .other}\n" +
+        "  Other\n" +
+        "{/template}\n";
+    SoyFileSetNode soyTree = SharedTestUtils.parseSoyFiles(fileContent);
+    TemplateNode template = soyTree.getChild(0).getChild(0);
+    return (new IsShareableTemplateVisitor()).exec(template);
+  }
+
+}
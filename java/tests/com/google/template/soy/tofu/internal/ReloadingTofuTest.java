@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Guice;
+import com.google.template.soy.SoyModule;
+import com.google.template.soy.base.SoyFileKind;
+import com.google.template.soy.base.SoyFileSupplier;
+import com.google.template.soy.internal.base.Pair;
+import com.google.template.soy.msgs.SoyMsgBundle;
+import com.google.template.soy.msgs.restricted.SoyMsg;
+import com.google.template.soy.msgs.restricted.SoyMsgBundleImpl;
+import com.google.template.soy.shared.SoyCssRenamingMap;
+import com.google.template.soy.soyparse.SoyFileSetParser;
+import com.google.template.soy.soytree.SoyFileSetNode;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.internal.BaseTofu.BaseTofuFactory;
+
+import junit.framework.TestCase;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Unit tests for ReloadingTofu.
+ */
+public class ReloadingTofuTest extends TestCase {
+
+
+  private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+
+  private FakeSoyFileSupplier soyFileSupplier;
+  private FakeTicker ticker;
+  private FakeTofuCompiler tofuCompiler;
+  private SoyTofu reloadingTofu;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    // The failed recompiles below are expected, so don't clutter the test output.
+    Logger.getLogger(ReloadingTofu.class.getName()).setLevel(Level.OFF);
+
+    soyFileSupplier = new FakeSoyFileSupplier(templateWithText("v1"));
+    ticker = new FakeTicker();
+    tofuCompiler = new FakeTofuCompiler(soyFileSupplier);
+    reloadingTofu = new ReloadingTofu(
+        tofuCompiler, ImmutableList.of(soyFileSupplier), MoreExecutors.sameThreadExecutor(),
+        CHECK_INTERVAL_MILLIS, ticker);
+  }
+
+
+  @Override protected void tearDown() throws Exception {
+    Logger.getLogger(ReloadingTofu.class.getName()).setLevel(null);
+    super.tearDown();
+  }
+
+
+  public void testUnchangedFileNotRecompiled() {
+
+    assertEquals("v1", render());
+    for (int i = 0; i < 3; i++) {
+      ticker.advance(CHECK_INTERVAL_MILLIS);
+      assertEquals("v1", render());
+    }
+    assertEquals(1, tofuCompiler.compiledTofus.size());
+  }
+
+
+  public void testChangedFileReloadedAfterCheckInterval() {
+
+    soyFileSupplier.setContent(templateWithText("v2"));
+    // Not checked before the interval has passed.
+    ticker.advance(CHECK_INTERVAL_MILLIS - 1);
+    assertEquals("v1", render());
+    assertEquals(1, tofuCompiler.compiledTofus.size());
+
+    ticker.advance(1);
+    assertEquals("v2", render());
+    assertEquals(2, tofuCompiler.compiledTofus.size());
+
+    // The reloaded version isn't recompiled until the file changes again.
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v2", render());
+    assertEquals(2, tofuCompiler.compiledTofus.size());
+  }
+
+
+  public void testEarlierRendererKeepsOldVersion() {
+
+    SoyTofu.Renderer oldRenderer = reloadingTofu.newRenderer("ns.main");
+    SoyTofu.Renderer oldNamespacedRenderer =
+        reloadingTofu.forNamespace("ns").newRenderer(".main");
+
+    soyFileSupplier.setContent(templateWithText("v2"));
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v2", render());
+
+    assertEquals("v1", oldRenderer.render());
+    assertEquals("v1", oldNamespacedRenderer.render());
+    assertEquals("v2", reloadingTofu.forNamespace("ns").newRenderer(".main").render());
+  }
+
+
+  public void testFailedRecompileKeepsOldVersionAndIsRetried() {
+
+    soyFileSupplier.setContent("{namespace ns}\n/***/\n{template .main}\n{if}\n{/template}\n");
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v1", render());
+    assertEquals(1, tofuCompiler.compiledTofus.size());
+    assertEquals(1, tofuCompiler.numFailedCompiles);
+
+    // Retried at the next check, since the current version is still out of date.
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v1", render());
+    assertEquals(2, tofuCompiler.numFailedCompiles);
+
+    soyFileSupplier.setContent(templateWithText("v3"));
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v3", render());
+    assertEquals(2, tofuCompiler.compiledTofus.size());
+    assertEquals(2, tofuCompiler.numFailedCompiles);
+  }
+
+
+  public void testReloadedVersionPrimedFromCachedKeys() {
+
+    SoyMsgBundle msgBundle = new SoyMsgBundleImpl("x-zz", ImmutableList.<SoyMsg>of());
+    SoyCssRenamingMap cssRenamingMap = new SoyCssRenamingMap() {
+      @Override public String get(String key) {
+        return key;
+      }
+    };
+    reloadingTofu.addToCache(msgBundle, cssRenamingMap);
+
+    soyFileSupplier.setContent(templateWithText("v2"));
+    ticker.advance(CHECK_INTERVAL_MILLIS);
+    assertEquals("v2", render());
+
+    BaseTofu reloadedTofu = tofuCompiler.compiledTofus.get(1);
+    assertEquals(
+        tofuCompiler.compiledTofus.get(0).getCachedKeys(), reloadedTofu.getCachedKeys());
+    assertTrue(reloadedTofu.getCachedKeys().contains(Pair.of(msgBundle, cssRenamingMap)));
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  private String render() {
+    return reloadingTofu.newRenderer("ns.main").render();
+  }
+
+
+  private static String templateWithText(String text) {
+    return "{namespace ns}\n/***/\n{template .main}\n" + text + "\n{/template}\n";
+  }
+
+
+  /** A Soy file supplier whose content can be changed. */
+  private static class FakeSoyFileSupplier implements SoyFileSupplier {
+
+    private String content;
+    private int versionNum = 0;
+
+    FakeSoyFileSupplier(String content) {
+      this.content = content;
+    }
+
+    synchronized void setContent(String content) {
+      this.content = content;
+      versionNum++;
+    }
+
+    @Override public synchronized Pair<Reader, Version> open() {
+      return Pair.<Reader, Version>of(new StringReader(content), new FakeVersion(versionNum));
+    }
+
+    @Override public synchronized boolean hasChangedSince(Version version) {
+      return !(new FakeVersion(versionNum)).equals(version);
+    }
+
+    @Override public SoyFileKind getSoyFileKind() {
+      return SoyFileKind.SRC;
+    }
+
+    @Override public String getFilePath() {
+      return "test.soy";
+    }
+  }
+
+
+  private static class FakeVersion implements SoyFileSupplier.Version {
+
+    private final int versionNum;
+
+    FakeVersion(int versionNum) {
+      this.versionNum = versionNum;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof FakeVersion && ((FakeVersion) o).versionNum == versionNum;
+    }
+
+    @Override public int hashCode() {
+      return versionNum;
+    }
+  }
+
+
+  /** Compiles the Soy file into a caching BaseTofu, recording each compile. */
+  private static class FakeTofuCompiler implements ReloadingTofu.TofuCompiler {
+
+    private final BaseTofuFactory baseTofuFactory =
+        Guice.createInjector(new SoyModule()).getInstance(BaseTofuFactory.class);
+    private final SoyFileSupplier soyFileSupplier;
+    final List<BaseTofu> compiledTofus = Lists.newArrayList();
+    int numFailedCompiles = 0;
+
+    FakeTofuCompiler(SoyFileSupplier soyFileSupplier) {
+      this.soyFileSupplier = soyFileSupplier;
+    }
+
+    @Override public Pair<BaseTofu, List<SoyFileSupplier.Version>> compile() {
+      Pair<SoyFileSetNode, List<SoyFileSupplier.Version>> soyTreeAndVersions;
+      try {
+        soyTreeAndVersions =
+            (new SoyFileSetParser(ImmutableList.of(soyFileSupplier))).parseWithVersions();
+      } catch (RuntimeException e) {
+        numFailedCompiles++;
+        throw e;
+      }
+      BaseTofu baseTofu = baseTofuFactory.create(soyTreeAndVersions.first, true, 0);
+      compiledTofus.add(baseTofu);
+      return Pair.of(baseTofu, soyTreeAndVersions.second);
+    }
+  }
+
+
+  private static class FakeTicker extends Ticker {
+
+    private long nanos = 0;
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override public long read() {
+      return nanos;
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.template.soy.tofu.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.template.soy.SoyFileSet;
+import com.google.template.soy.tofu.SoyTofu;
+import com.google.template.soy.tofu.SoyTofuOptions;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.util.List;
+
+
+/**
+ * Unit tests for rendering with flush points (see {@link SoyTofu.Renderer#setFlushPoints}).
+ */
+public class TofuFlushPointsTest extends TestCase {
+
+
+  private static final String SOY_FILE_CONTENT =
+      "{namespace ns}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .main autoescape=\"strict\"}\n" +
+      "  <p>start</p>\n" +
+      "  {call .header /}\n" +
+      "  {let $saved kind=\"html\"}{call .header /}{/let}\n" +
+      "  {call .wrapper}{param content kind=\"html\"}{call .header /}{/param}{/call}\n" +
+      "  <div title=\"{call .header /}\"></div>\n" +
+      "  {call .text /}\n" +
+      "  {$saved}\n" +
+      "  {call .footer /}\n" +
+      "{/template}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .header autoescape=\"strict\"}\n" +
+      "  <h1>Header</h1>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/** @param content */\n" +
+      "{template .wrapper autoescape=\"strict\"}\n" +
+      "  <div>{$content}</div>\n" +
+      "{/template}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .text autoescape=\"strict\" kind=\"text\"}\n" +
+      "  a<b\n" +
+      "{/template}\n" +
+      "\n" +
+      "/***/\n" +
+      "{template .footer autoescape=\"strict\"}\n" +
+      "  <p>end</p>\n" +
+      "{/template}\n";
+
+  private static final String EXPECTED_OUTPUT =
+      "<p>start</p><h1>Header</h1><div><h1>Header</h1></div><div title=\"Header\"></div>" +
+      "a&lt;b<h1>Header</h1><p>end</p>";
+
+
+  private SoyFileSet soyFileSet;
+
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    soyFileSet = (new SoyFileSet.Builder()).add(SOY_FILE_CONTENT, "test.soy").build();
+  }
+
+
+  public void testFlushAfterFlushPointTemplates() {
+    for (boolean useCaching : new boolean[] {false, true}) {
+      SoyTofuOptions tofuOptions = new SoyTofuOptions();
+      tofuOptions.setUseCaching(useCaching);
+      SoyTofu tofu = soyFileSet.compileToTofu(tofuOptions);
+
+      FlushRecordingWriter out = new FlushRecordingWriter();
+      tofu.newRenderer("ns.main")
+          .setFlushPoints(ImmutableSet.of("ns.header", "ns.text", "ns.footer"))
+          .render(out);
+
+      assertEquals(EXPECTED_OUTPUT, out.toString());
+      // The header is only flushed when called directly, not when rendered into a let or param
+      // block, or into a temporary buffer to escape it. The text template is called through an
+      // escaping wrapper around the output, which isn't Flushable, so it isn't flushed either.
+      assertEquals(
+          ImmutableList.of(
+              "<p>start</p><h1>Header</h1>",
+              EXPECTED_OUTPUT),
+          out.flushedOutputs);
+    }
+  }
+
+
+  public void testNoFlushPoints() {
+    SoyTofu tofu = soyFileSet.compileToTofu(new SoyTofuOptions());
+
+    FlushRecordingWriter out = new FlushRecordingWriter();
+    tofu.newRenderer("ns.main").render(out);
+    assertEquals(EXPECTED_OUTPUT, out.toString());
+    assertEquals(ImmutableList.of(), out.flushedOutputs);
+
+    // Flush points don't change the output into a buffer that can't be flushed.
+    StringBuilder outputBuf = new StringBuilder();
+    tofu.newRenderer("ns.main").setFlushPoints(ImmutableSet.of("ns.header")).render(outputBuf);
+    assertEquals(EXPECTED_OUTPUT, outputBuf.toString());
+  }
+
+
+  // -----------------------------------------------------------------------------------------------
+  // Helpers.
+
+
+  /** Writer that records the output written so far each time it's flushed. */
+  private static class FlushRecordingWriter extends StringWriter {
+
+    final List<String> flushedOutputs = Lists.newArrayList();
+
+    @Override public void flush() {
+      super.flush();
+      flushedOutputs.add(toString());
+    }
+  }
+
+}